@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 /**
@@ -13,10 +14,16 @@ import java.util.StringTokenizer;
  * @author thsc
  */
 public class AbstractElement {
-    private final HashMap<String, String> attributes;
+    // deserialized on first access - most way nodes never need their tags
+    private HashMap<String, String> attributes;
+    private boolean deserialized;
     private String sTags;
     
     public HashMap<String, String> getAttributes() {
+        if(!this.deserialized) {
+            this.attributes = this.deserializeAttributes(this.sTags);
+            this.deserialized = true;
+        }
         return this.attributes;
     }
 
@@ -24,7 +31,7 @@ public class AbstractElement {
 
     public boolean hasFreeAttributes() {
         // are there attributes beside those we already use.
-        return this.attributes.keySet().size() > AbstractElement.relevantAttributeKeys.length;
+        return this.getAttributes().keySet().size() > AbstractElement.relevantAttributeKeys.length;
     }
 
     public String getFreeAttributesASHStoreValue() {
@@ -65,8 +72,8 @@ public class AbstractElement {
 
     public AbstractElement(String serializedAttrAndTags) {
 //        this.attributes = new HashMap<>();
-        this.sTags = serializedAttrAndTags; // only for debugging purpose
-        this.attributes = this.deserializeAttributes(serializedAttrAndTags);
+        this.sTags = serializedAttrAndTags;
+        this.deserialized = false;
         
 //        this.tags2attributes();
     }
@@ -83,6 +90,7 @@ public class AbstractElement {
      */
     public AbstractElement() {
         this.attributes = null;
+        this.deserialized = true;
         this.name = null;
     }
     
@@ -144,8 +152,21 @@ public class AbstractElement {
     
     protected final HashMap<String, String> deserializeAttributes(String serializedAttributes) {
         HashMap<String, String> a = new HashMap<>();
-        
-        if(serializedAttributes == null) return a;
+        AbstractElement.deserializeTags(serializedAttributes, a);
+        return a;
+    }
+
+    /**
+     * parse tags of column serializedtags in one pass: a json object (jsonb
+     * tag format) or length prefixed strings
+     */
+    public static void deserializeTags(String serializedAttributes, Map<String, String> a) {
+        if(serializedAttributes == null) return;
+
+        if(serializedAttributes.startsWith("{")) {
+            AbstractElement.deserializeJSONTags(serializedAttributes, a);
+            return;
+        }
         
         /*
         here comes a string key|value each entry (key or value) has this structure
@@ -154,29 +175,156 @@ public class AbstractElement {
         */
         
         int index = 0;
-        while(index < serializedAttributes.length()) {
-            if(serializedAttributes.substring(index).startsWith("0000")) {
+        int length = serializedAttributes.length();
+        while(index < length) {
+            if(serializedAttributes.startsWith("0000", index)) {
                 // empty key.. that makes no sense
                 System.err.println("\nAbstractElement.deserializeAttributes: found empty key (makes no sense), stop parsing attributes:" + serializedAttributes);
-                return a;
+                return;
+            }
+            int keyLength = AbstractElement.parseLength(serializedAttributes, index);
+            if(keyLength < 0) {
+                System.err.println("\nAbstractElement.deserializeAttributes: malformed attributes, stop parsing: " + serializedAttributes);
+                return;
             }
-            String key = this.unwrapStringWithLength(serializedAttributes, index);
-            index += this.calculateOffsetFromUnwrappedString(key);
+            index += MAX_DECIMAL_PLACES;
+            String key = serializedAttributes.substring(index, index + keyLength);
+            index += keyLength;
             
-            if(serializedAttributes.substring(index).startsWith("0000")) {
+            if(serializedAttributes.startsWith("0000", index)) {
                 index+=4;
                 System.err.println("null value for key (when deserializing attributes): " + key);
                 a.put(key, null);
             } else {
-                String value = this.unwrapStringWithLength(serializedAttributes, index);
-                if(value != null) {
-                    index += this.calculateOffsetFromUnwrappedString(value);
+                int valueLength = AbstractElement.parseLength(serializedAttributes, index);
+                if(valueLength < 0) {
+                    // key at the end without value
+                    a.put(key, null);
+                    return;
                 }
-                a.put(key, value);
+                index += MAX_DECIMAL_PLACES;
+                a.put(key, serializedAttributes.substring(index, index + valueLength));
+                index += valueLength;
             }
         }
-        
-        return a;
+    }
+
+    /**
+     * @return three digit length at offset, -1 if there is none or string is too short
+     */
+    private static int parseLength(String s, int offset) {
+        if(s.length() - offset < MAX_DECIMAL_PLACES) return -1;
+
+        int length = 0;
+        for(int i = offset; i < offset + MAX_DECIMAL_PLACES; i++) {
+            char c = s.charAt(i);
+            if(c < '0' || c > '9') return -1;
+            length = length * 10 + (c - '0');
+        }
+
+        return offset + MAX_DECIMAL_PLACES + length <= s.length() ? length : -1;
+    }
+
+    /**
+     * parse a flat json object like postgres prints jsonb: string keys,
+     * string or null values. Other values are taken as they are.
+     */
+    private static void deserializeJSONTags(String json, Map<String, String> a) {
+        int[] index = {1};
+        int length = json.length();
+        StringBuilder sb = new StringBuilder();
+        while(true) {
+            AbstractElement.skipWhitespace(json, index);
+            if(index[0] >= length || json.charAt(index[0]) == '}') return;
+            if(json.charAt(index[0]) == ',') {
+                index[0]++;
+                continue;
+            }
+
+            String key = AbstractElement.parseJSONString(json, index, sb);
+            AbstractElement.skipWhitespace(json, index);
+            if(key == null || index[0] >= length || json.charAt(index[0]) != ':') {
+                System.err.println("\nAbstractElement.deserializeAttributes: malformed json tags, stop parsing: " + json);
+                return;
+            }
+            index[0]++;
+            AbstractElement.skipWhitespace(json, index);
+            if(index[0] >= length) return;
+
+            if(json.charAt(index[0]) == '"') {
+                a.put(key, AbstractElement.parseJSONString(json, index, sb));
+            } else {
+                // null, number or boolean
+                int start = index[0];
+                while(index[0] < length && json.charAt(index[0]) != ',' && json.charAt(index[0]) != '}') {
+                    index[0]++;
+                }
+                String value = json.substring(start, index[0]).trim();
+                a.put(key, value.equals("null") ? null : value);
+            }
+        }
+    }
+
+    private static void skipWhitespace(String s, int[] index) {
+        while(index[0] < s.length() && Character.isWhitespace(s.charAt(index[0]))) {
+            index[0]++;
+        }
+    }
+
+    /**
+     * @return json string at index, which is moved behind closing quote
+     */
+    private static String parseJSONString(String s, int[] index, StringBuilder sb) {
+        int i = index[0];
+        if(i >= s.length() || s.charAt(i) != '"') return null;
+        i++;
+
+        // no escapes: plain substring
+        int end = i;
+        while(end < s.length() && s.charAt(end) != '"' && s.charAt(end) != '\\') end++;
+        if(end < s.length() && s.charAt(end) == '"') {
+            index[0] = end + 1;
+            return s.substring(i, end);
+        }
+
+        sb.setLength(0);
+        sb.append(s, i, end);
+        i = end;
+        while(i < s.length()) {
+            char c = s.charAt(i++);
+            if(c == '"') {
+                index[0] = i;
+                return sb.toString();
+            }
+            if(c != '\\' || i >= s.length()) {
+                sb.append(c);
+                continue;
+            }
+            c = s.charAt(i++);
+            switch(c) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if(i + 4 <= s.length()) {
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        }
+                        catch(NumberFormatException e) {
+                            // keep it as it is
+                            sb.append("\\u").append(s, i, i + 4);
+                        }
+                        i += 4;
+                    }
+                    break;
+                default: sb.append(c); // " \ /
+            }
+        }
+
+        index[0] = i;
+        return sb.toString();
     }
 
     private HashMap<String, String> getRelevantAttributes(HashMap<String, String> attributes) {
@@ -197,8 +345,9 @@ public class AbstractElement {
   
     protected String getSerializedTagsAndAttributes() {
         // attributes first - take only relevant attributes
-        if(this.attributes != null && !this.attributes.isEmpty()) {
-            String sAttributes = this.serializeAttributes(this.attributes);
+        HashMap<String, String> attributes = this.getAttributes();
+        if(attributes != null && !attributes.isEmpty()) {
+            String sAttributes = this.serializeAttributes(attributes);
             if(sAttributes != null && sAttributes.length() > 0) {
                 return sAttributes;
             }
@@ -302,7 +451,7 @@ public class AbstractElement {
     }
     
     public final String getValue(String key) {
-        String value = this.attributes.get(key);
+        String value = this.getAttributes().get(key);
         return value;
     }
     
@@ -318,7 +467,7 @@ public class AbstractElement {
         ArrayList<OldName> oldNames = null;
         // iterate attributes
         
-        for(String name : this.attributes.keySet()) {
+        for(String name : this.getAttributes().keySet()) {
             if(name.startsWith("old_name")) {
                 // extract time from key
                 int last = name.lastIndexOf(":");
@@ -336,7 +485,7 @@ public class AbstractElement {
                 }
                 
                 // remember old name
-                oldName.oldname = this.attributes.get(name);
+                oldName.oldname = this.getAttributes().get(name);
                 
                 // valid name?
                 if(oldName.oldname != null && oldName.oldname.length() > 0) {
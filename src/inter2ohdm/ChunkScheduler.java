@@ -0,0 +1,245 @@
+package inter2ohdm;
+
+import util.DB;
+import util.SQLStatementQueue;
+import util.Util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Cuts an id range of an intermediate table into chunks with about the same
+ * number of rows to be extracted (classcode != -1) - osm data are dense in
+ * some id ranges and sparse in others. Ids are sampled with TABLESAMPLE
+ * (about SAMPLE_ROWS rows) and the range is split at sample quantiles.
+ * <br>
+ * next() hands out chunks guided: chunks of chunkRows rows first, smaller
+ * ones towards the end - workers of a phase finish at about the same time.
+ * Chunks have no more than chunkRows rows unless the range has more chunks
+ * than sampled ids. Thread safe.
+ */
+class ChunkScheduler {
+    private static final int SAMPLE_ROWS = 100000;
+    // quanta per full chunk and max quanta of a range - ranges of more chunks get a quantum per chunk
+    private static final int QUANTA_PER_CHUNK = 8;
+    private static final int MAX_QUANTA = 4096;
+
+    private final String name;
+    private final int workers;
+    private final int quantaPerChunk;
+
+    // quantum i: bounds[i] =< id < bounds[i+1]
+    private final long[] bounds;
+    private final long estimatedRows;
+
+    private int nextQuantum = 0;
+    private int quantaDone = 0;
+    private long rowsDone = 0;
+    private long chunksDone = 0;
+    private final long startTime = System.currentTimeMillis();
+    private String description;
+
+    /**
+     * a part of the id range: lowerID =< id < upperID
+     */
+    static class Chunk {
+        final long lowerID;
+        final long upperID;
+        final int quanta;
+        final long estimatedRows;
+
+        private Chunk(long lowerID, long upperID, int quanta, long estimatedRows) {
+            this.lowerID = lowerID;
+            this.upperID = upperID;
+            this.quanta = quanta;
+            this.estimatedRows = estimatedRows;
+        }
+    }
+
+    private ChunkScheduler(String name, int workers, long[] bounds, long estimatedRows, int quantaPerChunk) {
+        this.name = name;
+        this.workers = workers > 0 ? workers : 1;
+        this.bounds = bounds;
+        this.estimatedRows = estimatedRows;
+        this.quantaPerChunk = quantaPerChunk;
+    }
+
+    /**
+     * sample id distribution of fromID =< id =< toID
+     * @param chunkRows rows of a full chunk
+     * @param workers workers taking chunks - tail chunks get smaller for more workers
+     */
+    static ChunkScheduler sample(SQLStatementQueue sql, String schema, String tableName,
+            long fromID, long toID, int chunkRows, int workers) throws SQLException {
+
+        long start = System.currentTimeMillis();
+        String fullTableName = DB.getFullTableName(schema, tableName);
+
+        // rows of that range: ids are serial, reltuples is not set before analyze
+        long rangeRows = toID - fromID + 1;
+        sql.append("SELECT reltuples::bigint FROM pg_class WHERE oid = '");
+        sql.append(fullTableName);
+        sql.append("'::regclass;");
+        ResultSet result = sql.executeWithResult();
+        if(result.next() && result.getLong(1) > 0) {
+            rangeRows = Math.min(rangeRows, result.getLong(1));
+        }
+        result.close();
+
+        double percent = Math.min(100.0, Math.max(0.01, 100.0 * SAMPLE_ROWS / Math.max(1, rangeRows)));
+
+        sql.append("SELECT id FROM ");
+        sql.append(fullTableName);
+        if(percent < 100.0) {
+            sql.append(" TABLESAMPLE SYSTEM (");
+            sql.append(String.format(Locale.ROOT, "%.4f", percent));
+            sql.append(")");
+        }
+        sql.append(" WHERE id >= ");
+        sql.append(fromID);
+        sql.append(" AND id <= ");
+        sql.append(toID);
+        sql.append(" AND classcode != -1 ORDER BY id;");
+
+        long[] ids = new long[1024];
+        int n = 0;
+        result = sql.executeWithResult();
+        while(result.next()) {
+            if(n == ids.length) {
+                ids = Arrays.copyOf(ids, n * 2);
+            }
+            ids[n++] = result.getLong(1);
+        }
+        result.close();
+
+        long estimatedRows = Math.round(n * 100.0 / percent);
+        long quantumRows = Math.max(1, chunkRows / QUANTA_PER_CHUNK);
+        long chunks = (estimatedRows + chunkRows - 1) / Math.max(1, chunkRows);
+        int quanta = (int) Math.max(1, Math.min(Math.max(MAX_QUANTA, chunks), estimatedRows / quantumRows));
+        if(n < quanta) {
+            quanta = Math.max(1, n);
+        }
+
+        // cut at quantiles, empty quanta are dropped
+        long[] bounds = new long[quanta + 1];
+        int b = 0;
+        bounds[b++] = fromID;
+        for(int q = 1; q < quanta; q++) {
+            long id = ids[(int) ((long) q * n / quanta)];
+            if(id > bounds[b - 1]) {
+                bounds[b++] = id;
+            }
+        }
+        bounds[b++] = toID + 1;
+
+        // full chunks of no more than chunkRows rows
+        int quantaPerChunk = (int) Math.max(1, Math.min(QUANTA_PER_CHUNK,
+                (long) (b - 1) * chunkRows / Math.max(1, estimatedRows)));
+
+        ChunkScheduler scheduler = new ChunkScheduler(tableName, workers,
+                Arrays.copyOf(bounds, b), estimatedRows, quantaPerChunk);
+        scheduler.description = tableName + ": about " + Util.getValueWithDots(estimatedRows) + " rows in ["
+                + fromID + ", " + toID + "], " + Util.getValueWithDots(b - 1) + " parts of about "
+                + Util.getValueWithDots(estimatedRows / (b - 1)) + " rows - sampled "
+                + Util.getValueWithDots(n) + " rows in " + Util.getElapsedTime(start);
+
+        return scheduler;
+    }
+
+    @Override
+    public String toString() {
+        return this.description;
+    }
+
+    /**
+     * @return next chunk, null if all chunks are handed out
+     */
+    synchronized Chunk next() {
+        int quanta = this.bounds.length - 1;
+        int remaining = quanta - this.nextQuantum;
+        if(remaining <= 0) {
+            return null;
+        }
+
+        int take = this.getQuanta(remaining);
+        Chunk chunk = new Chunk(this.bounds[this.nextQuantum], this.bounds[this.nextQuantum + take],
+                take, this.estimatedRows * take / quanta);
+        this.nextQuantum += take;
+        return chunk;
+    }
+
+    /**
+     * @return number of chunks next() hands out from now on
+     */
+    synchronized int getChunksLeft() {
+        int quanta = this.bounds.length - 1;
+        int chunks = 0;
+        for(int q = this.nextQuantum; q < quanta; q += this.getQuanta(quanta - q)) {
+            chunks++;
+        }
+        return chunks;
+    }
+
+    /**
+     * guided: a share of remaining work, full chunks at most
+     * @return quanta of next chunk
+     */
+    private int getQuanta(int remaining) {
+        return Math.max(1, Math.min(this.quantaPerChunk, remaining / (2 * this.workers)));
+    }
+
+    /**
+     * note a processed chunk and print throughput and eta
+     * @param rows processed rows
+     * @param millis processing time
+     */
+    synchronized void done(Chunk chunk, long rows, long millis) {
+        this.quantaDone += chunk.quanta;
+        this.rowsDone += rows;
+        this.chunksDone++;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.name);
+        sb.append(" chunk [");
+        sb.append(chunk.lowerID);
+        sb.append(", ");
+        sb.append(chunk.upperID);
+        sb.append("): ");
+        sb.append(Util.getValueWithDots(rows));
+        sb.append(" rows (estimated ");
+        sb.append(Util.getValueWithDots(chunk.estimatedRows));
+        sb.append(") in ");
+        sb.append(Util.getTimeString(millis / 1000));
+        sb.append(", ");
+        sb.append(Util.getValueWithDots(millis > 0 ? rows * 1000 / millis : rows));
+        sb.append(" rows/s | ");
+        sb.append(this.getProgress());
+        System.out.println(sb.toString());
+    }
+
+    /**
+     * @return done, overall throughput and eta
+     */
+    synchronized String getProgress() {
+        int quanta = this.bounds.length - 1;
+        long elapsed = System.currentTimeMillis() - this.startTime;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.quantaDone * 100 / quanta);
+        sb.append("% done (");
+        sb.append(Util.getValueWithDots(this.chunksDone));
+        sb.append(" chunks, ");
+        sb.append(Util.getValueWithDots(this.rowsDone));
+        sb.append(" rows, ");
+        sb.append(Util.getValueWithDots(elapsed > 0 ? this.rowsDone * 1000 / elapsed : 0));
+        sb.append(" rows/s) eta ");
+        if(this.quantaDone > 0) {
+            sb.append(Util.getTimeString(elapsed * (quanta - this.quantaDone) / this.quantaDone / 1000));
+        } else {
+            sb.append("?");
+        }
+        return sb.toString();
+    }
+}
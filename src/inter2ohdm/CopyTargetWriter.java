@@ -0,0 +1,226 @@
+package inter2ohdm;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import util.DB;
+import util.Parameter;
+import util.Util;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams rows into ohdm tables with COPY ... FROM STDIN (text format), one
+ * connection and one COPY per table. A table gets its connection with its
+ * first row. Geometries are sent as hex EWKB, wkt of other types as it is.
+ * <br>
+ * flush() ends the copies in the order tables got their first row (objects
+ * and geometries before geoobject_geometry), the next row starts a new one.
+ * Rows of a copy are kept until it is ended: if the db rejects the copy,
+ * they are written by an InsertTargetWriter on the same connection - one
+ * bad row does not reject the others.
+ */
+class CopyTargetWriter implements TargetWriter {
+    // chars buffered per table before sent to database
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // geometry columns of ohdm tables
+    private static final List<String> GEOMETRY_COLUMNS = Arrays.asList("point", "line", "polygon");
+
+    private final Parameter parameter;
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    private static class Table {
+        private final String fullTableName;
+        private final String[] columns;
+        private final boolean[] geometry;
+        private final Connection connection;
+        private final CopyManager copyManager;
+        private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 1024);
+        private CopyIn copyIn = null;
+
+        // rows of current copy and its failure - rows are inserted then
+        private final List<String[]> rows = new ArrayList<>();
+        private SQLException failure = null;
+        private long rowsWritten = 0;
+
+        Table(Parameter parameter, String fullTableName, String[] columns) throws SQLException {
+            this.fullTableName = fullTableName;
+            this.columns = columns;
+            this.geometry = new boolean[columns.length];
+            for(int i = 0; i < columns.length; i++) {
+                this.geometry[i] = GEOMETRY_COLUMNS.contains(columns[i]);
+            }
+            this.connection = DB.createConnection(parameter);
+            this.copyManager = new CopyManager((BaseConnection) this.connection);
+        }
+
+        void write(String[] values) {
+            for(int i = 0; i < values.length; i++) {
+                if(this.geometry[i]) {
+                    String ewkb = EWKB.fromWKT(values[i]);
+                    if(ewkb != null) {
+                        values = values.clone();
+                        values[i] = ewkb;
+                    }
+                }
+            }
+            this.rows.add(values);
+            if(this.failure != null) {
+                // copy is gone - rows are inserted by commit()
+                return;
+            }
+
+            for(int i = 0; i < values.length; i++) {
+                if(i > 0) {
+                    this.buffer.append('\t');
+                }
+                CopyTargetWriter.appendCopyValue(this.buffer, values[i]);
+            }
+            this.buffer.append('\n');
+
+            if(this.buffer.length() > BUFFER_SIZE) {
+                this.send();
+            }
+        }
+
+        private void send() {
+            if(this.buffer.length() == 0) {
+                return;
+            }
+            try {
+                if(this.copyIn == null) {
+                    this.copyIn = this.copyManager.copyIn("COPY " + this.fullTableName + " ("
+                            + String.join(", ", this.columns) + ") FROM STDIN");
+                }
+                byte[] bytes = this.buffer.toString().getBytes(StandardCharsets.UTF_8);
+                this.copyIn.writeToCopy(bytes, 0, bytes.length);
+            }
+            catch(SQLException e) {
+                this.failed(e);
+            }
+            this.buffer.setLength(0);
+        }
+
+        private void failed(SQLException e) {
+            this.failure = e;
+            this.buffer.setLength(0);
+            try {
+                if(this.copyIn != null && this.copyIn.isActive()) {
+                    this.copyIn.cancelCopy();
+                }
+            }
+            catch(SQLException ce) {
+                // copy is rolled back anyway
+            }
+            this.copyIn = null;
+        }
+
+        RejectedRows commit() throws SQLException {
+            RejectedRows rejected = new RejectedRows();
+            try {
+                this.send();
+                if(this.failure == null && this.copyIn != null) {
+                    try {
+                        this.copyIn.endCopy();
+                    }
+                    catch(SQLException e) {
+                        this.failed(e);
+                    }
+                    this.copyIn = null;
+                }
+
+                if(this.failure != null) {
+                    if(!InsertTargetWriter.isRowFailure(this.failure)) {
+                        throw this.failure;
+                    }
+                    System.err.println("copy into " + this.fullTableName + " failed, " + this.rows.size()
+                            + " rows are inserted: " + this.failure.getMessage());
+                    InsertTargetWriter inserts = new InsertTargetWriter(this.connection);
+                    for(String[] row : this.rows) {
+                        inserts.write(this.fullTableName, this.columns, row);
+                    }
+                    rejected = inserts.flush();
+                }
+                this.rowsWritten += this.rows.size() - rejected.size();
+            }
+            finally {
+                this.rows.clear();
+                this.failure = null;
+            }
+            return rejected;
+        }
+    }
+
+    CopyTargetWriter(Parameter parameter) {
+        this.parameter = parameter;
+    }
+
+    @Override
+    public void write(String fullTableName, String[] columns, String[] values) throws SQLException {
+        Table table = this.tables.get(fullTableName);
+        if(table == null) {
+            table = new Table(this.parameter, fullTableName, columns);
+            this.tables.put(fullTableName, table);
+        } else if(table.columns != columns && !Arrays.equals(table.columns, columns)) {
+            throw new SQLException("copy into " + fullTableName + " with other columns: "
+                    + Arrays.toString(columns) + " instead of " + Arrays.toString(table.columns));
+        }
+        table.write(values);
+    }
+
+    @Override
+    public RejectedRows flush() throws SQLException {
+        RejectedRows rejected = new RejectedRows();
+        for(Table table : this.tables.values()) {
+            rejected.addAll(table.commit());
+        }
+        return rejected;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        this.flush();
+        for(Table table : this.tables.values()) {
+            System.out.println("copied into " + table.fullTableName + ": " + Util.getValueWithDots(table.rowsWritten) + " rows");
+            table.connection.close();
+        }
+        this.tables.clear();
+    }
+
+    /**
+     * value of an sql literal as copy text value: quotes are unescaped,
+     * backslash and control characters escaped
+     */
+    static void appendCopyValue(StringBuilder sb, String value) {
+        if(value == null) {
+            sb.append("\\N");
+            return;
+        }
+        int length = value.length();
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '\'':
+                    sb.append('\'');
+                    // '' is one quote
+                    if(i + 1 < length && value.charAt(i + 1) == '\'') {
+                        i++;
+                    }
+                    break;
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+}
@@ -93,6 +93,7 @@ public class DebugInter2OHDM extends OHDMImporter {
 
             OSMExtractor extractor = 
                     new OSMExtractor(sourceConnection, sourceSchema, ohdmImporter, stepLen);
+            extractor.useNodeLocations(sourceParameter);
             
             sourceQueue = DB.createSQLStatementQueue(sourceConnection, sourceParameter);
             
@@ -108,7 +109,8 @@ public class DebugInter2OHDM extends OHDMImporter {
                 extractor.processElement(qResult, sourceQueue, OSMExtractor.WAY, true);
 //                exporter.processElement(qResult, sourceQueue, OSMExtractor.RELATION, true);
 
-                updateQueue.forceExecute();
+                // ohdm rows and then ohdm ids in intermediate db
+                ohdmImporter.forceExecute();
                 updateQueue.close();
 
             }
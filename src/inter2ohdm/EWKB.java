@@ -0,0 +1,195 @@
+package inter2ohdm;
+
+/**
+ * Hex EWKB (little endian, with srid) of the wkt the extraction produces:
+ * POINT, LINESTRING and POLYGON with two coordinates per point and an
+ * optional SRID=n; prefix. Postgis reads hex EWKB without parsing text
+ * coordinates. Coordinates are parsed like postgis does (nearest double), so
+ * the stored geometry does not change.
+ */
+class EWKB {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int SRID_FLAG = 0x20000000;
+    private static final int POINT = 1;
+    private static final int LINESTRING = 2;
+    private static final int POLYGON = 3;
+
+    private final String wkt;
+    private int pos = 0;
+    private final StringBuilder hex;
+
+    private EWKB(String wkt) {
+        this.wkt = wkt;
+        // about 16 hex chars per coordinate for about 10 wkt chars
+        this.hex = new StringBuilder(wkt.length() * 2 + 32);
+    }
+
+    /**
+     * @return hex EWKB or null if wkt is null or not of a supported type -
+     * send wkt then
+     */
+    static String fromWKT(String wkt) {
+        if(wkt == null) return null;
+
+        try {
+            return new EWKB(wkt).parse();
+        }
+        catch(IllegalArgumentException e) {
+            // includes NumberFormatException
+            return null;
+        }
+    }
+
+    private String parse() {
+        int srid = 0;
+        this.skipBlanks();
+        if(this.wkt.startsWith("SRID=", this.pos)) {
+            int end = this.wkt.indexOf(';', this.pos);
+            if(end < 0) throw new IllegalArgumentException("no ; after srid");
+            srid = Integer.parseInt(this.wkt.substring(this.pos + 5, end).trim());
+            this.pos = end + 1;
+            this.skipBlanks();
+        }
+
+        int type;
+        if(this.word("POINT")) {
+            type = POINT;
+        } else if(this.word("LINESTRING")) {
+            type = LINESTRING;
+        } else if(this.word("POLYGON")) {
+            type = POLYGON;
+        } else {
+            throw new IllegalArgumentException("unsupported geometry type");
+        }
+
+        this.appendByte(1); // little endian
+        this.appendInt(srid != 0 ? type | SRID_FLAG : type);
+        if(srid != 0) {
+            this.appendInt(srid);
+        }
+
+        this.expect('(');
+        switch(type) {
+            case POINT:
+                if(this.appendPoints() != 1) throw new IllegalArgumentException("point with more points");
+                break;
+            case LINESTRING:
+                this.appendCountedPoints();
+                break;
+            default:
+                int countAt = this.hex.length();
+                this.appendInt(0);
+                int rings = 0;
+                do {
+                    this.expect('(');
+                    this.appendCountedPoints();
+                    rings++;
+                } while(this.next(','));
+                this.expect(')');
+                this.setInt(countAt, rings);
+        }
+
+        this.skipBlanks();
+        if(this.pos != this.wkt.length()) throw new IllegalArgumentException("text after geometry");
+
+        return this.hex.toString();
+    }
+
+    /**
+     * points up to and including ')' with their number first
+     */
+    private void appendCountedPoints() {
+        int countAt = this.hex.length();
+        this.appendInt(0);
+        this.setInt(countAt, this.appendPoints());
+    }
+
+    /**
+     * x y, x y, .. up to and including ')'
+     * @return number of points
+     */
+    private int appendPoints() {
+        int points = 0;
+        do {
+            this.appendDouble(this.number());
+            this.appendDouble(this.number());
+            points++;
+        } while(this.next(','));
+        this.expect(')');
+
+        return points;
+    }
+
+    private double number() {
+        this.skipBlanks();
+        int start = this.pos;
+        while(this.pos < this.wkt.length()) {
+            char c = this.wkt.charAt(this.pos);
+            if((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E') {
+                this.pos++;
+            } else {
+                break;
+            }
+        }
+        if(start == this.pos) throw new IllegalArgumentException("number expected");
+
+        return Double.parseDouble(this.wkt.substring(start, this.pos));
+    }
+
+    private boolean word(String word) {
+        if(this.wkt.regionMatches(true, this.pos, word, 0, word.length())) {
+            this.pos += word.length();
+            this.skipBlanks();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true and skip c if it is next non blank char
+     */
+    private boolean next(char c) {
+        this.skipBlanks();
+        if(this.pos < this.wkt.length() && this.wkt.charAt(this.pos) == c) {
+            this.pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if(!this.next(c)) throw new IllegalArgumentException(c + " expected");
+    }
+
+    private void skipBlanks() {
+        while(this.pos < this.wkt.length() && Character.isWhitespace(this.wkt.charAt(this.pos))) {
+            this.pos++;
+        }
+    }
+
+    private void appendByte(int b) {
+        this.hex.append(HEX[(b >>> 4) & 0xf]);
+        this.hex.append(HEX[b & 0xf]);
+    }
+
+    private void appendInt(int value) {
+        for(int i = 0; i < 4; i++) {
+            this.appendByte(value >>> (8 * i));
+        }
+    }
+
+    private void setInt(int index, int value) {
+        for(int i = 0; i < 4; i++) {
+            int b = value >>> (8 * i);
+            this.hex.setCharAt(index++, HEX[(b >>> 4) & 0xf]);
+            this.hex.setCharAt(index++, HEX[b & 0xf]);
+        }
+    }
+
+    private void appendDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        for(int i = 0; i < 8; i++) {
+            this.appendByte((int) (bits >>> (8 * i)));
+        }
+    }
+}
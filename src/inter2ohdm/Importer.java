@@ -99,4 +99,11 @@ public abstract class Importer {
     public abstract boolean importRelation(OSMRelation relation, boolean importUnnamedEntities) throws SQLException;
 
     public abstract boolean importPostProcessing(OSMElement element, boolean importUnnamedEntities) throws SQLException;
+    
+    /**
+     * all elements of an extraction window are imported - rows kept by the
+     * importer can be written
+     */
+    public void flushWindow() throws SQLException {
+    }
 }
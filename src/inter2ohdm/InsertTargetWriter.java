@@ -0,0 +1,147 @@
+package inter2ohdm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows with insert statements. Rows are kept until flush(), rows of a
+ * table become multi row inserts (VALUES (..), (..)) of up to MAX_ROWS rows.
+ * Each insert commits on its own (autocommit). If an insert fails, its rows
+ * are inserted one by one - one bad row does not reject the others.
+ */
+class InsertTargetWriter implements TargetWriter {
+    // rows per insert statement
+    private static final int MAX_ROWS = 1000;
+
+    private final Connection connection;
+
+    // rows since last flush - tables in order of their first row
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    private static class Table {
+        private final String fullTableName;
+        private final String[] columns;
+        private final List<String[]> rows = new ArrayList<>();
+
+        Table(String fullTableName, String[] columns) {
+            this.fullTableName = fullTableName;
+            this.columns = columns;
+        }
+    }
+
+    InsertTargetWriter(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public void write(String fullTableName, String[] columns, String[] values) throws SQLException {
+        Table table = this.tables.get(fullTableName);
+        if(table == null) {
+            table = new Table(fullTableName, columns);
+            this.tables.put(fullTableName, table);
+        } else if(table.columns != columns && !Arrays.equals(table.columns, columns)) {
+            throw new SQLException("insert into " + fullTableName + " with other columns: "
+                    + Arrays.toString(columns) + " instead of " + Arrays.toString(table.columns));
+        }
+        table.rows.add(values);
+    }
+
+    @Override
+    public RejectedRows flush() throws SQLException {
+        RejectedRows rejected = new RejectedRows();
+        try (Statement statement = this.connection.createStatement()) {
+            for(Table table : this.tables.values()) {
+                for(int from = 0; from < table.rows.size(); from += MAX_ROWS) {
+                    List<String[]> rows = table.rows.subList(from, Math.min(from + MAX_ROWS, table.rows.size()));
+                    try {
+                        statement.execute(InsertTargetWriter.getInsert(table, rows));
+                    }
+                    catch(SQLException e) {
+                        if(!InsertTargetWriter.isRowFailure(e)) {
+                            throw e;
+                        }
+                        this.insertOneByOne(statement, table, rows, rejected);
+                    }
+                }
+            }
+        }
+        finally {
+            // rows are not sent again
+            this.tables.clear();
+        }
+        return rejected;
+    }
+
+    private void insertOneByOne(Statement statement, Table table, List<String[]> rows,
+            RejectedRows rejected) throws SQLException {
+
+        for(String[] row : rows) {
+            try {
+                statement.execute(InsertTargetWriter.getInsert(table, Collections.singletonList(row)));
+            }
+            catch(SQLException e) {
+                if(!InsertTargetWriter.isRowFailure(e)) {
+                    throw e;
+                }
+                System.err.println("row rejected by " + table.fullTableName + " (" + table.columns[0]
+                        + " = " + row[0] + "): " + e.getMessage());
+                rejected.add(table.fullTableName, row[0]);
+            }
+        }
+    }
+
+    private static String getInsert(Table table, List<String[]> rows) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ");
+        sql.append(table.fullTableName);
+        sql.append(" (");
+        sql.append(String.join(", ", table.columns));
+        sql.append(") VALUES ");
+        for(int r = 0; r < rows.size(); r++) {
+            if(r > 0) {
+                sql.append(", ");
+            }
+            String[] values = rows.get(r);
+            sql.append("(");
+            for(int i = 0; i < values.length; i++) {
+                if(i > 0) {
+                    sql.append(", ");
+                }
+                if(values[i] == null) {
+                    sql.append("NULL");
+                } else {
+                    // postgres casts quoted literals to numbers, dates and geometries as well
+                    sql.append("'");
+                    sql.append(values[i]);
+                    sql.append("'");
+                }
+            }
+            sql.append(")");
+        }
+        sql.append(";");
+        return sql.toString();
+    }
+
+    /**
+     * @return true if the statement failed because of its rows (data,
+     * constraints, geometries), false for failures of connection or server
+     */
+    static boolean isRowFailure(SQLException e) {
+        String state = e.getSQLState();
+        // 08 connection, 53 insufficient resources, 57 operator intervention
+        return state != null && !state.startsWith("08") && !state.startsWith("53")
+                && !state.startsWith("57");
+    }
+
+    @Override
+    public void close() throws SQLException {
+        this.flush();
+    }
+}
@@ -1,16 +1,30 @@
 package inter2ohdm;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import static util.InterDB.NODECOORDINATES;
 import static util.InterDB.NODETABLE;
 import static util.InterDB.RELATIONMEMBER;
+import static util.InterDB.RELATIONROLES;
 import static util.InterDB.RELATIONTABLE;
 import static util.InterDB.WAYMEMBER;
 import static util.InterDB.WAYTABLE;
 import util.DB;
+import util.InterDB;
+import util.NodeLocationStore;
+import util.OHDM_DB;
+import util.Parameter;
 import util.SQLStatementQueue;
 
 /**
@@ -29,9 +43,107 @@ public class IntermediateDB {
     private boolean object_new;
     private Date tstamp;
 
+    // member lists in ways and relations instead of waynodes / relationmember
+    protected final boolean arrayLayout;
+    private String[] roleNames = null;
+
+    // text, fixed point integer or double, see Parameter.COORDINATES_*
+    private final String coordinateType;
+
+    // optional node coordinates written by import
+    private NodeLocationStore nodeLocations = null;
+
+    // untagged way nodes in their own table, see Parameter.NODES_COORDINATES
+    private final boolean nodeCoordinatesTable;
+
+    // older intermediate dbs have no otherclasscodes
+    private final boolean otherClassCodesColumn;
+
+    // node ids per query of addNodes2OHDMWays
+    private static final int NODE_ID_CHUNK = 10000;
+
+    // columns read by readCommonColumns
+    private static final String COMMON_COLUMNS = "osm_id, classcode, serializedtags, ohdm_object_id, "
+            + "ohdm_geom_id, valid, geom_changed, object_changed, deleted, object_new, has_name, tstamp";
+
     IntermediateDB(Connection sourceConnection, String schema) {
         this.sourceConnection = sourceConnection;
         this.schema = schema;
+
+        boolean arrayLayout = false;
+        try {
+            arrayLayout = InterDB.isArrayLayout(new SQLStatementQueue(sourceConnection), schema);
+        }
+        catch(SQLException e) {
+            System.err.println("cannot detect intermediate member layout - assume member tables: " + e.getMessage());
+        }
+        this.arrayLayout = arrayLayout;
+
+        String coordinateType = Parameter.COORDINATES_TEXT;
+        try {
+            coordinateType = InterDB.getCoordinateType(new SQLStatementQueue(sourceConnection), schema);
+        }
+        catch(SQLException e) {
+            System.err.println("cannot detect intermediate coordinate type - assume text: " + e.getMessage());
+        }
+        this.coordinateType = coordinateType;
+
+        boolean nodeCoordinatesTable = false;
+        try {
+            nodeCoordinatesTable = InterDB.hasNodeCoordinatesTable(new SQLStatementQueue(sourceConnection), schema);
+        }
+        catch(SQLException e) {
+            System.err.println("cannot detect intermediate node coordinates table - read nodes table only: " + e.getMessage());
+        }
+        this.nodeCoordinatesTable = nodeCoordinatesTable;
+
+        boolean otherClassCodesColumn = true;
+        try {
+            otherClassCodesColumn = InterDB.hasColumn(new SQLStatementQueue(sourceConnection), schema,
+                    NODETABLE, "otherclasscodes");
+        }
+        catch(SQLException e) {
+            System.err.println("cannot detect column otherclasscodes - assume it exists: " + e.getMessage());
+        }
+        this.otherClassCodesColumn = otherClassCodesColumn;
+    }
+
+    /**
+     * @return select list with columns read by createOSMNode, createOSMWay
+     * or createOSMRelation (and readRelationMembers) of that table
+     */
+    protected String getSelectColumns(String tableName) {
+        StringBuilder columns = new StringBuilder(COMMON_COLUMNS);
+        if(this.otherClassCodesColumn) {
+            columns.append(", otherclasscodes");
+        }
+        switch(tableName) {
+            case NODETABLE:
+                columns.append(", longitude, latitude");
+                break;
+            case WAYTABLE:
+                columns.append(", node_ids");
+                break;
+            case RELATIONTABLE:
+                columns.append(this.arrayLayout ? ", member_ids, member_types, member_roles" : ", member_ids");
+                break;
+        }
+        return columns.toString();
+    }
+
+    /**
+     * take coordinates of way nodes from node location file if configured
+     */
+    void useNodeLocations(Parameter parameter) {
+        try {
+            this.nodeLocations = NodeLocationStore.open(parameter);
+            if(this.nodeLocations != null) {
+                System.out.println("read way nodes from node location file " + parameter.getNodeLocationFile());
+            }
+        }
+        catch(IOException e) {
+            System.err.println("cannot open node location file - read nodes from intermediate db: " + e.getMessage());
+        }
     }
     
     protected String getIntermediateTableName(OSMElement element) {
@@ -95,7 +207,9 @@ public class IntermediateDB {
         remove entries which refer to that element
         */
 
-        if(element instanceof OSMRelation) {
+        if(this.arrayLayout) {
+            // members are stored in element line only
+        } else if(element instanceof OSMRelation) {
             // remove line from relationsmember
             sq.append("DELETE FROM ");
 
@@ -137,27 +251,538 @@ public class IntermediateDB {
             select * from nodes_table where osm_id IN 
             (SELECT node_id FROM waynodes_table where way_id = ID_of_way);            
         */ 
+        List<String> dbNodeIDs = this.addLocalNodes(way);
+        if(dbNodeIDs != null && dbNodeIDs.isEmpty()) {
+            // all nodes found locally
+            return way;
+        }
+
         SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
 
         sql.append("select * from ");
         sql.append(DB.getFullTableName(this.schema, NODETABLE));
-        sql.append(" where osm_id IN (SELECT node_id FROM ");            
-        sql.append(DB.getFullTableName(this.schema, WAYMEMBER));
-        sql.append(" where way_id = ");            
-        sql.append(way.getOSMIDString());
+        sql.append(" where osm_id IN (");
+        this.appendWayNodeIDs(sql, way, dbNodeIDs);
         sql.append(");");  
 
         ResultSet qResultNode = sql.executeWithResult();
 
+        int found = 0;
         while(qResultNode.next()) {
             OSMNode node = this.createOSMNode(qResultNode);
             way.addNode(node);
+            found++;
         }
         
         qResultNode.close();
+
+        this.addCoordinateNodes(way, dbNodeIDs, found);
         
         return way;
     }
+
+    /**
+     * add nodes to all ways of a batch with one query per NODE_ID_CHUNK
+     * distinct node ids instead of one query per way, see addNodes2OHDMWay.
+     * Node ids are taken from the ways (node_ids), OSMWay.addNode puts each
+     * node at all its positions - repeated nodes and closed rings included.
+     */
+    void addNodes2OHDMWays(List<OSMWay> ways) throws SQLException {
+        // ids to be read from db for each way
+        List<List<String>> wayNodeIDs = new ArrayList<>(ways.size());
+        HashSet<String> ids = new HashSet<>();
+        for(OSMWay way : ways) {
+            List<String> dbNodeIDs = this.addLocalNodes(way);
+            if(dbNodeIDs == null) {
+                dbNodeIDs = new ArrayList<>();
+                HashSet<String> added = new HashSet<>();
+                Iterator<String> nodeIDs = way.getNodeIDs();
+                while(nodeIDs != null && nodeIDs.hasNext()) {
+                    String nodeID = nodeIDs.next();
+                    if(added.add(nodeID)) {
+                        dbNodeIDs.add(nodeID);
+                    }
+                }
+            }
+            wayNodeIDs.add(dbNodeIDs);
+            ids.addAll(dbNodeIDs);
+        }
+        if(ids.isEmpty()) {
+            return;
+        }
+
+        // nodes table: nodes are shared by all ways of that batch
+        HashMap<String, OSMNode> nodes = new HashMap<>();
+        SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
+        for(List<String> chunk : this.chunk(ids)) {
+            this.appendSelectByIDs(sql, this.getSelectColumns(NODETABLE), NODETABLE, "osm_id", chunk);
+            sql.append(";");
+
+            ResultSet qResult = sql.executeWithResult();
+            while(qResult.next()) {
+                OSMNode node = this.createOSMNode(qResult);
+                nodes.put(node.getOSMIDString(), node);
+            }
+            qResult.close();
+        }
+
+        // untagged way nodes of nodeFilter:coordinates: longitude, latitude
+        HashMap<String, String[]> coordinates = new HashMap<>();
+        if(this.nodeCoordinatesTable && nodes.size() < ids.size()) {
+            ids.removeAll(nodes.keySet());
+            for(List<String> chunk : this.chunk(ids)) {
+                this.appendSelectByIDs(sql, "osm_id, longitude, latitude", NODECOORDINATES, "osm_id", chunk);
+                sql.append(";");
+
+                ResultSet qResult = sql.executeWithResult();
+                while(qResult.next()) {
+                    coordinates.put(qResult.getString("osm_id"), new String[] {
+                        this.getCoordinate(qResult, "longitude"), this.getCoordinate(qResult, "latitude")});
+                }
+                qResult.close();
+            }
+        }
+
+        for(int i = 0; i < ways.size(); i++) {
+            OSMWay way = ways.get(i);
+            for(String nodeID : wayNodeIDs.get(i)) {
+                OSMNode node = nodes.get(nodeID);
+                if(node == null) {
+                    String[] location = coordinates.get(nodeID);
+                    if(location == null) {
+                        // missing node - way is inconsistent
+                        continue;
+                    }
+                    node = new OSMNode(this, nodeID, "0", null, null, location[0], location[1],
+                            null, null, true, false, false, false, false, way.getTimeStamp(), false);
+                }
+                way.addNode(node);
+            }
+        }
+    }
+
+    /**
+     * a relation and its members as read by readRelationMembers
+     */
+    static class RelationMembers {
+        final OSMRelation relation;
+        final List<String> ids = new ArrayList<>();
+        final List<Integer> types = new ArrayList<>();
+        final List<String> roles = new ArrayList<>();
+        // false if a member is unknown or not in intermediate db
+        boolean complete = true;
+
+        RelationMembers(OSMRelation relation) {
+            this.relation = relation;
+        }
+    }
+
+    /**
+     * create relation of current row, members are read from that row with
+     * array layout, see addMembers2OHDMRelations
+     */
+    RelationMembers createRelationMembers(ResultSet qResult) throws SQLException {
+        RelationMembers members = new RelationMembers(this.createOSMRelation(qResult));
+        if(this.arrayLayout) {
+            this.readRelationMembers(qResult, members.relation, members.ids, members.types, members.roles);
+        }
+        return members;
+    }
+
+    /**
+     * add members to all relations of a batch with a few set-based queries:
+     * member rows (table layout), then nodes, ways and relations with one query
+     * per type and NODE_ID_CHUNK ids. Members are added in member order, so
+     * OSMRelation.addMember sets positions and roles like before. Members are
+     * shared by relations of that batch. Way members without ohdm identity or
+     * with role inner / outer (polygon rings) get their nodes in bulk, see
+     * addNodes2OHDMWays.
+     */
+    void addMembers2OHDMRelations(List<RelationMembers> relations) throws SQLException {
+        SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
+
+        if(!this.arrayLayout) {
+            HashMap<String, RelationMembers> byID = new HashMap<>();
+            for(RelationMembers members : relations) {
+                byID.put(members.relation.getOSMIDString(), members);
+            }
+            for(List<String> chunk : this.chunk(byID.keySet())) {
+                // id keeps member order
+                this.appendSelectByIDs(sql, "relation_id, node_id, way_id, member_rel_id, role",
+                        RELATIONMEMBER, "relation_id", chunk);
+                sql.append(" order by relation_id, id;");
+
+                ResultSet qResult = sql.executeWithResult();
+                while(qResult.next()) {
+                    RelationMembers members = byID.get(qResult.getString("relation_id"));
+                    members.roles.add(qResult.getString("role"));
+
+                    String id = qResult.getString("node_id");
+                    int type = OHDM_DB.POINT;
+                    if(id == null) {
+                        id = qResult.getString("way_id");
+                        type = OHDM_DB.LINESTRING;
+                    }
+                    if(id == null) {
+                        id = qResult.getString("member_rel_id");
+                        type = OHDM_DB.RELATION;
+                    }
+                    members.ids.add(id);
+                    members.types.add(id != null ? type : -1);
+                }
+                qResult.close();
+            }
+        }
+
+        // member ids per type
+        HashSet<String> nodeIDs = new HashSet<>();
+        HashSet<String> wayIDs = new HashSet<>();
+        HashSet<String> relationIDs = new HashSet<>();
+        for(RelationMembers members : relations) {
+            for(int m = 0; m < members.ids.size(); m++) {
+                String id = members.ids.get(m);
+                int type = members.types.get(m);
+                if(id == null || type == -1) {
+                    // we have a serious problem here.. or no member
+                    members.complete = false;
+                    break;
+                }
+                switch(type) {
+                    case OHDM_DB.POINT: nodeIDs.add(id); break;
+                    case OHDM_DB.LINESTRING: wayIDs.add(id); break;
+                    default: relationIDs.add(id);
+                }
+            }
+        }
+
+        HashMap<String, OSMElement> nodes = new HashMap<>();
+        HashMap<String, OSMElement> ways = new HashMap<>();
+        HashMap<String, OSMElement> memberRelations = new HashMap<>();
+        this.readMembers(sql, NODETABLE, nodeIDs, nodes);
+        this.readMembers(sql, WAYTABLE, wayIDs, ways);
+        this.readMembers(sql, RELATIONTABLE, relationIDs, memberRelations);
+
+        List<OSMWay> fillWays = new ArrayList<>();
+        HashSet<OSMWay> filled = new HashSet<>();
+        for(RelationMembers members : relations) {
+            if(!members.complete) {
+                continue;
+            }
+            for(int m = 0; m < members.ids.size(); m++) {
+                String id = members.ids.get(m);
+                String role = members.roles.get(m);
+                OSMElement member;
+                switch(members.types.get(m)) {
+                    case OHDM_DB.POINT: member = nodes.get(id); break;
+                    case OHDM_DB.LINESTRING: member = ways.get(id); break;
+                    default: member = memberRelations.get(id);
+                }
+                if(member == null) {
+                    /* not in intermediate db - ok if not whole world was
+                    imported, relation is not imported */
+                    members.complete = false;
+                    break;
+                }
+                members.relation.addMember(member, role);
+
+                if(member instanceof OSMWay && member.isEmpty()
+                        && (member.noOHDMElement() || OSMRelation.INNER_ROLE.equalsIgnoreCase(role)
+                            || OSMRelation.OUTER_ROLE.equalsIgnoreCase(role))
+                        && filled.add((OSMWay)member)) {
+                    fillWays.add((OSMWay)member);
+                }
+            }
+        }
+
+        if(!fillWays.isEmpty()) {
+            this.addNodes2OHDMWays(fillWays);
+        }
+    }
+
+    private void readMembers(SQLStatementQueue sql, String tableName, Collection<String> ids,
+            HashMap<String, OSMElement> elements) throws SQLException {
+        for(List<String> chunk : this.chunk(ids)) {
+            this.appendSelectByIDs(sql, this.getSelectColumns(tableName), tableName, "osm_id", chunk);
+            sql.append(";");
+
+            ResultSet qResult = sql.executeWithResult();
+            while(qResult.next()) {
+                OSMElement element;
+                switch(tableName) {
+                    case NODETABLE: element = this.createOSMNode(qResult); break;
+                    case WAYTABLE: element = this.createOSMWay(qResult); break;
+                    default: element = this.createOSMRelation(qResult);
+                }
+                elements.put(element.getOSMIDString(), element);
+            }
+            qResult.close();
+        }
+    }
+
+    /**
+     * append select of rows with idColumn in ids - without semicolon
+     */
+    private void appendSelectByIDs(SQLStatementQueue sql, String columns, String tableName,
+            String idColumn, List<String> ids) {
+        sql.append("select ");
+        sql.append(columns);
+        sql.append(" from ");
+        sql.append(DB.getFullTableName(this.schema, tableName));
+        sql.append(" where ");
+        sql.append(idColumn);
+        sql.append(" = ANY('{");
+        this.appendIDs(sql, ids.iterator());
+        sql.append("}'::bigint[])");
+    }
+
+    private List<List<String>> chunk(Collection<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = null;
+        for(String id : ids) {
+            if(chunk == null || chunk.size() == NODE_ID_CHUNK) {
+                chunk = new ArrayList<>(Math.min(NODE_ID_CHUNK, ids.size()));
+                chunks.add(chunk);
+            }
+            chunk.add(id);
+        }
+        return chunks;
+    }
+
+    /**
+     * add way nodes which are kept in table nodecoordinates - untagged nodes
+     * of an import with nodeFilter:coordinates. Nothing to do if all nodes
+     * were found in nodes table.
+     * @param dbNodeIDs ids to be read from db, see addLocalNodes
+     * @param found number of nodes already read from nodes table
+     */
+    protected void addCoordinateNodes(OSMWay way, List<String> dbNodeIDs, int found) throws SQLException {
+        if(!this.nodeCoordinatesTable) {
+            return;
+        }
+
+        int expected;
+        if(dbNodeIDs != null) {
+            expected = dbNodeIDs.size();
+        } else {
+            HashSet<String> ids = new HashSet<>();
+            Iterator<String> nodeIDs = way.getNodeIDs();
+            while(nodeIDs != null && nodeIDs.hasNext()) {
+                ids.add(nodeIDs.next());
+            }
+            expected = ids.size();
+        }
+        if(found >= expected) {
+            return;
+        }
+
+        SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
+        sql.append("select osm_id, longitude, latitude from ");
+        sql.append(DB.getFullTableName(this.schema, NODECOORDINATES));
+        sql.append(" where osm_id IN (");
+        this.appendWayNodeIDs(sql, way, dbNodeIDs);
+        sql.append(");");
+
+        ResultSet qResult = sql.executeWithResult();
+        while(qResult.next()) {
+            OSMNode node = new OSMNode(this, qResult.getString("osm_id"), "0", null, null,
+                    this.getCoordinate(qResult, "longitude"), this.getCoordinate(qResult, "latitude"),
+                    null, null, true, false, false, false, false, way.getTimeStamp(), false);
+            way.addNode(node);
+        }
+        qResult.close();
+    }
+
+    /**
+     * add all way nodes found in node location file. Nodes with class or name
+     * are left out: they can have an identity in ohdm which is only known
+     * by intermediate db.
+     * @return ids of nodes which are to be read from intermediate db, null if
+     * there is no node location file
+     */
+    protected List<String> addLocalNodes(OSMWay way) {
+        if(this.nodeLocations == null) {
+            return null;
+        }
+
+        List<String> dbNodeIDs = new ArrayList<>();
+        Iterator<String> nodeIDs = way.getNodeIDs();
+        if(nodeIDs == null) {
+            return dbNodeIDs;
+        }
+
+        HashSet<String> added = new HashSet<>();
+        try {
+            while(nodeIDs.hasNext()) {
+                String nodeID = nodeIDs.next();
+                if(!added.add(nodeID)) {
+                    // closed way or node used twice - all positions are set at once
+                    continue;
+                }
+
+                long location = this.nodeLocations.get(Long.parseLong(nodeID));
+                if(location == 0 || NodeLocationStore.isTagged(location)) {
+                    dbNodeIDs.add(nodeID);
+                    continue;
+                }
+
+                OSMNode node = new OSMNode(this, nodeID, "0", null, null,
+                        NodeLocationStore.toDegreeString(NodeLocationStore.getLongitude(location)),
+                        NodeLocationStore.toDegreeString(NodeLocationStore.getLatitude(location)),
+                        null, null, true, false, false, false, false, way.getTimeStamp(), false);
+                way.addNode(node);
+            }
+        }
+        catch(IOException | NumberFormatException e) {
+            System.err.println("cannot read node location file - read nodes from intermediate db: " + e.getMessage());
+            this.nodeLocations = null;
+            // nodes already added are set again by query
+            return null;
+        }
+
+        return dbNodeIDs;
+    }
+
+    /**
+     * append node ids of a way for an IN clause: a sub query on waynodes or
+     * - with array layout - the ids already read with the way
+     * @param nodeIDs ids to be used instead, can be null
+     */
+    protected void appendWayNodeIDs(SQLStatementQueue sql, OSMWay way, List<String> nodeIDs) {
+        if(nodeIDs != null) {
+            this.appendIDs(sql, nodeIDs.iterator());
+            return;
+        }
+
+        if(!this.arrayLayout) {
+            sql.append("SELECT node_id FROM ");
+            sql.append(DB.getFullTableName(this.schema, WAYMEMBER));
+            sql.append(" where way_id = ");
+            sql.append(way.getOSMIDString());
+            return;
+        }
+
+        this.appendIDs(sql, way.getNodeIDs());
+    }
+
+    private void appendIDs(SQLStatementQueue sql, Iterator<String> ids) {
+        if(ids == null || !ids.hasNext()) {
+            sql.append("NULL");
+            return;
+        }
+
+        sql.append(ids.next());
+        while(ids.hasNext()) {
+            sql.append(",");
+            sql.append(ids.next());
+        }
+    }
+
+    /**
+     * fill id, type (OHDM_DB.POINT, LINESTRING, RELATION or -1) and role
+     * of each member of a relation. Array layout takes them from relation
+     * line, otherwise relationmember is queried.
+     * @param qResult result set positioned on relation line
+     */
+    protected void readRelationMembers(ResultSet qResult, OSMRelation relation,
+            List<String> ids, List<Integer> types, List<String> roles) throws SQLException {
+
+        if(this.arrayLayout) {
+            List<String> memberIDs = InterDB.getIDList(qResult.getArray("member_ids"));
+            Object[] memberTypes = this.getArrayElements(qResult, "member_types");
+            Object[] memberRoles = this.getArrayElements(qResult, "member_roles");
+
+            for(int i = 0; i < memberIDs.size(); i++) {
+                ids.add(memberIDs.get(i));
+
+                int type = -1;
+                if(i < memberTypes.length && memberTypes[i] != null) {
+                    type = ((Number)memberTypes[i]).intValue();
+                }
+                switch(type) {
+                    case InterDB.MEMBER_NODE: types.add(OHDM_DB.POINT); break;
+                    case InterDB.MEMBER_WAY: types.add(OHDM_DB.LINESTRING); break;
+                    case InterDB.MEMBER_RELATION: types.add(OHDM_DB.RELATION); break;
+                    default: types.add(-1);
+                }
+
+                int roleID = -1;
+                if(i < memberRoles.length && memberRoles[i] != null) {
+                    roleID = ((Number)memberRoles[i]).intValue();
+                }
+                roles.add(this.getRoleName(roleID));
+            }
+            return;
+        }
+
+        SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
+        sql.append("select * from ");
+        sql.append(DB.getFullTableName(this.schema, RELATIONMEMBER));
+        sql.append(" where relation_id = ");
+        sql.append(relation.getOSMIDString());
+        sql.append(";");
+
+        ResultSet qResultRelation = sql.executeWithResult();
+        while(qResultRelation.next()) {
+            roles.add(qResultRelation.getString("role"));
+
+            BigDecimal id = qResultRelation.getBigDecimal("node_id");
+            int type = OHDM_DB.POINT;
+            if(id == null) {
+                id = qResultRelation.getBigDecimal("way_id");
+                type = OHDM_DB.LINESTRING;
+            }
+            if(id == null) {
+                id = qResultRelation.getBigDecimal("member_rel_id");
+                type = OHDM_DB.RELATION;
+            }
+            if(id == null) {
+                // we have a serious problem here.. or no member
+                type = -1;
+            }
+
+            ids.add(id != null ? id.toString() : null);
+            types.add(type);
+        }
+        qResultRelation.close();
+    }
+
+    private Object[] getArrayElements(ResultSet qResult, String columnName) throws SQLException {
+        Array array = qResult.getArray(columnName);
+        if(array == null) {
+            return new Object[0];
+        }
+        return (Object[]) array.getArray();
+    }
+
+    /**
+     * @return role name from relationroles table, null if unknown
+     */
+    String getRoleName(int roleID) throws SQLException {
+        if(this.roleNames == null) {
+            SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
+            sql.append("select id, role from ");
+            sql.append(DB.getFullTableName(this.schema, RELATIONROLES));
+            sql.append(";");
+
+            ArrayList<String> names = new ArrayList<>();
+            ResultSet qResult = sql.executeWithResult();
+            while(qResult.next()) {
+                int id = qResult.getInt("id");
+                while(names.size() <= id) {
+                    names.add(null);
+                }
+                names.set(id, qResult.getString("role"));
+            }
+            qResult.close();
+
+            this.roleNames = names.toArray(new String[names.size()]);
+        }
+
+        if(roleID < 0 || roleID >= this.roleNames.length) {
+            return null;
+        }
+        return this.roleNames[roleID];
+    }
     
     
     ///////////////////////////////////////////////////////////////////////
@@ -214,10 +839,16 @@ public class IntermediateDB {
     protected OSMRelation createOSMRelation(ResultSet qResult) throws SQLException {
         // get all data to create an ohdm way object
         this.readCommonColumns(qResult);
-        memberIDs = qResult.getString("member_ids");
+        List<String> memberIDList = null;
+        if(this.arrayLayout) {
+            memberIDs = null;
+            memberIDList = InterDB.getIDList(qResult.getArray("member_ids"));
+        } else {
+            memberIDs = qResult.getString("member_ids");
+        }
 
         OSMRelation relation = new OSMRelation(this, osmIDString, 
-                classCodeString, otherClassCodes, sTags, memberIDs, ohdmObjectIDString, 
+                classCodeString, otherClassCodes, sTags, memberIDs, memberIDList, ohdmObjectIDString, 
                 ohdmGeomIDString, valid, this.geom_changed, this.object_changed, this.deleted,
                 this.has_name, this.tstamp, this.object_new
         );
@@ -227,10 +858,16 @@ public class IntermediateDB {
     
     protected OSMWay createOSMWay(ResultSet qResult) throws SQLException {
         this.readCommonColumns(qResult);
-        String nodeIDs = qResult.getString("node_ids");
+        String nodeIDs = null;
+        List<String> nodeIDList = null;
+        if(this.arrayLayout) {
+            nodeIDList = InterDB.getIDList(qResult.getArray("node_ids"));
+        } else {
+            nodeIDs = qResult.getString("node_ids");
+        }
 
         OSMWay way = new OSMWay(this, osmIDString, classCodeString, otherClassCodes, sTags, 
-                nodeIDs, ohdmObjectIDString, ohdmGeomIDString, valid, 
+                nodeIDs, nodeIDList, ohdmObjectIDString, ohdmGeomIDString, valid, 
                 this.geom_changed, this.object_changed, this.deleted,
                 this.has_name, this.tstamp, this.object_new
         );
@@ -240,8 +877,8 @@ public class IntermediateDB {
     
     protected OSMNode createOSMNode(ResultSet qResult) throws SQLException {
         this.readCommonColumns(qResult);
-        String longitude = qResult.getString("longitude");
-        String latitude = qResult.getString("latitude");
+        String longitude = this.getCoordinate(qResult, "longitude");
+        String latitude = this.getCoordinate(qResult, "latitude");
         
         OSMNode node = new OSMNode(this, osmIDString, classCodeString, otherClassCodes, sTags, 
                 longitude, latitude, ohdmObjectIDString, ohdmGeomIDString, 
@@ -250,4 +887,24 @@ public class IntermediateDB {
 
         return node;
     } 
+
+    /**
+     * @return coordinate as degree string for wkt, typed columns are
+     * converted without parsing text
+     */
+    private String getCoordinate(ResultSet qResult, String column) throws SQLException {
+        switch(this.coordinateType) {
+            case Parameter.COORDINATES_FIXED: {
+                int fixedPoint = qResult.getInt(column);
+                return qResult.wasNull() ? null : NodeLocationStore.toDegreeString(fixedPoint);
+            }
+            case Parameter.COORDINATES_DOUBLE: {
+                double degree = qResult.getDouble(column);
+                // no exponent notation in wkt
+                return qResult.wasNull() ? null : NodeLocationStore.toDegreeString((int) Math.round(degree * 1e7));
+            }
+            default:
+                return qResult.getString(column);
+        }
+    }
 }
@@ -12,14 +12,17 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import util.CopyConnector;
 import util.DB;
 import util.OHDM_DB;
 import util.FileSQLStatementQueue;
 import util.InterDB;
 import util.SQLStatementQueue;
 import util.Parameter;
+import util.SequenceBlock;
 import util.Trigger;
 import util.Util;
 
@@ -37,6 +40,64 @@ public class OHDMImporter extends Importer {
     private final SQLStatementQueue targetSelectQueue;
     private final SQLStatementQueue targetInsertQueue;
 
+    // ids reserved in blocks - rows are written with their id by targetInsertQueue
+    static final int ID_BLOCK_SIZE = 1000;
+    private final SequenceBlock objectIDs;
+    private final SequenceBlock pointIDs;
+    private final SequenceBlock lineIDs;
+    private final SequenceBlock polygonIDs;
+
+    // rows of ohdm tables, insert statements by default, see useTargetWriter
+    private TargetWriter targetWriter;
+    private static final String[] OBJECT_COLUMNS = {"id", "name", "source_user_id"};
+    private static final String[] POINT_COLUMNS = {"id", "point", "source_user_id"};
+    private static final String[] LINE_COLUMNS = {"id", "line", "source_user_id"};
+    private static final String[] POLYGON_COLUMNS = {"id", "polygon", "source_user_id"};
+    private static final String[] GEOOBJECT_GEOMETRY_COLUMNS = {"type_target", "classification_id",
+        "id_geoobject_source", "id_target", "role", "valid_since", "valid_until", "source_user_id", "tags"};
+    private static final String[] SUBSEQUENT_COLUMNS = {"target_id", "point_id", "line_id"};
+
+    /* written by flushWindow after the rows they refer to: ohdm ids for the
+    intermediate db, rows of geoobject_geometry and subsequent_geom_user */
+    private final List<IDUpdate> idUpdates = new ArrayList<>();
+    private final List<DependentRow> dependentRows = new ArrayList<>();
+
+    // ohdm ids of an element, null ids are not changed
+    private static class IDUpdate {
+        private final OSMElement element;
+        private String objectID;
+        private String geomID;
+
+        IDUpdate(OSMElement element, String objectID, String geomID) {
+            this.element = element;
+            this.objectID = objectID;
+            this.geomID = geomID;
+        }
+    }
+
+    // row and table / id pairs of the rows it refers to
+    private static class DependentRow {
+        private final String fullTableName;
+        private final String[] columns;
+        private final String[] values;
+        private final String[] references;
+
+        DependentRow(String fullTableName, String[] columns, String[] values, String[] references) {
+            this.fullTableName = fullTableName;
+            this.columns = columns;
+            this.values = values;
+            this.references = references;
+        }
+
+        boolean refersTo(RejectedRows rejected) {
+            for(int i = 0; i < this.references.length; i += 2) {
+                if(this.references[i] != null && rejected.contains(this.references[i], this.references[i + 1])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 
     private String defaultSince = "1970-01-01";
     private String defaultUntil = "2017-01-01";
@@ -57,18 +118,136 @@ public class OHDMImporter extends Importer {
         this.targetSelectQueue = new SQLStatementQueue(targetConnection);
         this.targetInsertQueue = new SQLStatementQueue(targetConnection);
         
+        this.objectIDs = new SequenceBlock(targetConnection, targetSchema, OHDM_DB.TABLE_GEOOBJECT, ID_BLOCK_SIZE);
+        this.pointIDs = new SequenceBlock(targetConnection, targetSchema, OHDM_DB.TABLE_POINTS, ID_BLOCK_SIZE);
+        this.lineIDs = new SequenceBlock(targetConnection, targetSchema, OHDM_DB.TABLE_LINES, ID_BLOCK_SIZE);
+        this.polygonIDs = new SequenceBlock(targetConnection, targetSchema, OHDM_DB.TABLE_POLYGONS, ID_BLOCK_SIZE);
+        this.targetWriter = new InsertTargetWriter(targetConnection);
+        
         this.defaultSince = "2016-01-01";
         this.defaultUntil = validUntilString;
     }
     
+    /**
+     * write ohdm tables with COPY if connectionType of the ohdm parameter
+     * file is copy (or binarycopy), with insert statements otherwise
+     */
+    void useTargetWriter(Parameter targetParameter) {
+        String connectionType = targetParameter.getConnectionType();
+        if(CopyConnector.BINARY_COPY.equalsIgnoreCase(connectionType)) {
+            System.out.println("connectionType binarycopy is not supported for ohdm tables - text COPY is used");
+            connectionType = "copy";
+        }
+        if("copy".equalsIgnoreCase(connectionType)) {
+            this.targetWriter = new CopyTargetWriter(targetParameter);
+            System.out.println("write ohdm tables with COPY");
+        }
+    }
+    
     void close() throws SQLException {
+        this.flushWindow();
+        this.targetWriter.close();
         this.targetInsertQueue.forceExecute();
         this.targetInsertQueue.close();
     }
     
     void forceExecute() throws SQLException {
-        this.sourceUpdateQueue.forceExecute();
+        /* target rows first - intermediate db must not refer to rows not yet
+        written. Waits for parallel batches and throws their failures. */
+        this.flushWindow();
         this.targetInsertQueue.forceExecute();
+        this.sourceUpdateQueue.forceExecute();
+    }
+    
+    /**
+     * Commits rows of ohdm tables written since last call: objects and
+     * geometries first, rows referring to them afterwards. Ohdm ids are
+     * written into the intermediate db last. Rows the db rejects are left out
+     * with rows referring to them - such elements keep no ohdm ids in the
+     * intermediate db.
+     */
+    @Override
+    public void flushWindow() throws SQLException {
+        try {
+            RejectedRows rejected = this.targetWriter.flush();
+
+            for(DependentRow row : this.dependentRows) {
+                if(!row.refersTo(rejected)) {
+                    this.targetWriter.write(row.fullTableName, row.columns, row.values);
+                }
+            }
+            RejectedRows rejectedDependents = this.targetWriter.flush();
+
+            int skipped = 0;
+            String objectTable = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT);
+            for(IDUpdate update : this.idUpdates) {
+                if(rejected.contains(objectTable, update.objectID) || rejected.contains(
+                        this.getTargetTableName(this.getTargetTypeInt(update.element)), update.geomID)) {
+                    skipped++;
+                    continue;
+                }
+                this.intermediateDB.setOHDM_IDs(this.sourceUpdateQueue, update.element,
+                        update.objectID, update.geomID);
+            }
+
+            if(!rejected.isEmpty() || !rejectedDependents.isEmpty()) {
+                System.err.println("ohdm db rejected " + (rejected.size() + rejectedDependents.size())
+                        + " rows, " + skipped + " elements are not imported");
+            }
+        }
+        finally {
+            this.dependentRows.clear();
+            this.idUpdates.clear();
+        }
+    }
+    
+    /**
+     * remember ohdm ids in element - they are written into intermediate db
+     * by flushWindow()
+     */
+    private void setOHDM_IDs(OSMElement element, String objectID, String geomID) throws SQLException {
+        element.setOHDM_IDs(null, objectID, geomID, false);
+        
+        // most elements get object and geometry id one after another - one update
+        IDUpdate last = this.idUpdates.isEmpty() ? null : this.idUpdates.get(this.idUpdates.size() - 1);
+        if(last != null && last.element == element) {
+            if(objectID != null) {
+                last.objectID = objectID;
+            }
+            if(geomID != null) {
+                last.geomID = geomID;
+            }
+        } else {
+            this.idUpdates.add(new IDUpdate(element, objectID, geomID));
+        }
+    }
+    
+    /**
+     * write a row after the rows it refers to, see flushWindow()
+     * @param references table and id of each row it refers to
+     */
+    private void writeDependent(String fullTableName, String[] columns, String[] values,
+            String... references) {
+        this.dependentRows.add(new DependentRow(fullTableName, columns, values, references));
+    }
+    
+    /**
+     * @return table referenced by id_target of geoobject_geometry, null if
+     * id_target is no ohdm id
+     */
+    private String getTargetTableName(int targetType) {
+        switch(targetType) {
+            case OHDM_DB.OHDM_POINT_GEOMTYPE:
+                return DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_POINTS);
+            case OHDM_DB.OHDM_LINESTRING_GEOMTYPE:
+                return DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_LINES);
+            case OHDM_DB.OHDM_POLYGON_GEOMTYPE:
+                return DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_POLYGONS);
+            case OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE:
+                return DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT);
+            default:
+                return null;
+        }
     }
     
     private String getTodayString() {
@@ -104,10 +283,8 @@ public class OHDMImporter extends Importer {
 //        SQLStatementQueue sql = new SQLStatementQueue(this.targetConnection);
 
         try {
-            this.saveSubsequentObjects(this.targetInsertQueue, way.getOHDMObjectID(), 
+            this.saveSubsequentObjects(way.getOHDMObjectID(), 
                     OHDM_DB.POINT, iNodesList.iterator());
-        
-            this.targetInsertQueue.couldExecute();
         }
         catch(SQLException se) {
             Util.printExceptionMessage(se, this.targetInsertQueue, "writing to subsequent table failed", false);
@@ -116,7 +293,7 @@ public class OHDMImporter extends Importer {
         return true;
     }
     
-    private void saveSubsequentObjects(SQLStatementQueue sql, String targetObjectID, int sourceType, 
+    private void saveSubsequentObjects(String targetObjectID, int sourceType, 
             Iterator<OSMElement> eIter) throws SQLException {
         
         if(sourceType != OHDM_DB.POINT && sourceType != OHDM_DB.LINESTRING) {
@@ -130,36 +307,19 @@ public class OHDMImporter extends Importer {
         /*
         INSERT INTO ohdm.subsequent_geom_user(target_id, point_id, line_id, polygon_id)
         */
-        sql.append("INSERT INTO ");
-        sql.append(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_SUBSEQUENT_GEOM_USER));
-        sql.append(" (target_id, ");
-        switch(sourceType) {
-            case OHDM_DB.POINT:
-                sql.append("point_id");
-                break;
-            case OHDM_DB.LINESTRING:
-                sql.append("line_id");
-                break;
-        }
-        sql.append(") VALUES ");
+        String fullTableName = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_SUBSEQUENT_GEOM_USER);
+        String objectTable = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT);
         
-        boolean first = true;
         while(eIter.hasNext()) {
             OSMElement e = eIter.next();
             
-            if(first) {
-                first = false;
-            } else {
-                sql.append(",");
-            }
-            
-            sql.append("(");
-            sql.append(targetObjectID);
-            sql.append(",");
-            sql.append(e.getOHDMObjectID());
-            sql.append(")");
+            String[] row = new String[3];
+            row[0] = targetObjectID;
+            // point_id or line_id
+            row[sourceType == OHDM_DB.POINT ? 1 : 2] = e.getOHDMObjectID();
+            this.writeDependent(fullTableName, SUBSEQUENT_COLUMNS, row,
+                    objectTable, targetObjectID, objectTable, e.getOHDMObjectID());
         }
-        sql.append("; ");
     }
 
     /**
@@ -181,7 +341,7 @@ public class OHDMImporter extends Importer {
         if(ohdmIDString == null) return false;
         
         // remember its ohdm incarnation in intermediate database
-        relation.setOHDMObjectID(this.sourceUpdateQueue, ohdmIDString);
+        this.setOHDM_IDs(relation, ohdmIDString, null);
         
         /* now there are two options:
         a) that relation represents a multigeometry (in most cases)
@@ -275,14 +435,14 @@ public class OHDMImporter extends Importer {
                     OSMElement member = relation.getMember(i);
                     
                     targetIDString = member.getOHDMGeomID();
-                    this.addValidity(this.targetSelectQueue, element, targetType, 
+                    this.addValidity(element, targetType, 
                             classCodeString, newOldOHDMID, targetIDString, 
                             externalUserID, oldName.fromYear, oldName.toYear);
                 }
             } else {
                 targetIDString = element.getOHDMGeomID();
                 if(targetIDString != null && targetIDString.length() > 0) {
-                    this.addValidity(this.targetSelectQueue, element, targetType, 
+                    this.addValidity(element, targetType, 
                             classCodeString, newOldOHDMID, targetIDString, 
                             externalUserID, oldName.fromYear, oldName.toYear);
                 }
@@ -291,8 +451,7 @@ public class OHDMImporter extends Importer {
         
         if(newOldObject_Name_ID.isEmpty()) return false;
         
-        this.targetSelectQueue.forceExecute();
-        
+
         return true;
     }
     
@@ -327,7 +486,14 @@ public class OHDMImporter extends Importer {
     }
     
     
-    private final HashMap<String, Integer> idExternalUsers = new HashMap<>();
+    private Map<String, Integer> idExternalUsers = new HashMap<>();
+
+    /**
+     * share external user ids with other importers - see OSMExtractorPool
+     */
+    void useExternalUserCache(Map<String, Integer> idExternalUsers) {
+        this.idExternalUsers = idExternalUsers;
+    }
     
     private int getOHDM_ID_ExternalUser(OSMElement ohdmElement) {
         // create user entry or find user primary key
@@ -345,7 +511,19 @@ public class OHDMImporter extends Importer {
         if(idInteger != null) { // already in memory
             return idInteger;
         }
-        
+
+        // importers sharing that cache must not insert a user twice
+        synchronized(this.idExternalUsers) {
+            return this.findOrInsertExternalUser(externalUserID, externalUserName);
+        }
+    }
+
+    private int findOrInsertExternalUser(String externalUserID, String externalUserName) {
+        Integer idInteger = this.idExternalUsers.get(externalUserID);
+        if(idInteger != null) { // inserted by another importer
+            return idInteger;
+        }
+
         int osm_id = this.getOHDM_ID_externalSystemOSM();
         
         int ohdmID = -1; // -1 means failure
@@ -387,6 +565,7 @@ public class OHDMImporter extends Importer {
                 ResultSet insertResult = this.executeQueryOnTarget(s.toString());
                 insertResult.next();
                 ohdmID = insertResult.getInt(1);
+                this.idExternalUsers.put(externalUserID, ohdmID);
             }
         } catch (SQLException ex) {
             // TODO serious probleme
@@ -410,7 +589,7 @@ public class OHDMImporter extends Importer {
                 if(!namedEntitiesOnly) {
                     // yes - fetch osm dummy object
                     ohdmIDString = this.getOSMDummyObject_OHDM_ID();
-                    osmElement.setOHDMObjectID(this.sourceUpdateQueue, ohdmIDString);
+                    this.setOHDM_IDs(osmElement, ohdmIDString, null);
                     
                     return ohdmIDString;
                 } else {
@@ -451,24 +630,18 @@ public class OHDMImporter extends Importer {
         ohdmIDString = this.addOHDMObject(name, externalUserID);
         
         // remember in element
-        osmElement.setOHDMObjectID(this.sourceUpdateQueue, ohdmIDString);
+        this.setOHDM_IDs(osmElement, ohdmIDString, null);
         
         return ohdmIDString;
     }
     
     String addOHDMObject(String name, int externalUserID) throws SQLException {
-        SQLStatementQueue sql = new SQLStatementQueue(this.targetConnection);
-        sql.append("INSERT INTO ");
-        sql.append(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT));
-        sql.append(" (name, source_user_id) VALUES ('");
-        sql.append(name);
-        sql.append("', ");
-        sql.append(externalUserID);
-        sql.append(") RETURNING id;");
-        
-        ResultSet result = sql.executeWithResult();
-        result.next();
-        return result.getBigDecimal(1).toString();
+        String ohdmIDString = this.objectIDs.nextString();
+        
+        this.targetWriter.write(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT),
+                OBJECT_COLUMNS, new String[] {ohdmIDString, name, Integer.toString(externalUserID)});
+        
+        return ohdmIDString;
     }
     
     String addGeometry(OSMElement osmElement) throws SQLException {
@@ -481,48 +654,36 @@ public class OHDMImporter extends Importer {
         String wkt = osmElement.getWKTGeometry();
         if(wkt == null || wkt.length() < 1) return null;
         
-//        SQLStatementQueue targetQueue = new SQLStatementQueue(this.targetConnection);
-        
-        targetSelectQueue.append("INSERT INTO ");
-        
         String fullTableName;
+        String[] columns;
+        String geomIDString;
         
         switch(osmElement.getGeometryType()) {
             case OHDM_DB.POINT: 
                 fullTableName = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_POINTS);
-                targetSelectQueue.append(fullTableName);
-                targetSelectQueue.append(" (point, ");
+                columns = POINT_COLUMNS;
+                geomIDString = this.pointIDs.nextString();
                 break;
             case OHDM_DB.LINESTRING: 
                 fullTableName = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_LINES);
-                targetSelectQueue.append(fullTableName);
-                targetSelectQueue.append(" (line, ");
+                columns = LINE_COLUMNS;
+                geomIDString = this.lineIDs.nextString();
                 break;
             case OHDM_DB.POLYGON: 
                 fullTableName = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_POLYGONS);
-                targetSelectQueue.append(fullTableName);
-                targetSelectQueue.append(" (polygon, ");
+                columns = POLYGON_COLUMNS;
+                geomIDString = this.polygonIDs.nextString();
                 break;
+            default:
+                return null;
         }
         
-        targetSelectQueue.append(" source_user_id) VALUES ('");
+        // rejected rows are left out by flushWindow()
+        this.targetWriter.write(fullTableName, columns, 
+                new String[] {geomIDString, wkt, Integer.toString(externalUserID)});
         
-        targetSelectQueue.append(wkt);
-        targetSelectQueue.append("', ");
-        targetSelectQueue.append(externalUserID);
-        targetSelectQueue.append(") RETURNING id;");
-
-        try {
-            ResultSet result = targetSelectQueue.executeWithResult();
-            result.next();
-            String geomIDString = result.getBigDecimal(1).toString();
-            osmElement.setOHDMGeometryID(this.sourceUpdateQueue, geomIDString);
-            return geomIDString;
-        }
-        catch(SQLException e) {
-            System.err.println("failure when inserting geometry, wkt:\n" + wkt + "\nosm_id: " + osmElement.getOSMIDString());
-            throw e;
-        }
+        this.setOHDM_IDs(osmElement, null, geomIDString);
+        return geomIDString;
     }
     
     
@@ -545,12 +706,9 @@ public class OHDMImporter extends Importer {
         
         // there can be more than one classcode...
         
-        this.addValidity(this.targetInsertQueue, osmElement, targetType, 
+        this.addValidity(osmElement, targetType, 
                 osmElement.getClassCodeString(), ohdmIDString, 
                 ohdmGeomIDString, externalUserID);
-        
-//        this.targetSelectQueue.forceExecute();
-        this.targetInsertQueue.couldExecute();
     }
     
     private String formatDateString(String sinceValue) {
@@ -564,7 +722,7 @@ public class OHDMImporter extends Importer {
         return null;
     }
     
-    void addValidity(SQLStatementQueue sq, OSMElement osmElement, int targetType, 
+    void addValidity(OSMElement osmElement, int targetType, 
             String classCodeString, String sourceIDString, 
             String targetIDString, int externalUserID) throws SQLException {
         
@@ -588,12 +746,12 @@ public class OHDMImporter extends Importer {
             sinceString = this.defaultSince;
         }
         
-        this.addValidity(sq, osmElement, targetType, classCodeString, 
+        this.addValidity(osmElement, targetType, classCodeString, 
                 sourceIDString, targetIDString, externalUserID, 
                 sinceString, this.defaultUntil);
     }
     
-    void addValidity(SQLStatementQueue sq, OSMElement osmElement, int targetType, 
+    void addValidity(OSMElement osmElement, int targetType, 
             String classCodeString, String sourceIDString, 
             String targetIDString, int externalUserID, String sinceString, 
             String untilString) throws SQLException {
@@ -606,44 +764,19 @@ public class OHDMImporter extends Importer {
         // some osm elements are tagged with more than one feature class
         Iterator<String> classIDIter = osmElement.getOtherClassIDs();
         
+        String fullTableName = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT_GEOMETRY);
+        String tags = osmElement.hasFreeAttributes() ? osmElement.getFreeAttributesASHStoreValue() : null;
+        
+        String objectTable = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT);
+        String targetTable = this.getTargetTableName(targetType);
+        
         boolean again = false;
         do {
             again = false;
-            sq.append("INSERT INTO ");
-            sq.append(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT_GEOMETRY));
-            sq.append(" (type_target, classification_id, id_geoobject_source, id_target, valid_since, valid_until, ");
-            sq.append(" source_user_id");
-            if(osmElement.hasFreeAttributes()) {
-                sq.append(", tags) VALUES (");
-            } else {
-                sq.append(") VALUES (");
-            }
-            sq.append(targetType);
-            sq.append(", ");
-            sq.append(classCodeString);
-            sq.append(", ");
-            sq.append(sourceIDString);
-            sq.append(", ");
-            sq.append(targetIDString);
-            sq.append(", '");
-            sq.append(sinceString);
-            sq.append("', '"); 
-            sq.append(untilString);
-            sq.append("', "); // until
-            sq.append(externalUserID);
-            if(osmElement.hasFreeAttributes()) {
-                sq.append(", '"); //
-                sq.append(osmElement.getFreeAttributesASHStoreValue());
-                sq.append("'"); //
-            }
-
-            sq.append(");");
-            /*
-            if(osmElement.hasFreeAttributes()) {
-                sq.forceExecute(); // that's for debugging purposes only: TODO
-            } else { */
-                sq.couldExecute();
-            //}
+            this.writeDependent(fullTableName, GEOOBJECT_GEOMETRY_COLUMNS, new String[] {
+                Integer.toString(targetType), classCodeString, sourceIDString, targetIDString, null,
+                sinceString, untilString, Integer.toString(externalUserID), tags},
+                objectTable, sourceIDString, targetTable, targetIDString);
             
             if(classIDIter.hasNext()) {
                 classCodeString = classIDIter.next();
@@ -770,7 +903,7 @@ public class OHDMImporter extends Importer {
                 
                 if(ohdmGeomIDString != null) {
                     // remeber geometry in inter db
-                    this.intermediateDB.setOHDM_IDs(this.sourceUpdateQueue, osmElement, null, ohdmGeomIDString);
+                    this.setOHDM_IDs(osmElement, null, ohdmGeomIDString);
                 }
 
                 // geometry added but no object.. we are done here
@@ -790,7 +923,7 @@ public class OHDMImporter extends Importer {
                 
                 /* now make both object and geom id persistent to intermediate db
                 */
-                this.intermediateDB.setOHDM_IDs(this.sourceUpdateQueue, osmElement, ohdmObjectIDString, ohdmGeomIDString);
+                this.setOHDM_IDs(osmElement, ohdmObjectIDString, ohdmGeomIDString);
             }
 
             // keep some special tags (url etc, see wiki) for the object
@@ -851,17 +984,29 @@ public class OHDMImporter extends Importer {
         OSMExtractor extractor = null;
         OHDMImporter ohdmImporter = null;
         SQLStatementQueue targetQueue = null;
+        OSMExtractorPool pool = null;
         
         try {
             String sourceParameterFileName = "db_inter.txt";
             String targetParameterFileName = "db_ohdm.txt";
+
+            // [db_inter.txt [db_ohdm.txt]] [-threads N]
+            int threads = 1;
+            List<String> fileNames = new ArrayList<>();
+            for(int i = 0; i < args.length; i++) {
+                if(args[i].equalsIgnoreCase("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    fileNames.add(args[i]);
+                }
+            }
             
-            if(args.length > 0) {
-                sourceParameterFileName = args[0];
+            if(fileNames.size() > 0) {
+                sourceParameterFileName = fileNames.get(0);
             }
             
-            if(args.length > 1) {
-                targetParameterFileName = args[1];
+            if(fileNames.size() > 1) {
+                targetParameterFileName = fileNames.get(1);
             }
             
             Parameter sourceParameter = new Parameter(sourceParameterFileName);
@@ -881,7 +1026,7 @@ public class OHDMImporter extends Importer {
             String currentUpdateFileName = "updateNodes.sql";
             File updateCommmands = new File(currentUpdateFileName);
             
-            if(sourceParameter.usePSQL()) {
+            if(sourceParameter.usePSQL() && threads < 2) {
                 // create File to keep update commands
                 System.out.println("intermediate update queue uses psql and sql files.");
                 fileUpdateQueue = new FileSQLStatementQueue(updateCommmands);
@@ -893,6 +1038,7 @@ public class OHDMImporter extends Importer {
             
             ohdmImporter = new OHDMImporter(iDB, targetParameter.getOsmfilecreationdate(), sourceConnection,
                     targetConnection, sourceSchema, targetSchema, updateQueue);
+            ohdmImporter.useTargetWriter(targetParameter);
 
             try {
                 if(targetParameter.forgetPreviousImport()) {
@@ -922,6 +1068,9 @@ public class OHDMImporter extends Importer {
             }
 
             extractor = new OSMExtractor(sourceConnection, sourceSchema, ohdmImporter, stepLen);
+            extractor.useNodeLocations(sourceParameter);
+            extractor.useCursor(sourceParameter);
+            extractor.useAdaptiveStepLen(sourceParameter);
             
             System.out.println("intermediate select queue uses jdbc");
             sourceQueue = DB.createSQLStatementQueue(sourceConnection, sourceParameter);
@@ -929,15 +1078,29 @@ public class OHDMImporter extends Importer {
             System.out.println("ohdm insert queue uses jdbc");
             targetQueue = new SQLStatementQueue(targetParameter);
             
+            if(threads > 1) {
+                pool = new OSMExtractorPool(sourceParameter, targetParameter, threads, stepLen);
+            }
+
             System.out.println("start insert data into ohdm DB from intermediate DB");
         
             // start stats trigger each [interval] minutes (default 5)
             int logMessageInterval = targetParameter.getLogMessageInterval();
-            trigger = new Trigger(extractor, 1000 * 60 * logMessageInterval);
+            trigger = new Trigger(pool != null ? pool : extractor, 1000 * 60 * logMessageInterval);
             trigger.start();
 
             // set initial max validity
             OHDM_DB.writeInitialImportDate(targetConnection, targetSchema, targetParameter.getOsmfilecreationdate());
+
+            if(pool != null) {
+                // phases keep their order: each waits for all workers
+                pool.process(OSMExtractor.NODE, true);
+                pool.process(OSMExtractor.WAY, false);
+                pool.process(OSMExtractor.RELATION, false);
+                trigger.end();
+                pool.postProcessGGTable();
+                return;
+            }
             
 //            if(targetParameter.importNodes()) {
                 extractor.processNodes(sourceQueue, true);
@@ -1029,13 +1192,20 @@ public class OHDMImporter extends Importer {
                 trigger.interrupt();
             }
             
-            if(targetQueue != null) {
-                targetQueue.forceExecute();
-                targetQueue.join();
+            try {
+                if(targetQueue != null) {
+                    // throws failures of parallel batches
+                    targetQueue.forceExecute();
+                    targetQueue.join();
+                }
+                if(ohdmImporter != null) ohdmImporter.close();
+            }
+            finally {
+                // failures are thrown by main after closing the workers
+                if(pool != null) pool.close();
             }
-            if(ohdmImporter != null) ohdmImporter.close();
             System.out.println("done importing from intermediate DB to ohdm DB");
-            System.out.println(extractor.getStatistics());
+            System.out.println(pool != null ? pool.getStatistics() : extractor.getStatistics());
         }
     }
 
@@ -1053,18 +1223,14 @@ public class OHDMImporter extends Importer {
         }
         
         // get all ohdm ids and store it
-        StringBuilder sq = new StringBuilder();
 
         /**
          * INSERT INTO [geoobject_geometry] 
          * (id_geoobject_source, id_target, type_target, valid_since, 
          * valid_until VALUES (..)
          */
-
-        sq.append("INSERT INTO ");
-        sq.append(OHDM_DB.TABLE_GEOOBJECT_GEOMETRY);
-        sq.append("(id_geoobject_source, source_user_id, id_target, type_target, role,");
-        sq.append(" classification_id, valid_since, valid_until) VALUES ");
+        String fullTableName = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT_GEOMETRY);
+        String objectTable = DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT);
 
         boolean notFirstSet = false;
         int ohdm_id_ExternalUser = this.getOHDM_ID_ExternalUser(relation);
@@ -1126,58 +1292,35 @@ public class OHDMImporter extends Importer {
             // get role of that member in that relation
             String roleName = relation.getRoleName(i);
 
-            // now construct that insert statement
-            
-            if(notFirstSet) {
-                sq.append(", ");
-            } else {
-                notFirstSet = true;
-            }
-
-            sq.append("(");
-            sq.append(ohdmIDString); // id source
-            sq.append(", ");
-            sq.append(ohdm_id_ExternalUser); // id source
-            sq.append(", ");
+            // now construct that row
+            notFirstSet = true;
 
-            sq.append(memberOHDMIDString); // id target (geom or object)
-            
-            sq.append(", ");
+            int targetType;
             if(isObject) {
                 // we have take the object id instead of geometry
-                sq.append(OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE);
+                targetType = OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE;
             } else if(useOSMID) {
-                sq.append(OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE_OSM_ID);
+                targetType = OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE_OSM_ID;
             } else {
                 // decide by member type
                 if(member instanceof OSMNode) { // type_target
-                    sq.append(OHDM_DB.OHDM_POINT_GEOMTYPE);
+                    targetType = OHDM_DB.OHDM_POINT_GEOMTYPE;
                 } else if(member instanceof OSMWay) {
-                    sq.append(OHDM_DB.OHDM_LINESTRING_GEOMTYPE);
+                    targetType = OHDM_DB.OHDM_LINESTRING_GEOMTYPE;
                 } else {
-                    sq.append(OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE);
+                    targetType = OHDM_DB.OHDM_GEOOBJECT_GEOMTYPE;
                 }
             }
-            sq.append(", '");
-            sq.append(roleName); // role
-            sq.append("', ");
-            sq.append(relation.getClassCodeString()); // classification
-            sq.append(", '");
-            sq.append(this.defaultSince); // since
-            sq.append("', '");
-            sq.append(this.defaultUntil); // until
-            sq.append("')"); // end that value set
+            
+            // written behind object and geometries
+            this.writeDependent(fullTableName, GEOOBJECT_GEOMETRY_COLUMNS, new String[] {
+                Integer.toString(targetType), relation.getClassCodeString(), ohdmIDString,
+                memberOHDMIDString, roleName, this.defaultSince, this.defaultUntil,
+                Integer.toString(ohdm_id_ExternalUser), null},
+                objectTable, ohdmIDString, this.getTargetTableName(targetType), memberOHDMIDString);
         }
-        sq.append(";"); // end that value set
 
-        if(notFirstSet) {
-            // there is at least one value set - excecute
-            SQLStatementQueue sql = new SQLStatementQueue(this.targetConnection);
-            sql.append(sq.toString());
-            sql.forceExecute();
-            return true;
-        }
-        return false;
+        return notFirstSet;
     }
 
     private boolean saveRelationAsMultipolygon(OSMRelation relation) throws SQLException {
@@ -1215,28 +1358,21 @@ public class OHDMImporter extends Importer {
         for(int i = 0; i < polygonIDs.size(); i++) {
             String pID = polygonIDs.get(i);
             if(pID.equalsIgnoreCase("-1")) {
+                if(!OSMElement.hasValidRings(polygonWKT.get(i))) {
+                    // postgis would reject it
+                    System.err.println("relation osm_id " + relation.getOSMIDString()
+                            + ": polygon left out, ring with less than four points");
+                    polygonIDs.remove(i);
+                    polygonWKT.remove(i);
+                    i--;
+                    continue;
+                }
                 // this geometry is not yet in the database.. insert that polygon
-                targetSelectQueue.append("INSERT INTO ");
-                targetSelectQueue.append(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_POLYGONS));
-                targetSelectQueue.append(" (polygon, source_user_id) VALUES ('");
-//                targetSelectQueue.append("SRID=4326;"); // make it an ewkt
-                targetSelectQueue.append(polygonWKT.get(i));
-                targetSelectQueue.append("', ");
+                String geomIDString = this.polygonIDs.nextString();
                 int ohdmUserID = this.getOHDM_ID_ExternalUser(relation);
-                targetSelectQueue.append(ohdmUserID);
-                targetSelectQueue.append(") RETURNING ID;");
-                
-//                sq.print("saving polygon wkt");
-                try {
-                    ResultSet polygonInsertResult = targetSelectQueue.executeWithResult();
-                    polygonInsertResult.next();
-                    String geomIDString = polygonInsertResult.getBigDecimal(1).toString();
-                    polygonIDs.set(i, geomIDString);
-                }
-                catch(SQLException e) {
-                    System.err.println("sql failed: " + targetSelectQueue.toString());
-                    throw e;
-                }
+                this.targetWriter.write(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_POLYGONS),
+                        POLYGON_COLUMNS, new String[] {geomIDString, polygonWKT.get(i), Integer.toString(ohdmUserID)});
+                polygonIDs.set(i, geomIDString);
             }
         }
 
@@ -1255,26 +1391,20 @@ public class OHDMImporter extends Importer {
         
         // void addValidity(int targetType, String classCodeString, String sourceIDString, String targetIDString, int externalUserID) throws SQLException {
         for(String targetIDString : polygonIDs) {
-            this.addValidity(targetSelectQueue, relation, targetType, classCodeString, sourceIDString, targetIDString, externalUserID);
+            this.addValidity(relation, targetType, classCodeString, sourceIDString, targetIDString, externalUserID);
         }
         
         // fill subsequent table if necessary
         if(!waysWithIdentity.isEmpty()) {
-            this.saveSubsequentObjects(targetSelectQueue, relation.getOHDMObjectID(), 
+            this.saveSubsequentObjects(relation.getOHDMObjectID(), 
                     OHDM_DB.LINESTRING, waysWithIdentity.iterator());
         }
         
         if(!nodesWithIdentity.isEmpty()) {
-            this.saveSubsequentObjects(targetSelectQueue, relation.getOHDMObjectID(), 
+            this.saveSubsequentObjects(relation.getOHDMObjectID(), 
                     OHDM_DB.POINT, nodesWithIdentity.iterator());
         }
         
-        try {
-            targetSelectQueue.forceExecute(true);
-        }
-        catch(SQLException se) {
-            Util.printExceptionMessage(se, targetSelectQueue, "when writing relation tables", false);
-        }
         return true;
     }
 
@@ -1290,6 +1420,7 @@ public class OHDMImporter extends Importer {
         OHDM ID in geoobject_geometry table. That problem can be fixed after
         importing all relations. Do it here.
         */
+        this.flushWindow();
         
         this.targetSelectQueue.append("SELECT id_target FROM ");
         this.targetSelectQueue.append(DB.getFullTableName(this.targetSchema, OHDM_DB.TABLE_GEOOBJECT_GEOMETRY));
@@ -1419,7 +1550,7 @@ public class OHDMImporter extends Importer {
             this.updateValidity(osmElement, null, ohdmGeomIDString);
 
             // update ohdmObjects in intermediate
-            this.intermediateDB.setOHDM_IDs(this.sourceUpdateQueue, osmElement, ohdmObjectIDString, ohdmGeomIDString);
+            this.setOHDM_IDs(osmElement, ohdmObjectIDString, ohdmGeomIDString);
 
             return true;
         }
@@ -1459,8 +1590,7 @@ public class OHDMImporter extends Importer {
             this.updateValidity(osmElement, ohdmObjectIDString, null);
 
             // update ohdmObjects in intermediate
-            this.intermediateDB.setOHDM_IDs(this.sourceUpdateQueue, osmElement, 
-                    ohdmObjectIDString, osmElement.getOHDMGeomID());
+            this.setOHDM_IDs(osmElement, ohdmObjectIDString, osmElement.getOHDMGeomID());
 
             return true;
         }
@@ -8,6 +8,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import util.InterDB;
 import util.Parameter;
 import util.SQLStatementQueue;
 
@@ -93,6 +94,9 @@ public class OHDMUpdateInter {
         String updateSchema = updateDBParameters.getSchema();
 
         try {
+            // member lists in ways and relations instead of waynodes / relationmember
+            boolean arrayLayout = InterDB.isArrayLayout(sqlInterUpdate, interSchema);
+
             // Start update process in intermediate
 
 ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -347,47 +351,57 @@ select wn.way_id from
 where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
 */
             System.out.print("mark geometry change in intermediate ways as result of geometry change (or deletion) of related node. Flag: " + OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append("update ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".ways set ");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" = true where osm_id IN (");
-            sqlInterUpdate.append("select wn.way_id from ");
-            sqlInterUpdate.append("(select osm_id, deleted, " );
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".nodes) as n,");
-            sqlInterUpdate.append("(select  way_id, node_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".waynodes) as wn");
-            sqlInterUpdate.append(" where (n.deleted OR n.");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(") AND n.osm_id = wn.node_id)");
-
-            sqlInterUpdate.forceExecute();
+            if(arrayLayout) {
+                OHDMUpdateInter.markChangedArrayMembers(sqlInterUpdate, interSchema,
+                        InterDB.WAYTABLE, InterDB.MEMBER_NODE, InterDB.NODETABLE);
+            } else {
+                sqlInterUpdate.append("update ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".ways set ");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" = true where osm_id IN (");
+                sqlInterUpdate.append("select wn.way_id from ");
+                sqlInterUpdate.append("(select osm_id, deleted, " );
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".nodes) as n,");
+                sqlInterUpdate.append("(select  way_id, node_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".waynodes) as wn");
+                sqlInterUpdate.append(" where (n.deleted OR n.");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(") AND n.osm_id = wn.node_id)");
+
+                sqlInterUpdate.forceExecute();
+            }
             System.out.println("...ok");
 
             System.out.print("mark geometry change in intermediate relations as result of geometry change (or deletion) of related node. Flag: " + OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append("update ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relations set ");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" = true where osm_id IN (");
-            sqlInterUpdate.append("select rm.relation_id from ");
-            sqlInterUpdate.append("(select osm_id, deleted, " );
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".nodes) as n,");
-            sqlInterUpdate.append("(select  relation_id, node_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relationmember) as rm");
-            sqlInterUpdate.append(" where (n.deleted OR n.");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(") AND n.osm_id = rm.node_id)");
-
-            sqlInterUpdate.forceExecute();
+            if(arrayLayout) {
+                OHDMUpdateInter.markChangedArrayMembers(sqlInterUpdate, interSchema,
+                        InterDB.RELATIONTABLE, InterDB.MEMBER_NODE, InterDB.NODETABLE);
+            } else {
+                sqlInterUpdate.append("update ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relations set ");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" = true where osm_id IN (");
+                sqlInterUpdate.append("select rm.relation_id from ");
+                sqlInterUpdate.append("(select osm_id, deleted, " );
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".nodes) as n,");
+                sqlInterUpdate.append("(select  relation_id, node_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relationmember) as rm");
+                sqlInterUpdate.append(" where (n.deleted OR n.");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(") AND n.osm_id = rm.node_id)");
+
+                sqlInterUpdate.forceExecute();
+            }
             System.out.println("...ok");
 
             // WAYS
@@ -408,25 +422,30 @@ where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
 
             // mark indirectly changed relations
             System.out.print("mark geometry change in relations as result of geometry change (or deletion) of related way. Flag: " + OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append("update ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relations set ");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" = true where osm_id IN (");
-            sqlInterUpdate.append("select rm.relation_id from ");
-            sqlInterUpdate.append("(select osm_id, deleted, " );
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".ways) as w,");
-            sqlInterUpdate.append("(select  relation_id, way_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relationmember) as rm");
-            sqlInterUpdate.append(" where (w.deleted OR w.");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(") AND w.osm_id = rm.way_id)");
-
-            sqlInterUpdate.forceExecute();
+            if(arrayLayout) {
+                OHDMUpdateInter.markChangedArrayMembers(sqlInterUpdate, interSchema,
+                        InterDB.RELATIONTABLE, InterDB.MEMBER_WAY, InterDB.WAYTABLE);
+            } else {
+                sqlInterUpdate.append("update ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relations set ");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" = true where osm_id IN (");
+                sqlInterUpdate.append("select rm.relation_id from ");
+                sqlInterUpdate.append("(select osm_id, deleted, " );
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".ways) as w,");
+                sqlInterUpdate.append("(select  relation_id, way_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relationmember) as rm");
+                sqlInterUpdate.append(" where (w.deleted OR w.");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(") AND w.osm_id = rm.way_id)");
+
+                sqlInterUpdate.forceExecute();
+            }
             System.out.println("...ok");
 
             // RELATIONS
@@ -447,25 +466,30 @@ where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
 
             // mark indirectly changed relations
             System.out.print("mark geometry change in relations as result of geometry change (or deletion) of related relation. Flag: " + OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append("update ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relations set ");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" = true where osm_id IN (");
-            sqlInterUpdate.append("select rm.relation_id from ");
-            sqlInterUpdate.append("(select osm_id, deleted, " );
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(" from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relations) as r,");
-            sqlInterUpdate.append("(select  relation_id, member_rel_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relationmember) as rm");
-            sqlInterUpdate.append(" where (r.deleted OR r.");
-            sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
-            sqlInterUpdate.append(") AND r.osm_id = rm.member_rel_id)");
-
-            sqlInterUpdate.forceExecute();
+            if(arrayLayout) {
+                OHDMUpdateInter.markChangedArrayMembers(sqlInterUpdate, interSchema,
+                        InterDB.RELATIONTABLE, InterDB.MEMBER_RELATION, InterDB.RELATIONTABLE);
+            } else {
+                sqlInterUpdate.append("update ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relations set ");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" = true where osm_id IN (");
+                sqlInterUpdate.append("select rm.relation_id from ");
+                sqlInterUpdate.append("(select osm_id, deleted, " );
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(" from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relations) as r,");
+                sqlInterUpdate.append("(select  relation_id, member_rel_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relationmember) as rm");
+                sqlInterUpdate.append(" where (r.deleted OR r.");
+                sqlInterUpdate.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+                sqlInterUpdate.append(") AND r.osm_id = rm.member_rel_id)");
+
+                sqlInterUpdate.forceExecute();
+            }
             System.out.println("...ok");
 
             // status: intermediate: changed geometries marked, update: no change
@@ -478,30 +502,34 @@ where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
             ////////////// remove deleted nodes now
 
             // remove nodes from waynodes
-            System.out.print("delete lines from waynodes table with removed nodes");
-            sqlInterUpdate.append("delete from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".waynodes where node_id IN (");
-            sqlInterUpdate.append("select ");
-            sqlInterUpdate.append("osm_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".nodes where deleted = true)");
-
-            sqlInterUpdate.forceExecute();
-            System.out.println("...ok");
+            if(!arrayLayout) {
+                System.out.print("delete lines from waynodes table with removed nodes");
+                sqlInterUpdate.append("delete from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".waynodes where node_id IN (");
+                sqlInterUpdate.append("select ");
+                sqlInterUpdate.append("osm_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".nodes where deleted = true)");
+
+                sqlInterUpdate.forceExecute();
+                System.out.println("...ok");
+            }
 
             // remove nodes from relationsmember
-            System.out.print("delete lines from relationmember table with removed nodes");
-            sqlInterUpdate.append("delete from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relationmember where node_id IN (");
-            sqlInterUpdate.append("select ");
-            sqlInterUpdate.append("osm_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".nodes where deleted = true)");
-
-            sqlInterUpdate.forceExecute();
-            System.out.println("...ok");
+            if(!arrayLayout) {
+                System.out.print("delete lines from relationmember table with removed nodes");
+                sqlInterUpdate.append("delete from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relationmember where node_id IN (");
+                sqlInterUpdate.append("select ");
+                sqlInterUpdate.append("osm_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".nodes where deleted = true)");
+
+                sqlInterUpdate.forceExecute();
+                System.out.println("...ok");
+            }
 
             // now remove deleted nodes from nodes
             System.out.print("delete nodes from nodes table");
@@ -515,17 +543,19 @@ where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
             //////////////////// remove deleted ways now
 
             // remove ways from relationsmember
-            System.out.print("delete lines from relationmember table with removed ways");
-            sqlInterUpdate.append("delete from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relationmember where way_id IN (");
-            sqlInterUpdate.append("select ");
-            sqlInterUpdate.append("osm_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".ways where deleted = true)");
-
-            sqlInterUpdate.forceExecute();
-            System.out.println("...ok");
+            if(!arrayLayout) {
+                System.out.print("delete lines from relationmember table with removed ways");
+                sqlInterUpdate.append("delete from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relationmember where way_id IN (");
+                sqlInterUpdate.append("select ");
+                sqlInterUpdate.append("osm_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".ways where deleted = true)");
+
+                sqlInterUpdate.forceExecute();
+                System.out.println("...ok");
+            }
 
             // now remove deleted ways
             System.out.print("delete ways from ways table");
@@ -539,17 +569,19 @@ where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
             //////////////// remove deleted relations now
 
             // remove nodes from relationsmember
-            System.out.print("delete lines from relationmember table with removed relations");
-            sqlInterUpdate.append("delete from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relationmember where way_id IN (");
-            sqlInterUpdate.append("select ");
-            sqlInterUpdate.append("osm_id from ");
-            sqlInterUpdate.append(interSchema);
-            sqlInterUpdate.append(".relations where deleted = true)");
-
-            sqlInterUpdate.forceExecute();
-            System.out.println("...ok");
+            if(!arrayLayout) {
+                System.out.print("delete lines from relationmember table with removed relations");
+                sqlInterUpdate.append("delete from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relationmember where way_id IN (");
+                sqlInterUpdate.append("select ");
+                sqlInterUpdate.append("osm_id from ");
+                sqlInterUpdate.append(interSchema);
+                sqlInterUpdate.append(".relations where deleted = true)");
+
+                sqlInterUpdate.forceExecute();
+                System.out.println("...ok");
+            }
 
             // now remove deleted relations
             System.out.print("delete relations from relations table");
@@ -879,4 +911,42 @@ where (n.deleted OR n.new) AND n.osm_id = wn.node_id)
             System.err.println(sqlOHDM.getCurrentStatement());
         }
     }
+
+    /**
+     * array layout: mark ways or relations with changed geometry which contain
+     * a member of that type which is deleted or has a changed geometry.
+     * Gin indexes on member arrays are used by overlap operator &&.
+     */
+    private static void markChangedArrayMembers(SQLStatementQueue sql, String schema,
+            String table, int memberType, String memberTable) throws SQLException {
+
+        String changedMembers = "(select array_agg(osm_id) from " + schema + "." + memberTable
+                + " where deleted OR " + OHDMUpdateInter.GEOMETRY_CHANGED_TAG + ")";
+
+        sql.append("update ");
+        sql.append(schema);
+        sql.append(".");
+        sql.append(table);
+        sql.append(" set ");
+        sql.append(OHDMUpdateInter.GEOMETRY_CHANGED_TAG);
+        sql.append(" = true where ");
+        if(table.equals(InterDB.WAYTABLE)) {
+            // ways contain nodes only
+            sql.append("node_ids && ");
+            sql.append(changedMembers);
+        } else {
+            sql.append("osm_id IN (select r.osm_id from ");
+            sql.append(schema);
+            sql.append(".relations as r, unnest(r.member_ids, r.member_types) as m(id, type)");
+            sql.append(" where r.member_ids && ");
+            sql.append(changedMembers);
+            sql.append(" AND m.type = ");
+            sql.append(memberType);
+            sql.append(" AND m.id = ANY(");
+            sql.append(changedMembers);
+            sql.append("))");
+        }
+
+        sql.forceExecute();
+    }
 }
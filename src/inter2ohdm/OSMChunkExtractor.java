@@ -20,6 +20,7 @@ public class OSMChunkExtractor {
         OSMExtractor extractor = null;
         OHDMImporter ohdmImporter = null;
         SQLStatementQueue targetQueue = null;
+        OSMExtractorPool pool = null;
 
         try {
             // setup parameter default
@@ -48,6 +49,9 @@ public class OSMChunkExtractor {
             usage.append("-relations (relations are imported) - default: false");
             boolean importRelations = false;
 
+            usage.append("-threads [N (worker threads on windows of that range, default: 1)] ");
+            int threads = 1;
+
             // now get real parameters
             HashMap<String, String> argumentMap = Util.parametersToMap(args, false, usage.toString());
 
@@ -76,6 +80,11 @@ public class OSMChunkExtractor {
                         toOSM_ID = Integer.parseInt(value);
                     }
 
+                    value = argumentMap.get("-threads");
+                    if (value != null) {
+                        threads = Integer.parseInt(value);
+                    }
+
                     importNodes = argumentMap.containsKey("-nodes");
                     importWays = argumentMap.containsKey("-ways");
                     importRelations = argumentMap.containsKey("-relations");
@@ -118,6 +127,7 @@ public class OSMChunkExtractor {
             ohdmImporter = new OHDMImporter(intermediateDB, targetParameter.getOsmfilecreationdate(),
                     sourceConnection,
                     targetConnection, sourceSchema, targetSchema, updateQueue);
+            ohdmImporter.useTargetWriter(targetParameter);
 
             int stepLen = 10000; // default
             String stepLenString = sourceParameter.getReadStepLen();
@@ -131,6 +141,9 @@ public class OSMChunkExtractor {
 
             // extractor from intermediate to importer
             extractor = new OSMExtractor(sourceConnection, sourceSchema, ohdmImporter, stepLen);
+            extractor.useNodeLocations(sourceParameter);
+            extractor.useCursor(sourceParameter);
+            extractor.useAdaptiveStepLen(sourceParameter);
             
             try {
                 if (reset) {
@@ -166,14 +179,22 @@ public class OSMChunkExtractor {
             System.out.println("ohdm insert queue uses jdbc");
             targetQueue = new SQLStatementQueue(targetParameter);
 
+            if (threads > 1) {
+                pool = new OSMExtractorPool(sourceParameter, targetParameter, threads, stepLen);
+            }
+
             System.out.println("start insert data into ohdm DB from intermediate DB");
 
             // start stats trigger each [interval] minutes (default 5)
             int logMessageInterval = targetParameter.getLogMessageInterval();
-            trigger = new Trigger(extractor, 1000 * 60 * logMessageInterval);
+            trigger = new Trigger(pool != null ? pool : extractor, 1000 * 60 * logMessageInterval);
             trigger.start();
 
-            if (importNodes) {
+            if (pool != null) {
+                int elementType = importNodes ? OSMExtractor.NODE :
+                        importWays ? OSMExtractor.WAY : OSMExtractor.RELATION;
+                pool.process(elementType, importNodes, fromOSM_ID, toOSM_ID);
+            } else if (importNodes) {
                 extractor.processNodes(sourceQueue, true, fromOSM_ID, toOSM_ID);
                 ohdmImporter.forceExecute();
             } else if(importWays) {
@@ -195,11 +216,17 @@ public class OSMChunkExtractor {
                 trigger.interrupt();
             }
 
-            if (targetQueue != null) {
-                targetQueue.forceExecute();
-                targetQueue.join();
+            try {
+                if (targetQueue != null) {
+                    // throws failures of parallel batches
+                    targetQueue.forceExecute();
+                    targetQueue.join();
+                }
+                if (ohdmImporter != null) ohdmImporter.close();
+            } finally {
+                // failures are thrown by main after closing the workers
+                if (pool != null) pool.close();
             }
-            if (ohdmImporter != null) ohdmImporter.close();
         }
     }
 }
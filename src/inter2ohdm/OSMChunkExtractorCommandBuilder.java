@@ -15,6 +15,8 @@ import java.util.*;
  * Created by thsc on 06.07.2017.
  */
 public class OSMChunkExtractorCommandBuilder {
+    // last chunks of each type are not parallel
+    private static final int SEQUENTIAL_TAIL_CHUNKS = 5;
 
     private long minID, maxID;
 
@@ -40,7 +42,8 @@ public class OSMChunkExtractorCommandBuilder {
         usage.append("\n");
         String targetParameterFileName = "db_ohdm.txt";
 
-        usage.append("-size [value] (size of each chunk default: 1.000.000)");
+        usage.append("-size [value] (rows of each chunk default: 1.000.000 - fewer at the end of each type, ");
+        usage.append("more only if a type has more chunks than sampled ids (about 100.000))");
         usage.append("\n");
         long size = 1000000;
 
@@ -115,77 +118,75 @@ public class OSMChunkExtractorCommandBuilder {
             String entityTypes[] = new String[] {"nodes", "ways", "relations"};
 
             for(String entityType : entityTypes) {
-                String fullTableName = null;
+                String tableName = null;
 
                 switch(entityType) {
                     case "nodes":
-                        fullTableName = DB.getFullTableName(sourceParameter.getSchema(), InterDB.NODETABLE);
+                        tableName = InterDB.NODETABLE;
                         break;
                     case "ways":
-                        fullTableName = DB.getFullTableName(sourceParameter.getSchema(), InterDB.WAYTABLE);
+                        tableName = InterDB.WAYTABLE;
                         break;
                     case "relations":
-                        fullTableName = DB.getFullTableName(sourceParameter.getSchema(), InterDB.RELATIONTABLE);
+                        tableName = InterDB.RELATIONTABLE;
                         parallelProcs = 0; // relations must be imported sequentially
                         break;
                 }
+                String fullTableName = DB.getFullTableName(sourceParameter.getSchema(), tableName);
 
                 // get min and max id
                 cef.getMaxID(sourceSQL, fullTableName);
 
-                // nodes
-                long from = cef.minID;
-                long to = from + size;
-                if(to > cef.maxID) to = cef.maxID;
+                // chunks with about the same number of rows
+                ChunkScheduler scheduler = ChunkScheduler.sample(sourceSQL, sourceParameter.getSchema(),
+                        tableName, cef.minID, cef.maxID, (int) Math.min(size, Integer.MAX_VALUE),
+                        parallelProcs + 1);
+                System.out.println("# " + scheduler);
 
                 int parallelCounter = parallelProcs;
 
-                if(from <= to) {
-                    do {
-                        boolean parallel = false;
-
-                        if(to + size*5 < cef.maxID && from > cef.minID) {
-                        /* last couple of processes are not parallel to end import of one
-                        entity before starting another one
-                          */
-                            if (parallelCounter < 0){
-                                // rewind
-                                parallelCounter = parallelProcs;
-                            }
-
-                            if(parallelCounter == 0) {
-                                if(parallelProcs > 0) {
-                                    // ready for rewind next round
-                                    parallelCounter = -1;
-                                }
-                            }
+                ChunkScheduler.Chunk chunk;
+                while((chunk = scheduler.next()) != null) {
+                    long from = chunk.lowerID;
+                    long to = chunk.upperID - 1; // including
+                    boolean parallel = false;
+
+                    if(scheduler.getChunksLeft() >= SEQUENTIAL_TAIL_CHUNKS && from > cef.minID) {
+                    /* last couple of processes are not parallel to end import of one
+                    entity before starting another one
+                      */
+                        if (parallelCounter < 0){
+                            // rewind
+                            parallelCounter = parallelProcs;
+                        }
 
-                            if(parallelCounter > 0) {
-                                parallelCounter--;
-                                parallel = true;
+                        if(parallelCounter == 0) {
+                            if(parallelProcs > 0) {
+                                // ready for rewind next round
+                                parallelCounter = -1;
                             }
                         }
 
-                        cef.writeCommand(
-                                jarFileNames,
-                                sourceParameterFileName,
-                                targetParameterFileName,
-                                first,
-                                from, to,
-                                entityType,
-                                logFile,
-                                errorLogFile,
-                                parallel,
-                                nice
-                        );
-
-                        first = false;
-
-                        // next loop
-                        from = to+1; // plus 1: its an including interval
-                        to = from + size;
-                        if(to > cef.maxID) to = cef.maxID;
-                    } while(from < cef.maxID);
+                        if(parallelCounter > 0) {
+                            parallelCounter--;
+                            parallel = true;
+                        }
+                    }
+
+                    cef.writeCommand(
+                            jarFileNames,
+                            sourceParameterFileName,
+                            targetParameterFileName,
+                            first,
+                            from, to,
+                            entityType,
+                            logFile,
+                            errorLogFile,
+                            parallel,
+                            nice
+                    );
+
+                    first = false;
                 }
             }
         }
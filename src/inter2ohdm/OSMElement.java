@@ -132,6 +132,41 @@ public abstract class OSMElement extends AbstractElement {
     
     abstract int getGeometryType();
     
+    /**
+     * @return false if polygon wkt is null or has a ring with less than four
+     * points (postgis rejects it)
+     */
+    static boolean hasValidRings(String polygonWKT) {
+        if(polygonWKT == null) return false;
+        
+        int depth = 0;
+        int points = 0;
+        boolean digits = false;
+        for(int i = 0; i < polygonWKT.length(); i++) {
+            char c = polygonWKT.charAt(i);
+            if(c == '(') {
+                depth++;
+                points = 0;
+                digits = false;
+            } else if(c == ')') {
+                if(depth == 2) {
+                    // end of a ring
+                    if(digits) points++;
+                    if(points < 4) return false;
+                }
+                depth--;
+            } else if(depth == 2) {
+                if(c == ',') {
+                    points++;
+                } else if(Character.isDigit(c)) {
+                    digits = true;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
     void setOHDM_IDs(SQLStatementQueue sql, String ohdmObjectIDString, String ohdmGeomIDString, boolean persist) throws SQLException {
         if(persist) {
             this.intermediateDB.setOHDM_IDs(sql, this, ohdmObjectIDString, ohdmGeomIDString);
@@ -191,16 +226,22 @@ public abstract class OSMElement extends AbstractElement {
     
     String getClassName() {
         if(className == null) {
-            String fullClassName = OSMClassification.getOSMClassification().
-                    getFullClassName(this.classCodeString);
-        
-            StringTokenizer st = new StringTokenizer(fullClassName, "_");
-            this.className = st.nextToken();
-            
-            if(st.hasMoreTokens()) {
-                this.subClassName = st.nextToken();
-            } else {
-                this.subClassName = "undefined";
+            // class names can contain _ - take names from classification instead of splitting
+            OSMClassification classification = OSMClassification.getOSMClassification();
+            try {
+                int classID = Integer.parseInt(this.classCodeString);
+                this.className = classification.getClassNameById(classID);
+                this.subClassName = classification.getSubClassNameById(classID);
+            }
+            catch(NumberFormatException e) {
+                // unknown class
+            }
+
+            if(this.className == null) {
+                this.className = OSMClassification.UNDEFINED;
+            }
+            if(this.subClassName == null) {
+                this.subClassName = OSMClassification.UNDEFINED;
             }
         }
         
@@ -5,16 +5,18 @@ import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import util.InterDB;
 import static util.InterDB.NODETABLE;
-import static util.InterDB.RELATIONMEMBER;
 import static util.InterDB.RELATIONTABLE;
 import static util.InterDB.WAYTABLE;
 import util.DB;
-import static util.InterDB.WAYMEMBER;
 import util.OHDM_DB;
+import util.Parameter;
 import util.SQLStatementQueue;
 import util.TriggerRecipient;
 import util.Util;
@@ -30,7 +32,7 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
     
     private int printEra = 0;
     private final static int PRINT_ERA_LENGTH = 100000;
-    private static final int DEFAULT_STEP_LEN = 1000;
+    static final int DEFAULT_STEP_LEN = 1000;
     
     // for statistics
     private long number;
@@ -55,6 +57,15 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
 
     BigDecimal upperID = null;
 
+    // element windows are read with a cursor on a connection of its own, see useCursor
+    private SQLStatementQueue cursorQueue = null;
+    private int fetchSize;
+
+    // adaptive readStepLen, see useAdaptiveStepLen
+    private StepLenController stepLenController = null;
+    private int configuredStepLen;
+    private long lastSelectTime = 0;
+
     OSMExtractor(Connection sourceConnection, String schema, Importer importer, int steplen) {
         super(sourceConnection, schema);
         
@@ -71,12 +82,46 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
         }
         
         this.steps = new BigDecimal(this.steplen);
+        this.configuredStepLen = this.steplen;
+    }
+
+    /**
+     * adapt readStepLen to rows per window, select time and free heap if
+     * readStepLenRange is set - see StepLenController
+     */
+    void useAdaptiveStepLen(Parameter parameter) {
+        int[] range = parameter.getReadStepLenRange();
+        if(range != null) {
+            this.stepLenController = new StepLenController(range[0], range[1], range[2]);
+        }
+    }
+
+    private void setStepLen(int steplen) {
+        this.steplen = steplen;
+        this.steps = new BigDecimal(steplen);
+    }
+
+    /**
+     * read element windows with a forward only cursor of fetchSize rows -
+     * heap use does not depend on readStepLen. The cursor gets a connection
+     * of its own, updates of the intermediate db must not run in its
+     * transaction.
+     */
+    void useCursor(Parameter parameter) {
+        try {
+            this.cursorQueue = new SQLStatementQueue(DB.createConnection(parameter));
+            this.fetchSize = parameter.getFetchSize();
+            System.out.println("read intermediate elements with a cursor, fetch size " + this.fetchSize);
+        }
+        catch(SQLException e) {
+            System.err.println("cannot open cursor connection - read whole windows: " + e.getMessage());
+        }
     }
 
     private BigDecimal initialLowerID;
     private BigDecimal initialUpperID;
     private BigDecimal initialMaxID;
-    private final BigDecimal steps;
+    private BigDecimal steps;
     
     private String calculateInitialIDs(SQLStatementQueue sql, String tableName) {
         // first: figure out min and max osm_id in nodes table
@@ -164,15 +209,31 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
         try {
             way = this.createOSMWay(qResult);
             this.currentElement = way;
-            
-            if(way.getOSMIDString().equalsIgnoreCase("4557344")) {
-                int i = 42;
-            }
 
 //            if(!way.isPart() && way.getName() == null) notPartNumber++;
 
             this.addNodes2OHDMWay(way);
+        }
+        catch(SQLException se) {
+            System.err.println("exception when reading nodes of way: " + way);
+            Util.printExceptionMessage(se, sql, "failure when processing way.. non fatal", true);
+            return;
+        }
+
+        this.processWay(way, sql, importUnnamedEntities);
+    }
+
+    /**
+     * import a way with all its nodes
+     */
+    void processWay(OSMWay way, SQLStatementQueue sql, boolean importUnnamedEntities) {
+        try {
+            this.currentElement = way;
             
+            if(way.getOSMIDString().equalsIgnoreCase("4557344")) {
+                int i = 42;
+            }
+
             this.numberCheckedWays++;
 
             if(way.isConsistent(System.err)) {
@@ -197,11 +258,28 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
     }
     
     void processRelation(ResultSet qResult, SQLStatementQueue sql, boolean importUnnamedEntities) {
-        OSMRelation relation = null;
+        RelationMembers members = null;
+        try {
+            members = this.createRelationMembers(qResult);
+            this.addMembers2OHDMRelations(Collections.singletonList(members));
+        }
+        catch(SQLException se) {
+            System.err.println("exception when reading members of relation: "
+                    + (members != null ? members.relation.getOSMIDString() : null));
+            Util.printExceptionMessage(se, sql, "failure when processing relation.. non fatal", true);
+            return;
+        }
+
+        this.processRelation(members, sql, importUnnamedEntities);
+    }
+
+    /**
+     * import a relation with all its members, see addMembers2OHDMRelations
+     */
+    void processRelation(RelationMembers members, SQLStatementQueue sql, boolean importUnnamedEntities) {
+        OSMRelation relation = members.relation;
         
         try {
-            relation = this.createOSMRelation(qResult);
-            
             String r_id = relation.getOSMIDString();
             if(r_id.equalsIgnoreCase("6780946")) {
                 int i = 42;
@@ -209,94 +287,8 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
 
             this.currentElement = relation;
 
-            // find all associated nodes and add to that relation
-            sql.append("select * from ");
-            sql.append(DB.getFullTableName(this.schema, RELATIONMEMBER));
-            sql.append(" where relation_id = ");            
-            sql.append(relation.getOSMIDString());
-            sql.append(";");  
-
-            ResultSet qResultRelation = sql.executeWithResult();
-
-            boolean relationMemberComplete = true; // assume we find all member
-
-            while(qResultRelation.next()) {
-                String roleString =  qResultRelation.getString("role");
-
-                // extract member objects from their tables
-                BigDecimal id;
-                int type = -1;
-
-                sql.append("SELECT * FROM ");
-
-                id = qResultRelation.getBigDecimal("node_id");
-                if(id != null) {
-                    sql.append(DB.getFullTableName(this.schema, NODETABLE));
-                    type = OHDM_DB.POINT;
-                } else {
-                    id = qResultRelation.getBigDecimal("way_id");
-                    if(id != null) {
-                        sql.append(DB.getFullTableName(this.schema, WAYTABLE));
-                        type = OHDM_DB.LINESTRING;
-                    } else {
-                        id = qResultRelation.getBigDecimal("member_rel_id");
-                        if(id != null) {
-                            sql.append(DB.getFullTableName(this.schema, RELATIONTABLE));
-                            type = OHDM_DB.RELATION;
-                        } else {
-                            // we have a serious problem here.. or no member
-                        }
-                    }
-                }
-                sql.append(" where osm_id = ");
-                sql.append(id.toString());
-                sql.append(";");
-
-                // debug stop
-                if(id.toString().equalsIgnoreCase("245960580")) {
-                    int i = 42;
-                }
-
-                ResultSet memberResult = sql.executeWithResult();
-                if(memberResult.next()) {
-                    // this call can fail, see else branch
-                    OSMElement memberElement = null;
-                    switch(type) {
-                        case OHDM_DB.POINT: 
-                            memberElement = this.createOSMNode(memberResult);
-                            break;
-                        case OHDM_DB.LINESTRING:
-                            memberElement = this.createOSMWay(memberResult);
-                            if(memberElement.noOHDMElement() && memberElement.isEmpty()) {
-                                /* that way isn't yet stored in OHDM
-                                fill it with all necessary data.
-                                */
-                                OSMWay wayMember = (OSMWay)memberElement;
-                                this.addNodes2OHDMWay(wayMember);
-                            }
-                            break;
-                        case OHDM_DB.RELATION:
-                            memberElement = this.createOSMRelation(memberResult);
-                            break;
-                    }
-                    
-                    relation.addMember(memberElement, roleString);
-                } else {
-                    /* this call can fail
-                    a) if this program is buggy - which is most likely :) OR
-                    b) intermediate DB has not imported whole world. In that
-                    case, relation can refer to data which are not actually 
-                    stored in intermediate db tables.. 
-                    in that case .. remove whole relation: parts of it are 
-                    outside our current scope
-                    */
-                    relationMemberComplete = false;
-                }
-                memberResult.close();
+            boolean relationMemberComplete = members.complete;
 
-                if(!relationMemberComplete) break;
-            }
-            
             this.numberCheckedRelations++;
             
             if(!relationMemberComplete) {
@@ -414,6 +406,11 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
                 break;
         }
 
+        if(this.stepLenController != null) {
+            // each table starts with configured value
+            this.setStepLen(this.stepLenController.startPhase(elementTableName, this.configuredStepLen));
+        }
+
         /* setup first run
         first lower id remains unchanged
         first upper is lower+steps
@@ -449,29 +446,10 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
             this.printStarted(elementTableName);
             this.era = 0; // start new element type - reset for statistics
             do {
-                long before = System.currentTimeMillis();
-                sql.append("SELECT * FROM ");
-                sql.append(DB.getFullTableName(this.schema, elementTableName));
-                sql.append(" where id >= "); // including lower
-                sql.append(lowerID.toString());
-                sql.append(" AND id < "); // excluding lower
-                sql.append(this.upperID.toString());
-                sql.append(" AND classcode != -1 "); // excluding untyped entities 
-                if(namedEntitiesOnly) {
-                    sql.append(" AND (serializedtags like '%004name%' OR classcode != -1)"); // entities with a name OR classcode
-                }
-                sql.append(";");
-                ResultSet qResult = sql.executeWithResult();
-                long after = System.currentTimeMillis();
-                this.noteTime(after-before, TIME_SELECT_ELEMENTS);
-                
-                while(qResult.next()) {
-                    this.number++;
-                    this.printStatistics();
-                    before = System.currentTimeMillis();
-                    this.processElement(qResult, sql, elementType, namedEntitiesOnly);
-                    after = System.currentTimeMillis();
-                    this.noteTime(after-before, TIME_PROCESS_ELEMENTS);
+                long rows = this.processWindow(sql, elementTableName, elementType, namedEntitiesOnly,
+                        lowerID, this.upperID);
+                if(this.stepLenController != null) {
+                    this.setStepLen(this.stepLenController.next(this.steplen, rows, this.lastSelectTime));
                 }
 
                 if(lastRound) {
@@ -494,11 +472,11 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
                     this.upperID = initialMaxID.add(new BigDecimal(1)); // last round
                     lastRound = true;
                 }
-                
-                this.upperIDString = Util.setDotsInStringValue(this.upperID.toPlainString());
-                this.lowerIDString = Util.setDotsInStringValue(lowerID.toPlainString());
-
             } while(again);
+
+            if(this.stepLenController != null) {
+                this.stepLenController.endPhase(this.steplen);
+            }
         } 
         catch (SQLException ex) {
             // fatal exception.. do not continue
@@ -507,6 +485,178 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
         this.printFinished(elementTableName);
     }
         
+    /**
+     * select and process elements of a table with lowerID =< id < upperID.
+     * Used by processElements and - with windows of a shared queue - by
+     * OSMExtractorPool.
+     * @return number of processed elements
+     */
+    long processWindow(SQLStatementQueue sql, String elementTableName, int elementType,
+            boolean namedEntitiesOnly, BigDecimal lowerID, BigDecimal upperID) throws SQLException {
+
+        long processed = this.number;
+
+        // for statistics output
+        this.upperIDString = Util.setDotsInStringValue(upperID.toPlainString());
+        this.lowerIDString = Util.setDotsInStringValue(lowerID.toPlainString());
+
+        long before = System.currentTimeMillis();
+        SQLStatementQueue select = this.cursorQueue != null ? this.cursorQueue : sql;
+        select.append("SELECT ");
+        select.append(this.getSelectColumns(elementTableName));
+        select.append(" FROM ");
+        select.append(DB.getFullTableName(this.schema, elementTableName));
+        select.append(" where id >= "); // including lower
+        select.append(lowerID.toString());
+        select.append(" AND id < "); // excluding lower
+        select.append(upperID.toString());
+        select.append(" AND classcode != -1 "); // excluding untyped entities 
+        if(namedEntitiesOnly) {
+            // entities with a name OR classcode - flag is set by import, works with any tag format
+            select.append(" AND (has_name OR classcode != -1)");
+        }
+        select.append(";");
+        ResultSet qResult = this.cursorQueue != null ?
+                this.cursorQueue.executeStreaming(this.fetchSize) : sql.executeWithResult();
+        long after = System.currentTimeMillis();
+        this.lastSelectTime = after - before;
+        this.noteTime(after-before, TIME_SELECT_ELEMENTS);
+
+        if(elementType == WAY) {
+            this.processWayWindow(qResult, sql, namedEntitiesOnly);
+        } else if(elementType == RELATION) {
+            this.processRelationWindow(qResult, sql, namedEntitiesOnly);
+        } else while(qResult.next()) {
+            this.number++;
+            this.printStatistics();
+            before = System.currentTimeMillis();
+            this.processElement(qResult, sql, elementType, namedEntitiesOnly);
+            after = System.currentTimeMillis();
+            this.noteTime(after-before, TIME_PROCESS_ELEMENTS);
+        }
+
+        if(this.cursorQueue != null) {
+            this.cursorQueue.closeStreaming();
+        } else {
+            qResult.close();
+        }
+
+        // rows of that window are committed before the next one is selected
+        this.importer.flushWindow();
+
+        return this.number - processed;
+    }
+
+    /**
+     * process ways of a window in batches: nodes of all ways of a batch are
+     * read with a few queries (addNodes2OHDMWays) instead of one per way
+     */
+    private void processWayWindow(ResultSet qResult, SQLStatementQueue sql, boolean importUnnamedEntities)
+            throws SQLException {
+        int batchSize = Math.min(this.steplen, MAX_WAY_BATCH);
+        List<OSMWay> ways = new ArrayList<>();
+        boolean more = true;
+        while(more) {
+            more = qResult.next();
+            if(more) {
+                try {
+                    ways.add(this.createOSMWay(qResult));
+                }
+                catch(SQLException se) {
+                    Util.printExceptionMessage(se, sql, "failure when reading way.. non fatal", true);
+                }
+            }
+            if(ways.size() < batchSize && (more || ways.isEmpty())) {
+                continue;
+            }
+
+            long before = System.currentTimeMillis();
+            try {
+                this.addNodes2OHDMWays(ways);
+            }
+            catch(SQLException se) {
+                Util.printExceptionMessage(se, sql, "failure when reading nodes of " + ways.size()
+                        + " ways.. non fatal", true);
+                ways.clear();
+                continue;
+            }
+            // statistics are per way
+            this.addNodesTime += System.currentTimeMillis() - before;
+            this.addNodesCount += ways.size();
+
+            for(OSMWay way : ways) {
+                this.number++;
+                this.printStatistics();
+                before = System.currentTimeMillis();
+                this.currentElement = null;
+                try {
+                    this.processWay(way, sql, importUnnamedEntities);
+                }
+                catch(Throwable t) {
+                    System.err.println("---------------------------------------------------------------------------");
+                    System.err.println("was handling a WAY with osm_id = " + way.getOSMIDString());
+                    Util.printExceptionMessage(t, sql, "uncaught throwable when processing element", true);
+                    System.err.println("---------------------------------------------------------------------------");
+                }
+                this.noteTime(System.currentTimeMillis() - before, TIME_PROCESS_ELEMENTS);
+            }
+            ways.clear();
+        }
+    }
+
+    /**
+     * process relations of a window in batches: members of all relations of
+     * a batch are read with a few queries (addMembers2OHDMRelations)
+     */
+    private void processRelationWindow(ResultSet qResult, SQLStatementQueue sql, boolean importUnnamedEntities)
+            throws SQLException {
+        int batchSize = Math.min(this.steplen, MAX_RELATION_BATCH);
+        List<RelationMembers> relations = new ArrayList<>();
+        boolean more = true;
+        while(more) {
+            more = qResult.next();
+            if(more) {
+                try {
+                    relations.add(this.createRelationMembers(qResult));
+                }
+                catch(SQLException se) {
+                    Util.printExceptionMessage(se, sql, "failure when reading relation.. non fatal", true);
+                }
+            }
+            if(relations.size() < batchSize && (more || relations.isEmpty())) {
+                continue;
+            }
+
+            try {
+                this.addMembers2OHDMRelations(relations);
+            }
+            catch(SQLException se) {
+                Util.printExceptionMessage(se, sql, "failure when reading members of " + relations.size()
+                        + " relations.. non fatal", true);
+                relations.clear();
+                continue;
+            }
+
+            for(RelationMembers members : relations) {
+                this.number++;
+                this.printStatistics();
+                long before = System.currentTimeMillis();
+                this.currentElement = null;
+                try {
+                    this.processRelation(members, sql, importUnnamedEntities);
+                }
+                catch(Throwable t) {
+                    System.err.println("---------------------------------------------------------------------------");
+                    System.err.println("was handling a RELATION with osm_id = " + members.relation.getOSMIDString());
+                    Util.printExceptionMessage(t, sql, "uncaught throwable when processing element", true);
+                    System.err.println("---------------------------------------------------------------------------");
+                }
+                this.noteTime(System.currentTimeMillis() - before, TIME_PROCESS_ELEMENTS);
+            }
+            relations.clear();
+        }
+    }
+
     private void printExceptionMessage(Exception ex, SQLStatementQueue sql, OSMElement element) {
         if(element != null) {
             System.err.print("inter2ohdm: exception when processing ");
@@ -539,27 +689,36 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
         
         // believe it or not but that's faster with index on waynodemember
         // I don't believe it's true for huge data
+        List<String> dbNodeIDs = this.addLocalNodes(way);
+        if(dbNodeIDs != null && dbNodeIDs.isEmpty()) {
+            // all nodes found in node location file
+            this.noteTime(System.currentTimeMillis()-before, TIME_ADD_NODES);
+            return way;
+        }
+
         SQLStatementQueue sql = new SQLStatementQueue(this.sourceConnection);
 
         sql.append("select * from ");
         sql.append(DB.getFullTableName(this.schema, NODETABLE));
-        sql.append(" where osm_id IN (SELECT node_id FROM ");            
-        sql.append(DB.getFullTableName(this.schema, WAYMEMBER));
-        sql.append(" where way_id = ");            
-        sql.append(way.getOSMIDString());
+        sql.append(" where osm_id IN (");
+        this.appendWayNodeIDs(sql, way, dbNodeIDs);
         sql.append(");");  
 
         ResultSet qResultNode = sql.executeWithResult();
 
+        int found = 0;
         while(qResultNode.next()) {
             long beforeNode = System.currentTimeMillis();
             OSMNode node = this.createOSMNode(qResultNode);
             long afterNode = System.currentTimeMillis();
             this.noteTime(afterNode-beforeNode, TIME_CREATE_NODE);
             way.addNode(node);
+            found++;
         }
 
         qResultNode.close();
+
+        this.addCoordinateNodes(way, dbNodeIDs, found);
         long after = System.currentTimeMillis();
         this.noteTime(after-before, TIME_ADD_NODES);
                 
@@ -816,6 +975,11 @@ public class OSMExtractor extends IntermediateDB implements TriggerRecipient {
     private static final int TIME_PROCESS_ELEMENTS = 1;
     private static final int TIME_ADD_NODES = 2;
     private static final int TIME_CREATE_NODE = 3;
+
+    // max ways of a window whose nodes are read at once
+    private static final int MAX_WAY_BATCH = 10000;
+    // max relations of a window whose members are read at once
+    private static final int MAX_RELATION_BATCH = 1000;
     
     private int selectCount = 0;
     private long selectTime = 0;
@@ -0,0 +1,243 @@
+package inter2ohdm;
+
+import util.DB;
+import util.InterDB;
+import util.Parameter;
+import util.SQLStatementQueue;
+import util.TriggerRecipient;
+import util.Util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extraction with n worker threads in one jvm instead of one jvm per id
+ * range (see OSMChunkExtractorCommandBuilder). Each worker owns connections,
+ * an OSMExtractor and an OHDMImporter and takes chunks of about readStepLen
+ * rows from a ChunkScheduler shared by all workers. Phases are separated: process()
+ * returns when all workers are done and have flushed their queues - ways
+ * find ohdm ids of their nodes, relations those of their ways.
+ * <br>
+ * Classification and external user ids are shared by all workers.
+ */
+class OSMExtractorPool implements TriggerRecipient {
+    private final Worker[] workers;
+    private final String sourceSchema;
+    private final int stepLen;
+
+    // chunks of current phase
+    private volatile ChunkScheduler scheduler = null;
+    private volatile String phase = "-";
+    // failed flushes of current phase, see work()
+    private final AtomicInteger failedFlushes = new AtomicInteger();
+
+    /**
+     * one worker - runs in a thread of its own during a phase
+     */
+    private static class Worker {
+        private final Connection sourceConnection;
+        private final Connection targetConnection;
+        private final SQLStatementQueue sourceQueue;
+        private final OHDMImporter importer;
+        private final OSMExtractor extractor;
+
+        Worker(Parameter sourceParameter, Parameter targetParameter, int stepLen,
+                Map<String, Integer> externalUsers) throws SQLException, IOException {
+
+            this.sourceConnection = DB.createConnection(sourceParameter);
+            this.targetConnection = DB.createConnection(targetParameter);
+
+            String sourceSchema = sourceParameter.getSchema();
+            IntermediateDB intermediateDB = new IntermediateDB(this.sourceConnection, sourceSchema);
+
+            // update queue uses jdbc - psql files cannot be shared
+            SQLStatementQueue updateQueue = new SQLStatementQueue(sourceParameter);
+
+            this.importer = new OHDMImporter(intermediateDB, targetParameter.getOsmfilecreationdate(),
+                    this.sourceConnection, this.targetConnection, sourceSchema, targetParameter.getSchema(),
+                    updateQueue);
+            this.importer.useExternalUserCache(externalUsers);
+            this.importer.useTargetWriter(targetParameter);
+
+            this.extractor = new OSMExtractor(this.sourceConnection, sourceSchema, this.importer, stepLen);
+            this.extractor.useNodeLocations(sourceParameter);
+            this.extractor.useCursor(sourceParameter);
+
+            this.sourceQueue = DB.createSQLStatementQueue(this.sourceConnection, sourceParameter);
+        }
+    }
+
+    OSMExtractorPool(Parameter sourceParameter, Parameter targetParameter, int threads, int stepLen)
+            throws SQLException, IOException {
+
+        this.sourceSchema = sourceParameter.getSchema();
+        this.stepLen = stepLen > 0 ? stepLen : OSMExtractor.DEFAULT_STEP_LEN;
+
+        Map<String, Integer> externalUsers = new ConcurrentHashMap<>();
+        this.workers = new Worker[threads > 0 ? threads : 1];
+        for(int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker(sourceParameter, targetParameter, this.stepLen, externalUsers);
+        }
+
+        System.out.println("extract with " + this.workers.length + " worker threads, "
+                + Util.getValueWithDots(this.stepLen) + " rows per chunk");
+    }
+
+    /**
+     * process all elements of a type
+     */
+    void process(int elementType, boolean namedEntitiesOnly) throws SQLException {
+        this.process(elementType, namedEntitiesOnly, -1, -1);
+    }
+
+    /**
+     * process elements with fromID =< id =< toID, like
+     * OSMExtractor.processElements. Returns when all workers are done.
+     * @param fromID first id, min id of table if negative
+     * @param toID last id, max id of table if not positive
+     */
+    void process(int elementType, boolean namedEntitiesOnly, long fromID, long toID) throws SQLException {
+        String tableName;
+        switch(elementType) {
+            case OSMExtractor.NODE: tableName = InterDB.NODETABLE; break;
+            case OSMExtractor.WAY: tableName = InterDB.WAYTABLE; break;
+            default: tableName = InterDB.RELATIONTABLE;
+        }
+
+        SQLStatementQueue sql = this.workers[0].sourceQueue;
+        if(fromID < 0 || toID <= 0) {
+            sql.append("SELECT min(id), max(id) FROM ");
+            sql.append(DB.getFullTableName(this.sourceSchema, tableName));
+            sql.append(";");
+            ResultSet result = sql.executeWithResult();
+            result.next();
+            if(result.getObject(1) == null) {
+                result.close();
+                System.out.println("nothing to extract from empty table " + tableName);
+                return;
+            }
+            if(fromID < 0) {
+                fromID = result.getLong(1);
+            }
+            if(toID <= 0) {
+                toID = result.getLong(2);
+            }
+            result.close();
+        }
+
+        long phaseStart = System.currentTimeMillis();
+        System.out.println("--------------------------------------------------------------------------------");
+        System.out.println("Start importing " + tableName + " with " + this.workers.length + " workers");
+        this.scheduler = ChunkScheduler.sample(sql, this.sourceSchema, tableName, fromID, toID,
+                this.stepLen, this.workers.length);
+        System.out.println(this.scheduler);
+        this.phase = tableName;
+        this.failedFlushes.set(0);
+        System.out.println("--------------------------------------------------------------------------------");
+
+        Thread[] threads = new Thread[this.workers.length];
+        for(int i = 0; i < threads.length; i++) {
+            Worker worker = this.workers[i];
+            threads[i] = new Thread(() -> this.work(worker, tableName, elementType, namedEntitiesOnly),
+                    "extractor-" + i);
+            threads[i].start();
+        }
+
+        // barrier: next phase needs all ohdm ids of that one
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while waiting for extractor workers");
+            }
+        }
+        
+        if(this.failedFlushes.get() > 0) {
+            throw new SQLException(this.failedFlushes.get() + " workers failed to write their rows of "
+                    + tableName + " - next phase would miss ohdm ids");
+        }
+
+        System.out.println("--------------------------------------------------------------------------------");
+        System.out.println("Finished importing " + tableName + ": " + this.scheduler.getProgress()
+                + ", took " + Util.getElapsedTime(phaseStart));
+        System.out.println("--------------------------------------------------------------------------------");
+    }
+
+    private void work(Worker worker, String tableName, int elementType, boolean namedEntitiesOnly) {
+        ChunkScheduler.Chunk chunk;
+        while((chunk = this.scheduler.next()) != null) {
+            long start = System.currentTimeMillis();
+            long rows = 0;
+            try {
+                rows = worker.extractor.processWindow(worker.sourceQueue, tableName, elementType,
+                        namedEntitiesOnly, BigDecimal.valueOf(chunk.lowerID), BigDecimal.valueOf(chunk.upperID));
+            }
+            catch(SQLException e) {
+                Util.printExceptionMessage(e, worker.sourceQueue, "when processing chunk "
+                        + chunk.lowerID + " - " + chunk.upperID + " of " + tableName + ".. non fatal", true);
+            }
+            this.scheduler.done(chunk, rows, System.currentTimeMillis() - start);
+        }
+
+        /* part of the barrier: forceExecute() waits for batches still running
+        in the background (target inserts and intermediate id updates) and
+        throws their failures */
+        try {
+            worker.importer.forceExecute();
+            worker.sourceQueue.forceExecute();
+        }
+        catch(SQLException e) {
+            this.failedFlushes.incrementAndGet();
+            Util.printExceptionMessage(e, worker.sourceQueue, "when flushing worker queues", true);
+        }
+    }
+
+    /**
+     * see OHDMImporter.postProcessGGTable - runs once after all relations
+     */
+    void postProcessGGTable() throws SQLException {
+        this.workers[0].importer.postProcessGGTable();
+    }
+
+    void close() {
+        for(Worker worker : this.workers) {
+            try {
+                worker.importer.close();
+                worker.sourceConnection.close();
+                worker.targetConnection.close();
+            }
+            catch(SQLException e) {
+                Util.printExceptionMessage(e, null, "when closing extractor worker", true);
+            }
+        }
+    }
+
+    String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < this.workers.length; i++) {
+            sb.append("worker ");
+            sb.append(i);
+            sb.append(": ");
+            sb.append(this.workers[i].extractor.getStatistics());
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void trigger() {
+        ChunkScheduler scheduler = this.scheduler;
+        if(scheduler != null) {
+            System.out.println("\n" + Util.getNowAsFormatedDateString() + " " + this.phase + ": "
+                    + scheduler.getProgress());
+        }
+    }
+}
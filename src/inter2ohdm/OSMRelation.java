@@ -14,6 +14,7 @@ import util.OHDM_DB;
  */
 public class OSMRelation extends OSMElement {
     private final String memberIDs;
+    private final List<String> parsedMemberIDs; // array layout: ids are read as list
     private ArrayList<OSMElement> members;
     private ArrayList<String> memberRoles;
     private ArrayList<String> memberIDList;
@@ -21,6 +22,7 @@ public class OSMRelation extends OSMElement {
     
     OSMRelation(IntermediateDB intermediateDB, String osmIDString, 
             String classCodeString, String otherClassCodes, String sTags, String memberIDs, 
+            List<String> parsedMemberIDs,
             String ohdmObjectIDString, String ohdmGeomIDString, 
             boolean valid,
             boolean geom_changed, boolean object_changed,
@@ -31,6 +33,7 @@ public class OSMRelation extends OSMElement {
                 ohdmObjectIDString, ohdmGeomIDString, valid,
                 geom_changed, object_changed, deleted, has_name, tstampDate, object_new);
         this.memberIDs = memberIDs;
+        this.parsedMemberIDs = parsedMemberIDs;
     }
     
     OSMElement getMember(int i) {
@@ -62,7 +65,10 @@ public class OSMRelation extends OSMElement {
             StringBuilder wktBuilder = null;
             OSMWay way = null;
             OSMWay next = (OSMWay) this.members.get(0);
-            this.intermediateDB.addNodes2OHDMWay(next); // fill way with nodes
+            if(next.isEmpty()) {
+                // not yet filled when members were read
+                this.intermediateDB.addNodes2OHDMWay(next); // fill way with nodes
+            }
             
             int i = 0;
             boolean wayOutside;
@@ -108,7 +114,9 @@ public class OSMRelation extends OSMElement {
                 // look ahead if possible
                 if(++i < memberRoles.size()) {
                     next = (OSMWay) members.get(i);
-                    this.intermediateDB.addNodes2OHDMWay(next);
+                    if(next.isEmpty()) {
+                        this.intermediateDB.addNodes2OHDMWay(next);
+                    }
                     nextOutside = this.memberRoles.get(i).equalsIgnoreCase(OSMRelation.OUTER_ROLE);
                 } else {
                     // no more elements in queue - process final one
@@ -429,7 +437,8 @@ public class OSMRelation extends OSMElement {
     void addMember(OSMElement element, String roleName) {
         if (this.members == null) {
             // setup position list
-            this.memberIDList = this.setupIDList(this.memberIDs);
+            this.memberIDList = this.parsedMemberIDs != null ?
+                    new ArrayList<>(this.parsedMemberIDs) : this.setupIDList(this.memberIDs);
             
             // setup other lists with same size
             this.memberRoles = new ArrayList<>(this.memberIDList.size());
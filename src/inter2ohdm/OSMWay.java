@@ -15,9 +15,14 @@ public class OSMWay extends OSMElement {
     private ArrayList<OSMNode> nodes;
     private ArrayList<String> nodeIDList;
     private final String nodeIDs;
+    private final List<String> parsedNodeIDs; // array layout: ids are read as list
 
+    /**
+     * @param nodeIDs comma separated node ids or null if parsedNodeIDs are given
+     */
     OSMWay(IntermediateDB intermediateDB, String osmIDString,
            String classCodeString, String otherClassCodes, String sTags, String nodeIDs,
+           List<String> parsedNodeIDs,
            String ohdmObjectIDString, String ohdmGeomIDString,
            boolean valid,
            boolean geom_changed, boolean object_changed, boolean deleted,
@@ -29,6 +34,17 @@ public class OSMWay extends OSMElement {
                 geom_changed, object_changed, deleted, has_name, tstampDate, object_new);
         
         this.nodeIDs = nodeIDs;
+        this.parsedNodeIDs = parsedNodeIDs;
+    }
+
+    /**
+     * @return new list - it is changed when adding nodes
+     */
+    private ArrayList<String> createNodeIDList() {
+        if(this.parsedNodeIDs != null) {
+            return new ArrayList<>(this.parsedNodeIDs);
+        }
+        return this.setupIDList(this.nodeIDs);
     }
     
     @Override
@@ -62,6 +78,13 @@ public class OSMWay extends OSMElement {
             return;
         }
         
+        /* postgis rejects a linestring with one point and a polygon with
+        less than four (first node is added again) - no geometry */
+        if(this.nodes.size() < (this.isPolygon ? 3 : 2)) {
+            this.wktStringProduced = true;
+            return;
+        }
+        
         StringBuilder wkt = new StringBuilder();
         
         if(this.isPolygon) {
@@ -157,6 +180,9 @@ public class OSMWay extends OSMElement {
      * @return 
      */
     public Iterator<String> getNodeIDs() {
+        if(this.parsedNodeIDs != null) {
+            return this.parsedNodeIDs.isEmpty() ? null : this.parsedNodeIDs.iterator();
+        }
         if(this.nodeIDs == null | this.nodeIDs.length() < 1) return null;
         
         return this.setupIDList(this.nodeIDs).iterator();
@@ -165,7 +191,7 @@ public class OSMWay extends OSMElement {
     void addNode(OSMNode node) {
         if (this.nodes == null) {
             // setup position list
-            this.nodeIDList = this.setupIDList(this.nodeIDs);
+            this.nodeIDList = this.createNodeIDList();
 
             // is it a ring?
             String firstElement = this.nodeIDList.get(0);
@@ -0,0 +1,50 @@
+package inter2ohdm;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rows of ohdm tables the db rejected, see TargetWriter.flush(). A row is
+ * identified by its table and its first value - the id of objects and
+ * geometries.
+ */
+class RejectedRows {
+    private final Map<String, Set<String>> ids = new HashMap<>();
+    private int size = 0;
+
+    void add(String fullTableName, String id) {
+        if(this.ids.computeIfAbsent(fullTableName, t -> new HashSet<>()).add(id)) {
+            this.size++;
+        }
+    }
+
+    void addAll(RejectedRows other) {
+        for(Map.Entry<String, Set<String>> entry : other.ids.entrySet()) {
+            for(String id : entry.getValue()) {
+                this.add(entry.getKey(), id);
+            }
+        }
+    }
+
+    /**
+     * @return true if the row of that table with that id was rejected, false
+     * for a null id
+     */
+    boolean contains(String fullTableName, String id) {
+        if(id == null) {
+            return false;
+        }
+        Set<String> tableIDs = this.ids.get(fullTableName);
+        return tableIDs != null && tableIDs.contains(id);
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+}
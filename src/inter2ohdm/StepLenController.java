@@ -0,0 +1,128 @@
+package inter2ohdm;
+
+import util.Util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Adapts readStepLen (ids per window) of OSMExtractor to the data, see
+ * readStepLenRange. After each window the id density (rows per id) gives
+ * the step of about targetRows rows. A step changes by factor two at most
+ * and stays within min and max. It is not grown if selects take longer
+ * than MAX_SELECT_MILLIS and halved if free heap after gc falls below
+ * MIN_HEAP_FREE.
+ * Changes are logged, a summary is printed at the end of each phase.
+ */
+class StepLenController {
+    private static final double MIN_HEAP_FREE = 0.25;
+    private static final long MAX_SELECT_MILLIS = 5000;
+    // smaller changes are ignored
+    private static final double MIN_CHANGE = 0.25;
+
+    private final int minStepLen;
+    private final int maxStepLen;
+    private final int targetRows;
+
+    // current phase
+    private String phase;
+    private int windows;
+    private int changes;
+    private int smallestStepLen;
+    private int largestStepLen;
+
+    StepLenController(int minStepLen, int maxStepLen, int targetRows) {
+        this.minStepLen = minStepLen;
+        this.maxStepLen = maxStepLen;
+        this.targetRows = targetRows;
+    }
+
+    /**
+     * @return initial step of that phase within bounds
+     */
+    int startPhase(String phase, int stepLen) {
+        this.phase = phase;
+        this.windows = 0;
+        this.changes = 0;
+        stepLen = this.clamp(stepLen);
+        this.smallestStepLen = stepLen;
+        this.largestStepLen = stepLen;
+        System.out.println(phase + ": adaptive readStepLen " + Util.getValueWithDots(stepLen) + " within ["
+                + Util.getValueWithDots(this.minStepLen) + ", " + Util.getValueWithDots(this.maxStepLen)
+                + "], about " + Util.getValueWithDots(this.targetRows) + " rows per window");
+        return stepLen;
+    }
+
+    /**
+     * @param stepLen ids of last window
+     * @param rows processed rows of last window
+     * @param selectMillis time of select
+     * @return ids of next window
+     */
+    int next(int stepLen, long rows, long selectMillis) {
+        this.windows++;
+
+        double heapFree = StepLenController.getHeapFree();
+
+        int next;
+        String reason;
+        if(heapFree < MIN_HEAP_FREE) {
+            next = stepLen / 2;
+            reason = "heap";
+        } else {
+            // rows per id of last window, empty window: double
+            double wanted = rows > 0 ? (double) this.targetRows * stepLen / rows : 2.0 * stepLen;
+            wanted = Math.max(stepLen / 2.0, Math.min(2.0 * stepLen, wanted));
+            next = (int) Math.min(Integer.MAX_VALUE, Math.round(wanted));
+            reason = "density";
+            if(next > stepLen && selectMillis > MAX_SELECT_MILLIS) {
+                next = stepLen;
+                reason = "select latency";
+            }
+        }
+        next = this.clamp(next);
+
+        if(Math.abs(next - stepLen) < stepLen * MIN_CHANGE && !"heap".equals(reason)) {
+            return stepLen;
+        }
+        if(next == stepLen) {
+            return stepLen;
+        }
+
+        this.changes++;
+        this.smallestStepLen = Math.min(this.smallestStepLen, next);
+        this.largestStepLen = Math.max(this.largestStepLen, next);
+        System.out.println(this.phase + ": readStepLen " + Util.getValueWithDots(stepLen) + " -> "
+                + Util.getValueWithDots(next) + " (" + reason + ": " + Util.getValueWithDots(rows) + " rows, select "
+                + selectMillis + " ms, " + Math.round(heapFree * 100) + "% heap free)");
+        return next;
+    }
+
+    void endPhase(int stepLen) {
+        System.out.println(this.phase + ": " + Util.getValueWithDots(this.windows) + " windows, "
+                + this.changes + " readStepLen changes within [" + Util.getValueWithDots(this.smallestStepLen)
+                + ", " + Util.getValueWithDots(this.largestStepLen) + "], last "
+                + Util.getValueWithDots(stepLen));
+    }
+
+    /**
+     * @return free part of max heap after last gc - garbage not yet
+     * collected is not counted as used
+     */
+    private static double getHeapFree() {
+        long used = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                used += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+            }
+        }
+        return 1.0 - (double) used / Runtime.getRuntime().maxMemory();
+    }
+
+    private int clamp(int stepLen) {
+        return Math.max(this.minStepLen, Math.min(this.maxStepLen, stepLen));
+    }
+}
@@ -0,0 +1,28 @@
+package inter2ohdm;
+
+import java.sql.SQLException;
+
+/**
+ * Writes rows into ohdm tables. connectionType in the ohdm parameter file
+ * selects the implementation: insert (default) - InsertTargetWriter,
+ * copy - CopyTargetWriter.
+ * <br>
+ * Values are given like they appear between the quotes of an sql
+ * literal ('' for a quote), null is written as NULL.
+ */
+interface TargetWriter {
+    /**
+     * write a row - it is buffered until flush()
+     * @param fullTableName table with schema
+     */
+    void write(String fullTableName, String[] columns, String[] values) throws SQLException;
+
+    /**
+     * all rows written so far are committed afterwards - besides rows the
+     * db rejects (e.g. invalid geometries), these are left out and returned.
+     * Other failures (e.g. a lost connection) are thrown.
+     */
+    RejectedRows flush() throws SQLException;
+
+    void close() throws SQLException;
+}
@@ -128,7 +128,7 @@ public class OSMFileExporter {
                 sql.append(this.bboxWKT);
                 sql.append("'), 3857))");
 
-                ResultSet resultSet = sql.executeWithResult();
+                ResultSet resultSet = sql.executeStreaming(this.sourceParameter.getFetchSize());
 
                 while(resultSet.next()) {
                     this.printNode(
@@ -168,7 +168,7 @@ SELECT st_astext(st_transform(line, 4326)), name, classid, valid_since
                 sql.append(this.bboxWKT);
                 sql.append("'), 3857))");
 
-                ResultSet resultSet = sql.executeWithResult();
+                ResultSet resultSet = sql.executeStreaming(this.sourceParameter.getFetchSize());
                 while(resultSet.next()) {
                     this.printWay(
                             resultSet.getDate("valid_since"),
@@ -212,7 +212,7 @@ st_astext(ST_InteriorRingN(polygon, 1)), subclassname, name, valid_since
                 sql.append(this.bboxWKT);
                 sql.append("'), 3857))");
 
-                ResultSet resultSet = sql.executeWithResult();
+                ResultSet resultSet = sql.executeStreaming(this.sourceParameter.getFetchSize());
                 while(resultSet.next()) {
                     java.sql.Date valid_since = resultSet.getDate("valid_since");
                     BigDecimal classid = resultSet.getBigDecimal("classid");
@@ -250,9 +250,10 @@ SELECT st_astext(ST_TRANSFORM(ST_InteriorRingN(polygon, 1), 4326))
                             sql.append(" WHERE geom_id = ");
                             sql.append(geom_id_polygon.toString());
 
-                            resultSet = sql.executeWithResult();
-                            if(resultSet.next()) {
-                                this.printWay(valid_since, resultSet.getString(1),
+                            // same transaction as outer cursor
+                            ResultSet ringResult = sql.executeWithResult();
+                            if(ringResult.next()) {
+                                this.printWay(valid_since, ringResult.getString(1),
                                         null, null, null,true);
 
                                 innerIDs.add(this.ldfID-1);
@@ -533,6 +534,7 @@ SELECT st_astext(ST_TRANSFORM(ST_InteriorRingN(polygon, 1), 4326))
             this.exportPoints();
             this.exportLines();
             this.exportPolygons();
+            this.sql.closeStreaming();
         } catch (SQLException e) {
             e.printStackTrace();
             System.err.println(this.sql);
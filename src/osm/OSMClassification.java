@@ -25,7 +25,7 @@ public class OSMClassification {
     public static final String UNDEFINED = "undefined";
     private static OSMClassification osmClassification = null;
     
-    public static OSMClassification getOSMClassification() {
+    public static synchronized OSMClassification getOSMClassification() {
         if(OSMClassification.osmClassification == null) {
             OSMClassification.osmClassification = new OSMClassification();
         }
@@ -1180,6 +1180,57 @@ public class OSMClassification {
                 id++;
             }
         }
+
+        this.compileIndex();
+    }
+
+    /**
+     * compiled lookup table: class name -> sub class name -> class id
+     */
+    private static class ClassEntry {
+        private final HashMap<String, Integer> subClassIDs = new HashMap<>();
+        private int undefinedID = -1;
+    }
+
+    private static final String ADMIN_LEVEL_CLASS = "ohdm_boundary";
+    private static final String ADMIN_LEVEL_PREFIX = "adminlevel_";
+    private static final int MAX_ADMIN_LEVEL = 12;
+
+    // replaced as a whole when class ids change - lookups never see a half built index
+    private volatile HashMap<String, ClassEntry> classIndex = new HashMap<>();
+    private volatile int[] adminLevelClassIDs = new int[MAX_ADMIN_LEVEL + 1];
+
+    /**
+     * (re)build lookup tables from class ids. Must be called after each
+     * change of classIDs.
+     */
+    private void compileIndex() {
+        HashMap<String, ClassEntry> index = new HashMap<>();
+
+        for(String className : this.osmFeatureClasses.keySet()) {
+            ClassEntry entry = new ClassEntry();
+            for(String subClassName : this.osmFeatureClasses.get(className)) {
+                Integer id = this.classIDs.get(OSMClassification.createFullClassName(className, subClassName));
+                if(id != null) {
+                    entry.subClassIDs.put(subClassName, id);
+                }
+            }
+
+            Integer undefinedID = entry.subClassIDs.get(UNDEFINED);
+            if(undefinedID != null) {
+                entry.undefinedID = undefinedID;
+            }
+
+            index.put(className, entry);
+        }
+
+        this.classIndex = index;
+
+        int[] adminLevels = new int[MAX_ADMIN_LEVEL + 1];
+        for(int level = 0; level <= MAX_ADMIN_LEVEL; level++) {
+            adminLevels[level] = this.getOHDMClassID(ADMIN_LEVEL_CLASS, ADMIN_LEVEL_PREFIX + level);
+        }
+        this.adminLevelClassIDs = adminLevels;
     }
 
     public static final String CLASS_SUBCLASS_SEPERATORS_SIGN = "_";
@@ -1194,6 +1245,10 @@ public class OSMClassification {
         return this.classID_ClassName.get(classid);
     }
 
+    public String getSubClassNameById(int classid) {
+        return this.classID_SubclassName.get(classid);
+    }
+
     public String getClassNameByFullName(String fullClassName) {
         int index = fullClassName.indexOf(CLASS_SUBCLASS_SEPERATORS_SIGN);
         if(index == -1) {
@@ -1235,25 +1290,32 @@ public class OSMClassification {
      * otherwise
      */
     public int getOHDMClassID(String className, String subClassName) {
-        String fullClassName = OSMClassification.createFullClassName(className, subClassName);
-        
+        // find class - no string is created while looking up
+        ClassEntry entry = this.classIndex.get(className);
+        if(entry == null) {
+            return -1;
+        }
+
         // find entry
-        Integer id = this.classIDs.get(fullClassName);
+        Integer id = entry.subClassIDs.get(subClassName);
         if(id != null) {
             return id;
         }
         
-        // try undefined
-        fullClassName = OSMClassification.createFullClassName(className, OSMClassification.UNDEFINED);
-        id = this.classIDs.get(fullClassName);
-        if(id != null) {
-            return id;
+        // try undefined - -1 if there is none
+        return entry.undefinedID;
+    }
+
+    /**
+     * @return class id of ohdm_boundary / adminlevel_[level], see getOHDMClassID
+     */
+    public int getAdminLevelClassID(int adminLevel) {
+        int[] adminLevels = this.adminLevelClassIDs;
+        if(adminLevel >= 0 && adminLevel < adminLevels.length) {
+            return adminLevels[adminLevel];
         }
-        
-//        System.out.println("not found: " + this.createFullClassName(className, subClassName));
-        
-        // else
-        return -1;
+
+        return this.getOHDMClassID(ADMIN_LEVEL_CLASS, ADMIN_LEVEL_PREFIX + adminLevel);
     }
     
     private boolean isClassName(String key) {
@@ -1305,6 +1367,8 @@ public class OSMClassification {
                 this.classIDs.put(fullClassName, classID);
             }
         }
+
+        this.compileIndex();
     }
     
     public static final String CLASSIFICATIONTABLE = "classification";
@@ -1364,6 +1428,8 @@ public class OSMClassification {
                 sq.append("');");
             }
         }
+
+        this.compileIndex();
         
         sq.forceExecute();
     }
@@ -1398,6 +1464,6 @@ public class OSMClassification {
     }
 
     public boolean classExists(String value) {
-        return (this.osmFeatureClasses.keySet().contains(value));
+        return this.classIndex.containsKey(value);
     }
 }
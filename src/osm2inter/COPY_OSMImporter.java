@@ -4,9 +4,12 @@ import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.helpers.DefaultHandler;
 import util.CopyConnector;
+import util.InterDB;
 import util.ManagedStringBuilder.ManagedStringBuilder;
+import util.NodeLocationStore;
 import util.UtilCopyImport;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -34,6 +37,10 @@ import osm.OSMClassification;
  * <br>
  * RELATIONMEMBER<br>
  * rel_id|member_node_id|member_way_id|member_rel_id|role<br>
+ * <br>
+ * With a role dictionary (array layout) memberIDs are written as array and
+ * relations get member_types and member_roles arrays in addition.
+ * WAYMEMBER and RELATIONMEMBER are not written at all.
  *
  * @author Jan-Derk Wendt
  * @author FlorianSauer
@@ -81,14 +88,45 @@ public class COPY_OSMImporter extends DefaultHandler {
     private String curMainElemID, timeStamp;
     private int classCode;
     private List<Integer> otherClassCodes;
+    private final OSMClassification osmClassification;
+    private final int boundaryAdminClassID;
     private int serTagsSize;
 //    remplacing string builder with a ManagedStringBuilder that only operates with one array
 //    private StringBuilder serTags;
     private ManagedStringBuilder serTags;
 
-    private String lon, lat, memberIDs;
+    private String lon, lat;
+    // node ids of a way or member ids of a relation, reused for each element
+    private StringBuilder memberIDs;
     private boolean hasName;
 
+    // array layout only: member type and role ids of a relation
+    private final RelationRoleDictionary roles;
+    private final boolean arrayLayout;
+    private StringBuilder memberTypes;
+    private StringBuilder memberRoles;
+
+    // optional node coordinate file, see setNodeLocationStore
+    private NodeLocationStore nodeLocations = null;
+
+    // serTags as json object for jsonb column, see setJSONTags
+    private boolean jsonTags = false;
+
+    // untagged nodes are written only if referenced, see setReferencedNodes
+    private ReferencedNodes referencedNodes = null;
+    private CopyConnector nodeCoordinates = null;
+    private int tagCount;
+    private long droppedNodes = 0;
+    private long coordinateNodes = 0;
+
+    // tags and elements dropped at parse time, see setTagFilter
+    private TagFilter tagFilter = null;
+    private boolean dropElement;
+    private long droppedElements = 0;
+    // waynodes / relationmember rows of current element if it can be dropped
+    private final List<String[]> pendingRows = new ArrayList<>();
+    private CopyConnector pendingConnector = null;
+
     /**
      * Konstruktor der Klasse<br>
      *
@@ -96,13 +134,26 @@ public class COPY_OSMImporter extends DefaultHandler {
      */
     public COPY_OSMImporter(HashMap<String, CopyConnector> connectors, 
             int serTagsSize) {
-        
+        this(connectors, serTagsSize, null);
+    }
+
+    /**
+     * @param roles role dictionary, writes array layout if not null. No
+     * connectors for waynodes and relationmember are required then.
+     */
+    public COPY_OSMImporter(HashMap<String, CopyConnector> connectors,
+            int serTagsSize, RelationRoleDictionary roles) {
+
         this.conns = connectors;
+        this.roles = roles;
+        this.arrayLayout = roles != null;
         this.delimiterNode = this.conns.get(connsNames[0]).getDelimiter();
         this.delimiterWay = this.conns.get(connsNames[4]).getDelimiter();
         this.delimiterRel = this.conns.get(connsNames[2]).getDelimiter();
-        this.delimiterWayMem = this.conns.get(connsNames[3]).getDelimiter();
-        this.delimiterRelMem = this.conns.get(connsNames[1]).getDelimiter();
+        if (!this.arrayLayout) {
+            this.delimiterWayMem = this.conns.get(connsNames[3]).getDelimiter();
+            this.delimiterRelMem = this.conns.get(connsNames[1]).getDelimiter();
+        }
         this.adminLevel = this.status = classCode = 0;
         this.nodes = 0;
         this.ways = 0;
@@ -111,8 +162,12 @@ public class COPY_OSMImporter extends DefaultHandler {
         this.timeStamp = "";
         this.lon = "";
         this.lat = "";
-        this.memberIDs = "";
+        this.memberIDs = new StringBuilder();
+        this.memberTypes = new StringBuilder();
+        this.memberRoles = new StringBuilder();
         this.otherClassCodes = new ArrayList<>();
+        this.osmClassification = OSMClassification.getOSMClassification();
+        this.boundaryAdminClassID = this.osmClassification.getOHDMClassID("boundary", "administrative");
         
 //        this.serTagsSize = 2000000000;
         this.serTagsSize = 200000;
@@ -122,6 +177,44 @@ public class COPY_OSMImporter extends DefaultHandler {
         this.hasName = false;
     }
 
+    /**
+     * write location of each node into that store in addition, can be shared
+     * by importers of different partitions
+     */
+    public void setNodeLocationStore(NodeLocationStore nodeLocations) {
+        this.nodeLocations = nodeLocations;
+    }
+
+    /**
+     * write tags as json object (tagFormat:jsonb) instead of length prefixed strings
+     */
+    public void setJSONTags(boolean jsonTags) {
+        this.jsonTags = jsonTags;
+    }
+
+    /**
+     * leave out untagged nodes which are neither way nodes nor relation
+     * members. Untagged way nodes are written into table nodecoordinates
+     * if there is a connector for it.
+     */
+    public void setReferencedNodes(ReferencedNodes referencedNodes) {
+        this.referencedNodes = referencedNodes;
+        this.nodeCoordinates = this.conns.get(InterDB.NODECOORDINATES);
+    }
+
+    /**
+     * check each tag (and uid / user) before classification and serialization
+     */
+    public void setTagFilter(TagFilter tagFilter) {
+        this.tagFilter = tagFilter;
+    }
+
+    public long getNodes() { return this.nodes; }
+    public long getDroppedNodes() { return this.droppedNodes; }
+    public long getCoordinateNodes() { return this.coordinateNodes; }
+    public long getWays() { return this.ways; }
+    public long getRelations() { return this.rels; }
+
     /* (non-Javadoc)
      * @see org.xml.sax.helpers.DefaultHandler#startDocument()
      */
@@ -138,6 +231,23 @@ public class COPY_OSMImporter extends DefaultHandler {
     public void endDocument() {
         System.out.println("...end...");
         System.out.println("Nodes: " + this.nodes + " | Ways: " + this.ways + " | Relations: " + this.rels + "\n");
+        if (this.tagFilter != null) {
+            System.out.println("elements dropped by tag filter: " + this.droppedElements);
+        }
+        if (this.referencedNodes != null) {
+            System.out.println("untagged nodes left out: " + this.droppedNodes + " | into "
+                    + InterDB.NODECOORDINATES + ": " + this.coordinateNodes);
+        }
+        // wait for copy writer threads
+        for (CopyConnector connector : this.conns.values()) {
+            try {
+                connector.finish();
+            } catch (SQLException e) {
+                System.out.println("SQL-Error: Couldn't finish writing to " + connector.getTablename());
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
     }
 
     /* (non-Javadoc)
@@ -223,6 +333,9 @@ public class COPY_OSMImporter extends DefaultHandler {
             System.gc();
             this.gcIndex = 0;
             System.out.println("reached mark 1.000.000 in COPY_OSMImporter @ time " + System.currentTimeMillis()+" @ pseudoline "+this.xmlFileLocator.getLineNumber());
+            for (CopyConnector connector : this.conns.values()) {
+                System.out.println(connector.getStatistics());
+            }
         }
     }
 
@@ -275,14 +388,28 @@ public class COPY_OSMImporter extends DefaultHandler {
         this.timeStamp = "";
         this.lon = "";
         this.lat = "";
-        this.memberIDs = "";
-        this.otherClassCodes = new ArrayList<>();
+        this.memberIDs.setLength(0);
+        this.memberTypes.setLength(0);
+        this.memberRoles.setLength(0);
+        if (this.arrayLayout) {
+            // array literals like {1,2,3}
+            this.memberIDs.append('{');
+            this.memberTypes.append('{');
+            this.memberRoles.append('{');
+        }
+        this.otherClassCodes.clear();
         if (this.serTags == null){
             this.serTags = new ManagedStringBuilder(new char[this.serTagsSize]);
         } else {
             this.serTags.empty();
         }
+        if (this.jsonTags) {
+            this.serTags.append('{');
+        }
         this.hasName = false;
+        this.tagCount = 0;
+        this.dropElement = false;
+        this.pendingRows.clear();
 
         if (attr.getValue("id") != null) {
             this.curMainElemID = attr.getValue("id");
@@ -308,8 +435,12 @@ public class COPY_OSMImporter extends DefaultHandler {
             }
             if (attr.getValue("timestamp") != null) {
                 this.timeStamp = attr.getValue("timestamp");
-                UtilCopyImport.serializeTags(this.serTags, "uid", attr.getValue("uid"));
-                UtilCopyImport.serializeTags(this.serTags, "user", attr.getValue("user"));
+                if (this.keepTag("uid", attr.getValue("uid"))) {
+                    this.serializeTag("uid", attr.getValue("uid"));
+                }
+                if (this.keepTag("user", attr.getValue("user"))) {
+                    this.serializeTag("user", attr.getValue("user"));
+                }
             } else {
                 System.out.println("XML-Error: MainElement at Line " + this.xmlFileLocator.getLineNumber() + " has no timestamp value.");
             }
@@ -325,22 +456,40 @@ public class COPY_OSMImporter extends DefaultHandler {
      * @param name ist der Name des Elementes
      */
     private void endMainElement(String name) {
+        if (this.jsonTags) {
+            this.serTags.append('}');
+        }
         if (this.classCode > 0) {
-            if (this.classCode == OSMClassification.getOSMClassification().getOHDMClassID("boundary", "administrative")) {
+            if (this.classCode == this.boundaryAdminClassID) {
                 if (this.adminLevel > 0) {
-                    this.classCode = OSMClassification.getOSMClassification().getOHDMClassID("ohdm_boundary", "adminlevel_" + this.adminLevel);
+                    this.classCode = this.osmClassification.getAdminLevelClassID(this.adminLevel);
                 }
             }
         }
+        if (this.dropElement) {
+            // tag filter: nothing of that element is written
+            switch (name) {
+                case "node": this.nodes++; break;
+                case "way": this.ways++; break;
+                case "relation": this.rels++; break;
+            }
+            this.droppedElements++;
+            this.pendingRows.clear();
+            this.clearMainElement();
+            return;
+        }
         switch (name) {
             case "node":
                 this.nodes++;
+                if (this.referencedNodes != null && this.tagCount == 0 && this.writeUntaggedNode()) {
+                    break;
+                }
                 try {
                     // NULL|osm_id|tstamp|classcode|otherclasscodes|serTags|lon|lat|NULL|NULL|NULL|NULL|NULL|has_name|valid
                     this.conns.get(this.connsNames[0]).write(new String[]{
                             this.curMainElemID,
                             this.timeStamp,
-                            "" + this.classCode,
+                            Integer.toString(this.classCode),
                             UtilCopyImport.getString(this.otherClassCodes),
                             this.serTags.toString(),
                             this.lon,
@@ -354,19 +503,26 @@ public class COPY_OSMImporter extends DefaultHandler {
                     e.printStackTrace();
                     System.exit(1); // probeweise
                 }
+                if (this.nodeLocations != null && !this.lon.isEmpty()) {
+                    this.writeNodeLocation();
+                }
                 break;
 
             case "way":
                 this.ways++;
+                if (this.arrayLayout) {
+                    this.memberIDs.append('}');
+                }
                 try {
+                    this.writePendingRows();
                     // NULL|osm_id|tstamp|classcode|otherclasscodes|serTags|NULL|NULL|memberIDs|NULL|NULL|NULL|has_name|valid
                     this.conns.get(this.connsNames[4]).write(new String[]{
                             this.curMainElemID,
                             this.timeStamp,
-                            "" + this.classCode,
+                            Integer.toString(this.classCode),
                             UtilCopyImport.getString(this.otherClassCodes),
                             this.serTags.toString(),
-                            this.memberIDs,
+                            this.memberIDs.toString(),
                             Boolean.toString(this.hasName),
                             "true"});
                 } catch (SQLException e) {
@@ -380,14 +536,33 @@ public class COPY_OSMImporter extends DefaultHandler {
             case "relation":
                 this.rels++;
                 try {
+                    this.writePendingRows();
+                    if (this.arrayLayout) {
+                        this.memberIDs.append('}');
+                        this.memberTypes.append('}');
+                        this.memberRoles.append('}');
+                        // osm_id|tstamp|classcode|otherclasscodes|serTags|memberIDs|memberTypes|memberRoles|has_name|valid
+                        this.conns.get(COPY_OSMImporter.connsNames[2]).write(new String[]{
+                                this.curMainElemID,
+                                this.timeStamp,
+                                Integer.toString(this.classCode),
+                                UtilCopyImport.getString(this.otherClassCodes),
+                                this.serTags.toString(),
+                                this.memberIDs.toString(),
+                                this.memberTypes.toString(),
+                                this.memberRoles.toString(),
+                                Boolean.toString(this.hasName),
+                                "true"});
+                        break;
+                    }
                     // NULL|osm_id|tstamp|classcode|otherclasscodes|serTags|NULL|NULL|memberIDs|NULL|NULL|NULL|has_name|valid
                     this.conns.get(this.connsNames[2]).write(new String[]{
                             this.curMainElemID,
                             this.timeStamp,
-                            "" + this.classCode,
+                            Integer.toString(this.classCode),
                             UtilCopyImport.getString(this.otherClassCodes),
                             this.serTags.toString(),
-                            this.memberIDs,
+                            this.memberIDs.toString(),
                             Boolean.toString(this.hasName),
                             "true"});
                 } catch (SQLException e) {
@@ -399,13 +574,15 @@ public class COPY_OSMImporter extends DefaultHandler {
                 break;
 
         }
+        this.clearMainElement();
+    }
+
+    private void clearMainElement() {
         this.status = this.STATUS_OUTSIDE;
         this.curMainElemID = null;
         this.timeStamp = null;
         this.lon = null;
         this.lat = null;
-        this.memberIDs = null;
-        this.otherClassCodes = null;
 
 //        instead of deleting string builder and making a new one, we empty it
 //        this.serTags = null;
@@ -428,6 +605,10 @@ public class COPY_OSMImporter extends DefaultHandler {
     private void startInnerElement(Attributes attr, String name) {
         switch (name) {
             case "tag":
+                if (this.tagFilter != null && attr.getLength() == 2 && !this.keepTag(attr.getValue(0), attr.getValue(1))) {
+                    break;
+                }
+                this.tagCount++;
                 // key and value --> size 2
                 if (attr.getLength() == 2) {
                     if (attr.getValue(0) != null && attr.getValue(1) != null) {
@@ -437,12 +618,12 @@ public class COPY_OSMImporter extends DefaultHandler {
                             // because of pairs like "building-yes" would trigger
                             // the osm-main-class "building" with the default value
                             // "undefined" for a subclass
-                            UtilCopyImport.serializeTags(this.serTags, attr.getValue(0), attr.getValue(1));
-                        } else if (OSMClassification.getOSMClassification().classExists(attr.getValue(0))) {
+                            this.serializeTag(attr.getValue(0), attr.getValue(1));
+                        } else if (this.osmClassification.classExists(attr.getValue(0))) {
                             if (this.classCode == 0) {
-                                this.classCode = OSMClassification.getOSMClassification().getOHDMClassID(attr.getValue(0), attr.getValue(1));
+                                this.classCode = this.osmClassification.getOHDMClassID(attr.getValue(0), attr.getValue(1));
                             } else {
-                                this.otherClassCodes.add(OSMClassification.getOSMClassification().getOHDMClassID(attr.getValue(0), attr.getValue(1)));
+                                this.otherClassCodes.add(this.osmClassification.getOHDMClassID(attr.getValue(0), attr.getValue(1)));
                             }
                         } else if (attr.getValue(0).equalsIgnoreCase("admin_level")) {
                             try {
@@ -453,7 +634,7 @@ public class COPY_OSMImporter extends DefaultHandler {
                                 e.printStackTrace();
                             }
                         } else {
-                            UtilCopyImport.serializeTags(this.serTags, attr.getValue(0), attr.getValue(1));
+                            this.serializeTag(attr.getValue(0), attr.getValue(1));
                             if (attr.getValue(0).equalsIgnoreCase("name")) {
                                 this.hasName = true;
                             }
@@ -469,14 +650,13 @@ public class COPY_OSMImporter extends DefaultHandler {
             case "nd":
                 if (this.status == this.STATUS_WAY) {
                     if (attr.getValue("ref") != null) {
-                        if (this.memberIDs.isEmpty()) {
-                            this.memberIDs = attr.getValue("ref");
-                        } else {
-                            this.memberIDs = this.memberIDs + "," + attr.getValue("ref");
+                        this.appendListEntry(this.memberIDs, attr.getValue("ref"));
+                        if (this.arrayLayout) {
+                            break;
                         }
                         try {
                             // NULL|way_id|node_id
-                            this.conns.get(this.connsNames[3]).write(
+                            this.writeMemberRow(this.conns.get(COPY_OSMImporter.connsNames[3]),
                                     new String[]{
                                             this.curMainElemID, attr.getValue("ref")});
                         } catch (SQLException e) {
@@ -496,10 +676,10 @@ public class COPY_OSMImporter extends DefaultHandler {
             case "member":
                 if (this.status == this.STATUS_RELATION) {
                     if (attr.getValue("ref") != null) {
-                        if (this.memberIDs.isEmpty()) {
-                            this.memberIDs = attr.getValue("ref");
-                        } else {
-                            this.memberIDs = this.memberIDs + "," + attr.getValue("ref");
+                        this.appendListEntry(this.memberIDs, attr.getValue("ref"));
+                        if (this.arrayLayout) {
+                            this.appendArrayMember(attr.getValue("type"), attr.getValue("role"));
+                            break;
                         }
                         if (attr.getValue("type") != null) {
                             // empty skeleton
@@ -523,7 +703,7 @@ public class COPY_OSMImporter extends DefaultHandler {
                                 try {
                                     // NULL|rel_id|member_node_id|member_way_id|member_rel_id|role
                                     // -> relation_id|node_id|way_id|member_rel_id|role
-                                    this.conns.get(this.connsNames[1]).write(new String[]{
+                                    this.writeMemberRow(this.conns.get(COPY_OSMImporter.connsNames[1]), new String[]{
                                             this.curMainElemID, relIDs[0], relIDs[1], relIDs[2], UtilCopyImport.escapeSpecialChar(attr.getValue("role"))}
                                     );
                                 } catch (SQLException e) {
@@ -548,4 +728,155 @@ public class COPY_OSMImporter extends DefaultHandler {
 
         }
     }
+
+    /**
+     * untagged node: leave it out if unreferenced, write way nodes into
+     * nodecoordinates. Relation members stay in nodes - extraction reads
+     * members from there.
+     * @return true if node is done, false if it is to be written into nodes
+     */
+    private boolean writeUntaggedNode() {
+        long id;
+        try {
+            id = Long.parseLong(this.curMainElemID);
+        } catch (NumberFormatException e) {
+            // let nodes table keep whatever it is
+            return false;
+        }
+
+        if (!this.referencedNodes.isReferenced(id)) {
+            this.droppedNodes++;
+            return true;
+        }
+
+        if (this.nodeCoordinates == null || this.referencedNodes.isRelationMember(id)) {
+            return false;
+        }
+
+        try {
+            // osm_id|lon|lat
+            this.nodeCoordinates.write(new String[]{this.curMainElemID, this.lon, this.lat});
+        } catch (SQLException e) {
+            System.out.println("SQL-Error: Couldn't write final String to NodeCoordinates-Table.");
+            System.out.println("MainElements: " + (this.nodes + this.ways + this.rels));
+            e.printStackTrace();
+            System.exit(1);
+        }
+        this.coordinateNodes++;
+
+        if (this.nodeLocations != null && !this.lon.isEmpty()) {
+            this.writeNodeLocation();
+        }
+        return true;
+    }
+
+    /**
+     * @return false if tag filter drops that tag. Element is marked to be
+     * dropped if filter says so.
+     */
+    private boolean keepTag(String key, String value) {
+        if (this.tagFilter == null || key == null || value == null) {
+            return true;
+        }
+        switch (this.tagFilter.check(key, value)) {
+            case TagFilter.KEEP:
+                return true;
+            case TagFilter.DROP_ELEMENT:
+                this.dropElement = true;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * member rows are kept until end of element if tag filter can drop it -
+     * tags follow nd and member elements
+     */
+    private void writeMemberRow(CopyConnector connector, String[] row) throws SQLException {
+        if (this.tagFilter != null && this.tagFilter.dropsElements()) {
+            this.pendingConnector = connector;
+            this.pendingRows.add(row);
+        } else {
+            connector.write(row);
+        }
+    }
+
+    private void writePendingRows() throws SQLException {
+        for (String[] row : this.pendingRows) {
+            this.pendingConnector.write(row);
+        }
+        this.pendingRows.clear();
+    }
+
+    private void serializeTag(String key, String value) {
+        if (this.jsonTags) {
+            UtilCopyImport.serializeTagsJSON(this.serTags, key, value);
+        } else {
+            UtilCopyImport.serializeTags(this.serTags, key, value);
+        }
+    }
+
+    private void writeNodeLocation() {
+        try {
+            // nodes with class or name can get an own identity in ohdm
+            boolean tagged = this.classCode > 0 || !this.otherClassCodes.isEmpty() || this.hasName;
+            this.nodeLocations.put(Long.parseLong(this.curMainElemID), this.lon, this.lat, tagged);
+        } catch (NumberFormatException e) {
+            System.out.println("XML-Error: node " + this.curMainElemID + " at Line " + this.xmlFileLocator.getLineNumber() + " has no valid id or location: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("IO-Error: Couldn't write node location.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private void appendListEntry(StringBuilder list, String entry) {
+        COPY_OSMImporter.appendListEntry(list, entry, this.arrayLayout);
+    }
+
+    /**
+     * append entry to a comma separated list or to an array literal
+     * (starts with '{')
+     */
+    static void appendListEntry(StringBuilder list, String entry, boolean arrayLiteral) {
+        if (list.length() > (arrayLiteral ? 1 : 0)) {
+            list.append(',');
+        }
+        list.append(entry);
+    }
+
+    /**
+     * array layout: remember type and role id of a relation member.
+     * Unknown types and missing roles are stored as -1.
+     */
+    private void appendArrayMember(String type, String role) {
+        int typeID = -1;
+        if (type == null) {
+            System.out.println("XML-Error: InnerElement 'member' at Line " + this.xmlFileLocator.getLineNumber() + " has a null-value at 'type'.");
+        } else {
+            switch (type.toLowerCase()) {
+                case "node":
+                    typeID = InterDB.MEMBER_NODE;
+                    break;
+                case "way":
+                    typeID = InterDB.MEMBER_WAY;
+                    break;
+                case "relation":
+                    typeID = InterDB.MEMBER_RELATION;
+                    break;
+                default:
+                    System.out.println("XML-Error: InnerElement 'member' at Line " + this.xmlFileLocator.getLineNumber() + " has no correct value at 'type'.");
+            }
+        }
+        this.appendListEntry(this.memberTypes, Integer.toString(typeID));
+
+        int roleID = -1;
+        if (role == null) {
+            System.out.println("XML-Error: InnerElement 'member' at Line " + this.xmlFileLocator.getLineNumber() + " has a null-value at 'role'.");
+        } else {
+            roleID = this.roles.getRoleID(role);
+        }
+        this.appendListEntry(this.memberRoles, Integer.toString(roleID));
+    }
 }
@@ -0,0 +1,255 @@
+package osm2inter;
+
+import util.CopyConnector;
+import util.DB;
+import util.InterDB;
+import util.NodeLocationStore;
+import util.Parameter;
+import util.SQLStatementQueue;
+import util.Util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checkpoints of a copy import. A checkpoint is taken at a byte offset of
+ * the osm file where a top level element (xml) or a data block (pbf) starts.
+ * All copy connectors commit their rows, the highest id of each table is
+ * remembered together with the committed row counts.
+ * <br>
+ * After a crash, OSMImport -resume deletes all rows behind the last
+ * checkpoint and continues parsing at its offset. Checkpoints are kept in
+ * [osm file].checkpoint.
+ */
+public class ImportCheckpoint {
+    public static final String RESUME = "-resume";
+
+    private static final String SUFFIX = ".checkpoint";
+    private static final String OFFSET = "offset";
+    private static final String FILE_LENGTH = "filelength";
+    private static final String ROWS = "rows.";
+    private static final String LAST_ID = "lastid.";
+    private static final String ROLE = "role.";
+    private static final String NODE_LOCATIONS = "nodelocations";
+
+    private final File osmFile;
+    private final File file;
+    private final Parameter parameter;
+    private final long interval;
+
+    private long offset = 0;
+    private long nodeLocationLength = 0;
+    private final HashMap<String, Long> lastIDs = new HashMap<>();
+    // rows committed before a resumed import started
+    private final HashMap<String, Long> resumedRows = new HashMap<>();
+    private final HashMap<String, Integer> roleIDs = new HashMap<>();
+
+    private HashMap<String, CopyConnector> connectors;
+    private RelationRoleDictionary roles;
+    private NodeLocationStore nodeLocations;
+    private SQLStatementQueue sql;
+
+    public ImportCheckpoint(File osmFile, Parameter parameter) {
+        this.osmFile = osmFile;
+        this.file = new File(osmFile.getPath() + SUFFIX);
+        this.parameter = parameter;
+        this.interval = parameter.getCheckpointInterval();
+    }
+
+    /**
+     * @return bytes of osm file between two checkpoints
+     */
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * @return offset of last checkpoint, 0 if there is none
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public long getNodeLocationLength() {
+        return this.nodeLocationLength;
+    }
+
+    /**
+     * read last checkpoint
+     * @return false if there is none
+     */
+    public boolean load() throws IOException {
+        if(!this.file.exists()) {
+            return false;
+        }
+
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(this.file)) {
+            p.load(in);
+        }
+
+        long fileLength = Long.parseLong(p.getProperty(FILE_LENGTH, "-1"));
+        if(fileLength != this.osmFile.length()) {
+            throw new IOException("checkpoint " + this.file + " was taken for another version of " + this.osmFile);
+        }
+
+        this.offset = Long.parseLong(p.getProperty(OFFSET, "0"));
+        this.nodeLocationLength = Long.parseLong(p.getProperty(NODE_LOCATIONS, "0"));
+        for(String key : p.stringPropertyNames()) {
+            String value = p.getProperty(key);
+            if(key.startsWith(LAST_ID)) {
+                this.lastIDs.put(key.substring(LAST_ID.length()), Long.parseLong(value));
+            } else if(key.startsWith(ROWS)) {
+                this.resumedRows.put(key.substring(ROWS.length()), Long.parseLong(value));
+            } else if(key.startsWith(ROLE)) {
+                this.roleIDs.put(value, Integer.parseInt(key.substring(ROLE.length())));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * delete rows written behind last checkpoint and restore role ids.
+     * Fails if committed rows are missing - e.g. unlogged tables are
+     * truncated when postgres crashes.
+     */
+    public void restore(SQLStatementQueue sql, RelationRoleDictionary roles) throws SQLException {
+        String schema = this.parameter.getSchema();
+        for(Map.Entry<String, Long> lastID : this.lastIDs.entrySet()) {
+            String table = lastID.getKey();
+            Long committedRows = this.resumedRows.get(table);
+            if(committedRows == null) {
+                continue;
+            }
+            sql.append("SELECT count(*) FROM ");
+            sql.append(DB.getFullTableName(schema, table));
+            sql.append(" WHERE id <= ");
+            sql.append(lastID.getValue());
+            sql.append(";");
+            ResultSet result = sql.executeWithResult();
+            result.next();
+            long rows = result.getLong(1);
+            result.close();
+            if(rows != committedRows) {
+                throw new SQLException("checkpoint " + this.file + " does not match table " + table + ": "
+                        + Util.getValueWithDots(committedRows) + " rows committed, "
+                        + Util.getValueWithDots(rows) + " found - start a new import without "
+                        + RESUME);
+            }
+        }
+
+        for(Map.Entry<String, Long> lastID : this.lastIDs.entrySet()) {
+            sql.append("DELETE FROM ");
+            sql.append(DB.getFullTableName(schema, lastID.getKey()));
+            sql.append(" WHERE id > ");
+            sql.append(lastID.getValue());
+            sql.append(";");
+            sql.forceExecute();
+        }
+
+        if(roles != null) {
+            // roles are written again when import is done
+            sql.append("DELETE FROM ");
+            sql.append(DB.getFullTableName(schema, InterDB.RELATIONROLES));
+            sql.append(";");
+            sql.forceExecute();
+
+            for(Map.Entry<String, Integer> role : this.roleIDs.entrySet()) {
+                roles.restore(role.getKey(), role.getValue());
+            }
+        }
+
+        System.out.println("resume import at byte " + Util.getValueWithDots(this.offset)
+                + " of " + this.osmFile.getName() + " - rows behind checkpoint deleted");
+    }
+
+    /**
+     * @param roles can be null
+     * @param nodeLocations can be null
+     */
+    public void setTargets(HashMap<String, CopyConnector> connectors, RelationRoleDictionary roles,
+                           NodeLocationStore nodeLocations, SQLStatementQueue sql) {
+        this.connectors = connectors;
+        this.roles = roles;
+        this.nodeLocations = nodeLocations;
+        this.sql = sql;
+    }
+
+    /**
+     * @return true if a checkpoint is to be taken at that offset
+     */
+    public boolean isDue(long offset) {
+        return this.interval > 0 && offset - this.offset >= this.interval;
+    }
+
+    /**
+     * commit all copy connectors and remember offset. All elements in front
+     * of offset must have been handed to the connectors.
+     */
+    public void write(long offset) throws SQLException, IOException {
+        long start = System.currentTimeMillis();
+        String schema = this.parameter.getSchema();
+
+        Properties p = new Properties();
+        p.setProperty(OFFSET, Long.toString(offset));
+        p.setProperty(FILE_LENGTH, Long.toString(this.osmFile.length()));
+
+        for(CopyConnector connector : this.connectors.values()) {
+            String table = connector.getTablename();
+            long rows = connector.commitSegment() + this.resumedRows.getOrDefault(table, 0L);
+            p.setProperty(ROWS + table, Long.toString(rows));
+
+            // ids come from sequences: everything behind belongs to a later segment
+            this.sql.append("SELECT coalesce(max(id), 0) FROM ");
+            this.sql.append(DB.getFullTableName(schema, table));
+            this.sql.append(";");
+            ResultSet result = this.sql.executeWithResult();
+            result.next();
+            p.setProperty(LAST_ID + table, Long.toString(result.getLong(1)));
+            result.close();
+        }
+
+        if(this.roles != null) {
+            for(Map.Entry<String, Integer> role : this.roles.getRoleIDs().entrySet()) {
+                p.setProperty(ROLE + role.getValue(), role.getKey());
+            }
+        }
+
+        if(this.nodeLocations != null) {
+            p.setProperty(NODE_LOCATIONS, Long.toString(this.nodeLocations.sync()));
+        }
+
+        // replace old checkpoint in one step
+        File tmp = new File(this.file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, "osm import checkpoint");
+        }
+        Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        this.offset = offset;
+        System.out.println("checkpoint at byte " + Util.getValueWithDots(offset) + " of "
+                + Util.getValueWithDots(this.osmFile.length()) + " took " + Util.getElapsedTime(start));
+    }
+
+    /**
+     * import finished - no resume possible
+     */
+    public void delete() {
+        if(this.file.exists() && !this.file.delete()) {
+            System.err.println("cannot delete checkpoint " + this.file);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package osm2inter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Region of a clipped import (EPSG 4326): a wkt polygon like
+ * POLYGON((2 45, 2 55, 14 55, 14 45, 2 45)) - the same format OSMFileExporter
+ * takes - or a bounding box minlon,minlat,maxlon,maxlat. Inner rings of a
+ * polygon are holes.
+ */
+public class ImportRegion {
+    private static final String POLYGON = "POLYGON";
+
+    // rings as x0, y0, x1, y1, ...
+    private final List<double[]> rings = new ArrayList<>();
+    private double minLon = Double.MAX_VALUE, minLat = Double.MAX_VALUE;
+    private double maxLon = -Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+
+    private ImportRegion() {
+    }
+
+    /**
+     * @param region wkt polygon or bounding box
+     * @throws IllegalArgumentException if region cannot be parsed
+     */
+    public static ImportRegion parse(String region) {
+        ImportRegion importRegion = new ImportRegion();
+        String s = region.trim();
+        if(s.toUpperCase().startsWith("SRID=")) {
+            // ewkt
+            s = s.substring(s.indexOf(';') + 1).trim();
+        }
+
+        if(s.toUpperCase().startsWith(POLYGON)) {
+            int start = s.indexOf('(');
+            int end = s.lastIndexOf(')');
+            if(start < 0 || end < start) {
+                throw new IllegalArgumentException("malformed wkt polygon: " + region);
+            }
+            // rings: (x y, x y, ...), (x y, ...)
+            String body = s.substring(start + 1, end);
+            int ringStart = body.indexOf('(');
+            while(ringStart >= 0) {
+                int ringEnd = body.indexOf(')', ringStart);
+                if(ringEnd < 0) {
+                    throw new IllegalArgumentException("malformed wkt polygon: " + region);
+                }
+                importRegion.addRing(body.substring(ringStart + 1, ringEnd), region);
+                ringStart = body.indexOf('(', ringEnd);
+            }
+        } else {
+            String[] values = s.split(",");
+            if(values.length != 4) {
+                throw new IllegalArgumentException("neither wkt polygon nor minlon,minlat,maxlon,maxlat: " + region);
+            }
+            double minLon = Double.parseDouble(values[0].trim());
+            double minLat = Double.parseDouble(values[1].trim());
+            double maxLon = Double.parseDouble(values[2].trim());
+            double maxLat = Double.parseDouble(values[3].trim());
+            importRegion.rings.add(new double[]{minLon, minLat, minLon, maxLat, maxLon, maxLat,
+                    maxLon, minLat, minLon, minLat});
+            importRegion.setBounds(importRegion.rings.get(0));
+        }
+
+        if(importRegion.rings.isEmpty()) {
+            throw new IllegalArgumentException("polygon without ring: " + region);
+        }
+        return importRegion;
+    }
+
+    private void addRing(String points, String region) {
+        String[] pairs = points.split(",");
+        if(pairs.length < 4) {
+            throw new IllegalArgumentException("ring needs at least four points: " + region);
+        }
+        double[] ring = new double[pairs.length * 2];
+        for(int i = 0; i < pairs.length; i++) {
+            String[] xy = pairs[i].trim().split("\\s+");
+            if(xy.length < 2) {
+                throw new IllegalArgumentException("malformed point " + pairs[i] + " in " + region);
+            }
+            ring[2*i] = Double.parseDouble(xy[0]);
+            ring[2*i + 1] = Double.parseDouble(xy[1]);
+        }
+        if(this.rings.isEmpty()) {
+            // outer ring
+            this.setBounds(ring);
+        }
+        this.rings.add(ring);
+    }
+
+    private void setBounds(double[] ring) {
+        for(int i = 0; i < ring.length; i += 2) {
+            this.minLon = Math.min(this.minLon, ring[i]);
+            this.maxLon = Math.max(this.maxLon, ring[i]);
+            this.minLat = Math.min(this.minLat, ring[i + 1]);
+            this.maxLat = Math.max(this.maxLat, ring[i + 1]);
+        }
+    }
+
+    /**
+     * @return true if that location is inside region (even-odd rule over
+     * all rings - holes are outside)
+     */
+    public boolean contains(double lon, double lat) {
+        if(lon < this.minLon || lon > this.maxLon || lat < this.minLat || lat > this.maxLat) {
+            return false;
+        }
+
+        boolean inside = false;
+        for(double[] ring : this.rings) {
+            for(int i = 0, j = ring.length - 2; i < ring.length; j = i, i += 2) {
+                double xi = ring[i], yi = ring[i + 1];
+                double xj = ring[j], yj = ring[j + 1];
+                if((yi > lat) != (yj > lat) && lon < (xj - xi) * (lat - yi) / (yj - yi) + xi) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public String toString() {
+        return this.rings.size() + " ring(s) within " + this.minLon + "," + this.minLat + " - "
+                + this.maxLon + "," + this.maxLat;
+    }
+}
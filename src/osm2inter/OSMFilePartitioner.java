@@ -0,0 +1,232 @@
+package osm2inter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Vector;
+
+/**
+ * Splits an osm xml file into byte ranges which can be parsed independently.
+ * <br>
+ * Each range starts with a top level &lt;node, &lt;way or &lt;relation element.
+ * A literal '&lt;' cannot appear in attribute values or text of osm xml and
+ * those elements are never nested. Thus, each occurrence is a safe boundary.
+ * Each range is wrapped into an &lt;osm&gt; root element when read.
+ */
+public class OSMFilePartitioner {
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[][] MAIN_ELEMENTS = {
+        "<node".getBytes(StandardCharsets.US_ASCII),
+        "<way".getBytes(StandardCharsets.US_ASCII),
+        "<relation".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private static final byte[] OSM_END_TAG = "</osm".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PARTITION_HEAD =
+            "<?xml version='1.0' encoding='UTF-8'?>\n<osm>\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PARTITION_TAIL = "\n</osm>\n".getBytes(StandardCharsets.UTF_8);
+
+    private final File osmFile;
+
+    public OSMFilePartitioner(File osmFile) {
+        this.osmFile = osmFile;
+    }
+
+    /**
+     * @param number wanted number of partitions
+     * @return offsets of partition starts followed by the end offset of the last
+     * partition. Can describe less partitions than wanted with small files.
+     */
+    public long[] getPartitionBoundaries(int number) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(this.osmFile, "r")) {
+            long end = this.findOSMEndTag(raf);
+            long first = this.findMainElement(raf, 0, end);
+
+            ArrayList<Long> boundaries = new ArrayList<>();
+            boundaries.add(first);
+
+            if(first < end) {
+                long partitionSize = (end - first) / number;
+                for(int i = 1; i < number; i++) {
+                    long boundary = this.findMainElement(raf, first + i * partitionSize, end);
+                    if(boundary > boundaries.get(boundaries.size() - 1) && boundary < end) {
+                        boundaries.add(boundary);
+                    }
+                }
+            }
+            boundaries.add(end);
+
+            long[] result = new long[boundaries.size()];
+            for(int i = 0; i < result.length; i++) {
+                result[i] = boundaries.get(i);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return offset of first main element at or behind from, end if there is none
+     */
+    public long getNextBoundary(long from, long end) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(this.osmFile, "r")) {
+            return this.findMainElement(raf, from, end);
+        }
+    }
+
+    /**
+     * @return well-formed osm document containing all elements of that byte range
+     */
+    public InputStream openPartition(long from, long to) throws IOException {
+        FileInputStream fis = new FileInputStream(this.osmFile);
+        long skipped = 0;
+        while(skipped < from) {
+            long s = fis.skip(from - skipped);
+            if(s <= 0) {
+                fis.close();
+                throw new IOException("cannot skip to partition start " + from);
+            }
+            skipped += s;
+        }
+
+        Vector<InputStream> streams = new Vector<>();
+        streams.add(new ByteArrayInputStream(PARTITION_HEAD));
+        streams.add(new RangeInputStream(fis, to - from));
+        streams.add(new ByteArrayInputStream(PARTITION_TAIL));
+
+        return new SequenceInputStream(streams.elements());
+    }
+
+    /**
+     * @return offset of first main element start at or behind from or limit if there is none
+     */
+    private long findMainElement(RandomAccessFile raf, long from, long limit) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        // longest pattern plus following whitespace must fit into overlap
+        int overlap = "<relation ".length();
+
+        long position = from;
+        while(position < limit) {
+            raf.seek(position);
+            int length = (int) Math.min(buffer.length, limit - position);
+            raf.readFully(buffer, 0, length);
+
+            for(int i = 0; i < length; i++) {
+                if(buffer[i] == '<' && this.isMainElementStart(buffer, i, length)) {
+                    return position + i;
+                }
+            }
+
+            if(position + length >= limit) break;
+            position += length - overlap;
+        }
+
+        return limit;
+    }
+
+    private boolean isMainElementStart(byte[] buffer, int index, int length) {
+        for(byte[] pattern : MAIN_ELEMENTS) {
+            int next = index + pattern.length;
+            if(next >= length) continue;
+
+            boolean match = true;
+            for(int j = 1; j < pattern.length; j++) {
+                if(buffer[index + j] != pattern[j]) {
+                    match = false;
+                    break;
+                }
+            }
+
+            // <way but not <waypoint
+            if(match) {
+                byte b = buffer[next];
+                if(b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '>' || b == '/') {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return offset of closing osm tag or file length if there is none
+     */
+    private long findOSMEndTag(RandomAccessFile raf) throws IOException {
+        long fileLength = raf.length();
+        int length = (int) Math.min(SCAN_BUFFER_SIZE, fileLength);
+        long start = fileLength - length;
+
+        byte[] buffer = new byte[length];
+        raf.seek(start);
+        raf.readFully(buffer);
+
+        for(int i = length - OSM_END_TAG.length; i >= 0; i--) {
+            boolean match = true;
+            for(int j = 0; j < OSM_END_TAG.length; j++) {
+                if(buffer[i + j] != OSM_END_TAG[j]) {
+                    match = false;
+                    break;
+                }
+            }
+            if(match) {
+                return start + i;
+            }
+        }
+
+        return fileLength;
+    }
+
+    /**
+     * stream that ends after a number of bytes
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(this.remaining <= 0) return -1;
+            int b = super.read();
+            if(b >= 0) this.remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(this.remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, this.remaining));
+            if(n > 0) this.remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = super.skip(Math.min(n, this.remaining));
+            this.remaining -= s;
+            return s;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), this.remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package osm2inter;
 
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 import osm.OSMClassification;
 import util.*;
@@ -7,10 +10,18 @@ import util.*;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -24,6 +35,14 @@ public class OSMImport {
 
     public static void main(String[] args) throws SQLException {
         System.out.println("Started with arguments: "+Arrays.toString(args));
+        // continue an interrupted import at its last checkpoint
+        boolean resume = Arrays.asList(args).contains(ImportCheckpoint.RESUME);
+        if(resume) {
+            List<String> remaining = new ArrayList<>(Arrays.asList(args));
+            remaining.remove(ImportCheckpoint.RESUME);
+            args = remaining.toArray(new String[remaining.size()]);
+        }
+
         HashMap<String, CopyConnector> connectors = null;
         Parameter dbConnectionSettings = null;
         long past = System.currentTimeMillis();
@@ -51,45 +70,200 @@ public class OSMImport {
 
             dbConnectionSettings = new Parameter(parameterFile);
             
+            String connectionType = dbConnectionSettings.getConnectionType();
+            boolean copy = !connectionType.equalsIgnoreCase("insert");
+
+            // sql importer creates its own indexes and stays with logged tables
+            boolean unlogged = copy && dbConnectionSettings.isUnloggedTables();
+
+            // member arrays are written by copy importer only
+            boolean arrayLayout = dbConnectionSettings.isArrayMemberLayout();
+            if(arrayLayout && !copy) {
+                System.err.println("memberLayout:array requires copy - sql-insert fills waynodes and relationmember");
+                arrayLayout = false;
+            }
+            RelationRoleDictionary roles = arrayLayout ? new RelationRoleDictionary() : null;
+
+            // typed coordinates are written by copy importer only, too
+            String coordinateType = copy ? dbConnectionSettings.getCoordinateType() : Parameter.COORDINATES_TEXT;
+            boolean nodeGeometry = copy && dbConnectionSettings.isNodeGeometry();
+            boolean jsonTags = copy && dbConnectionSettings.isJSONTags();
+
+            // untagged nodes nobody refers to are left out by copy importer
+            boolean referencedNodesOnly = dbConnectionSettings.isReferencedNodesOnly();
+            if(referencedNodesOnly && !copy) {
+                System.err.println("nodeFilter requires copy - sql-insert imports all nodes");
+                referencedNodesOnly = false;
+            }
+            boolean nodeCoordinatesTable = referencedNodesOnly && dbConnectionSettings.isNodeCoordinatesTable();
+
+            // checkpoints are taken by sequential copy import only
+            ImportCheckpoint checkpoint = null;
+            if(copy && (dbConnectionSettings.getCheckpointInterval() > 0 || resume)) {
+                checkpoint = new ImportCheckpoint(osmFile, dbConnectionSettings);
+                if(resume && !checkpoint.load()) {
+                    System.out.println("no checkpoint found - start new import");
+                    resume = false;
+                }
+            } else if(resume) {
+                System.err.println("sql-insert cannot be resumed - start new import");
+                resume = false;
+            }
+
             SQLStatementQueue sq = new SQLStatementQueue(dbConnectionSettings);
-            // drop database
-            System.out.println("drop and recreate intermediate tables");
-            InterDB.createTables(sq, dbConnectionSettings.getSchema());
+            if(resume) {
+                // keep tables, drop rows behind checkpoint
+                checkpoint.restore(sq, roles);
+            } else {
+                // drop database
+                System.out.println("drop and recreate intermediate tables" + (unlogged ? " (unlogged)" : "")
+                        + (arrayLayout ? " with member arrays" : "")
+                        + ", " + coordinateType + " coordinates" + (nodeGeometry ? " and node geometry" : "")
+                        + (jsonTags ? ", jsonb tags" : ""));
+                InterDB.createTables(sq, dbConnectionSettings.getSchema(), unlogged, arrayLayout,
+                        coordinateType, nodeGeometry, jsonTags);
+                if(nodeCoordinatesTable) {
+                    System.out.println("untagged way nodes are written into " + InterDB.NODECOORDINATES);
+                    InterDB.createNodeCoordinatesTable(sq, dbConnectionSettings.getSchema(), unlogged, coordinateType);
+                }
+            }
+
+            int decoderThreads = OSMImport.getDecoderThreads(dbConnectionSettings);
+
+            // clipped import: collect ids of elements in region first
+            RegionFilter regionFilter = null;
+            if(!dbConnectionSettings.getImportRegion().isEmpty()) {
+                ImportRegion region = ImportRegion.parse(dbConnectionSettings.getImportRegion());
+                regionFilter = RegionFilter.collect(osmFile, region, decoderThreads);
+            }
+
+            // tag filter is compiled once and shared by all importers
+            TagFilter tagFilter = null;
+            if(!dbConnectionSettings.getTagFilter().isEmpty()) {
+                System.out.println("filter tags with " + dbConnectionSettings.getTagFilter());
+                tagFilter = TagFilter.load(new File(dbConnectionSettings.getTagFilter()));
+            }
+
+            // first pass: nodes used by ways and relations
+            ReferencedNodes referencedNodes = null;
+            if(referencedNodesOnly) {
+                referencedNodes = ReferencedNodes.collect(osmFile, decoderThreads);
+            }
+
+            // optional node coordinates file for extraction
+            NodeLocationStore nodeLocations = null;
+            String nodeLocationFile = dbConnectionSettings.getNodeLocationFile();
+            if(!nodeLocationFile.isEmpty()) {
+                if(copy) {
+                    boolean sparse = dbConnectionSettings.isSparseNodeLocations();
+                    System.out.println("write node locations (" + (sparse ? NodeLocationStore.SPARSE : NodeLocationStore.DENSE)
+                            + ") to " + nodeLocationFile);
+                    if(resume) {
+                        nodeLocations = NodeLocationStore.resume(new File(nodeLocationFile),
+                                checkpoint.getNodeLocationLength());
+                    } else {
+                        nodeLocations = NodeLocationStore.create(new File(nodeLocationFile), sparse);
+                    }
+                } else {
+                    System.err.println("node locations are written by copy import only - ignore " + nodeLocationFile);
+                }
+            }
 
             // set up xml handler - class that actually does the importing
             DefaultHandler osmImporter = null;
 
-            String connectionType = dbConnectionSettings.getConnectionType();
-            if(!connectionType.equalsIgnoreCase("insert")) {
-                System.out.println("use copy insert - fast version");
+            int partitions = dbConnectionSettings.getImportPartitions();
+            if(checkpoint != null && partitions > 1) {
+                System.out.println("checkpoints require a sequential import - importPartitions ignored");
+                partitions = 1;
+            }
+            if(!connectionType.equalsIgnoreCase("insert") && partitions > 1
+                    && !PBFReader.isPBFFile(osmFileName)) {
+                importPartitioned(osmFile, dbConnectionSettings, partitions, roles, nodeLocations,
+                        referencedNodes, regionFilter, tagFilter);
+            } else if(!connectionType.equalsIgnoreCase("insert")) {
+                if(connectionType.equalsIgnoreCase(CopyConnector.BINARY_COPY)) {
+                    System.out.println("use binary copy insert - fastest version");
+                } else {
+                    System.out.println("use copy insert - fast version");
+                }
 
                 System.out.println("creating connections");
-                connectors = new HashMap<>();
-                String[] tablenames = COPY_OSMImporter.connsNames;
-                for (String tablename : tablenames){
-                    connectors.put(tablename, new CopyConnector(dbConnectionSettings, tablename));
+                connectors = createConnectors(dbConnectionSettings, arrayLayout);
+
+                COPY_OSMImporter copyImporter = new COPY_OSMImporter(connectors, dbConnectionSettings.getSerTagsSize(), roles);
+                copyImporter.setNodeLocationStore(nodeLocations);
+                copyImporter.setJSONTags(jsonTags);
+                if(referencedNodes != null) {
+                    copyImporter.setReferencedNodes(referencedNodes);
                 }
+                copyImporter.setTagFilter(tagFilter);
+                osmImporter = copyImporter;
 
-                osmImporter = new COPY_OSMImporter(connectors, dbConnectionSettings.getSerTagsSize());
+                if(checkpoint != null) {
+                    checkpoint.setTargets(connectors, roles, nodeLocations, sq);
+                }
             } else {
                 // do inserts
                 System.out.println("use sql-insert - copy is much faster!");
 
-                osmImporter = new SQL_OSMImporter(
+                SQL_OSMImporter sqlImporter = new SQL_OSMImporter(
                         dbConnectionSettings,
                         OSMClassification.getOSMClassification());
+                sqlImporter.setTagFilter(tagFilter);
+                osmImporter = sqlImporter;
             }
 
-            System.out.println("starting parser");
-            newSAXParser.parse(osmFile, osmImporter);
+            if(osmImporter != null && regionFilter != null) {
+                osmImporter = regionFilter.filter(osmImporter);
+            }
 
-            if(!connectionType.equalsIgnoreCase("insert")) {
+            if(osmImporter == null) {
+                // already imported in partitions
+            } else if(PBFReader.isPBFFile(osmFileName)) {
+                System.out.println("starting pbf reader with " + decoderThreads + " decoder threads");
+                PBFReader pbfReader = new PBFReader(osmFile, decoderThreads);
+                if(checkpoint != null) {
+                    pbfReader.setCheckpoint(checkpoint);
+                }
+                pbfReader.parse(osmImporter);
+            } else if(checkpoint != null) {
+                importInSegments(osmFile, osmImporter, checkpoint);
+            } else {
+                System.out.println("starting parser");
+                newSAXParser.parse(osmFile, osmImporter);
+            }
+
+            if(connectors != null) {
                 for (CopyConnector connector : connectors.values()) {
                     System.out.println("wrote " + connector.endCopy() + " lines to " + connector.getTablename());
                     connector.close();
                 }
             }
 
+            if(nodeLocations != null) {
+                nodeLocations.close();
+            }
+
+            if(tagFilter != null) {
+                tagFilter.printStatistics(System.out);
+            }
+
+            if(roles != null) {
+                roles.write(sq, dbConnectionSettings.getSchema());
+                System.out.println("wrote " + roles.size() + " roles to " + InterDB.RELATIONROLES);
+            }
+
+            if(copy) {
+                // copy loads tables without any index - build them now
+                System.out.println("create indexes");
+                InterDB.finishImport(dbConnectionSettings, unlogged);
+            }
+
+            if(checkpoint != null) {
+                checkpoint.delete();
+            }
+
         } catch (Exception t) {
             PrintStream err = System.err;
             // maybe another stream was defined and could be opened
@@ -104,4 +278,182 @@ public class OSMImport {
         long present = System.currentTimeMillis();
         System.out.println("That took "+(present-past)+" ms");
     }
+
+    private static HashMap<String, CopyConnector> createConnectors(Parameter parameter, boolean arrayLayout)
+            throws SQLException, IOException {
+        HashMap<String, CopyConnector> connectors = new HashMap<>();
+        for (String tablename : COPY_OSMImporter.connsNames){
+            if(arrayLayout && (tablename.equals(InterDB.WAYMEMBER) || tablename.equals(InterDB.RELATIONMEMBER))) {
+                // member lists are stored in ways and relations
+                continue;
+            }
+            connectors.put(tablename, new CopyConnector(parameter, tablename));
+        }
+        if(parameter.isNodeCoordinatesTable()) {
+            connectors.put(InterDB.NODECOORDINATES, new CopyConnector(parameter, InterDB.NODECOORDINATES));
+        }
+        return connectors;
+    }
+
+    /**
+     * @return pbf decoder threads: maxThreads of that parameter
+     */
+    private static int getDecoderThreads(Parameter parameter) {
+        try {
+            return Integer.parseInt(parameter.getMaxThread().trim());
+        }
+        catch(NumberFormatException e) {
+            System.err.println("no integer value (decode pbf single threaded instead): " + parameter.getMaxThread());
+            return 1;
+        }
+    }
+
+    /**
+     * Parse xml file in byte ranges of checkpoint interval one after another,
+     * take a checkpoint after each range. Starts at offset of last checkpoint.
+     * The ranges are one document for the importer: it gets startDocument and
+     * endDocument once.
+     */
+    private static void importInSegments(File osmFile, DefaultHandler osmImporter,
+                                         ImportCheckpoint checkpoint) throws Exception {
+
+        OSMFilePartitioner partitioner = new OSMFilePartitioner(osmFile);
+        long[] range = partitioner.getPartitionBoundaries(1);
+        long end = range[range.length - 1];
+        long from = Math.max(range[0], checkpoint.getOffset());
+
+        System.out.println("starting parser with checkpoints every "
+                + Util.getValueWithDots(checkpoint.getInterval()) + " bytes");
+        SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+        DefaultHandler segmentHandler = new SegmentHandler(osmImporter);
+        osmImporter.startDocument();
+        while(from < end) {
+            long to = end;
+            if(checkpoint.getInterval() > 0) {
+                to = partitioner.getNextBoundary(from + checkpoint.getInterval(), end);
+            }
+
+            try (InputStream in = partitioner.openPartition(from, to)) {
+                parser.parse(new InputSource(in), segmentHandler);
+            }
+            if(to < end) {
+                checkpoint.write(to);
+            }
+            from = to;
+        }
+        osmImporter.endDocument();
+    }
+
+    /**
+     * hands elements of a byte range to the importer but not start and end
+     * of that range - the importer would finish its copy connectors and
+     * print statistics after each range
+     */
+    private static class SegmentHandler extends DefaultHandler {
+        private final DefaultHandler handler;
+
+        SegmentHandler(DefaultHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            this.handler.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            this.handler.endElement(uri, localName, qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            this.handler.characters(ch, start, length);
+        }
+    }
+
+    /**
+     * Split xml file into byte ranges and parse each range in its own thread
+     * with its own importer and copy connections. Each element ends up in
+     * exactly one range, tables are the same as with a sequential import
+     * apart from row order.
+     */
+    private static void importPartitioned(File osmFile, Parameter parameter, int partitions,
+                                          RelationRoleDictionary roles,
+                                          NodeLocationStore nodeLocations,
+                                          ReferencedNodes referencedNodes,
+                                          RegionFilter regionFilter,
+                                          TagFilter tagFilter) throws Exception {
+
+        OSMFilePartitioner partitioner = new OSMFilePartitioner(osmFile);
+        long[] boundaries = partitioner.getPartitionBoundaries(partitions);
+        int number = boundaries.length - 1;
+
+        System.out.println("starting parser on " + number + " partitions of " + osmFile.getName());
+
+        ExecutorService pool = Executors.newFixedThreadPool(number);
+        List<Future<COPY_OSMImporter>> results = new ArrayList<>();
+        List<HashMap<String, CopyConnector>> allConnectors = new ArrayList<>();
+
+        try {
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            for(int i = 0; i < number; i++) {
+                final long from = boundaries[i];
+                final long to = boundaries[i+1];
+
+                HashMap<String, CopyConnector> connectors = createConnectors(parameter, roles != null);
+                allConnectors.add(connectors);
+                // one dictionary for all partitions - role ids must be unique
+                COPY_OSMImporter importer = new COPY_OSMImporter(connectors, parameter.getSerTagsSize(), roles);
+                importer.setNodeLocationStore(nodeLocations);
+                importer.setJSONTags(parameter.isJSONTags());
+                if(referencedNodes != null) {
+                    // read only after first pass - can be shared
+                    importer.setReferencedNodes(referencedNodes);
+                }
+                importer.setTagFilter(tagFilter);
+
+                results.add(pool.submit(() -> {
+                    // sax parsers are not thread safe
+                    SAXParser parser = spf.newSAXParser();
+                    try (InputStream in = partitioner.openPartition(from, to)) {
+                        parser.parse(new InputSource(in),
+                                regionFilter != null ? regionFilter.filter(importer) : importer);
+                    }
+                    return importer;
+                }));
+            }
+
+            long nodes = 0, ways = 0, rels = 0;
+            for(Future<COPY_OSMImporter> result : results) {
+                COPY_OSMImporter importer;
+                try {
+                    importer = result.get();
+                }
+                catch(ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+                nodes += importer.getNodes();
+                ways += importer.getWays();
+                rels += importer.getRelations();
+            }
+
+            HashMap<String, Long> lines = new HashMap<>();
+            for(HashMap<String, CopyConnector> connectors : allConnectors) {
+                for (CopyConnector connector : connectors.values()) {
+                    lines.merge(connector.getTablename(), connector.endCopy(), Long::sum);
+                    connector.close();
+                }
+            }
+
+            System.out.println("all partitions: Nodes: " + nodes + " | Ways: " + ways + " | Relations: " + rels);
+            for(String tablename : lines.keySet()) {
+                System.out.println("wrote " + lines.get(tablename) + " lines to " + tablename);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
 }
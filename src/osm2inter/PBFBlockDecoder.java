@@ -0,0 +1,421 @@
+package osm2inter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes a single OSMData blob (a PrimitiveBlock) into a list of elements.
+ * Decoders are independent of each other and run in parallel on a worker pool.
+ * Elements are returned in the order of the block, see
+ * https://wiki.openstreetmap.org/wiki/PBF_Format
+ */
+class PBFBlockDecoder implements Callable<List<PBFElement>> {
+    private final byte[] blob;
+
+    // string table of current block
+    private String[] strings;
+    private int granularity = 100;
+    private long latOffset = 0;
+    private long lonOffset = 0;
+    private int dateGranularity = 1000;
+
+    private final List<PBFElement> elements = new ArrayList<>();
+
+    PBFBlockDecoder(byte[] blob) {
+        this.blob = blob;
+    }
+
+    @Override
+    public List<PBFElement> call() throws Exception {
+        byte[] block = PBFBlockDecoder.unpackBlob(this.blob);
+
+        // string table and granularity must be known before groups are decoded
+        ArrayList<PBFInput> groups = new ArrayList<>();
+        PBFInput in = new PBFInput(block);
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: this.readStringTable(in.readMessage()); break;
+                case 2: groups.add(in.readMessage()); break;
+                case 17: this.granularity = in.readInt32(); break;
+                case 18: this.dateGranularity = in.readInt32(); break;
+                case 19: this.latOffset = in.readInt64(); break;
+                case 20: this.lonOffset = in.readInt64(); break;
+                default: in.skipField();
+            }
+        }
+
+        for(PBFInput group : groups) {
+            this.readPrimitiveGroup(group);
+        }
+
+        return this.elements;
+    }
+
+    /**
+     * @param blob serialized Blob message
+     * @return uncompressed content of that blob
+     */
+    static byte[] unpackBlob(byte[] blob) throws IOException {
+        PBFInput in = new PBFInput(blob);
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = 0;
+
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: raw = in.readBytes(); break;
+                case 2: rawSize = in.readInt32(); break;
+                case 3: zlib = in.readBytes(); break;
+                case 4: throw new IOException("lzma compressed pbf blobs are not supported");
+                default: in.skipField();
+            }
+        }
+
+        if(raw != null) {
+            return raw;
+        }
+
+        if(zlib == null) {
+            throw new IOException("pbf blob contains no data");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] result = new byte[rawSize];
+            int length = inflater.inflate(result);
+            if(length != rawSize) {
+                throw new IOException("pbf blob: unexpected size after inflating: " + length + " instead of " + rawSize);
+            }
+            return result;
+        }
+        catch(DataFormatException e) {
+            throw new IOException("pbf blob: cannot inflate: " + e.getMessage());
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private void readStringTable(PBFInput in) throws IOException {
+        ArrayList<String> s = new ArrayList<>();
+        while(in.readTag() != 0) {
+            if(in.getWireType() == PBFInput.WIRETYPE_LENGTH_DELIMITED) {
+                s.add(in.readString());
+            } else {
+                in.skipField();
+            }
+        }
+        this.strings = s.toArray(new String[s.size()]);
+    }
+
+    private void readPrimitiveGroup(PBFInput in) throws IOException {
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: this.readNode(in.readMessage()); break;
+                case 2: this.readDenseNodes(in.readMessage()); break;
+                case 3: this.readWay(in.readMessage()); break;
+                case 4: this.readRelation(in.readMessage()); break;
+                default: in.skipField(); // changesets
+            }
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                           formatting                            //
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * format coordinate like osm xml planet dumps do: seven decimal places
+     * @param nanoDegrees coordinate in 1e-9 degrees
+     */
+    static String formatCoordinate(long nanoDegrees) {
+        // osm precision is 1e-7 degrees
+        long value = nanoDegrees / 100;
+
+        StringBuilder sb = new StringBuilder(12);
+        if(value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(value / 10000000);
+        sb.append('.');
+        String fraction = Long.toString(value % 10000000);
+        for(int i = fraction.length(); i < 7; i++) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+
+        return sb.toString();
+    }
+
+    private String formatTimestamp(long timestamp) {
+        long millis = timestamp * this.dateGranularity;
+        return Instant.ofEpochSecond(millis / 1000).toString();
+    }
+
+    /**
+     * @return string of the string table of this block
+     */
+    private String getString(int index) throws IOException {
+        if(this.strings == null || index < 0 || index >= this.strings.length) {
+            throw new IOException("malformed pbf: no string " + index + " in string table");
+        }
+        return this.strings[index];
+    }
+
+    private String[] getTags(int[] keys, int[] values) throws IOException {
+        if(keys == null || keys.length == 0) {
+            return null;
+        }
+        if(values == null || values.length != keys.length) {
+            throw new IOException("malformed pbf: " + keys.length + " keys but "
+                    + (values == null ? 0 : values.length) + " values");
+        }
+
+        String[] tags = new String[keys.length * 2];
+        for(int i = 0; i < keys.length; i++) {
+            tags[2*i] = this.getString(keys[i]);
+            tags[2*i+1] = this.getString(values[i]);
+        }
+
+        return tags;
+    }
+
+    private void readInfo(PBFInput in, PBFElement element) throws IOException {
+        boolean hasTimestamp = false;
+        long timestamp = 0;
+        int uid = 0;
+        int userSid = -1;
+
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 2: timestamp = in.readInt64(); hasTimestamp = true; break;
+                case 4: uid = in.readInt32(); break;
+                case 5: userSid = in.readInt32(); break;
+                default: in.skipField();
+            }
+        }
+
+        if(hasTimestamp) {
+            element.timestamp = this.formatTimestamp(timestamp);
+            element.uid = Integer.toString(uid);
+            if(userSid >= 0) {
+                element.user = this.getString(userSid);
+            }
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                             elements                            //
+    /////////////////////////////////////////////////////////////////////
+
+    private void readNode(PBFInput in) throws IOException {
+        PBFElement node = new PBFElement();
+        node.type = PBFElement.NODE;
+
+        int[] keys = null;
+        int[] values = null;
+        long lat = 0, lon = 0;
+
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: node.id = in.readSInt64(); break;
+                case 2: keys = in.readPackedInts(false, false); break;
+                case 3: values = in.readPackedInts(false, false); break;
+                case 4: this.readInfo(in.readMessage(), node); break;
+                case 8: lat = in.readSInt64(); break;
+                case 9: lon = in.readSInt64(); break;
+                default: in.skipField();
+            }
+        }
+
+        node.lat = formatCoordinate(this.latOffset + this.granularity * lat);
+        node.lon = formatCoordinate(this.lonOffset + this.granularity * lon);
+        node.tags = this.getTags(keys, values);
+
+        this.elements.add(node);
+    }
+
+    private void readDenseNodes(PBFInput in) throws IOException {
+        long[] ids = null, lats = null, lons = null;
+        int[] keysVals = null;
+
+        // dense info
+        long[] timestamps = null;
+        int[] uids = null, userSids = null;
+
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: ids = in.readPackedLongs(true, true); break;
+                case 5: {
+                    PBFInput info = in.readMessage();
+                    int infoField;
+                    while((infoField = info.readTag()) != 0) {
+                        switch(infoField) {
+                            case 2: timestamps = info.readPackedLongs(true, true); break;
+                            case 4: uids = info.readPackedInts(true, true); break;
+                            case 5: userSids = info.readPackedInts(true, true); break;
+                            default: info.skipField();
+                        }
+                    }
+                }
+                break;
+                case 8: lats = in.readPackedLongs(true, true); break;
+                case 9: lons = in.readPackedLongs(true, true); break;
+                case 10: keysVals = in.readPackedInts(false, false); break;
+                default: in.skipField();
+            }
+        }
+
+        if(ids == null) return;
+
+        // each node has a coordinate, dense info has a value for each node if present
+        PBFBlockDecoder.checkDenseColumn("lat", lats != null ? lats.length : 0, ids.length);
+        PBFBlockDecoder.checkDenseColumn("lon", lons != null ? lons.length : 0, ids.length);
+        if(timestamps != null) {
+            PBFBlockDecoder.checkDenseColumn("timestamp", timestamps.length, ids.length);
+            if(uids != null) PBFBlockDecoder.checkDenseColumn("uid", uids.length, ids.length);
+            if(userSids != null) PBFBlockDecoder.checkDenseColumn("user_sid", userSids.length, ids.length);
+        }
+
+        int kvIndex = 0;
+        for(int i = 0; i < ids.length; i++) {
+            PBFElement node = new PBFElement();
+            node.type = PBFElement.NODE;
+            node.id = ids[i];
+            node.lat = formatCoordinate(this.latOffset + this.granularity * lats[i]);
+            node.lon = formatCoordinate(this.lonOffset + this.granularity * lons[i]);
+
+            if(timestamps != null) {
+                node.timestamp = this.formatTimestamp(timestamps[i]);
+                node.uid = uids != null ? Integer.toString(uids[i]) : null;
+                node.user = userSids != null ? this.getString(userSids[i]) : null;
+            }
+
+            // keys_vals: (key, value)* 0 for each node
+            if(keysVals != null && kvIndex < keysVals.length) {
+                int start = kvIndex;
+                while(keysVals[kvIndex] != 0) {
+                    // a key needs a value and the list of each node ends with 0
+                    if(kvIndex + 2 >= keysVals.length) {
+                        throw new IOException("malformed pbf: keys_vals of dense node " + node.id
+                                + " are not terminated");
+                    }
+                    kvIndex += 2;
+                }
+                int number = (kvIndex - start) / 2;
+                if(number > 0) {
+                    node.tags = new String[number * 2];
+                    for(int t = 0; t < number * 2; t++) {
+                        node.tags[t] = this.getString(keysVals[start + t]);
+                    }
+                }
+                kvIndex++; // move over delimiter
+            }
+
+            this.elements.add(node);
+        }
+    }
+
+    private static void checkDenseColumn(String name, int length, int nodes) throws IOException {
+        if(length != nodes) {
+            throw new IOException("malformed pbf: " + nodes + " dense nodes but " + length + " " + name + " values");
+        }
+    }
+
+    private void readWay(PBFInput in) throws IOException {
+        PBFElement way = new PBFElement();
+        way.type = PBFElement.WAY;
+
+        int[] keys = null;
+        int[] values = null;
+
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: way.id = in.readInt64(); break;
+                case 2: keys = in.readPackedInts(false, false); break;
+                case 3: values = in.readPackedInts(false, false); break;
+                case 4: this.readInfo(in.readMessage(), way); break;
+                case 8: way.refs = in.readPackedLongs(true, true); break;
+                default: in.skipField();
+            }
+        }
+
+        way.tags = this.getTags(keys, values);
+        this.elements.add(way);
+    }
+
+    private void readRelation(PBFInput in) throws IOException {
+        PBFElement relation = new PBFElement();
+        relation.type = PBFElement.RELATION;
+
+        int[] keys = null;
+        int[] values = null;
+        int[] roles = null;
+
+        int field;
+        while((field = in.readTag()) != 0) {
+            switch(field) {
+                case 1: relation.id = in.readInt64(); break;
+                case 2: keys = in.readPackedInts(false, false); break;
+                case 3: values = in.readPackedInts(false, false); break;
+                case 4: this.readInfo(in.readMessage(), relation); break;
+                case 8: roles = in.readPackedInts(false, false); break;
+                case 9: relation.refs = in.readPackedLongs(true, true); break;
+                case 10: relation.memberTypes = in.readPackedInts(false, false); break;
+                default: in.skipField();
+            }
+        }
+
+        relation.tags = this.getTags(keys, values);
+
+        // each member has a type and a role: a missing role is empty, a missing type malformed
+        int members = relation.refs != null ? relation.refs.length : 0;
+        if(relation.refs == null) {
+            relation.refs = new long[0];
+        }
+        if(relation.memberTypes == null) {
+            if(members > 0) {
+                throw new IOException("malformed pbf: relation " + relation.id + " has " + members
+                        + " members but no member types");
+            }
+            relation.memberTypes = new int[0];
+        } else if(relation.memberTypes.length != members) {
+            throw new IOException("malformed pbf: relation " + relation.id + " has " + members
+                    + " members but " + relation.memberTypes.length + " member types");
+        }
+        for(int type : relation.memberTypes) {
+            if(type < 0 || type >= PBFElement.TYPE_NAMES.length) {
+                throw new IOException("malformed pbf: relation " + relation.id + " has member type " + type);
+            }
+        }
+
+        relation.memberRoles = new String[members];
+        if(roles == null) {
+            Arrays.fill(relation.memberRoles, "");
+        } else if(roles.length != members) {
+            throw new IOException("malformed pbf: relation " + relation.id + " has " + members
+                    + " members but " + roles.length + " roles");
+        } else {
+            for(int i = 0; i < roles.length; i++) {
+                relation.memberRoles[i] = this.getString(roles[i]);
+            }
+        }
+
+        this.elements.add(relation);
+    }
+}
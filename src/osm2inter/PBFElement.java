@@ -0,0 +1,36 @@
+package osm2inter;
+
+/**
+ * A node, way or relation decoded from an OSMData blob. Values are already
+ * formatted like the attributes of the corresponding osm xml element, so
+ * importers cannot tell whether an element came from xml or pbf.
+ */
+class PBFElement {
+    static final int NODE = 0;
+    static final int WAY = 1;
+    static final int RELATION = 2;
+
+    static final String[] TYPE_NAMES = {"node", "way", "relation"};
+
+    int type;
+    long id;
+
+    // null if block has no (dense) info
+    String timestamp;
+    String uid;
+    String user;
+
+    // node only
+    String lon;
+    String lat;
+
+    // alternating key and value
+    String[] tags;
+
+    // way: node refs - relation: member refs
+    long[] refs;
+
+    // relation only: member type (NODE, WAY, RELATION) and role of each ref
+    int[] memberTypes;
+    String[] memberRoles;
+}
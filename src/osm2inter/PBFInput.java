@@ -0,0 +1,190 @@
+package osm2inter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal reader for the protocol buffer wire format as it is used in
+ * .osm.pbf files. Only varints, zigzag encoded varints, packed fields and
+ * length delimited fields are required to read OSMHeader and OSMData blobs.
+ */
+class PBFInput {
+    static final int WIRETYPE_VARINT = 0;
+    static final int WIRETYPE_FIXED64 = 1;
+    static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    static final int WIRETYPE_FIXED32 = 5;
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    private int lastTag = 0;
+
+    PBFInput(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    PBFInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasMore() {
+        return this.position < this.limit;
+    }
+
+    /**
+     * read next field key
+     * @return field number or 0 if end of message is reached
+     */
+    int readTag() throws IOException {
+        if(!this.hasMore()) {
+            this.lastTag = 0;
+            return 0;
+        }
+
+        this.lastTag = (int) this.readRawVarint();
+        return this.lastTag >>> 3;
+    }
+
+    int getWireType() {
+        return this.lastTag & 0x7;
+    }
+
+    long readRawVarint() throws IOException {
+        long result = 0;
+        int shift = 0;
+        while(shift < 64) {
+            if(this.position >= this.limit) {
+                throw new IOException("malformed pbf: varint exceeds message boundary");
+            }
+            byte b = this.buffer[this.position++];
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new IOException("malformed pbf: varint too long");
+    }
+
+    long readInt64() throws IOException {
+        return this.readRawVarint();
+    }
+
+    int readInt32() throws IOException {
+        return (int) this.readRawVarint();
+    }
+
+    long readSInt64() throws IOException {
+        long n = this.readRawVarint();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    int readSInt32() throws IOException {
+        return (int) this.readSInt64();
+    }
+
+    boolean readBool() throws IOException {
+        return this.readRawVarint() != 0;
+    }
+
+    /**
+     * @return length of next length delimited field
+     */
+    int readLength() throws IOException {
+        int length = (int) this.readRawVarint();
+        if(length < 0 || this.position + length > this.limit) {
+            throw new IOException("malformed pbf: length delimited field exceeds message boundary");
+        }
+        return length;
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = this.readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(this.buffer, this.position, bytes, 0, length);
+        this.position += length;
+        return bytes;
+    }
+
+    String readString() throws IOException {
+        int length = this.readLength();
+        String s = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+        this.position += length;
+        return s;
+    }
+
+    /**
+     * @return a reader for an embedded message, this reader is moved behind it
+     */
+    PBFInput readMessage() throws IOException {
+        int length = this.readLength();
+        PBFInput message = new PBFInput(this.buffer, this.position, length);
+        this.position += length;
+        return message;
+    }
+
+    /**
+     * skip value of the field which key was read last
+     */
+    void skipField() throws IOException {
+        switch(this.getWireType()) {
+            case WIRETYPE_VARINT:
+                this.readRawVarint();
+                break;
+            case WIRETYPE_FIXED64:
+                this.position += 8;
+                break;
+            case WIRETYPE_LENGTH_DELIMITED:
+                this.position += this.readLength();
+                break;
+            case WIRETYPE_FIXED32:
+                this.position += 4;
+                break;
+            default:
+                throw new IOException("malformed pbf: unsupported wire type " + this.getWireType());
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                          packed fields                          //
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * read packed repeated (s)int(32|64) values. Each value can be
+     * zigzag decoded and delta decoded.
+     */
+    long[] readPackedLongs(boolean zigzag, boolean delta) throws IOException {
+        PBFInput packed = this.readMessage();
+
+        // count values first - a varint ends with a byte without msb set
+        int count = 0;
+        for(int i = packed.position; i < packed.limit; i++) {
+            if((packed.buffer[i] & 0x80) == 0) count++;
+        }
+
+        long[] values = new long[count];
+        long last = 0;
+        for(int i = 0; i < count; i++) {
+            long v = zigzag ? packed.readSInt64() : packed.readRawVarint();
+            if(delta) {
+                last += v;
+                v = last;
+            }
+            values[i] = v;
+        }
+
+        return values;
+    }
+
+    int[] readPackedInts(boolean zigzag, boolean delta) throws IOException {
+        long[] longs = this.readPackedLongs(zigzag, delta);
+        int[] ints = new int[longs.length];
+        for(int i = 0; i < longs.length; i++) {
+            ints[i] = (int) longs[i];
+        }
+        return ints;
+    }
+}
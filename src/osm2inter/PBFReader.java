@@ -0,0 +1,301 @@
+package osm2inter;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an .osm.pbf file and feeds its content into a sax handler like
+ * COPY_OSMImporter or SQL_OSMImporter.
+ *
+ * OSMData blobs are decompressed and decoded on a worker pool. Decoded blocks
+ * are handed to the handler strictly in file order on the calling thread.
+ * Thus, the handler sees the same sequence of node / way / relation, tag, nd
+ * and member events as it would see when parsing the xml version of that file
+ * and produces identical intermediate tables.
+ *
+ * Blobs are compressed independently. An import can be checkpointed at
+ * blob boundaries and resumed there, see ImportCheckpoint.
+ */
+public class PBFReader {
+    public static final String PBF_SUFFIX = ".pbf";
+
+    private static final String BLOB_HEADER = "OSMHeader";
+    private static final String BLOB_DATA = "OSMData";
+
+    // blob header and blob size limits as defined in pbf format description
+    private static final int MAX_BLOB_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final String[] SUPPORTED_FEATURES = {"OsmSchema-V0.6", "DenseNodes"};
+
+    private final File pbfFile;
+    private final int threads;
+
+    private final LocatorImpl locator = new LocatorImpl();
+    private long blocks = 0;
+
+    private ImportCheckpoint checkpoint = null;
+    private long startOffset = 0;
+
+    /**
+     * @param pbfFile .osm.pbf file
+     * @param threads number of decoder threads
+     */
+    public PBFReader(File pbfFile, int threads) {
+        this.pbfFile = pbfFile;
+        this.threads = threads > 0 ? threads : 1;
+    }
+
+    /**
+     * take checkpoints after data blocks, parse starts at offset of that
+     * checkpoint (data blocks in front are skipped without decoding)
+     */
+    public void setCheckpoint(ImportCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        this.startOffset = checkpoint.getOffset();
+    }
+
+    public static boolean isPBFFile(String fileName) {
+        return fileName != null && fileName.toLowerCase().endsWith(PBF_SUFFIX);
+    }
+
+    public void parse(DefaultHandler handler) throws IOException, SAXException {
+        ExecutorService decoderPool = Executors.newFixedThreadPool(this.threads);
+
+        // keep some blocks in flight, but not the whole file
+        int maxPending = this.threads * 2;
+        ArrayDeque<Future<List<PBFElement>>> pending = new ArrayDeque<>();
+        // file offsets behind pending blocks
+        ArrayDeque<Long> pendingEnds = new ArrayDeque<>();
+        long position = 0;
+
+        this.locator.setSystemId(this.pbfFile.getAbsolutePath());
+        handler.setDocumentLocator(this.locator);
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(this.pbfFile), 1024 * 1024))) {
+
+            handler.startDocument();
+
+            while(true) {
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                }
+                catch(EOFException e) {
+                    break; // regular end of file
+                }
+
+                if(headerSize < 0 || headerSize > MAX_BLOB_HEADER_SIZE) {
+                    throw new IOException("malformed pbf: blob header size " + headerSize);
+                }
+
+                byte[] header = new byte[headerSize];
+                in.readFully(header);
+                position += 4 + headerSize;
+
+                String type = null;
+                int dataSize = 0;
+                PBFInput headerInput = new PBFInput(header);
+                int field;
+                while((field = headerInput.readTag()) != 0) {
+                    switch(field) {
+                        case 1: type = headerInput.readString(); break;
+                        case 3: dataSize = headerInput.readInt32(); break;
+                        default: headerInput.skipField();
+                    }
+                }
+
+                if(dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                    throw new IOException("malformed pbf: blob size " + dataSize);
+                }
+
+                if(!BLOB_HEADER.equals(type) && position < this.startOffset) {
+                    // imported before checkpoint
+                    this.skip(in, dataSize);
+                    position += dataSize;
+                    if(position > this.startOffset) {
+                        throw new IOException("checkpoint offset " + this.startOffset + " is no pbf block boundary");
+                    }
+                    continue;
+                }
+
+                byte[] blob = new byte[dataSize];
+                in.readFully(blob);
+                position += dataSize;
+
+                if(BLOB_HEADER.equals(type)) {
+                    this.checkHeaderBlock(blob);
+                } else if(BLOB_DATA.equals(type)) {
+                    pending.add(decoderPool.submit(new PBFBlockDecoder(blob)));
+                    pendingEnds.add(position);
+
+                    if(pending.size() >= maxPending) {
+                        this.emit(handler, pending.poll());
+                        this.blockDone(pendingEnds.poll());
+                    }
+                }
+                // unknown blob types are to be skipped
+            }
+
+            while(!pending.isEmpty()) {
+                this.emit(handler, pending.poll());
+                this.blockDone(pendingEnds.poll());
+            }
+
+            handler.endDocument();
+        }
+        finally {
+            decoderPool.shutdownNow();
+        }
+
+        System.out.println("read " + this.blocks + " pbf data blocks from " + this.pbfFile.getName());
+    }
+
+    private void skip(DataInputStream in, int bytes) throws IOException {
+        int skipped = 0;
+        while(skipped < bytes) {
+            int s = in.skipBytes(bytes - skipped);
+            if(s <= 0) {
+                throw new EOFException("pbf file ends within a block");
+            }
+            skipped += s;
+        }
+    }
+
+    /**
+     * all elements up to that file offset are handed to the handler
+     */
+    private void blockDone(long end) throws IOException {
+        if(this.checkpoint != null && this.checkpoint.isDue(end)) {
+            try {
+                this.checkpoint.write(end);
+            }
+            catch(SQLException e) {
+                throw new IOException("cannot write checkpoint: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private void checkHeaderBlock(byte[] blob) throws IOException {
+        PBFInput in = new PBFInput(PBFBlockDecoder.unpackBlob(blob));
+        int field;
+        while((field = in.readTag()) != 0) {
+            if(field == 4) { // required_features
+                String feature = in.readString();
+                boolean supported = false;
+                for(String s : SUPPORTED_FEATURES) {
+                    if(s.equals(feature)) {
+                        supported = true;
+                        break;
+                    }
+                }
+                if(!supported) {
+                    throw new IOException("pbf file requires unsupported feature: " + feature);
+                }
+            } else {
+                in.skipField();
+            }
+        }
+    }
+
+    private void emit(DefaultHandler handler, Future<List<PBFElement>> block)
+            throws IOException, SAXException {
+
+        List<PBFElement> elements;
+        try {
+            elements = block.get();
+        }
+        catch(InterruptedException e) {
+            throw new IOException("interrupted while decoding pbf block");
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("cannot decode pbf block: " + cause.getMessage(), cause);
+        }
+
+        this.blocks++;
+        this.locator.setLineNumber((int) Math.min(this.blocks, Integer.MAX_VALUE));
+
+        for(PBFElement element : elements) {
+            this.emit(handler, element);
+        }
+    }
+
+    /**
+     * replay element as sax events with the attributes of an osm xml element
+     */
+    private void emit(DefaultHandler handler, PBFElement element) throws SAXException {
+        String qName = PBFElement.TYPE_NAMES[element.type];
+
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "id", "id", "CDATA", Long.toString(element.id));
+        if(element.type == PBFElement.NODE) {
+            attributes.addAttribute("", "lat", "lat", "CDATA", element.lat);
+            attributes.addAttribute("", "lon", "lon", "CDATA", element.lon);
+        }
+        if(element.timestamp != null) {
+            attributes.addAttribute("", "timestamp", "timestamp", "CDATA", element.timestamp);
+        }
+        if(element.uid != null) {
+            attributes.addAttribute("", "uid", "uid", "CDATA", element.uid);
+        }
+        if(element.user != null) {
+            attributes.addAttribute("", "user", "user", "CDATA", element.user);
+        }
+
+        handler.startElement("", qName, qName, attributes);
+
+        if(element.type == PBFElement.WAY && element.refs != null) {
+            for(long ref : element.refs) {
+                attributes.clear();
+                attributes.addAttribute("", "ref", "ref", "CDATA", Long.toString(ref));
+                handler.startElement("", "nd", "nd", attributes);
+                handler.endElement("", "nd", "nd");
+            }
+        }
+
+        if(element.type == PBFElement.RELATION && element.refs != null) {
+            for(int i = 0; i < element.refs.length; i++) {
+                attributes.clear();
+                attributes.addAttribute("", "type", "type", "CDATA",
+                        PBFElement.TYPE_NAMES[element.memberTypes[i]]);
+                attributes.addAttribute("", "ref", "ref", "CDATA", Long.toString(element.refs[i]));
+                attributes.addAttribute("", "role", "role", "CDATA", element.memberRoles[i]);
+                handler.startElement("", "member", "member", attributes);
+                handler.endElement("", "member", "member");
+            }
+        }
+
+        if(element.tags != null) {
+            for(int i = 0; i < element.tags.length; i += 2) {
+                attributes.clear();
+                attributes.addAttribute("", "k", "k", "CDATA", element.tags[i]);
+                attributes.addAttribute("", "v", "v", "CDATA", element.tags[i+1]);
+                handler.startElement("", "tag", "tag", attributes);
+                handler.endElement("", "tag", "tag");
+            }
+        }
+
+        handler.endElement("", qName, qName);
+    }
+}
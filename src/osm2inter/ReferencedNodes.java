@@ -0,0 +1,112 @@
+package osm2inter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import util.NodeIdBitSet;
+import util.Util;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * First pass of an import with nodeFilter: collects ids of all nodes used by
+ * ways and of all nodes which are relation members. The import uses both sets
+ * to leave out untagged nodes nobody refers to, see COPY_OSMImporter.
+ */
+public class ReferencedNodes extends DefaultHandler {
+    private final NodeIdBitSet wayNodes = new NodeIdBitSet();
+    private final NodeIdBitSet memberNodes = new NodeIdBitSet();
+
+    private boolean inWay = false;
+    private boolean inRelation = false;
+    private long malformed = 0;
+
+    /**
+     * parse whole osm (xml or pbf) file and collect referenced node ids
+     * @param decoderThreads pbf decoder threads
+     */
+    public static ReferencedNodes collect(File osmFile, int decoderThreads)
+            throws IOException, SAXException, ParserConfigurationException {
+
+        long start = System.currentTimeMillis();
+        System.out.println("collect referenced nodes in " + osmFile.getName());
+
+        ReferencedNodes referencedNodes = new ReferencedNodes();
+        if(PBFReader.isPBFFile(osmFile.getName())) {
+            new PBFReader(osmFile, decoderThreads).parse(referencedNodes);
+        } else {
+            SAXParserFactory.newInstance().newSAXParser().parse(osmFile, referencedNodes);
+        }
+
+        System.out.println("found " + Util.getValueWithDots(referencedNodes.wayNodes.size()) + " way nodes and "
+                + Util.getValueWithDots(referencedNodes.memberNodes.size()) + " relation member nodes ("
+                + Util.getValueWithDots(referencedNodes.wayNodes.getAllocatedBytes()
+                    + referencedNodes.memberNodes.getAllocatedBytes()) + " bytes) in "
+                + Util.getElapsedTime(start));
+        if(referencedNodes.malformed > 0) {
+            System.err.println("ignored " + referencedNodes.malformed + " references without valid node id");
+        }
+
+        return referencedNodes;
+    }
+
+    /**
+     * @return true if a way or relation refers to that node
+     */
+    public boolean isReferenced(long id) {
+        return this.wayNodes.get(id) || this.memberNodes.get(id);
+    }
+
+    /**
+     * @return true if that node is member of a relation
+     */
+    public boolean isRelationMember(long id) {
+        return this.memberNodes.get(id);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch(qName) {
+            case "way":
+                this.inWay = true;
+                break;
+            case "relation":
+                this.inRelation = true;
+                break;
+            case "nd":
+                if(this.inWay) {
+                    this.add(this.wayNodes, attributes.getValue("ref"));
+                }
+                break;
+            case "member":
+                if(this.inRelation && "node".equalsIgnoreCase(attributes.getValue("type"))) {
+                    this.add(this.memberNodes, attributes.getValue("ref"));
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        switch(qName) {
+            case "way":
+                this.inWay = false;
+                break;
+            case "relation":
+                this.inRelation = false;
+                break;
+        }
+    }
+
+    private void add(NodeIdBitSet ids, String ref) {
+        try {
+            ids.set(Long.parseLong(ref));
+        }
+        catch(IllegalArgumentException e) {
+            this.malformed++;
+        }
+    }
+}
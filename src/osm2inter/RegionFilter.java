@@ -0,0 +1,297 @@
+package osm2inter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import util.NodeIdBitSet;
+import util.Util;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Clipped import: keeps nodes inside an ImportRegion and complete ways and
+ * relations touching it. Ids to be imported are collected before import:
+ * <br>
+ * 1st pass: nodes inside region, ways with at least one of them (and all
+ * their nodes), relations with a member node inside region or a member
+ * way / relation already kept (and their member nodes and ways).<br>
+ * 2nd pass (only if required): nodes of member ways of kept relations which
+ * do not touch region themselves - multipolygons stay complete.
+ * <br>
+ * Import handlers are wrapped by filter() which drops all sax events of
+ * elements not to be imported.
+ */
+public class RegionFilter {
+    private final ImportRegion region;
+
+    private final NodeIdBitSet insideNodes = new NodeIdBitSet();
+    private final NodeIdBitSet nodes = new NodeIdBitSet();
+    private final NodeIdBitSet ways = new NodeIdBitSet();
+    private final NodeIdBitSet relations = new NodeIdBitSet();
+
+    // member ways of kept relations which are not kept by 1st pass
+    private final NodeIdBitSet memberWays = new NodeIdBitSet();
+    private long missingMemberWays = 0;
+
+    private RegionFilter(ImportRegion region) {
+        this.region = region;
+    }
+
+    /**
+     * parse osm (xml or pbf) file once or twice and collect ids of all
+     * elements to be imported
+     * @param decoderThreads pbf decoder threads
+     */
+    public static RegionFilter collect(File osmFile, ImportRegion region, int decoderThreads)
+            throws IOException, SAXException, ParserConfigurationException {
+
+        long start = System.currentTimeMillis();
+        System.out.println("collect elements of " + osmFile.getName() + " in region " + region);
+
+        RegionFilter filter = new RegionFilter(region);
+        RegionPass regionPass = filter.new RegionPass();
+        RegionFilter.parse(osmFile, regionPass, decoderThreads);
+
+        if(filter.missingMemberWays > 0) {
+            System.out.println("read nodes of " + Util.getValueWithDots(filter.missingMemberWays)
+                    + " relation member ways outside region");
+            RegionFilter.parse(osmFile, filter.new MemberWayPass(), decoderThreads);
+        }
+
+        System.out.println("region: " + Util.getValueWithDots(filter.insideNodes.size()) + " nodes inside, import "
+                + Util.getValueWithDots(filter.nodes.size()) + " nodes, "
+                + Util.getValueWithDots(filter.ways.size()) + " ways, "
+                + Util.getValueWithDots(filter.relations.size()) + " relations, took "
+                + Util.getElapsedTime(start));
+        if(regionPass.malformed > 0) {
+            System.err.println("region: ignored " + regionPass.malformed + " elements without valid id or location");
+        }
+
+        return filter;
+    }
+
+    private static void parse(File osmFile, DefaultHandler handler, int decoderThreads)
+            throws IOException, SAXException, ParserConfigurationException {
+        if(PBFReader.isPBFFile(osmFile.getName())) {
+            new PBFReader(osmFile, decoderThreads).parse(handler);
+        } else {
+            SAXParserFactory.newInstance().newSAXParser().parse(osmFile, handler);
+        }
+    }
+
+    /**
+     * @return handler which passes events of elements to be imported to
+     * that handler. Each importer needs its own.
+     */
+    public DefaultHandler filter(DefaultHandler handler) {
+        return new FilteringHandler(handler);
+    }
+
+    private boolean isIncluded(String qName, String id) {
+        long osmID;
+        try {
+            osmID = Long.parseLong(id);
+        }
+        catch(NumberFormatException e) {
+            // importer reports it
+            return true;
+        }
+
+        switch(qName) {
+            case "node": return this.nodes.get(osmID);
+            case "way": return this.ways.get(osmID);
+            default: return this.relations.get(osmID);
+        }
+    }
+
+    private static boolean isMainElement(String qName) {
+        return "node".equals(qName) || "way".equals(qName) || "relation".equals(qName);
+    }
+
+    /**
+     * 1st pass over osm file
+     */
+    private class RegionPass extends DefaultHandler {
+        private long id;
+        private boolean touches;
+        private long malformed = 0;
+
+        // refs of current way or relation, types of relation members
+        private long[] refs = new long[256];
+        private char[] types = new char[256];
+        private int refCount;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            try {
+                switch(qName) {
+                    case "node":
+                        long nodeID = Long.parseLong(attributes.getValue("id"));
+                        double lon = Double.parseDouble(attributes.getValue("lon"));
+                        double lat = Double.parseDouble(attributes.getValue("lat"));
+                        if(region.contains(lon, lat)) {
+                            insideNodes.set(nodeID);
+                            nodes.set(nodeID);
+                        }
+                        break;
+                    case "way":
+                    case "relation":
+                        this.id = Long.MIN_VALUE;
+                        this.touches = false;
+                        this.refCount = 0;
+                        this.id = Long.parseLong(attributes.getValue("id"));
+                        break;
+                    case "nd":
+                        long ref = Long.parseLong(attributes.getValue("ref"));
+                        this.touches |= insideNodes.get(ref);
+                        this.addRef(ref, 'n');
+                        break;
+                    case "member":
+                        long memberRef = Long.parseLong(attributes.getValue("ref"));
+                        String type = attributes.getValue("type");
+                        if("node".equalsIgnoreCase(type)) {
+                            this.touches |= insideNodes.get(memberRef);
+                            this.addRef(memberRef, 'n');
+                        } else if("way".equalsIgnoreCase(type)) {
+                            this.touches |= ways.get(memberRef);
+                            this.addRef(memberRef, 'w');
+                        } else if("relation".equalsIgnoreCase(type)) {
+                            this.touches |= relations.get(memberRef);
+                        }
+                        break;
+                }
+            }
+            catch(NumberFormatException | NullPointerException e) {
+                this.malformed++;
+            }
+        }
+
+        private void addRef(long ref, char type) {
+            if(this.refCount == this.refs.length) {
+                this.refs = Arrays.copyOf(this.refs, this.refCount * 2);
+                this.types = Arrays.copyOf(this.types, this.refCount * 2);
+            }
+            this.refs[this.refCount] = ref;
+            this.types[this.refCount++] = type;
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if(!this.touches || this.id == Long.MIN_VALUE) {
+                return;
+            }
+
+            switch(qName) {
+                case "way":
+                    ways.set(this.id);
+                    for(int i = 0; i < this.refCount; i++) {
+                        nodes.set(this.refs[i]);
+                    }
+                    break;
+                case "relation":
+                    relations.set(this.id);
+                    for(int i = 0; i < this.refCount; i++) {
+                        if(this.types[i] == 'n') {
+                            nodes.set(this.refs[i]);
+                        } else if(!ways.get(this.refs[i]) && !memberWays.get(this.refs[i])) {
+                            memberWays.set(this.refs[i]);
+                            missingMemberWays++;
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 2nd pass: keep member ways of kept relations with all their nodes
+     */
+    private class MemberWayPass extends DefaultHandler {
+        private boolean inMemberWay = false;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            try {
+                switch(qName) {
+                    case "way":
+                        long wayID = Long.parseLong(attributes.getValue("id"));
+                        this.inMemberWay = memberWays.get(wayID) && !ways.get(wayID);
+                        if(this.inMemberWay) {
+                            ways.set(wayID);
+                        }
+                        break;
+                    case "nd":
+                        if(this.inMemberWay) {
+                            nodes.set(Long.parseLong(attributes.getValue("ref")));
+                        }
+                        break;
+                }
+            }
+            catch(NumberFormatException e) {
+                // counted in 1st pass
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if("way".equals(qName)) {
+                this.inMemberWay = false;
+            }
+        }
+    }
+
+    /**
+     * passes events of elements to be imported to import handler
+     */
+    private class FilteringHandler extends DefaultHandler {
+        private final DefaultHandler handler;
+        private String skippedElement = null;
+
+        FilteringHandler(DefaultHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+            this.handler.setDocumentLocator(locator);
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            this.handler.startDocument();
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            this.handler.endDocument();
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if(this.skippedElement != null) {
+                return;
+            }
+            if(RegionFilter.isMainElement(qName) && !isIncluded(qName, attributes.getValue("id"))) {
+                this.skippedElement = qName;
+                return;
+            }
+            this.handler.startElement(uri, localName, qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if(this.skippedElement != null) {
+                if(this.skippedElement.equals(qName)) {
+                    this.skippedElement = null;
+                }
+                return;
+            }
+            this.handler.endElement(uri, localName, qName);
+        }
+    }
+}
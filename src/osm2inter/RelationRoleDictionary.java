@@ -0,0 +1,83 @@
+package osm2inter;
+
+import util.DB;
+import util.InterDB;
+import util.SQLStatementQueue;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps relation member roles to small ids for the array layout of the
+ * intermediate db. There are only a few thousand different roles in the
+ * whole planet. Shared by all importer threads, written into table
+ * relationroles after import.
+ */
+public class RelationRoleDictionary {
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final ConcurrentHashMap<String, Integer> roleIDs = new ConcurrentHashMap<>();
+    private final AtomicInteger nextID = new AtomicInteger(0);
+
+    public int getRoleID(String role) {
+        Integer id = this.roleIDs.get(role);
+        if(id != null) {
+            return id;
+        }
+        return this.roleIDs.computeIfAbsent(role, r -> this.nextID.getAndIncrement());
+    }
+
+    public int size() {
+        return this.roleIDs.size();
+    }
+
+    /**
+     * @return all roles and their ids
+     */
+    public Map<String, Integer> getRoleIDs() {
+        return Collections.unmodifiableMap(this.roleIDs);
+    }
+
+    /**
+     * take over role id of an interrupted import, see ImportCheckpoint
+     */
+    public void restore(String role, int id) {
+        this.roleIDs.put(role, id);
+        this.nextID.accumulateAndGet(id + 1, Math::max);
+    }
+
+    /**
+     * write all roles into relationroles table
+     */
+    public void write(SQLStatementQueue sql, String schema) throws SQLException {
+        int inBatch = 0;
+        for(Map.Entry<String, Integer> entry : this.roleIDs.entrySet()) {
+            if(inBatch == 0) {
+                sql.append("INSERT INTO ");
+                sql.append(DB.getFullTableName(schema, InterDB.RELATIONROLES));
+                sql.append(" (id, role) VALUES ");
+            } else {
+                sql.append(", ");
+            }
+            sql.append("(");
+            sql.append(entry.getValue());
+            sql.append(", '");
+            sql.append(entry.getKey().replace("'", "''"));
+            sql.append("')");
+
+            if(++inBatch == INSERT_BATCH_SIZE) {
+                sql.append(";");
+                sql.forceExecute();
+                inBatch = 0;
+            }
+        }
+
+        if(inBatch > 0) {
+            sql.append(";");
+            sql.forceExecute();
+        }
+    }
+}
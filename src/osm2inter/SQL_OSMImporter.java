@@ -8,11 +8,11 @@ import org.xml.sax.Attributes;
 import org.xml.sax.helpers.DefaultHandler;
 import osm.OSMClassification;
 import inter2ohdm.AbstractElement;
-import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import util.BatchInsertConnector;
 import util.DB;
 import util.ManagedFileSQLStatementQueue;
 import util.Parameter;
@@ -53,6 +53,25 @@ public class SQL_OSMImporter extends DefaultHandler {
     private int maxThreads;
     private final SQLStatementQueue insertQueue;
     private SQLStatementQueue memberQueue;
+
+    // jdbc: parameterized inserts in batches per table, psql: sql files
+    private final boolean batchInsert;
+    private BatchInsertConnector nodeInserts;
+    private BatchInsertConnector wayInserts;
+    private BatchInsertConnector wayNodeInserts;
+    private BatchInsertConnector relationInserts;
+    private BatchInsertConnector memberInserts;
+
+    // values of current element, written at its end
+    private String timestamp;
+    private String longitude;
+    private String latitude;
+    private final List<String> wayNodes = new ArrayList<>();
+    private final List<String[]> members = new ArrayList<>(); // type, ref, role
+
+    private TagFilter tagFilter = null;
+    private boolean dropElement = false;
+    private long droppedElements = 0;
     
     private String currentElementID;
 
@@ -106,17 +125,22 @@ public class SQL_OSMImporter extends DefaultHandler {
             this.insertQueue = new ManagedFileSQLStatementQueue("sql_O2I_insertOSM2Inter", parameter);
             System.out.println("intermediate insert-member queue uses psql and sql files.");
             this.memberQueue = new ManagedFileSQLStatementQueue("sql_O2I_memberOSM2Inter", parameter);
+            this.batchInsert = false;
         } else {
-            System.out.println("intermediate insert-osm-element queue uses jdbc");
-            this.insertQueue = new SQLStatementQueue(this.parameter, this.maxThreads);
-            System.out.println("intermediate insert-member queue uses jdbc");
-            this.memberQueue = new SQLStatementQueue(this.parameter, this.maxThreads);
+            System.out.println("intermediate inserts use jdbc batches");
+            this.insertQueue = null;
+            this.memberQueue = null;
+            this.batchInsert = true;
         }
 
         InterDB.createTables(managementQueue, schema);
         
         this.managementQueue.join();
         this.managementQueue.close();
+
+        if(this.batchInsert) {
+            this.createBatchConnectors();
+        }
         
         this.startTime = System.currentTimeMillis();
         this.lastReconnect = this.startTime;
@@ -141,6 +165,34 @@ public class SQL_OSMImporter extends DefaultHandler {
         UPDATE ways SET is_part=true WHERE osm_id = ?? OR osm_id = ??;
     */
 
+    /**
+     * check each tag (and uid / user) before classification and serialization
+     */
+    public void setTagFilter(TagFilter tagFilter) {
+        this.tagFilter = tagFilter;
+    }
+
+    /**
+     * one connection and prepared insert per table
+     */
+    private void createBatchConnectors() throws SQLException {
+        this.nodeInserts = this.createBatchConnector(InterDB.NODETABLE, "valid", "longitude", "latitude",
+                "osm_id", "tstamp", "classcode", "otherclasscodes", "serializedtags", "has_name");
+        this.wayInserts = this.createBatchConnector(InterDB.WAYTABLE, "valid", "osm_id", "tstamp",
+                "classcode", "otherclasscodes", "serializedtags", "has_name", "node_ids");
+        this.wayNodeInserts = this.createBatchConnector(InterDB.WAYMEMBER, "way_id", "node_id");
+        this.relationInserts = this.createBatchConnector(InterDB.RELATIONTABLE, "valid", "osm_id", "tstamp",
+                "classcode", "otherclasscodes", "serializedtags", "has_name", "member_ids");
+        this.memberInserts = this.createBatchConnector(InterDB.RELATIONMEMBER, "relation_id", "role",
+                "node_id", "way_id", "member_rel_id");
+    }
+
+    private BatchInsertConnector createBatchConnector(String table, String... columns) throws SQLException {
+        int batchSize = this.parameter.getInsertBatchSize(table);
+        System.out.println("insert into " + table + " in batches of " + batchSize + " rows");
+        return new BatchInsertConnector(this.parameter, table, columns, batchSize);
+    }
+
     private boolean wayProcessed = false;
     private boolean relationProcessed = false;
     
@@ -157,6 +209,7 @@ public class SQL_OSMImporter extends DefaultHandler {
         this.otherClassIDs = null;
         this.hasName = false;
         this.admin_level = 0;
+        this.dropElement = false;
         this.currentElementID = attributes.getValue("id");
         
         // could flush sql streams
@@ -166,19 +219,18 @@ public class SQL_OSMImporter extends DefaultHandler {
         this.sAttributes = new StringBuilder();
         
         // serialize uid and user into this.sAttributes
-        Util.serializeAttributes(this.sAttributes, "uid", attributes.getValue("uid"));
-        Util.serializeAttributes(this.sAttributes, "user", attributes.getValue("user"));
+        if(this.keepTag("uid", attributes.getValue("uid"))) {
+            Util.serializeAttributes(this.sAttributes, "uid", attributes.getValue("uid"));
+        }
+        if(this.keepTag("user", attributes.getValue("user"))) {
+            Util.serializeAttributes(this.sAttributes, "user", attributes.getValue("user"));
+        }
         
-        this.insertQueue.append("INSERT INTO ");
+        this.timestamp = attributes.getValue("timestamp");
         switch(this.status) {
             case STATUS_NODE: 
-                
-                this.insertQueue.append(DB.getFullTableName(schema, InterDB.NODETABLE));
-                this.insertQueue.append("(valid, longitude, latitude, osm_id, tstamp, classcode, otherclasscodes, serializedtags, has_name) VALUES (true, ");
-                this.insertQueue.append(attributes.getValue("lon"));
-                this.insertQueue.append(", ");
-                this.insertQueue.append(attributes.getValue("lat"));
-                this.insertQueue.append(", ");
+                this.longitude = attributes.getValue("lon");
+                this.latitude = attributes.getValue("lat");
                 break;
             case STATUS_WAY:
                 if(this.nodeIDs == null || this.nodeIDs.length() > 0) {
@@ -188,13 +240,7 @@ public class SQL_OSMImporter extends DefaultHandler {
                     // could to initial stuff here
                     this.wayProcessed = true;
                 }
-                this.insertQueue.append(DB.getFullTableName(schema, InterDB.WAYTABLE));
-                this.insertQueue.append("(valid, osm_id, tstamp, classcode, otherclasscodes, serializedtags, has_name, node_ids) VALUES (true, ");
-                
-                this.memberQueue.append("INSERT INTO ");
-                this.memberQueue.append(DB.getFullTableName(schema, InterDB.WAYMEMBER));
-                this.memberQueue.append(" (way_id, node_id) VALUES ");
-                
+                this.wayNodes.clear();
                 break;
             case STATUS_RELATION: 
                 // do we need nodeIDs in a relation - dont think so.. TODO
@@ -214,16 +260,9 @@ public class SQL_OSMImporter extends DefaultHandler {
                     // could to initial stuff here
                     this.relationProcessed = true;
                 }
-                this.insertQueue.append(DB.getFullTableName(schema, InterDB.RELATIONTABLE));
-                this.insertQueue.append("(valid, osm_id, tstamp, classcode, otherclasscodes, serializedtags, has_name, member_ids) VALUES (true, ");
-
+                this.members.clear();
                 break;
         }
-        
-        this.insertQueue.append(this.currentElementID);
-        this.insertQueue.append(", '");
-        this.insertQueue.append(attributes.getValue("timestamp"));
-        this.insertQueue.append("', ");
     }
     
     OSMClassification osmClassification = OSMClassification.getOSMClassification();
@@ -238,6 +277,10 @@ public class SQL_OSMImporter extends DefaultHandler {
         
         int number = attributes.getLength();
         
+        if(number == 2 && !this.keepTag(attributes.getValue(0), attributes.getValue(1))) {
+            return;
+        }
+
         // they come as key value pairs        
         // extract key (k) value (v) pairs
         
@@ -245,8 +288,7 @@ public class SQL_OSMImporter extends DefaultHandler {
         while(i < number) {
             
             // handle key: does it describe a osm class
-            if(this.osmClassification.osmFeatureClasses.keySet().
-                        contains(attributes.getValue(i))) {
+            if(this.osmClassification.classExists(attributes.getValue(i))) {
                 /* yes: next value is the subclass
                     value describes subclass
                 */
@@ -296,40 +338,24 @@ public class SQL_OSMImporter extends DefaultHandler {
         
         /*
         add to node_ids builder
-        add to member queue
+        add to way nodes
         */
         if(!this.ndFound) {
             this.ndFound = true;
-            // init update queue
-//            this.updateNodesQueue.append("UPDATE ");
-//            this.updateNodesQueue.append(DB.getFullTableName(schema, InterDB.NODETABLE));
-//            this.updateNodesQueue.append(" SET is_part=true WHERE ");
         } else {
-            this.memberQueue.append(", ");
-//            this.updateNodesQueue.append(" OR ");
-            
             this.nodeIDs.append(",");
         }
         this.nodeIDs.append(attributes.getValue("ref"));
-        
-        this.memberQueue.append("(");
-        this.memberQueue.append(this.currentElementID);
-        this.memberQueue.append(", ");
-        this.memberQueue.append(attributes.getValue("ref"));
-        this.memberQueue.append(")");
-        
-//        this.updateNodesQueue.append("osm_id = ");
-//        this.updateNodesQueue.append(attributes.getValue("ref"));
+        this.wayNodes.add(attributes.getValue("ref"));
     }
     
     boolean wayFound = false;
     boolean relationMemberFound = false;
-    private void addMember(Attributes attributes) throws SQLException {
+    private void addMember(Attributes attributes) {
         if(this.currentElementID.equalsIgnoreCase("2343466")) {
             int i = 42;
         }
         
-        //insert into relationmember (relation_id, role, [node_id | way_id | member_rel_id]) VALUES ();        
         // a new member like: <member type='way' ref='23084475' role='forward' />
         
         // remember id in member list first due to those to found-flags
@@ -340,67 +366,58 @@ public class SQL_OSMImporter extends DefaultHandler {
             this.memberIDs.append(attributes.getValue("ref")); 
 //        }
         
-        this.memberQueue.append("INSERT INTO ");
-        this.memberQueue.append(DB.getFullTableName(schema, InterDB.RELATIONMEMBER));
-        this.memberQueue.append(" (relation_id, role, ");
-        switch(attributes.getValue("type")) {
+        String type = attributes.getValue("type");
+        switch(type) {
             case "node":
-                this.memberQueue.append(" node_id) ");
-                
-                // update nodes
-                if(!this.ndFound) {
-                    this.ndFound = true;
-                    // init update node queue
-//                    this.updateNodesQueue.append("UPDATE ");
-//                    this.updateNodesQueue.append(DB.getFullTableName(schema, InterDB.NODETABLE));
-//                    this.updateNodesQueue.append(" SET is_part=true WHERE ");
-                } else {
-//                    this.updateNodesQueue.append(" OR ");
-                }
-//                this.updateNodesQueue.append("osm_id = ");
-//                this.updateNodesQueue.append(attributes.getValue("ref"));
+                this.ndFound = true;
                 break;
             case "way":
-                this.memberQueue.append(" way_id) ");
-                
-                // update ways
-                if(!this.wayFound) {
-                    this.wayFound = true;
-                    // init update way queue
-//                    this.updateWaysQueue.append("UPDATE ");
-//                    this.updateWaysQueue.append(DB.getFullTableName(schema, InterDB.WAYTABLE));
-//                    this.updateWaysQueue.append(" SET is_part=true WHERE ");
-                } else {
-//                    this.updateWaysQueue.append(" OR ");
-                }
-//                this.updateWaysQueue.append("osm_id = ");
-//                this.updateWaysQueue.append(attributes.getValue("ref"));
+                this.wayFound = true;
                 break;
             case "relation":
                 this.relationMemberFound = true;
-                this.memberQueue.append(" member_rel_id) ");
                 break;
         }
-        
-        // end member statement
-        // end member statement
-        this.memberQueue.append(" VALUES ( ");
-        this.memberQueue.append(this.currentElementID);
-        this.memberQueue.append(", '");
-        this.memberQueue.append(Util.escapeSpecialChar4SQL(attributes.getValue("role")));
-        this.memberQueue.append("', ");
-        this.memberQueue.append(attributes.getValue("ref"));
-        this.memberQueue.append("); ");
-
-        this.memberQueue.couldExecute();
+        this.members.add(new String[]{type, attributes.getValue("ref"), attributes.getValue("role")});
+    }
+
+    /**
+     * @return false if tag filter drops that tag. Element is marked to be
+     * dropped if filter says so.
+     */
+    private boolean keepTag(String key, String value) {
+        if(this.tagFilter == null || key == null || value == null) {
+            return true;
+        }
+        switch(this.tagFilter.check(key, value)) {
+            case TagFilter.KEEP:
+                return true;
+            case TagFilter.DROP_ELEMENT:
+                this.dropElement = true;
+                return false;
+            default:
+                return false;
+        }
+    }
 
+    /**
+     * @return true if tag filter drops current element - nothing is written
+     */
+    private boolean isDropped() {
+        if(this.dropElement) {
+            this.droppedElements++;
+            return true;
+        }
+        return false;
     }
 
     private AbstractElement dummyElement = new AbstractElement();
     
     private void beginEnd() {
-        this.adjustClasscode();
-        
+        this.insertQueue.append(this.currentElementID);
+        this.insertQueue.append(", '");
+        this.insertQueue.append(this.timestamp);
+        this.insertQueue.append("', ");
         this.insertQueue.append(this.currentClassID);
         this.insertQueue.append(", '");
         this.insertQueue.append(InterDB.getString(this.otherClassIDs));
@@ -410,47 +427,118 @@ public class SQL_OSMImporter extends DefaultHandler {
         this.insertQueue.append(Boolean.toString(this.hasName));
     }
     
-    private void endNode() {
+    private void endNode() throws SQLException {
         /*
         insert into nodes (osm_id, longitude, latitude, classcode, serializedtags, valid) VALUES (..);
         */
+        this.adjustClasscode();
+        if(this.batchInsert) {
+            this.nodeInserts.write(true, this.longitude, this.latitude, this.currentElementID, this.timestamp,
+                    this.currentClassID, InterDB.getString(this.otherClassIDs), this.sAttributes.toString(),
+                    this.hasName);
+            return;
+        }
+
+        this.insertQueue.append("INSERT INTO ");
+        this.insertQueue.append(DB.getFullTableName(schema, InterDB.NODETABLE));
+        this.insertQueue.append("(valid, longitude, latitude, osm_id, tstamp, classcode, otherclasscodes, serializedtags, has_name) VALUES (true, ");
+        this.insertQueue.append(this.longitude);
+        this.insertQueue.append(", ");
+        this.insertQueue.append(this.latitude);
+        this.insertQueue.append(", ");
         this.beginEnd();
         this.insertQueue.append(");");
     }
 
-    private void endWay() {
+    private void endWay() throws SQLException {
         /*
         insert into ways (valid, osm_id, classcode, serializedtags, node_ids) VALUES ();
 
         INSERT INTO WAYMEMBER (way_id, node_id) VALUES ();
-        UPDATE nodes SET is_part=true WHERE id = id_nodes OR ...
         */
-        
-//        try {
-            // add remaining parameter; 
-            this.beginEnd();
-            this.insertQueue.append(", '");
-            this.insertQueue.append(this.nodeIDs.toString());
-            this.insertQueue.append("');");
-
-            // finish insert member statement
+        this.adjustClasscode();
+        if(this.batchInsert) {
+            this.wayInserts.write(true, this.currentElementID, this.timestamp, this.currentClassID,
+                    InterDB.getString(this.otherClassIDs), this.sAttributes.toString(), this.hasName,
+                    this.nodeIDs.toString());
+            for(String nodeID : this.wayNodes) {
+                this.wayNodeInserts.write(this.currentElementID, nodeID);
+            }
+            return;
+        }
+
+        this.insertQueue.append("INSERT INTO ");
+        this.insertQueue.append(DB.getFullTableName(schema, InterDB.WAYTABLE));
+        this.insertQueue.append("(valid, osm_id, tstamp, classcode, otherclasscodes, serializedtags, has_name, node_ids) VALUES (true, ");
+        this.beginEnd();
+        this.insertQueue.append(", '");
+        this.insertQueue.append(this.nodeIDs.toString());
+        this.insertQueue.append("');");
+
+        if(!this.wayNodes.isEmpty()) {
+            this.memberQueue.append("INSERT INTO ");
+            this.memberQueue.append(DB.getFullTableName(schema, InterDB.WAYMEMBER));
+            this.memberQueue.append(" (way_id, node_id) VALUES ");
+            for(int i = 0; i < this.wayNodes.size(); i++) {
+                this.memberQueue.append(i > 0 ? ", (" : "(");
+                this.memberQueue.append(this.currentElementID);
+                this.memberQueue.append(", ");
+                this.memberQueue.append(this.wayNodes.get(i));
+                this.memberQueue.append(")");
+            }
             this.memberQueue.append(";");
+        }
     }
 
-    private void endRelation() {
+    private void endRelation() throws SQLException {
         /*
         insert into relations (valid, osm_id, classcode, serializedtags, member_ids) VALUES ();
 
         insert into relationmember (relation_id, role, [node_id | way_id | member_rel_id]) VALUES ();
-        UPDATE nodes SET is_part=true WHERE osm_id = ?? OR osm_id = ??;
-        UPDATE ways SET is_part=true WHERE osm_id = ?? OR osm_id = ??;
         */
-        
-//        try {
-            this.beginEnd();
-            this.insertQueue.append(", '");
-            this.insertQueue.append(this.memberIDs.toString());
-            this.insertQueue.append("');");
+        this.adjustClasscode();
+        if(this.batchInsert) {
+            this.relationInserts.write(true, this.currentElementID, this.timestamp, this.currentClassID,
+                    InterDB.getString(this.otherClassIDs), this.sAttributes.toString(), this.hasName,
+                    this.memberIDs.toString());
+            for(String[] member : this.members) {
+                String type = member[0];
+                this.memberInserts.write(this.currentElementID, member[2],
+                        "node".equals(type) ? member[1] : null,
+                        "way".equals(type) ? member[1] : null,
+                        "relation".equals(type) ? member[1] : null);
+            }
+            return;
+        }
+
+        this.insertQueue.append("INSERT INTO ");
+        this.insertQueue.append(DB.getFullTableName(schema, InterDB.RELATIONTABLE));
+        this.insertQueue.append("(valid, osm_id, tstamp, classcode, otherclasscodes, serializedtags, has_name, member_ids) VALUES (true, ");
+        this.beginEnd();
+        this.insertQueue.append(", '");
+        this.insertQueue.append(this.memberIDs.toString());
+        this.insertQueue.append("');");
+
+        for(String[] member : this.members) {
+            String column;
+            switch(member[0]) {
+                case "node": column = "node_id"; break;
+                case "way": column = "way_id"; break;
+                case "relation": column = "member_rel_id"; break;
+                default: continue;
+            }
+            this.memberQueue.append("INSERT INTO ");
+            this.memberQueue.append(DB.getFullTableName(schema, InterDB.RELATIONMEMBER));
+            this.memberQueue.append(" (relation_id, role, ");
+            this.memberQueue.append(column);
+            this.memberQueue.append(") VALUES (");
+            this.memberQueue.append(this.currentElementID);
+            this.memberQueue.append(", '");
+            this.memberQueue.append(Util.escapeSpecialChar4SQL(member[2]));
+            this.memberQueue.append("', ");
+            this.memberQueue.append(member[1]);
+            this.memberQueue.append("); ");
+        }
     }
 
     @Override
@@ -467,113 +555,36 @@ public class SQL_OSMImporter extends DefaultHandler {
         this.outStream.print("----------------------------------------------------------------");
         this.outStream.print("\nRelation import ended.. wait for import threads to end..\n");
         this.printStatus();
+        if(this.tagFilter != null) {
+            this.outStream.println("elements dropped by tag filter: " + Util.getValueWithDots(this.droppedElements));
+        }
         this.outStream.println("----------------------------------------------------------------");
         
         try {
-//            this.outStream.println("last member queue sql query");
-//            this.outStream.println(this.memberQueue);
-            this.memberQueue.close(); // executes psql process
-            this.insertQueue.close();
-    
-            // do the rest with jdbc
-            this.managementQueue = new SQLStatementQueue(this.parameter, this.maxThreads);
+            if(this.batchInsert) {
+                for(BatchInsertConnector connector : new BatchInsertConnector[] {this.nodeInserts,
+                        this.wayInserts, this.wayNodeInserts, this.relationInserts, this.memberInserts}) {
+                    connector.close();
+                    this.outStream.println(connector.getStatistics());
+                }
+            } else {
+                this.memberQueue.close(); // executes psql process
+                this.insertQueue.close();
+            }
 
             this.printStatus();
             this.outStream.println("create indexes...");
 
-            this.managementQueue.append("CREATE INDEX node_osm_id ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.NODETABLE));
-            this.managementQueue.append(" (osm_id);");
-            this.outStream.println("----------------------------------------------------------------");
-            this.outStream.println("created index on nodes table over osm_id");
-            this.printStatus();
-            this.outStream.println("----------------------------------------------------------------");
-            
-            this.managementQueue.append("CREATE INDEX way_osm_id ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.WAYTABLE));
-            this.managementQueue.append(" (osm_id);");
-            this.outStream.println("index on way table over osm_id");
-            try {
-                this.managementQueue.forceExecute(true);
-            }
-            catch(Exception e) {
-                Util.printExceptionMessage(e, managementQueue, "exception when starting index creation on way table over osm_id");
-            }
+            // in parallel on separate connections, sql-insert has default layout only
+            InterDB.finishImport(this.parameter, false, false, false, false);
 
-            this.managementQueue.append("CREATE INDEX waynodes_node_id ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.WAYMEMBER));
-            this.managementQueue.append(" (node_id);");
-            this.outStream.println("index on waymember table over node_id");
-            
-            this.managementQueue.append("CREATE INDEX waynodes_way_id ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.WAYMEMBER));
-            this.managementQueue.append(" (way_id);");
-            this.outStream.println("index on waymember table over way_id");
-            try {
-                this.managementQueue.forceExecute(true);
-            }
-            catch(Exception e) {
-                Util.printExceptionMessage(e, managementQueue, "exception when starting index creation on waymember table over node_id");
-            }
-            
-//            this.insertQueue.append("CREATE INDEX waynodes_way_id ON ");
-//            this.insertQueue.append(DB.getFullTableName(this.schema, InterDB.WAYMEMBER));
-//            this.insertQueue.append(" (way_id);");
-//            this.outStream.println("index on waymember table over way_id");
-//            try {
-//                this.insertQueue.forceExecute(true);
-//            }
-//            catch(Exception e) {
-//                Util.printExceptionMessage(e, insertQueue, "exception during index creation on waymember table over node_id");
-//            }
-
-            this.managementQueue.append("CREATE INDEX relation_osm_id ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.RELATIONTABLE));
-            this.managementQueue.append(" (osm_id);");
-            this.outStream.println("index on relation table over osm_id");
-            this.managementQueue.forceExecute(true);
-            
-            /*
-            CREATE INDEX relationmember_member_rel_id ON 
-            intermediate.relationmember (member_rel_id);
-            */
-            this.managementQueue.append("CREATE INDEX relationmember_member_rel_id ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.RELATIONMEMBER));
-            this.managementQueue.append(" (member_rel_id);");
-            this.outStream.println("index on relation member table over member_rel_id");
-            this.outStream.flush();
-            this.managementQueue.forceExecute(true);
-                        
-            /*
-            CREATE INDEX relationmember_node_id ON 
-            intermediate.relationmember (node_id);            
-            */
-            this.managementQueue.append("CREATE INDEX relationmember_ids ON ");
-            this.managementQueue.append(DB.getFullTableName(this.schema, InterDB.RELATIONMEMBER));
-            this.managementQueue.append(" (relation_id, node_id, way_id, member_rel_id);");
-            this.outStream.println("index on relation member table over node_id");
-            this.outStream.flush();
-            this.managementQueue.forceExecute(true);
-            
-
-            /*
-            CREATE INDEX relationmember_way_id ON 
-            intermediate.relationmember (node_id);            
-            */
-//            this.insertQueue.append("CREATE INDEX relationmember_way_id ON ");
-//            this.insertQueue.append(DB.getFullTableName(this.schema, InterDB.RELATIONMEMBER));
-//            this.insertQueue.append(" (way_id);");
-//            this.outStream.println("index on relation member table over way_id");
-//            this.outStream.flush();
-//            this.insertQueue.forceExecute();
-            
-            this.managementQueue.close();
-            
             this.outStream.println("index creation successfully");
             
-            // wait for outstanding psql processes
-            this.memberQueue.join();
-            this.insertQueue.join();
+            if(!this.batchInsert) {
+                // wait for outstanding psql processes
+                this.memberQueue.join();
+                this.insertQueue.join();
+            }
 
             this.outStream.println("----------------------------------------------------------------");
             this.outStream.println("OSM import ended");
@@ -581,9 +592,7 @@ public class SQL_OSMImporter extends DefaultHandler {
             this.outStream.println("----------------------------------------------------------------");
         }
         catch(SQLException se) {
-            Util.printExceptionMessage(se, this.managementQueue, "error while creating index");
-        } catch (FileNotFoundException ex) {
-            Util.printExceptionMessage(ex, this.managementQueue, "error while creating managementQueue");
+            Util.printExceptionMessage(se, null, "error while writing elements or creating index", false);
         }
     }
     
@@ -645,9 +654,8 @@ public class SQL_OSMImporter extends DefaultHandler {
         */
         if(this.boundaryAdminClassID == this.currentClassID) {
             if(this.admin_level > 0) { // adminlevel_1
-                this.currentClassID = this.osmClassification.getOHDMClassID(
-                            "ohdm_boundary", 
-                            "adminlevel_" + this.admin_level);
+                this.currentClassID = this.osmClassification.getAdminLevelClassID(
+                            this.admin_level);
             }
         }
     }
@@ -660,12 +668,14 @@ public class SQL_OSMImporter extends DefaultHandler {
                 case "node":
                     // node finished - save
                     this.nA++;
-                    this.endNode();
+                    if(!this.isDropped()) {
+                        this.endNode();
+                    }
                     this.status = STATUS_OUTSIDE;
                     this.flush();
                     break; // single original node
                 case "way":
-                    if(!this.wayProcessed) {
+                    if(!this.wayProcessed && !this.batchInsert) {
                         // join with all inserts
                         this.insertQueue.join();
                         this.printStatus();
@@ -674,13 +684,15 @@ public class SQL_OSMImporter extends DefaultHandler {
                     
 //                    this.flushSteps = 1; // debugging
                     
-                    this.endWay();
+                    if(!this.isDropped()) {
+                        this.endWay();
+                    }
                     this.status = STATUS_OUTSIDE;
                     this.flush();
                     break; // original way
 
                 case "relation":
-                    if(!this.relationProcessed) {
+                    if(!this.relationProcessed && !this.batchInsert) {
                         // join with all inserts
                         this.insertQueue.join();
                         this.printStatus();
@@ -689,7 +701,9 @@ public class SQL_OSMImporter extends DefaultHandler {
                     
 //                    this.flushSteps = 1; // debugging
                     
-                    this.endRelation();
+                    if(!this.isDropped()) {
+                        this.endRelation();
+                    }
                     this.status = STATUS_OUTSIDE;
                     this.flush();
                     break; // original relation
@@ -709,8 +723,10 @@ public class SQL_OSMImporter extends DefaultHandler {
     private void flush() {
         try {
             this.all++;
-            this.insertQueue.couldExecute();
-            this.memberQueue.couldExecute();
+            if(!this.batchInsert) {
+                this.insertQueue.couldExecute();
+                this.memberQueue.couldExecute();
+            }
             
             if(this.flushSteps <= this.all) {
                 this.all = 0;
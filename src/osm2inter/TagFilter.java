@@ -0,0 +1,226 @@
+package osm2inter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tag filter of the import, compiled from a file like conf/whitelist.xml:
+ * <pre>
+ * &lt;whitelist version='0.2' otherKeys='keep'&gt;
+ *     &lt;key k="highway"&gt;
+ *         &lt;target t="roads"&gt;
+ *             &lt;value v="primary" /&gt;
+ *         &lt;/target&gt;
+ *     &lt;/key&gt;
+ *     &lt;blacklist&gt;
+ *         &lt;key k="created_by" /&gt;
+ *         &lt;key k="uid" /&gt;
+ *         &lt;key k="highway" drop="element"&gt;
+ *             &lt;value v="proposed" /&gt;
+ *         &lt;/key&gt;
+ *     &lt;/blacklist&gt;
+ * &lt;/whitelist&gt;
+ * </pre>
+ * Whitelist: a key with values keeps only tags with one of those values
+ * (targets just group values). Keys without rule are kept unless otherKeys
+ * is drop. Blacklist: tags of that key (and of the values, if any) are
+ * dropped, drop="element" drops the whole element. uid and user are handled
+ * like tags. Tags are checked before classification - a dropped tag neither
+ * gives a class nor ends up in serializedtags.
+ * <br>
+ * Can be shared by importers of different partitions.
+ */
+public class TagFilter {
+    public static final int KEEP = 0;
+    public static final int DROP_TAG = 1;
+    public static final int DROP_ELEMENT = 2;
+
+    private static final String ANY_VALUE = "*";
+
+    private final Map<String, KeyRule> rules = new HashMap<>();
+    private boolean dropOtherKeys = false;
+    private boolean dropsElements = false;
+    private final LongAdder otherKeysDropped = new LongAdder();
+
+    /**
+     * all rules for one key
+     */
+    private static class KeyRule {
+        // whitelist: allowed values, null: no whitelist rule
+        Set<String> allowed = null;
+        // blacklist: dropped values, empty: all values
+        Set<String> dropped = null;
+        // drop element: values, empty: all values
+        Set<String> elements = null;
+
+        final LongAdder whitelistDropped = new LongAdder();
+        final LongAdder blacklistDropped = new LongAdder();
+        final LongAdder elementsDropped = new LongAdder();
+    }
+
+    private TagFilter() {
+    }
+
+    /**
+     * @throws IOException if file cannot be read or has no whitelist / blacklist
+     */
+    public static TagFilter load(File file) throws IOException {
+        TagFilter filter = new TagFilter();
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(file, filter.new FileHandler());
+        }
+        catch(SAXException | ParserConfigurationException e) {
+            throw new IOException("cannot parse tag filter " + file + ": " + e.getMessage(), e);
+        }
+        if(filter.rules.isEmpty() && !filter.dropOtherKeys) {
+            throw new IOException("tag filter without any rule: " + file);
+        }
+        return filter;
+    }
+
+    /**
+     * @return KEEP, DROP_TAG or DROP_ELEMENT
+     */
+    public int check(String key, String value) {
+        KeyRule rule = this.rules.get(key);
+        if(rule == null) {
+            if(this.dropOtherKeys) {
+                this.otherKeysDropped.increment();
+                return DROP_TAG;
+            }
+            return KEEP;
+        }
+
+        if(rule.elements != null && (rule.elements.isEmpty() || rule.elements.contains(value))) {
+            rule.elementsDropped.increment();
+            return DROP_ELEMENT;
+        }
+        if(rule.dropped != null && (rule.dropped.isEmpty() || rule.dropped.contains(value))) {
+            rule.blacklistDropped.increment();
+            return DROP_TAG;
+        }
+        if(rule.allowed != null) {
+            if(rule.allowed.contains(value) || rule.allowed.contains(ANY_VALUE)) {
+                return KEEP;
+            }
+            rule.whitelistDropped.increment();
+            return DROP_TAG;
+        }
+        if(this.dropOtherKeys) {
+            // key has blacklist rules only
+            this.otherKeysDropped.increment();
+            return DROP_TAG;
+        }
+        return KEEP;
+    }
+
+    /**
+     * @return true if whole elements can be dropped - importers must not
+     * write anything of an element before its end
+     */
+    public boolean dropsElements() {
+        return this.dropsElements;
+    }
+
+    public void printStatistics(PrintStream out) {
+        out.println("tag filter: dropped tags / elements per rule");
+        for(Map.Entry<String, KeyRule> entry : new TreeMap<>(this.rules).entrySet()) {
+            KeyRule rule = entry.getValue();
+            if(rule.allowed != null) {
+                out.println("whitelist " + entry.getKey() + ": " + rule.whitelistDropped.sum() + " tags");
+            }
+            if(rule.dropped != null) {
+                out.println("blacklist " + entry.getKey() + ": " + rule.blacklistDropped.sum() + " tags");
+            }
+            if(rule.elements != null) {
+                out.println("drop element " + entry.getKey() + ": " + rule.elementsDropped.sum() + " elements");
+            }
+        }
+        if(this.dropOtherKeys) {
+            out.println("other keys: " + this.otherKeysDropped.sum() + " tags");
+        }
+    }
+
+    /**
+     * reads rule file
+     */
+    private class FileHandler extends DefaultHandler {
+        private boolean inBlacklist = false;
+        private KeyRule currentRule = null;
+        private Set<String> currentValues = null;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            switch(qName) {
+                case "whitelist":
+                    dropOtherKeys = "drop".equalsIgnoreCase(attributes.getValue("otherKeys"));
+                    break;
+                case "blacklist":
+                    this.inBlacklist = true;
+                    break;
+                case "key":
+                    String key = attributes.getValue("k");
+                    if(key == null) {
+                        throw new SAXException("key without k");
+                    }
+                    // same key can be given more than once
+                    this.currentRule = rules.computeIfAbsent(key, k -> new KeyRule());
+                    if(!this.inBlacklist) {
+                        if(this.currentRule.allowed == null) {
+                            this.currentRule.allowed = new HashSet<>();
+                        }
+                        this.currentValues = this.currentRule.allowed;
+                    } else if("element".equalsIgnoreCase(attributes.getValue("drop"))) {
+                        if(this.currentRule.elements == null) {
+                            this.currentRule.elements = new HashSet<>();
+                        }
+                        this.currentValues = this.currentRule.elements;
+                        dropsElements = true;
+                    } else {
+                        if(this.currentRule.dropped == null) {
+                            this.currentRule.dropped = new HashSet<>();
+                        }
+                        this.currentValues = this.currentRule.dropped;
+                    }
+                    break;
+                case "value":
+                    if(this.currentValues != null && attributes.getValue("v") != null) {
+                        this.currentValues.add(attributes.getValue("v"));
+                    }
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch(qName) {
+                case "blacklist":
+                    this.inBlacklist = false;
+                    break;
+                case "key":
+                    if(this.currentRule != null && this.currentRule.allowed == this.currentValues
+                            && this.currentValues.isEmpty()) {
+                        // whitelisted key without values: any value
+                        this.currentValues.add(ANY_VALUE);
+                    }
+                    this.currentRule = null;
+                    this.currentValues = null;
+                    break;
+            }
+        }
+    }
+}
@@ -85,7 +85,7 @@ from landuse_gardeningandfarm;
         this.sqlQueue.append(DB.getFullTableName(this.sourceParameter.getSchema(), tableName));
         this.sqlQueue.append(";");
 
-        ResultSet qResult = this.sqlQueue.executeWithResult();
+        ResultSet qResult = this.sqlQueue.executeStreaming(this.sourceParameter.getFetchSize());
 
         while(qResult.next()) {
             this.writeTurtleEntry(
@@ -97,6 +97,7 @@ from landuse_gardeningandfarm;
                     qResult.getDate(6),
                     qResult.getString(7));
         }
+        this.sqlQueue.closeStreaming();
 
 
     }
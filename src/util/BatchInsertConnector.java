@@ -0,0 +1,106 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Inserts rows into one table with a parameterized INSERT and jdbc batches.
+ * The connection is opened with reWriteBatchedInserts - the driver sends each
+ * batch as multi row INSERT ... VALUES (..), (..), ... statements. Values are
+ * sent as untyped strings (stringtype=unspecified) and converted by postgres
+ * like literals in sql text, nothing has to be escaped.
+ * <br>
+ * Fallback if copy is not allowed, see connectionType:insert.
+ */
+public class BatchInsertConnector {
+    private final String tablename;
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final int columns;
+    private final int batchSize;
+
+    private int batchPosition = 0;
+    private long writtenRows = 0;
+    private long batches = 0;
+
+    /**
+     * @param batchSize rows per batch, see Parameter.getInsertBatchSize
+     */
+    public BatchInsertConnector(Parameter parameter, String tablename, String[] columns, int batchSize)
+            throws SQLException {
+        this.tablename = tablename;
+        this.columns = columns.length;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.connection = DB.createConnection(parameter, true);
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ");
+        sql.append(DB.getFullTableName(parameter.getSchema(), tablename));
+        sql.append(" (");
+        sql.append(String.join(", ", columns));
+        sql.append(") VALUES (");
+        for(int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        sql.append(")");
+
+        this.statement = this.connection.prepareStatement(sql.toString());
+    }
+
+    public String getTablename() {
+        return this.tablename;
+    }
+
+    /**
+     * add a row to current batch, batch is executed when full
+     * @param values one value per column, null is sql null
+     */
+    public void write(Object... values) throws SQLException {
+        for(int i = 0; i < this.columns; i++) {
+            if(values[i] == null) {
+                this.statement.setNull(i + 1, Types.OTHER);
+            } else {
+                this.statement.setObject(i + 1, values[i]);
+            }
+        }
+        this.statement.addBatch();
+        if(++this.batchPosition >= this.batchSize) {
+            this.flush();
+        }
+    }
+
+    public void flush() throws SQLException {
+        if(this.batchPosition == 0) {
+            return;
+        }
+        this.statement.executeBatch();
+        this.writtenRows += this.batchPosition;
+        this.batchPosition = 0;
+        this.batches++;
+    }
+
+    /**
+     * execute remaining rows and close connection
+     * @return number of written rows
+     */
+    public long close() throws SQLException {
+        try {
+            this.flush();
+        }
+        finally {
+            this.statement.close();
+            this.connection.close();
+        }
+        return this.writtenRows;
+    }
+
+    public long getWrittenRows() {
+        return this.writtenRows;
+    }
+
+    public String getStatistics() {
+        return this.tablename + ": " + Util.getValueWithDots(this.writtenRows) + " rows in "
+                + Util.getValueWithDots(this.batches) + " batches of up to " + this.batchSize;
+    }
+}
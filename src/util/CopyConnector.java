@@ -7,17 +7,36 @@ import org.postgresql.core.BaseConnection;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Streams rows into one intermediate table with COPY ... FROM STDIN.
+ * connectionType:copy sends text rows, connectionType:binarycopy sends
+ * rows in postgres binary copy format, each column encoded according to its type.
+ * <br>
+ * With copyQueueSize &gt; 0 rows are handed over in batches to a writer thread
+ * which owns the database connection. The parser only blocks (stalls) if that
+ * bounded queue is full, which means postgres is the bottleneck. An idle writer
+ * means parsing is the bottleneck.
+ *
  * @author FlorianSauer
  */
 public class CopyConnector {
+    public static final String BINARY_COPY = "binarycopy";
+
     private String tablename;
     private String delimiter;
+    private final char delimiterChar; // copy accepts single one-byte delimiters only
+    private final boolean binary;
+    private int[] columnTypes;
     private CopyManager copyManager;
     private CopyIn copyIn;
+    private String copySQL;
 
     public String getTablename() {
         return tablename;
@@ -30,11 +49,41 @@ public class CopyConnector {
     private Connection connection;
     private long writtenLines = 0;
 
+    // rows are collected in that buffer and sent when it is full or flush interval elapsed
+    private final byte[] buffer;
+    private int bufferPosition = 0;
+    private final long flushInterval;
+    private long lastFlush;
+
+    // statistics
+    private long writtenBytes = 0;
+    private long flushes = 0;
+    private long startTime;
+
+    // pipeline: parser thread fills batches, writer thread copies them into database
+    private static final String[][] END_OF_ROWS = new String[0][];
+    // writer thread commits the copy when it gets that marker, see commitSegment()
+    private static final String[][] COMMIT = new String[0][];
+    private final Semaphore committed = new Semaphore(0);
+    private ArrayBlockingQueue<String[][]> queue = null;
+    private int queueSize = 0;
+    private Thread writerThread = null;
+    private int batchSize;
+    private String[][] batch;
+    private int batchPosition = 0;
+    private volatile SQLException writerException = null;
+    private long parserStallNanos = 0;
+    private volatile long writerIdleNanos = 0;
+
 
     public CopyConnector(Parameter parameter, String tablename) throws IOException {
         String[] selectedColumns = null;
         this.tablename = tablename;
         this.delimiter = parameter.getDelimiter();
+        this.delimiterChar = this.delimiter.charAt(0);
+        this.buffer = new byte[parameter.getCopyBufferSize()];
+        this.flushInterval = parameter.getCopyFlushInterval();
+        this.binary = BINARY_COPY.equalsIgnoreCase(parameter.getConnectionType());
         switch (tablename) {
             case "nodes": {
 //                System.out.println("nodes");
@@ -61,14 +110,45 @@ public class CopyConnector {
                 selectedColumns = parameter.getWaysColumnNames();
                 break;
             }
+            case InterDB.NODECOORDINATES: {
+                // untagged way nodes, see nodeFilter
+                selectedColumns = new String[]{"osm_id", "longitude", "latitude"};
+                break;
+            }
+        }
+        boolean arrayLayout = parameter.isArrayMemberLayout();
+        if (arrayLayout && tablename.equals("relations")) {
+            selectedColumns = CopyConnector.addArrayMemberColumns(selectedColumns);
         }
         System.out.println("selectedColumns "+Arrays.toString(selectedColumns));
+        this.columnTypes = new int[selectedColumns.length];
+        String coordinateType = parameter.getCoordinateType();
+        boolean jsonTags = parameter.isJSONTags();
+        for (int i = 0; i < selectedColumns.length; i++) {
+            this.columnTypes[i] = CopyConnector.getColumnType(selectedColumns[i], arrayLayout,
+                    coordinateType, jsonTags);
+        }
         try {
             this.connection = DB.createConnection(parameter);
             this.copyManager = new CopyManager((BaseConnection) connection);
-            String sql = "COPY "+tablename+"("+String.join(", ", selectedColumns)+") FROM STDIN DELIMITER '"+delimiter+"' NULL 'NULL'";
+            String sql;
+            if (this.binary) {
+                sql = "COPY "+tablename+"("+String.join(", ", selectedColumns)+") FROM STDIN WITH (FORMAT binary)";
+            } else {
+                sql = "COPY "+tablename+"("+String.join(", ", selectedColumns)+") FROM STDIN DELIMITER '"+delimiter+"' NULL 'NULL'";
+            }
 //            System.out.println("SQL: "+sql);
+            this.copySQL = sql;
             this.copyIn = this.copyManager.copyIn(sql);
+            this.startTime = System.currentTimeMillis();
+            this.lastFlush = this.startTime;
+            if (this.binary) {
+                this.writeBinaryHeader();
+            }
+            this.queueSize = parameter.getCopyQueueSize();
+            if (this.queueSize > 0) {
+                this.startWriterThread(this.queueSize, parameter.getCopyBatchSize());
+            }
         } catch (SQLException ex) {
             System.err.println("cannot connect to database - fatal - exit\n" + ex.getMessage());
             ex.printStackTrace(System.err);
@@ -79,49 +159,616 @@ public class CopyConnector {
     public void write(String csv) throws SQLException {
         //write csv string to stdin/stream of psql COPY
 //        System.out.println("writing >"+csv+"< to "+this.tablename);
-        csv += "\n";
-        byte[] bytes = csv.getBytes();
+        if (this.binary) {
+            throw new SQLException("csv rows cannot be written in binary copy mode: " + this.tablename);
+        }
+        if (this.queue != null) {
+            throw new SQLException("csv rows cannot be written while a writer thread is used: " + this.tablename);
+        }
         try {
-            this.copyIn.writeToCopy(bytes, 0, bytes.length);
-            this.copyIn.flushCopy();
-        } catch (Exception e){
-            // TODO: 07.12.2017 remove try catch, only for debugging
+            this.appendUTF8(csv, false);
+            this.appendByte('\n');
+        } catch (SQLException e){
             System.out.println("could not write >"+csv.replaceAll("(\\r|\\n)", "")+"< to "+this.tablename);
             e.printStackTrace();
             throw e;
         }
+        this.rowWritten();
+    }
+
+    private void rowWritten() throws SQLException {
         this.writtenLines += 1;
 
+        if(this.flushInterval > 0 && this.writtenLines % TIME_CHECK_ROWS == 0) {
+            long now = System.currentTimeMillis();
+            if(now - this.lastFlush >= this.flushInterval) {
+                this.flush();
+            }
+        }
+    }
+
+    // don't ask the clock for each single row
+    private static final int TIME_CHECK_ROWS = 1000;
+
+    private void appendByte(int b) throws SQLException {
+        if(this.bufferPosition == this.buffer.length) {
+            this.flush();
+        }
+        this.buffer[this.bufferPosition++] = (byte) b;
+    }
+
+    /**
+     * encode string as utf-8 directly into the copy buffer - no byte array
+     * is produced per row. Unpaired surrogates become '?' like in String.getBytes()
+     * @param escape escape special characters of text copy format
+     */
+    private void appendUTF8(String s, boolean escape) throws SQLException {
+        int length = s.length();
+        for(int i = 0; i < length; i++) {
+            // worst case is a four byte sequence
+            if(this.bufferPosition + 4 > this.buffer.length) {
+                this.flush();
+            }
+
+            char c = s.charAt(i);
+            if(escape && (c == '\\' || c == this.delimiterChar || c == '"' || c == '\r' || c == '\n')) {
+                this.buffer[this.bufferPosition++] = (byte) '\\';
+                this.buffer[this.bufferPosition++] = (byte) c;
+            } else if(c < 0x80) {
+                this.buffer[this.bufferPosition++] = (byte) c;
+            } else if(c < 0x800) {
+                this.buffer[this.bufferPosition++] = (byte) (0xC0 | (c >> 6));
+                this.buffer[this.bufferPosition++] = (byte) (0x80 | (c & 0x3F));
+            } else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                this.buffer[this.bufferPosition++] = (byte) (0xF0 | (codePoint >> 18));
+                this.buffer[this.bufferPosition++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this.buffer[this.bufferPosition++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this.buffer[this.bufferPosition++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if(Character.isSurrogate(c)) {
+                this.buffer[this.bufferPosition++] = (byte) '?';
+            } else {
+                this.buffer[this.bufferPosition++] = (byte) (0xE0 | (c >> 12));
+                this.buffer[this.bufferPosition++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                this.buffer[this.bufferPosition++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * send buffered rows to database
+     */
+    public void flush() throws SQLException {
+        if(this.bufferPosition > 0) {
+            this.copyIn.writeToCopy(this.buffer, 0, this.bufferPosition);
+            this.copyIn.flushCopy();
+            this.writtenBytes += this.bufferPosition;
+            this.bufferPosition = 0;
+            this.flushes++;
+        }
+        this.lastFlush = System.currentTimeMillis();
     }
 
     public void write(List<String> csv) throws SQLException {
-        this.write(this.escapeStrings((String[]) csv.toArray()));
+        this.write(csv.toArray(new String[csv.size()]));
     }
+
+    /**
+     * write a row, one value per selected column. The string "NULL" is
+     * written as null value.
+     */
     public void write(String[] csv) throws SQLException {
-        this.write(this.escapeStrings(csv));
+        if (this.queue != null) {
+            // row array is kept until the writer thread has processed it
+            this.batch[this.batchPosition++] = csv;
+            if (this.batchPosition == this.batchSize) {
+                this.enqueueBatch();
+            }
+        } else {
+            this.writeRow(csv);
+        }
+    }
+
+    private void writeRow(String[] csv) throws SQLException {
+        if (this.binary) {
+            this.writeBinaryRow(csv);
+        } else {
+            // escape each value in one pass straight into the buffer
+            for (int i = 0; i < csv.length; i++) {
+                if (i > 0) {
+                    this.appendByte(this.delimiterChar);
+                }
+                if (CopyConnector.isCoordinate(this.columnTypes[i]) && csv[i].isEmpty()) {
+                    // node without location
+                    this.appendUTF8("NULL", false);
+                } else if (this.columnTypes[i] == TYPE_FIXED_POINT && !csv[i].equals("NULL")) {
+                    this.appendUTF8(Integer.toString(this.parseFixedPoint(csv[i])), false);
+                } else {
+                    this.appendUTF8(csv[i], true);
+                }
+            }
+            this.appendByte('\n');
+        }
+        this.rowWritten();
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                            pipeline                             //
+    /////////////////////////////////////////////////////////////////////
+
+    private void startWriterThread(int queueSize, int batchSize) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.batch = new String[this.batchSize][];
+
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                CopyConnector.this.writeQueuedRows();
+            }
+        }, "copy writer " + this.tablename);
+        this.writerThread.start();
+    }
+
+    private void enqueueBatch() throws SQLException {
+        if (this.writerException != null) {
+            throw this.writerException;
+        }
+
+        String[][] full = this.batch;
+        if (this.batchPosition < this.batchSize) {
+            full = Arrays.copyOf(this.batch, this.batchPosition);
+        }
+        this.putIntoQueue(full);
+
+        this.batch = new String[this.batchSize][];
+        this.batchPosition = 0;
+    }
+
+    private void putIntoQueue(String[][] rows) throws SQLException {
+        if (this.queue.offer(rows)) {
+            return;
+        }
+
+        // queue is full - database cannot keep up - wait
+        long before = System.nanoTime();
+        try {
+            this.queue.put(rows);
+        } catch (InterruptedException e) {
+            throw new SQLException("interrupted while waiting for copy writer: " + this.tablename);
+        }
+        this.parserStallNanos += System.nanoTime() - before;
+    }
+
+    /**
+     * runs in writer thread
+     */
+    private void writeQueuedRows() {
+        try {
+            while (true) {
+                long before = System.nanoTime();
+                String[][] rows = this.queue.poll(
+                        this.flushInterval > 0 ? this.flushInterval : Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                this.writerIdleNanos += System.nanoTime() - before;
+
+                if (rows == END_OF_ROWS) {
+                    break;
+                }
+
+                if (rows == COMMIT) {
+                    try {
+                        if (this.writerException == null) {
+                            this.commitCopy();
+                        }
+                    } catch (SQLException e) {
+                        System.err.println("copy writer thread failed to commit " + this.tablename + ": " + e.getMessage());
+                        this.writerException = e;
+                    } finally {
+                        this.committed.release();
+                    }
+                    continue;
+                }
+
+                // after a failure, rows are dropped but queue is drained to not block parser
+                if (this.writerException != null) {
+                    continue;
+                }
+
+                try {
+                    if (rows == null) {
+                        // nothing came in - send what we have
+                        this.flush();
+                        continue;
+                    }
+
+                    for (String[] row : rows) {
+                        this.writeRow(row);
+                    }
+                } catch (SQLException e) {
+                    System.err.println("copy writer thread failed on " + this.tablename + ": " + e.getMessage());
+                    e.printStackTrace(System.err);
+                    this.writerException = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            this.writerException = new SQLException("copy writer thread interrupted: " + this.tablename);
+        }
+    }
+
+    /**
+     * hand over remaining rows and wait for writer thread to write them.
+     * Does nothing if no writer thread is used. Called at end of document.
+     */
+    public void finish() throws SQLException {
+        if (this.writerThread == null) {
+            return;
+        }
+
+        if (this.batchPosition > 0) {
+            this.enqueueBatch();
+        }
+        this.putIntoQueue(END_OF_ROWS);
+
+        try {
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            throw new SQLException("interrupted while waiting for copy writer: " + this.tablename);
+        }
+        this.writerThread = null;
+        this.queue = null;
+
+        if (this.writerException != null) {
+            throw this.writerException;
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                       binary copy format                        //
+    /////////////////////////////////////////////////////////////////////
+
+    private static final int TYPE_TEXT = 0;
+    private static final int TYPE_INT8 = 1;
+    private static final int TYPE_BOOL = 2;
+    private static final int TYPE_DATE = 3;
+    private static final int TYPE_INT8_ARRAY = 4;
+    private static final int TYPE_INT2_ARRAY = 5;
+    private static final int TYPE_INT4_ARRAY = 6;
+    private static final int TYPE_FIXED_POINT = 7;
+    private static final int TYPE_FLOAT8 = 8;
+    private static final int TYPE_JSONB = 9;
+
+    // binary jsonb is a version byte followed by json text
+    private static final int JSONB_VERSION = 1;
+
+    // element type oids of arrays
+    private static final int OID_INT8 = 20;
+    private static final int OID_INT2 = 21;
+    private static final int OID_INT4 = 23;
+
+    // PGCOPY\n\377\r\n\0
+    private static final byte[] BINARY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    // postgres dates count days from 2000-01-01
+    private static final int POSTGRES_EPOCH_DAY = 10957;
+
+    /**
+     * @return binary encoder for a column of the intermediate tables, see InterDB
+     */
+    static int getColumnType(String columnName) {
+        return CopyConnector.getColumnType(columnName, false);
+    }
+
+    /**
+     * @param arrayLayout member lists are bigint[], see InterDB.createTables
+     */
+    static int getColumnType(String columnName, boolean arrayLayout) {
+        return CopyConnector.getColumnType(columnName, arrayLayout, Parameter.COORDINATES_TEXT, false);
+    }
+
+    /**
+     * @param coordinateType type of longitude and latitude, see Parameter.COORDINATES_*
+     * @param jsonTags serializedtags is a jsonb column
+     */
+    static int getColumnType(String columnName, boolean arrayLayout, String coordinateType,
+                             boolean jsonTags) {
+        switch (columnName.trim().toLowerCase()) {
+            case "serializedtags":
+                return jsonTags ? TYPE_JSONB : TYPE_TEXT;
+            case "longitude":
+            case "latitude":
+                switch (coordinateType) {
+                    case Parameter.COORDINATES_FIXED: return TYPE_FIXED_POINT;
+                    case Parameter.COORDINATES_DOUBLE: return TYPE_FLOAT8;
+                    default: return TYPE_TEXT;
+                }
+            case "node_ids":
+            case "member_ids":
+                return arrayLayout ? TYPE_INT8_ARRAY : TYPE_TEXT;
+            case "member_types":
+                return TYPE_INT2_ARRAY;
+            case "member_roles":
+                return TYPE_INT4_ARRAY;
+            case "osm_id":
+            case "classcode":
+            case "way_id":
+            case "node_id":
+            case "relation_id":
+            case "member_rel_id":
+                return TYPE_INT8;
+            case "tstamp":
+                return TYPE_DATE;
+            case "has_name":
+            case "valid":
+                return TYPE_BOOL;
+            default:
+                return TYPE_TEXT;
+        }
+    }
+
+    private static boolean isCoordinate(int columnType) {
+        return columnType == TYPE_FIXED_POINT || columnType == TYPE_FLOAT8;
+    }
+
+    /**
+     * relations of array layout have member type and role arrays behind
+     * member_ids - add them if not configured
+     */
+    static String[] addArrayMemberColumns(String[] columns) {
+        List<String> result = new ArrayList<>(Arrays.asList(columns));
+        for (String column : columns) {
+            if (column.trim().equalsIgnoreCase("member_types")) {
+                return columns;
+            }
+        }
+        for (int i = 0; i < result.size(); i++) {
+            if (result.get(i).trim().equalsIgnoreCase("member_ids")) {
+                result.add(i + 1, "member_types");
+                result.add(i + 2, "member_roles");
+                break;
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private void ensureCapacity(int bytes) throws SQLException {
+        if (this.bufferPosition + bytes > this.buffer.length) {
+            this.flush();
+        }
+    }
+
+    private void putShort(int v) {
+        this.buffer[this.bufferPosition++] = (byte) (v >> 8);
+        this.buffer[this.bufferPosition++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        this.buffer[this.bufferPosition++] = (byte) (v >> 24);
+        this.buffer[this.bufferPosition++] = (byte) (v >> 16);
+        this.buffer[this.bufferPosition++] = (byte) (v >> 8);
+        this.buffer[this.bufferPosition++] = (byte) v;
+    }
+
+    private void putLong(long v) {
+        this.putInt((int) (v >> 32));
+        this.putInt((int) v);
+    }
+
+    private void writeBinaryHeader() throws SQLException {
+        this.ensureCapacity(BINARY_SIGNATURE.length + 8);
+        System.arraycopy(BINARY_SIGNATURE, 0, this.buffer, this.bufferPosition, BINARY_SIGNATURE.length);
+        this.bufferPosition += BINARY_SIGNATURE.length;
+        this.putInt(0); // flags
+        this.putInt(0); // no header extension
+    }
+
+    private void writeBinaryRow(String[] values) throws SQLException {
+        if (values.length != this.columnTypes.length) {
+            throw new SQLException("binary copy into " + this.tablename + ": expected "
+                    + this.columnTypes.length + " values but got " + values.length);
+        }
+
+        this.ensureCapacity(2);
+        this.putShort(values.length);
+
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i];
+            // largest fixed size field: length + int8
+            this.ensureCapacity(12);
+
+            if (value == null || value.equals("NULL")
+                    || (CopyConnector.isCoordinate(this.columnTypes[i]) && value.isEmpty())) {
+                this.putInt(-1);
+                continue;
+            }
+
+            switch (this.columnTypes[i]) {
+                case TYPE_INT8:
+                    try {
+                        long v = Long.parseLong(value);
+                        this.putInt(8);
+                        this.putLong(v);
+                    } catch (NumberFormatException e) {
+                        throw new SQLException("binary copy into " + this.tablename + ": not a number: " + value);
+                    }
+                    break;
+                case TYPE_BOOL:
+                    this.putInt(1);
+                    this.buffer[this.bufferPosition++] =
+                            (byte) (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("t") ? 1 : 0);
+                    break;
+                case TYPE_DATE:
+                    if (value.length() < 10) {
+                        // date input fails in text mode, too
+                        throw new SQLException("binary copy into " + this.tablename + ": not a date: " + value);
+                    }
+                    this.putInt(4);
+                    this.putInt(CopyConnector.getPostgresDay(value));
+                    break;
+                case TYPE_FIXED_POINT:
+                    this.putInt(4);
+                    this.putInt(this.parseFixedPoint(value));
+                    break;
+                case TYPE_FLOAT8:
+                    try {
+                        long bits = Double.doubleToLongBits(Double.parseDouble(value));
+                        this.putInt(8);
+                        this.putLong(bits);
+                    } catch (NumberFormatException e) {
+                        throw new SQLException("binary copy into " + this.tablename + ": not a number: " + value);
+                    }
+                    break;
+                case TYPE_JSONB:
+                    this.putInt(1 + CopyConnector.getUTF8Length(value));
+                    this.buffer[this.bufferPosition++] = (byte) JSONB_VERSION;
+                    this.appendUTF8(value, false);
+                    break;
+                case TYPE_INT8_ARRAY:
+                    this.writeBinaryArray(value, 8, OID_INT8);
+                    break;
+                case TYPE_INT2_ARRAY:
+                    this.writeBinaryArray(value, 2, OID_INT2);
+                    break;
+                case TYPE_INT4_ARRAY:
+                    this.writeBinaryArray(value, 4, OID_INT4);
+                    break;
+                default:
+                    this.putInt(CopyConnector.getUTF8Length(value));
+                    this.appendUTF8(value, false);
+            }
+        }
+    }
+
+    /**
+     * write a one dimensional array literal like {1,2,3} in binary array
+     * format without creating any objects
+     * @param elementSize 8, 4 or 2 bytes
+     */
+    private void writeBinaryArray(String value, int elementSize, int elementOID) throws SQLException {
+        int length = value.length();
+        if (length < 2 || value.charAt(0) != '{' || value.charAt(length - 1) != '}') {
+            throw new SQLException("binary copy into " + this.tablename + ": not an array: " + value);
+        }
+
+        int elements = 0;
+        if (length > 2) {
+            elements = 1;
+            for (int i = 1; i < length - 1; i++) {
+                if (value.charAt(i) == ',') {
+                    elements++;
+                }
+            }
+        }
+
+        // field length, header and dimension
+        this.ensureCapacity(24);
+        if (elements == 0) {
+            // empty arrays have no dimension
+            this.putInt(12);
+            this.putInt(0); // ndim
+            this.putInt(0); // no nulls
+            this.putInt(elementOID);
+            return;
+        }
+
+        this.putInt(20 + elements * (4 + elementSize));
+        this.putInt(1); // ndim
+        this.putInt(0); // no nulls
+        this.putInt(elementOID);
+        this.putInt(elements);
+        this.putInt(1); // lower bound
+
+        int start = 1;
+        for (int i = 1; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '}') {
+                long v = this.parseLong(value, start, i);
+                this.ensureCapacity(12);
+                this.putInt(elementSize);
+                switch (elementSize) {
+                    case 8:
+                        this.putLong(v);
+                        break;
+                    case 4:
+                        this.putInt((int) v);
+                        break;
+                    default:
+                        this.putShort((int) v);
+                }
+                start = i + 1;
+            }
+        }
     }
 
-    private String escapeStrings(String[] list){
-        String finalString = "";
-        String tmp;
-        for (String s : list){
-            tmp = s;
-            tmp = tmp.replace("\\", "\\\\");
-            tmp = tmp.replace(this.delimiter, "\\"+this.delimiter);
-            tmp = tmp.replace("\"", "\\\"");
-            tmp = tmp.replace("\r", "\\\r");
-            tmp = tmp.replace("\n", "\\\n");
+    private int parseFixedPoint(String coordinate) throws SQLException {
+        try {
+            return NodeLocationStore.parseFixedPoint(coordinate);
+        } catch (NumberFormatException e) {
+            throw new SQLException("copy into " + this.tablename + ": " + e.getMessage());
+        }
+    }
 
-//            if (tmp.contains(" ")){
-//                tmp = "\""+tmp+"\"";
-//            }
+    private long parseLong(String s, int from, int to) throws SQLException {
+        boolean negative = from < to && s.charAt(from) == '-';
+        int i = negative ? from + 1 : from;
+        if (i >= to) {
+            throw new SQLException("binary copy into " + this.tablename + ": not a number in " + s);
+        }
+        long v = 0;
+        for (; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new SQLException("binary copy into " + this.tablename + ": not a number in " + s);
+            }
+            v = v * 10 + (c - '0');
+        }
+        return negative ? -v : v;
+    }
 
+    /**
+     * @param date osm timestamp like 2016-11-04T08:46:37Z, only date is used
+     * @return days since 2000-01-01
+     */
+    static int getPostgresDay(String date) throws SQLException {
+        try {
+            int year = Integer.parseInt(date.substring(0, 4));
+            int month = Integer.parseInt(date.substring(5, 7));
+            int day = Integer.parseInt(date.substring(8, 10));
 
+            // days from civil date, proleptic gregorian calendar
+            year -= month <= 2 ? 1 : 0;
+            int era = (year >= 0 ? year : year - 399) / 400;
+            int yearOfEra = year - era * 400;
+            int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            int epochDay = era * 146097 + dayOfEra - 719468;
 
+            return epochDay - POSTGRES_EPOCH_DAY;
+        } catch (RuntimeException e) {
+            throw new SQLException("not a valid date: " + date);
+        }
+    }
 
-            finalString = finalString+tmp+this.delimiter;
+    static int getUTF8Length(String s) {
+        int length = s.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1; // replaced by '?'
+            } else {
+                bytes += 3;
+            }
         }
-        return finalString.substring(0, finalString.length() - 1);
+        return bytes;
     }
 
     public String getDelimiter() {
@@ -131,9 +778,59 @@ public class CopyConnector {
     public long endCopy() throws SQLException {
         //close connection+stdin/stream of COPY
         long postgres_writtenrows = 0;
+        this.finish();
+        if (this.binary) {
+            // file trailer
+            this.ensureCapacity(2);
+            this.putShort(-1);
+        }
+        this.flush();
         postgres_writtenrows = this.copyIn.endCopy();
+        System.out.println(this.getStatistics());
         return postgres_writtenrows;
     }
+    /**
+     * Commit all rows written so far: end that copy and start a new one on
+     * the same connection. Committed rows survive a crash of the importer,
+     * see ImportCheckpoint. A writer thread commits in between its rows and
+     * keeps running.
+     * @return number of rows written since start
+     */
+    public long commitSegment() throws SQLException {
+        if (this.writerThread == null) {
+            this.commitCopy();
+            return this.writtenLines;
+        }
+
+        if (this.batchPosition > 0) {
+            this.enqueueBatch();
+        }
+        this.putIntoQueue(COMMIT);
+        try {
+            this.committed.acquire();
+        } catch (InterruptedException e) {
+            throw new SQLException("interrupted while waiting for copy writer: " + this.tablename);
+        }
+        if (this.writerException != null) {
+            throw this.writerException;
+        }
+        return this.writtenLines;
+    }
+
+    private void commitCopy() throws SQLException {
+        if (this.binary) {
+            this.ensureCapacity(2);
+            this.putShort(-1);
+        }
+        this.flush();
+        this.copyIn.endCopy();
+
+        this.copyIn = this.copyManager.copyIn(this.copySQL);
+        if (this.binary) {
+            this.writeBinaryHeader();
+        }
+    }
+
     public void close() throws SQLException {
         //close connection+stdin/stream of COPY
         this.connection.close();
@@ -142,4 +839,47 @@ public class CopyConnector {
     public long getWrittenLines() {
         return writtenLines;
     }
+
+    public long getWrittenBytes() {
+        return this.writtenBytes + this.bufferPosition;
+    }
+
+    /**
+     * @return rows and bytes per second written into that table since copy started
+     */
+    public String getStatistics() {
+        long seconds = (System.currentTimeMillis() - this.startTime) / 1000;
+        seconds = seconds > 0 ? seconds : 1;
+        long bytes = this.getWrittenBytes();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.tablename);
+        sb.append(": ");
+        sb.append(Util.getValueWithDots(this.writtenLines));
+        sb.append(" rows (");
+        sb.append(Util.getValueWithDots(this.writtenLines / seconds));
+        sb.append(" rows/s) | ");
+        sb.append(Util.getValueWithDots(bytes));
+        sb.append(" bytes (");
+        sb.append(Util.getValueWithDots(bytes / seconds));
+        sb.append(" bytes/s) | flushes: ");
+        sb.append(Util.getValueWithDots(this.flushes));
+        sb.append(" | elapsed: ");
+        sb.append(Util.getElapsedTime(this.startTime));
+
+        ArrayBlockingQueue<String[][]> q = this.queue;
+        if (q != null) {
+            sb.append("\n    queue: ");
+            sb.append(q.size());
+            sb.append("/");
+            sb.append(q.size() + q.remainingCapacity());
+            sb.append(" batches | parser stalled: ");
+            sb.append(Util.getValueWithDots(this.parserStallNanos / 1000000));
+            sb.append(" ms | writer idle: ");
+            sb.append(Util.getValueWithDots(this.writerIdleNanos / 1000000));
+            sb.append(" ms");
+        }
+
+        return sb.toString();
+    }
 }
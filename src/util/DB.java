@@ -108,11 +108,23 @@ public class DB {
     ////////////////////////////////////////////////////////////////////////
     
     public static Connection createConnection(Parameter parameter) throws SQLException{
+        return DB.createConnection(parameter, false);
+    }
+
+    /**
+     * @param batchedInserts driver rewrites insert batches into multi row
+     * inserts and sends strings untyped, see BatchInsertConnector
+     */
+    public static Connection createConnection(Parameter parameter, boolean batchedInserts) throws SQLException{
         Properties connProps = new Properties();
         connProps.put("user", parameter.getUserName());
         connProps.put("password", parameter.getPWD());
         
         connProps.put("tcpKeepAlive", "true");
+        if(batchedInserts) {
+            connProps.put("reWriteBatchedInserts", "true");
+            connProps.put("stringtype", "unspecified");
+        }
         
         Driver d = null;
 //        System.out.println("debugging: find jdbc driver by class name: org.postgresql.Driver");
@@ -1,9 +1,28 @@
 package util;
 
+import inter2ohdm.AbstractElement;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import util.ManagedStringBuilder.ManagedStringBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -15,7 +34,54 @@ public class InterDB {
     public static final String RELATIONTABLE = "relations";
     public static final String WAYMEMBER = "waynodes";
     public static final String WAYTABLE = "ways";
+    public static final String RELATIONROLES = "relationroles";
+    public static final String NODECOORDINATES = "nodecoordinates";
     public static final String STRING_DELIMITER = ",";
+
+    /**
+     * member types in relations.member_types of array layout
+     */
+    public static final int MEMBER_NODE = 0;
+    public static final int MEMBER_WAY = 1;
+    public static final int MEMBER_RELATION = 2;
+
+    private static final String[] TABLES = {NODETABLE, WAYTABLE, RELATIONTABLE, WAYMEMBER, RELATIONMEMBER};
+    private static final String[] ARRAY_LAYOUT_TABLES = {NODETABLE, WAYTABLE, RELATIONTABLE, RELATIONROLES};
+
+    /**
+     * indexes required by extraction and update: name, table, columns.
+     * Largest tables first - they take longest.
+     */
+    private static final String[][] INDEXES = {
+        {"waynodes_way_id", WAYMEMBER, "way_id"},
+        {"waynodes_node_id", WAYMEMBER, "node_id"},
+        {"node_osm_id", NODETABLE, "osm_id"},
+        {"relationmember_ids", RELATIONMEMBER, "relation_id, node_id, way_id, member_rel_id"},
+        {"relationmember_member_rel_id", RELATIONMEMBER, "member_rel_id"},
+        {"way_osm_id", WAYTABLE, "osm_id"},
+        {"relation_osm_id", RELATIONTABLE, "osm_id"}
+    };
+
+    /**
+     * array layout: member lists are stored in ways and relations. gin indexes
+     * find all ways / relations containing a node / member (update)
+     */
+    private static final String[][] ARRAY_LAYOUT_INDEXES = {
+        {"way_node_ids", WAYTABLE, "node_ids", "gin"},
+        {"relation_member_ids", RELATIONTABLE, "member_ids", "gin"},
+        {"node_osm_id", NODETABLE, "osm_id"},
+        {"way_osm_id", WAYTABLE, "osm_id"},
+        {"relation_osm_id", RELATIONTABLE, "osm_id"}
+    };
+
+    // untagged way nodes if imported with nodeFilter:coordinates
+    private static final String[] NODE_COORDINATES_INDEX = {"nodecoordinates_osm_id", NODECOORDINATES, "osm_id"};
+
+    // spatial index if nodes have a geometry column
+    private static final String[] NODE_GEOMETRY_INDEX = {"node_geom", NODETABLE, "geom", "gist"};
+
+    // fixed point coordinates are 1e-7 degree like in osm files
+    private static final String FIXED_POINT_FACTOR = "10000000";
     
     public static void dropTables(SQLStatementQueue sql, String targetSchema) throws SQLException {
         // drop
@@ -24,9 +90,44 @@ public class InterDB {
         DB.drop(sql, targetSchema, RELATIONTABLE);
         DB.drop(sql, targetSchema, WAYMEMBER);
         DB.drop(sql, targetSchema, WAYTABLE);
+        DB.drop(sql, targetSchema, RELATIONROLES);
+        DB.drop(sql, targetSchema, NODECOORDINATES);
     }
     
     public static void createTables(SQLStatementQueue sql, String schema) throws SQLException {
+        InterDB.createTables(sql, schema, false);
+    }
+
+    /**
+     * @param unlogged create unlogged tables - much less wal traffic while
+     * importing. Call finishImport with setLogged afterwards.
+     */
+    public static void createTables(SQLStatementQueue sql, String schema, boolean unlogged) throws SQLException {
+        InterDB.createTables(sql, schema, unlogged, false);
+    }
+
+    /**
+     * @param arrayLayout store way nodes as bigint[] in ways and relation
+     * members as bigint[] with member type and role id arrays in relations.
+     * Role names are kept in table relationroles. Tables waynodes and
+     * relationmember are not created.
+     */
+    public static void createTables(SQLStatementQueue sql, String schema, boolean unlogged,
+                                    boolean arrayLayout) throws SQLException {
+        InterDB.createTables(sql, schema, unlogged, arrayLayout, Parameter.COORDINATES_TEXT, false, false);
+    }
+
+    /**
+     * @param coordinateType type of longitude and latitude: text, fixed
+     * (integer, 1e-7 degree) or double, see Parameter.COORDINATES_*
+     * @param nodeGeometry add point column geom which is computed from
+     * coordinates by postgres (requires postgis and postgres 12)
+     * @param jsonTags column serializedtags is jsonb instead of length
+     * prefixed strings, see AbstractElement
+     */
+    public static void createTables(SQLStatementQueue sql, String schema, boolean unlogged,
+                                    boolean arrayLayout, String coordinateType,
+                                    boolean nodeGeometry, boolean jsonTags) throws SQLException {
         try {
             InterDB.dropTables(sql, schema);
         } catch (SQLException e) {
@@ -42,16 +143,24 @@ public class InterDB {
             // sequence
             DB.createSequence(sql, schema, NODETABLE);
             // table
-            sql.append(DB.getCreateTableBegin(schema, NODETABLE));
+            sql.append(InterDB.getCreateTableBegin(schema, unlogged, NODETABLE));
             // add table specifics
             sql.append(",");
             sql.append("osm_id bigint,");
             sql.append("tstamp date,");
             sql.append("classcode bigint,");
             sql.append("otherclasscodes character varying,");
-            sql.append("serializedTags character varying,");
-            sql.append("longitude character varying,");
-            sql.append("latitude character varying,");
+            sql.append(InterDB.getTagColumn(jsonTags));
+            sql.append("longitude ");
+            sql.append(InterDB.getCoordinateColumnType(coordinateType));
+            sql.append(",");
+            sql.append("latitude ");
+            sql.append(InterDB.getCoordinateColumnType(coordinateType));
+            sql.append(",");
+            if(nodeGeometry) {
+                sql.append(InterDB.getNodeGeometryColumn(coordinateType));
+                sql.append(",");
+            }
             sql.append("ohdm_geom_id bigint,");
             sql.append("ohdm_geom_type int,");
             sql.append("ohdm_object_id bigint,");
@@ -68,18 +177,22 @@ public class InterDB {
             // sequence
             DB.createSequence(sql, schema, WAYTABLE);
             // table
-            sql.append(DB.getCreateTableBegin(schema, WAYTABLE));
+            sql.append(InterDB.getCreateTableBegin(schema, unlogged, WAYTABLE));
             // add table specifics
             sql.append(",");
             sql.append("osm_id bigint,");
             sql.append("tstamp date,");
             sql.append("classcode bigint,");
             sql.append("otherclasscodes character varying,");
-            sql.append("serializedTags character varying,");
+            sql.append(InterDB.getTagColumn(jsonTags));
             sql.append("ohdm_geom_id bigint,");
             sql.append("ohdm_geom_type int,");
             sql.append("ohdm_object_id bigint,");
-            sql.append("node_ids character varying,");
+            if(arrayLayout) {
+                sql.append("node_ids bigint[],");
+            } else {
+                sql.append("node_ids character varying,");
+            }
 //            sql.append("is_part boolean DEFAULT false,");
             /*
             sql.append("new boolean DEFAULT false,");
@@ -99,18 +212,24 @@ public class InterDB {
             // sequence
             DB.createSequence(sql, schema, RELATIONTABLE);
             // table
-            sql.append(DB.getCreateTableBegin(schema, RELATIONTABLE));
+            sql.append(InterDB.getCreateTableBegin(schema, unlogged, RELATIONTABLE));
             // add table specifics
             sql.append(",");
             sql.append("osm_id bigint,");
             sql.append("tstamp date,");
             sql.append("classcode bigint,");
             sql.append("otherclasscodes character varying,");
-            sql.append("serializedTags character varying,");
+            sql.append(InterDB.getTagColumn(jsonTags));
             sql.append("ohdm_geom_id bigint,");
             sql.append("ohdm_geom_type int,");
             sql.append("ohdm_object_id bigint,");
-            sql.append("member_ids character varying,");
+            if(arrayLayout) {
+                sql.append("member_ids bigint[],");
+                sql.append("member_types smallint[],");
+                sql.append("member_roles int[],");
+            } else {
+                sql.append("member_ids character varying,");
+            }
             /*
             sql.append("new boolean DEFAULT false,");
             sql.append("changed boolean DEFAULT false,");
@@ -125,11 +244,20 @@ public class InterDB {
             sql.append("valid boolean);");
             sql.forceExecute();
 
+            if(arrayLayout) {
+                // RELATIONROLES - ids are set by importer
+                sql.append(InterDB.getCreateTableBegin(unlogged));
+                sql.append(DB.getFullTableName(schema, RELATIONROLES));
+                sql.append(" (id integer PRIMARY KEY, role character varying);");
+                sql.forceExecute();
+                return;
+            }
+
             // WAYMEMBER
             // sequence
             DB.createSequence(sql, schema, WAYMEMBER);
             // table
-            sql.append(DB.getCreateTableBegin(schema, WAYMEMBER));
+            sql.append(InterDB.getCreateTableBegin(schema, unlogged, WAYMEMBER));
             // add table specifics
             sql.append(",");
             sql.append("way_id bigint, ");
@@ -141,7 +269,7 @@ public class InterDB {
             // sequence
             DB.createSequence(sql, schema, RELATIONMEMBER);
             // table
-            sql.append(DB.getCreateTableBegin(schema, RELATIONMEMBER));
+            sql.append(InterDB.getCreateTableBegin(schema, unlogged, RELATIONMEMBER));
             // add table specifics
             sql.append(",");
             sql.append("relation_id bigint NOT NULL, ");
@@ -158,6 +286,468 @@ public class InterDB {
         }
     }
 
+    /**
+     * Create table for untagged nodes which are only used as way nodes:
+     * osm id and coordinates only. Call after createTables.
+     */
+    public static void createNodeCoordinatesTable(SQLStatementQueue sql, String schema, boolean unlogged,
+                                                  String coordinateType) throws SQLException {
+        DB.createSequence(sql, schema, NODECOORDINATES);
+        sql.append(InterDB.getCreateTableBegin(schema, unlogged, NODECOORDINATES));
+        sql.append(",");
+        sql.append("osm_id bigint,");
+        sql.append("longitude ");
+        sql.append(InterDB.getCoordinateColumnType(coordinateType));
+        sql.append(",");
+        sql.append("latitude ");
+        sql.append(InterDB.getCoordinateColumnType(coordinateType));
+        sql.append(");");
+        sql.forceExecute();
+    }
+
+    private static String getTagColumn(boolean jsonTags) {
+        return jsonTags ? "serializedTags jsonb," : "serializedTags character varying,";
+    }
+
+    private static String getCoordinateColumnType(String coordinateType) {
+        switch(coordinateType) {
+            case Parameter.COORDINATES_FIXED: return "integer";
+            case Parameter.COORDINATES_DOUBLE: return "double precision";
+            default: return "character varying";
+        }
+    }
+
+    // generated columns are filled by postgres while copying and updating nodes
+    private static String getNodeGeometryColumn(String coordinateType) {
+        return "geom geometry(Point,4326) GENERATED ALWAYS AS (ST_SetSRID(ST_MakePoint("
+                + InterDB.getDegreeExpression("longitude", coordinateType) + ", "
+                + InterDB.getDegreeExpression("latitude", coordinateType) + "), 4326)) STORED";
+    }
+
+    private static String getDegreeExpression(String column, String coordinateType) {
+        switch(coordinateType) {
+            case Parameter.COORDINATES_FIXED: return column + "::double precision / " + FIXED_POINT_FACTOR;
+            case Parameter.COORDINATES_DOUBLE: return column;
+            default: return column + "::double precision";
+        }
+    }
+
+    private static String getCreateTableBegin(boolean unlogged) {
+        return unlogged ? "CREATE UNLOGGED TABLE " : "CREATE TABLE ";
+    }
+
+    private static String getCreateTableBegin(String schema, boolean unlogged, String tableName) {
+        String begin = DB.getCreateTableBegin(schema, tableName);
+        if(unlogged) {
+            begin = begin.replaceFirst("CREATE TABLE ", "CREATE UNLOGGED TABLE ");
+        }
+        return begin;
+    }
+
+    /**
+     * Run after loading intermediate tables: switch tables to logged (if created
+     * unlogged), create all indexes required by extraction and update and
+     * analyze tables. Each step runs its statements in parallel on separate
+     * connections.
+     */
+    public static void finishImport(Parameter parameter, boolean setLogged) throws SQLException {
+        InterDB.finishImport(parameter, setLogged, parameter.isArrayMemberLayout(),
+                parameter.isNodeGeometry(), parameter.isNodeCoordinatesTable());
+    }
+
+    /**
+     * @param arrayLayout, nodeGeometry, nodeCoordinatesTable layout of the
+     * tables if it differs from parameter, e.g. after sql-insert
+     */
+    public static void finishImport(Parameter parameter, boolean setLogged, boolean arrayLayout,
+                                    boolean nodeGeometry, boolean nodeCoordinatesTable) throws SQLException {
+        String schema = parameter.getSchema();
+        List<String> tables = new ArrayList<>(Arrays.asList(arrayLayout ? ARRAY_LAYOUT_TABLES : TABLES));
+        List<String[]> indexes = new ArrayList<>(Arrays.asList(arrayLayout ? ARRAY_LAYOUT_INDEXES : INDEXES));
+        if(nodeGeometry) {
+            indexes.add(NODE_GEOMETRY_INDEX);
+        }
+        if(nodeCoordinatesTable) {
+            tables.add(NODECOORDINATES);
+            indexes.add(NODE_COORDINATES_INDEX);
+        }
+
+        long start = System.currentTimeMillis();
+        if(setLogged) {
+            List<String> statements = new ArrayList<>();
+            for(String table : tables) {
+                statements.add("ALTER TABLE " + DB.getFullTableName(schema, table) + " SET LOGGED;");
+            }
+            InterDB.executeInParallel(parameter, statements);
+            System.out.println("set intermediate tables logged in " + Util.getElapsedTime(start));
+        }
+
+        start = System.currentTimeMillis();
+        List<String> statements = new ArrayList<>();
+        for(String[] index : indexes) {
+            statements.add("CREATE INDEX IF NOT EXISTS " + index[0] + " ON "
+                    + DB.getFullTableName(schema, index[1])
+                    + (index.length > 3 ? " USING " + index[3] : "")
+                    + " (" + index[2] + ");");
+        }
+        InterDB.executeInParallel(parameter, statements);
+        System.out.println("created indexes on intermediate tables in " + Util.getElapsedTime(start));
+
+        start = System.currentTimeMillis();
+        statements = new ArrayList<>();
+        for(String table : tables) {
+            statements.add("ANALYZE " + DB.getFullTableName(schema, table) + ";");
+        }
+        InterDB.executeInParallel(parameter, statements);
+        System.out.println("analyzed intermediate tables in " + Util.getElapsedTime(start));
+    }
+
+    private static void executeInParallel(Parameter parameter, List<String> statements) throws SQLException {
+        int threads = parameter.getIndexThreads();
+        if(threads <= 0 || threads > statements.size()) {
+            threads = statements.size();
+        }
+
+        String maintenanceWorkMem = parameter.getMaintenanceWorkMem();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for(String statement : statements) {
+                results.add(pool.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    try (Connection connection = DB.createConnection(parameter);
+                         Statement stmt = connection.createStatement()) {
+                        if(maintenanceWorkMem != null && !maintenanceWorkMem.isEmpty()) {
+                            stmt.execute("SET maintenance_work_mem = '" + maintenanceWorkMem + "';");
+                        }
+                        stmt.execute(statement);
+                    }
+                    System.out.println(statement + " took " + Util.getElapsedTime(start));
+                    return null;
+                }));
+            }
+
+            for(Future<?> result : results) {
+                try {
+                    result.get();
+                }
+                catch(ExecutionException e) {
+                    if(e.getCause() instanceof SQLException) {
+                        throw (SQLException) e.getCause();
+                    }
+                    throw new SQLException(e.getCause());
+                }
+                catch(InterruptedException e) {
+                    throw new SQLException("interrupted while waiting for " + statements);
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if intermediate tables in that schema were created with
+     * array layout, see createTables
+     */
+    public static boolean isArrayLayout(SQLStatementQueue sql, String schema) throws SQLException {
+        return "ARRAY".equalsIgnoreCase(InterDB.getColumnDataType(sql, schema, WAYTABLE, "node_ids"));
+    }
+
+    /**
+     * @return true if untagged way nodes are stored in table nodecoordinates,
+     * see createNodeCoordinatesTable
+     */
+    public static boolean hasNodeCoordinatesTable(SQLStatementQueue sql, String schema) throws SQLException {
+        return InterDB.getColumnDataType(sql, schema, NODECOORDINATES, "osm_id") != null;
+    }
+
+    /**
+     * @return true if that table in that schema has that column
+     */
+    public static boolean hasColumn(SQLStatementQueue sql, String schema, String table, String column) throws SQLException {
+        return InterDB.getColumnDataType(sql, schema, table, column) != null;
+    }
+
+    /**
+     * @return type of node coordinates in that schema, see Parameter.COORDINATES_*
+     */
+    public static String getCoordinateType(SQLStatementQueue sql, String schema) throws SQLException {
+        String dataType = InterDB.getColumnDataType(sql, schema, NODETABLE, "longitude");
+        if("integer".equalsIgnoreCase(dataType)) {
+            return Parameter.COORDINATES_FIXED;
+        }
+        if("double precision".equalsIgnoreCase(dataType)) {
+            return Parameter.COORDINATES_DOUBLE;
+        }
+        return Parameter.COORDINATES_TEXT;
+    }
+
+    /**
+     * @return data type from information_schema, null if there is no such column
+     */
+    private static String getColumnDataType(SQLStatementQueue sql, String schema,
+                                            String table, String column) throws SQLException {
+        sql.append("SELECT data_type FROM information_schema.columns WHERE table_schema = ");
+        if(schema == null || schema.isEmpty()) {
+            sql.append("current_schema()");
+        } else {
+            sql.append("'");
+            sql.append(schema.toLowerCase());
+            sql.append("'");
+        }
+        sql.append(" AND table_name = '");
+        sql.append(table);
+        sql.append("' AND column_name = '");
+        sql.append(column);
+        sql.append("';");
+
+        ResultSet result = sql.executeWithResult();
+        String dataType = result.next() ? result.getString(1) : null;
+        result.close();
+
+        return dataType;
+    }
+
+    /**
+     * Convert coordinates of an existing intermediate nodes table into
+     * coordinateType of that parameter and add or drop the geometry column
+     * according to nodeGeometry. Rewrites the nodes table.
+     */
+    public static void migrateCoordinates(Parameter parameter) throws SQLException, IOException {
+        String schema = parameter.getSchema();
+        String target = parameter.getCoordinateType();
+        SQLStatementQueue sql = new SQLStatementQueue(parameter);
+
+        String current = InterDB.getCoordinateType(sql, schema);
+        boolean hasGeometry = InterDB.getColumnDataType(sql, schema, NODETABLE, "geom") != null;
+        String nodes = DB.getFullTableName(schema, NODETABLE);
+
+        long start = System.currentTimeMillis();
+        System.out.println("migrate coordinates of " + nodes + " from " + current
+                + (hasGeometry ? " with geometry" : "") + " to " + target
+                + (parameter.isNodeGeometry() ? " with geometry" : ""));
+
+        if(hasGeometry && (!current.equals(target) || !parameter.isNodeGeometry())) {
+            // generated column depends on coordinate columns
+            sql.append("ALTER TABLE ");
+            sql.append(nodes);
+            sql.append(" DROP COLUMN geom;");
+            sql.forceExecute();
+            hasGeometry = false;
+        }
+
+        if(!current.equals(target)) {
+            InterDB.convertCoordinateColumns(sql, nodes, current, target);
+            if(InterDB.hasNodeCoordinatesTable(sql, schema)) {
+                InterDB.convertCoordinateColumns(sql, DB.getFullTableName(schema, NODECOORDINATES), current, target);
+            }
+        }
+
+        if(parameter.isNodeGeometry() && !hasGeometry) {
+            sql.append("ALTER TABLE ");
+            sql.append(nodes);
+            sql.append(" ADD COLUMN ");
+            sql.append(InterDB.getNodeGeometryColumn(target));
+            sql.append(";");
+            sql.forceExecute();
+
+            sql.append("CREATE INDEX IF NOT EXISTS ");
+            sql.append(NODE_GEOMETRY_INDEX[0]);
+            sql.append(" ON ");
+            sql.append(nodes);
+            sql.append(" USING gist (geom);");
+            sql.forceExecute();
+        }
+
+        sql.append("ANALYZE ");
+        sql.append(nodes);
+        sql.append(";");
+        sql.forceExecute();
+        sql.close();
+
+        System.out.println("migrated coordinates in " + Util.getElapsedTime(start));
+    }
+
+    private static final int MIGRATE_FETCH_SIZE = 10000;
+
+    /**
+     * Convert column serializedtags of existing intermediate tables from
+     * length prefixed strings into jsonb (tagFormat:jsonb). Tags are parsed
+     * in java like extraction does and copied into a helper table which
+     * replaces the column afterwards - in one transaction, tags are never
+     * missing.
+     */
+    public static void migrateTags(Parameter parameter) throws SQLException, IOException {
+        String schema = parameter.getSchema();
+        SQLStatementQueue sql = new SQLStatementQueue(parameter);
+
+        for(String table : new String[] {NODETABLE, WAYTABLE, RELATIONTABLE}) {
+            String fullTableName = DB.getFullTableName(schema, table);
+            if("jsonb".equalsIgnoreCase(InterDB.getColumnDataType(sql, schema, table, "serializedtags"))) {
+                System.out.println(fullTableName + " has jsonb tags already");
+                continue;
+            }
+
+            long start = System.currentTimeMillis();
+            String helperTable = table + "_jsonbtags";
+            String fullHelperTableName = DB.getFullTableName(schema, helperTable);
+            DB.drop(sql, schema, helperTable);
+            sql.append("CREATE UNLOGGED TABLE ");
+            sql.append(fullHelperTableName);
+            sql.append(" (id bigint PRIMARY KEY, tags jsonb);");
+            sql.forceExecute();
+
+            long rows = InterDB.copyJSONTags(parameter, fullTableName, fullHelperTableName);
+            System.out.println("converted tags of " + rows + " rows of " + fullTableName + " in " + Util.getElapsedTime(start));
+
+            InterDB.replaceTags(parameter, fullTableName, fullHelperTableName);
+
+            DB.drop(sql, schema, helperTable);
+            sql.append("ANALYZE ");
+            sql.append(fullTableName);
+            sql.append(";");
+            sql.forceExecute();
+
+            System.out.println("migrated tags of " + fullTableName + " in " + Util.getElapsedTime(start));
+        }
+        sql.close();
+    }
+
+    /**
+     * change type of serializedtags and set tags of helper table in one
+     * transaction: the column is either text or jsonb with all tags
+     */
+    private static void replaceTags(Parameter parameter, String fullTableName,
+                                    String fullHelperTableName) throws SQLException {
+        try (Connection connection = DB.createConnection(parameter);
+             Statement statement = connection.createStatement()) {
+
+            connection.setAutoCommit(false);
+            try {
+                statement.execute("ALTER TABLE " + fullTableName
+                        + " ALTER COLUMN serializedtags TYPE jsonb USING NULL;");
+                statement.execute("UPDATE " + fullTableName + " AS t SET serializedtags = h.tags FROM "
+                        + fullHelperTableName + " AS h WHERE t.id = h.id;");
+                connection.commit();
+            }
+            catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * read serializedtags with a cursor and copy them as json into helper table
+     * @return number of rows
+     */
+    private static long copyJSONTags(Parameter parameter, String fullTableName,
+                                     String fullHelperTableName) throws SQLException {
+        try (Connection readConnection = DB.createConnection(parameter);
+             Connection writeConnection = DB.createConnection(parameter)) {
+
+            // postgres uses a cursor only without auto commit
+            readConnection.setAutoCommit(false);
+            CopyIn copyIn = new CopyManager((BaseConnection) writeConnection)
+                    .copyIn("COPY " + fullHelperTableName + " (id, tags) FROM STDIN");
+
+            ManagedStringBuilder json = new ManagedStringBuilder(new char[parameter.getSerTagsSize()]);
+            HashMap<String, String> tags = new HashMap<>();
+            StringBuilder row = new StringBuilder();
+            long rows = 0;
+            try (Statement stmt = readConnection.createStatement()) {
+                stmt.setFetchSize(MIGRATE_FETCH_SIZE);
+                ResultSet result = stmt.executeQuery("SELECT id, serializedtags FROM " + fullTableName + ";");
+                while(result.next()) {
+                    tags.clear();
+                    AbstractElement.deserializeTags(result.getString(2), tags);
+
+                    json.empty();
+                    json.append('{');
+                    for(Map.Entry<String, String> tag : tags.entrySet()) {
+                        UtilCopyImport.serializeTagsJSON(json, tag.getKey(), tag.getValue());
+                    }
+                    json.append('}');
+
+                    row.setLength(0);
+                    row.append(result.getLong(1));
+                    row.append('\t');
+                    String s = json.toString();
+                    for(int i = 0; i < s.length(); i++) {
+                        // backslash is the escape character of copy text format
+                        char c = s.charAt(i);
+                        if(c == '\\') {
+                            row.append('\\');
+                        }
+                        row.append(c);
+                    }
+                    row.append('\n');
+
+                    byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                    rows++;
+                }
+                result.close();
+                copyIn.endCopy();
+            }
+            finally {
+                if(copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+            readConnection.commit();
+
+            return rows;
+        }
+    }
+
+    private static void convertCoordinateColumns(SQLStatementQueue sql, String table,
+                                                 String current, String target) throws SQLException {
+        sql.append("ALTER TABLE ");
+        sql.append(table);
+        sql.append(" ALTER COLUMN longitude TYPE ");
+        sql.append(InterDB.getCoordinateColumnType(target));
+        sql.append(" USING ");
+        sql.append(InterDB.getCoordinateConversion("longitude", current, target));
+        sql.append(", ALTER COLUMN latitude TYPE ");
+        sql.append(InterDB.getCoordinateColumnType(target));
+        sql.append(" USING ");
+        sql.append(InterDB.getCoordinateConversion("latitude", current, target));
+        sql.append(";");
+        sql.forceExecute();
+    }
+
+    private static String getCoordinateConversion(String column, String from, String to) {
+        switch(to) {
+            case Parameter.COORDINATES_FIXED:
+                return "round(" + column + "::numeric * " + FIXED_POINT_FACTOR + ")::integer";
+            case Parameter.COORDINATES_DOUBLE:
+                return InterDB.getDegreeExpression(column, from);
+            default:
+                // shortest exact text of a double, like osm files
+                return "(" + InterDB.getDegreeExpression(column, from) + ")::character varying";
+        }
+    }
+
+    /**
+     * @return ids of a bigint[] column, empty list if null
+     */
+    public static List<String> getIDList(Array ids) throws SQLException {
+        List<String> l = new ArrayList<>();
+        if (ids == null) {
+            return l;
+        }
+        for (Object id : (Object[]) ids.getArray()) {
+            if (id != null) {
+                l.add(id.toString());
+            }
+        }
+        return l;
+    }
+
     public static List<String> getIDList(String commaSeparatedStrings) {
         List<String> l = new ArrayList<>();
         if (commaSeparatedStrings == null) {
@@ -4,11 +4,11 @@ package util.ManagedStringBuilder;
 /**
  * Somewhat identical class as a stringbuilder.
  * optimised for the current project. Only works with one single array.
+ * Appending does not allocate, only toString creates a copy.
  *
  * @author FlorianSauer
  */
 public class ManagedStringBuilder {
-    private char NULLCHAR;
     private int count;
     private char[] value;
     public ManagedStringBuilder(char[] initArray){
@@ -22,9 +22,7 @@ public class ManagedStringBuilder {
         return this.value.length;
     }
     public void empty(){
-        for (int i = 0; i < this.count; i++){
-            this.value[i] = this.NULLCHAR;
-        }
+        // content behind count is never read - no need to clear the array
         this.count = 0;
     }
     public ManagedStringBuilder append(String str){
@@ -39,12 +37,36 @@ public class ManagedStringBuilder {
 //        System.out.println(this.toString());
         return this;
     }
+    public ManagedStringBuilder append(char c) {
+        if (this.count + 1 >= this.value.length){
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        this.value[this.count++] = c;
+        return this;
+    }
     public ManagedStringBuilder append(int i) {
         if (i == Integer.MIN_VALUE) {
             append("-2147483648");
             return this;
         }
-        return this.append(""+i);
+        if (i < 0) {
+            this.append('-');
+            i = -i;
+        }
+        // count digits first, then write them from right to left
+        int digits = 1;
+        for (int rest = i / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        if (this.count + digits >= this.value.length){
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        for (int pos = this.count + digits - 1; pos >= this.count; pos--) {
+            this.value[pos] = (char) ('0' + i % 10);
+            i /= 10;
+        }
+        this.count += digits;
+        return this;
     }
     @Override
     public String toString() {
@@ -0,0 +1,96 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Set of osm ids as bits outside java heap. Bits are kept in pages of 64k ids
+ * which are allocated when the first id of that range is set - ranges without
+ * any id cost a null reference only. All way node ids of a planet take about
+ * 1.5 GB of direct memory (-XX:MaxDirectMemorySize).
+ * <br>
+ * Filled by one thread, can be read by any number of threads afterwards.
+ * Negative ids (not yet uploaded elements in editor files) are always contained.
+ */
+public class NodeIdBitSet {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int PAGE_LONGS = (1 << PAGE_SHIFT) / 64;
+
+    private LongBuffer[] pages = new LongBuffer[1024];
+    private long size = 0;
+    private int allocatedPages = 0;
+
+    public void set(long id) {
+        if(id < 0) {
+            return;
+        }
+
+        long pageIndex = id >>> PAGE_SHIFT;
+        if(pageIndex >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("osm id too large: " + id);
+        }
+        LongBuffer page = this.getPage((int) pageIndex);
+
+        int bit = (int) (id & PAGE_MASK);
+        long word = page.get(bit >>> 6);
+        long mask = 1L << (bit & 63);
+        if((word & mask) == 0) {
+            page.put(bit >>> 6, word | mask);
+            this.size++;
+        }
+    }
+
+    public boolean get(long id) {
+        if(id < 0) {
+            return true;
+        }
+
+        long pageIndex = id >>> PAGE_SHIFT;
+        if(pageIndex >= this.pages.length) {
+            return false;
+        }
+        LongBuffer page = this.pages[(int) pageIndex];
+        if(page == null) {
+            return false;
+        }
+
+        int bit = (int) (id & PAGE_MASK);
+        return (page.get(bit >>> 6) & (1L << (bit & 63))) != 0;
+    }
+
+    /**
+     * @return number of ids in that set
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * @return direct memory used by that set in bytes
+     */
+    public long getAllocatedBytes() {
+        return (long) this.allocatedPages * PAGE_LONGS * 8;
+    }
+
+    private LongBuffer getPage(int pageIndex) {
+        if(pageIndex >= this.pages.length) {
+            int length = this.pages.length;
+            while(length <= pageIndex) {
+                length = length > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : length * 2;
+            }
+            this.pages = Arrays.copyOf(this.pages, length);
+        }
+
+        LongBuffer page = this.pages[pageIndex];
+        if(page == null) {
+            // direct buffers are zeroed
+            page = ByteBuffer.allocateDirect(PAGE_LONGS * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            this.pages[pageIndex] = page;
+            this.allocatedPages++;
+        }
+        return page;
+    }
+}
@@ -0,0 +1,445 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Node coordinates in a file, written during import and read during
+ * extraction - way geometries can be built without asking the intermediate db.
+ * <br>
+ * Coordinates are kept as fixed point integers (1e-7 degree like osm).
+ * Dense mode: 8 bytes per node at position osm_id * 8 in a memory mapped
+ * file. Unused ranges are file holes on most file systems. Sparse mode for
+ * small extracts: 16 byte records (id, lon, lat) which are sorted in memory
+ * when opened.
+ * <br>
+ * Each location remembers if the node had tags with a meaning (class code or
+ * name). Such nodes can have their own identity in ohdm and are still read
+ * from intermediate db.
+ */
+public class NodeLocationStore implements Closeable {
+    public static final String DENSE = "dense";
+    public static final String SPARSE = "sparse";
+
+    private static final byte[] DENSE_MAGIC = "NODELOCD".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SPARSE_MAGIC = "NODELOCS".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 8;
+
+    // 128M nodes per mapped segment, records never cross segment borders
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    // sparse records are sorted by packing id and position into one long
+    private static final int SPARSE_INDEX_BITS = 29;
+
+    private static final int FIXED_POINT_DIGITS = 7;
+
+    private final File file;
+    private final boolean sparse;
+    private final boolean writable;
+
+    // dense
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    // sparse
+    private DataOutputStream sparseOut;
+    private long sparseLength;
+    private long[] sparseIDs;
+    private long[] sparseLocations;
+
+    private NodeLocationStore(File file, boolean sparse, boolean writable) {
+        this.file = file;
+        this.sparse = sparse;
+        this.writable = writable;
+    }
+
+    /**
+     * create new (empty) store, an existing file is replaced
+     */
+    public static NodeLocationStore create(File file, boolean sparse) throws IOException {
+        NodeLocationStore store = new NodeLocationStore(file, sparse, true);
+        if(sparse) {
+            store.sparseOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            store.sparseOut.write(SPARSE_MAGIC);
+            store.sparseLength = HEADER_SIZE;
+        } else {
+            store.raf = new RandomAccessFile(file, "rw");
+            store.raf.setLength(0);
+            store.raf.write(DENSE_MAGIC);
+            store.channel = store.raf.getChannel();
+        }
+        return store;
+    }
+
+    /**
+     * continue writing a store after an interrupted import, mode is taken from file
+     * @param sparseLength file length returned by sync, sparse records behind
+     * are dropped
+     */
+    public static NodeLocationStore resume(File file, long sparseLength) throws IOException {
+        byte[] magic = new byte[HEADER_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(file, "rw")) {
+            in.readFully(magic);
+            if(Arrays.equals(magic, SPARSE_MAGIC)) {
+                // last record can be incomplete
+                in.setLength(Math.max(sparseLength, HEADER_SIZE));
+            }
+        }
+
+        if(Arrays.equals(magic, DENSE_MAGIC)) {
+            NodeLocationStore store = new NodeLocationStore(file, false, true);
+            store.raf = new RandomAccessFile(file, "rw");
+            store.channel = store.raf.getChannel();
+            return store;
+        }
+
+        if(Arrays.equals(magic, SPARSE_MAGIC)) {
+            NodeLocationStore store = new NodeLocationStore(file, true, true);
+            store.sparseOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16));
+            store.sparseLength = Math.max(sparseLength, HEADER_SIZE);
+            return store;
+        }
+
+        throw new IOException("not a node location file: " + file);
+    }
+
+    /**
+     * open store for reading, mode is taken from file
+     */
+    public static NodeLocationStore open(File file) throws IOException {
+        byte[] magic = new byte[HEADER_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(magic);
+        }
+
+        if(Arrays.equals(magic, DENSE_MAGIC)) {
+            NodeLocationStore store = new NodeLocationStore(file, false, false);
+            store.raf = new RandomAccessFile(file, "r");
+            store.channel = store.raf.getChannel();
+            return store;
+        }
+
+        if(Arrays.equals(magic, SPARSE_MAGIC)) {
+            NodeLocationStore store = new NodeLocationStore(file, true, false);
+            store.loadSparse();
+            return store;
+        }
+
+        throw new IOException("not a node location file: " + file);
+    }
+
+    /**
+     * @return store configured in parameter file, null if none is configured
+     * or file does not exist
+     */
+    public static NodeLocationStore open(Parameter parameter) throws IOException {
+        String fileName = parameter.getNodeLocationFile();
+        if(fileName == null || fileName.isEmpty()) {
+            return null;
+        }
+
+        File file = new File(fileName);
+        if(!file.exists()) {
+            System.err.println("node location file not found - read nodes from intermediate db: " + fileName);
+            return null;
+        }
+
+        return NodeLocationStore.open(file);
+    }
+
+    public boolean isSparse() {
+        return this.sparse;
+    }
+
+    /**
+     * remember node location. Can be called from several threads with
+     * different node ids.
+     * @param tagged node has a class code or name
+     */
+    public void put(long id, String longitude, String latitude, boolean tagged) throws IOException {
+        if(id < 0) {
+            // negative ids are only used by editors
+            return;
+        }
+
+        int lon = NodeLocationStore.parseFixedPoint(longitude);
+        int lat = NodeLocationStore.parseFixedPoint(latitude);
+
+        if(this.sparse) {
+            synchronized(this) {
+                this.sparseOut.writeLong(id);
+                this.sparseOut.writeInt(NodeLocationStore.encodeLongitude(lon));
+                this.sparseOut.writeInt(NodeLocationStore.encodeLatitude(lat, tagged));
+                this.sparseLength += 16;
+            }
+            return;
+        }
+
+        long position = HEADER_SIZE + id * RECORD_SIZE;
+        MappedByteBuffer segment = this.getSegment((int) (position >>> SEGMENT_SHIFT));
+        int offset = (int) (position & (SEGMENT_SIZE - 1));
+        segment.putInt(offset, NodeLocationStore.encodeLongitude(lon));
+        segment.putInt(offset + 4, NodeLocationStore.encodeLatitude(lat, tagged));
+    }
+
+    /**
+     * @return encoded location, 0 if node is unknown. See getLongitude,
+     * getLatitude and isTagged
+     */
+    public long get(long id) throws IOException {
+        if(id < 0) {
+            return 0;
+        }
+
+        if(this.sparse) {
+            int index = Arrays.binarySearch(this.sparseIDs, id);
+            return index < 0 ? 0 : this.sparseLocations[index];
+        }
+
+        long position = HEADER_SIZE + id * RECORD_SIZE;
+        if(position + RECORD_SIZE > this.channel.size()) {
+            return 0;
+        }
+
+        MappedByteBuffer segment = this.getSegment((int) (position >>> SEGMENT_SHIFT));
+        int offset = (int) (position & (SEGMENT_SIZE - 1));
+        return ((long) segment.getInt(offset) << 32) | (segment.getInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return fixed point longitude of an encoded location
+     */
+    public static int getLongitude(long location) {
+        return (int) (location >>> 32) ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return fixed point latitude of an encoded location
+     */
+    public static int getLatitude(long location) {
+        return (int) location >> 1;
+    }
+
+    public static boolean isTagged(long location) {
+        return (location & 1) != 0;
+    }
+
+    // stored longitude 0 means unknown: fixed point longitude is never Integer.MIN_VALUE
+    private static int encodeLongitude(int lon) {
+        return lon ^ Integer.MIN_VALUE;
+    }
+
+    // latitude needs 31 bit, lowest bit is the tagged flag
+    private static int encodeLatitude(int lat, boolean tagged) {
+        return (lat << 1) | (tagged ? 1 : 0);
+    }
+
+    /**
+     * @param degree like 52.5170365 or -0.1
+     * @return 1e-7 degree, more digits are cut
+     */
+    public static int parseFixedPoint(String degree) {
+        int length = degree.length();
+        int i = 0;
+        boolean negative = false;
+        if(length > 0 && (degree.charAt(0) == '-' || degree.charAt(0) == '+')) {
+            negative = degree.charAt(0) == '-';
+            i++;
+        }
+
+        long value = 0;
+        int fractionDigits = -1;
+        boolean digits = false;
+        for(; i < length; i++) {
+            char c = degree.charAt(i);
+            if(c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if(c >= '0' && c <= '9') {
+                digits = true;
+                if(fractionDigits < FIXED_POINT_DIGITS) {
+                    value = value * 10 + (c - '0');
+                    if(fractionDigits >= 0) {
+                        fractionDigits++;
+                    }
+                }
+            } else {
+                throw new NumberFormatException("not a coordinate: " + degree);
+            }
+        }
+        if(!digits) {
+            throw new NumberFormatException("not a coordinate: " + degree);
+        }
+
+        for(int f = Math.max(fractionDigits, 0); f < FIXED_POINT_DIGITS; f++) {
+            value *= 10;
+        }
+        if(value > 1800000000L) {
+            throw new NumberFormatException("coordinate out of range: " + degree);
+        }
+
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * @return fixed point value as degree string without trailing zeros, e.g. 52.517
+     */
+    public static String toDegreeString(int fixedPoint) {
+        StringBuilder sb = new StringBuilder(12);
+        long value = fixedPoint;
+        if(value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(value / 10000000L);
+
+        int fraction = (int) (value % 10000000L);
+        if(fraction != 0) {
+            int digits = FIXED_POINT_DIGITS;
+            while(fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            sb.append('.');
+            String f = Integer.toString(fraction);
+            for(int i = f.length(); i < digits; i++) {
+                sb.append('0');
+            }
+            sb.append(f);
+        }
+
+        return sb.toString();
+    }
+
+    private MappedByteBuffer getSegment(int index) throws IOException {
+        MappedByteBuffer[] s = this.segments;
+        if(index < s.length && s[index] != null) {
+            return s[index];
+        }
+
+        synchronized(this) {
+            s = this.segments;
+            if(index >= s.length) {
+                s = Arrays.copyOf(s, index + 1);
+            } else if(s[index] != null) {
+                return s[index];
+            } else {
+                s = s.clone();
+            }
+
+            long start = (long) index << SEGMENT_SHIFT;
+            if(this.writable) {
+                // mapping beyond end of file extends the file
+                s[index] = this.channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE);
+            } else {
+                long size = Math.min(SEGMENT_SIZE, this.channel.size() - start);
+                s[index] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+            this.segments = s;
+            return s[index];
+        }
+    }
+
+    private void loadSparse() throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(this.file, "r");
+             FileChannel ch = in.getChannel()) {
+
+            long records = (ch.size() - HEADER_SIZE) / 16;
+            if(records >= 1L << SPARSE_INDEX_BITS) {
+                throw new IOException("too many nodes for sparse node location file - use dense mode: " + this.file);
+            }
+
+            int n = (int) records;
+            long[] keys = new long[n];
+            long[] locations = new long[n];
+
+            ByteBuffer buffer = ByteBuffer.allocate(16 * 4096);
+            ch.position(HEADER_SIZE);
+            int i = 0;
+            while(i < n) {
+                buffer.clear();
+                while(buffer.hasRemaining() && ch.read(buffer) > 0) {
+                    // fill
+                }
+                buffer.flip();
+                while(buffer.remaining() >= 16 && i < n) {
+                    long id = buffer.getLong();
+                    if(id >= 1L << (63 - SPARSE_INDEX_BITS)) {
+                        throw new IOException("node id too large for sparse node location file - use dense mode: " + id);
+                    }
+                    keys[i] = (id << SPARSE_INDEX_BITS) | i;
+                    locations[i] = ((long) buffer.getInt() << 32) | (buffer.getInt() & 0xFFFFFFFFL);
+                    i++;
+                }
+                if(buffer.hasRemaining()) {
+                    // incomplete record at end of file
+                    break;
+                }
+            }
+
+            // records come from parallel importers - sort by id
+            Arrays.sort(keys, 0, i);
+
+            this.sparseIDs = new long[i];
+            this.sparseLocations = new long[i];
+            for(int k = 0; k < i; k++) {
+                this.sparseIDs[k] = keys[k] >>> SPARSE_INDEX_BITS;
+                this.sparseLocations[k] = locations[(int) (keys[k] & ((1L << SPARSE_INDEX_BITS) - 1))];
+            }
+        }
+    }
+
+    /**
+     * write all locations to disk
+     * @return length of a sparse file, 0 with dense files
+     */
+    public long sync() throws IOException {
+        if(this.sparse) {
+            synchronized(this) {
+                this.sparseOut.flush();
+                return this.sparseLength;
+            }
+        }
+
+        for(MappedByteBuffer segment : this.segments) {
+            if(segment != null) {
+                segment.force();
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.sparseOut != null) {
+            this.sparseOut.close();
+            this.sparseOut = null;
+        }
+
+        if(this.channel != null) {
+            if(this.writable) {
+                for(MappedByteBuffer segment : this.segments) {
+                    if(segment != null) {
+                        segment.force();
+                    }
+                }
+            }
+            this.segments = new MappedByteBuffer[0];
+            this.channel.close();
+            this.raf.close();
+            this.channel = null;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import ohdm2osm.OHDMRendering2MapnikTables;
 import ohdm2osm.OSMFileExporter;
 import ohdm2geoserverrendering.OHDM2Geoserverrendering;
 import ohdm2rendering.OHDM2Rendering;
+import osm2inter.ImportCheckpoint;
 import osm2inter.OSMImport;
 import rendering2strdf.Rendering2stRDF;
 
@@ -24,9 +25,23 @@ import rendering2strdf.Rendering2stRDF;
 public class OHDMConverter {
     public static final String CHUNK_FACTORY = "-buildimportcmd";
     public static final String CHUNK_PROCESS = "-chunkprocess";
+    public static final String MIGRATE_COORDINATES = "-migratecoordinates";
+    public static final String MIGRATE_TAGS = "-migratetags";
 
     public static void main(String[] args) throws IOException, SQLException {
 
+        // convert coordinates of an existing intermediate db into types of its parameter file
+        if(args.length == 2 && args[0].equalsIgnoreCase(MIGRATE_COORDINATES)) {
+            InterDB.migrateCoordinates(new Parameter(args[1]));
+            System.exit(0);
+        }
+
+        // convert serializedtags of an existing intermediate db into jsonb
+        if(args.length == 2 && args[0].equalsIgnoreCase(MIGRATE_TAGS)) {
+            InterDB.migrateTags(new Parameter(args[1]));
+            System.exit(0);
+        }
+
         if(args.length < 4) {
             /* at least two parameter are required which are 
             defined with at least four arguments
@@ -47,6 +62,7 @@ public class OHDMConverter {
 
         boolean chunkCmdBuilder = false;
         boolean chunkProcess = false;
+        boolean resumeImport = false;
 
         // now get real parameters
         HashMap<String, String> argumentMap = Util.parametersToMap(args,
@@ -86,6 +102,7 @@ public class OHDMConverter {
 
             chunkCmdBuilder = argumentMap.containsKey(CHUNK_FACTORY);
             chunkProcess = argumentMap.containsKey(CHUNK_PROCESS);
+            resumeImport = argumentMap.containsKey(ImportCheckpoint.RESUME);
         }
 
         // launch chunk factory
@@ -151,7 +168,11 @@ public class OHDMConverter {
         }
         
         if(osmFile != null && importInterDBConfig != null && updateInterDBConfig == null) {
-            OSMImport.main(new String[]{osmFile, importInterDBConfig});
+            if(resumeImport) {
+                OSMImport.main(new String[]{osmFile, importInterDBConfig, ImportCheckpoint.RESUME});
+            } else {
+                OSMImport.main(new String[]{osmFile, importInterDBConfig});
+            }
         }
 
         if(importInterDBConfig != null && ohdmDBConfig != null && updateInterDBConfig == null) {
@@ -229,6 +250,8 @@ public class OHDMConverter {
         out.println("-m [parameter file mapnik DB]");
         out.println("-p [WKT polygon (EPSG 4326) for osm extraction]");
         out.println("-t [date like 2117-12-11]");
+        out.println(MIGRATE_COORDINATES + " [parameter file intermediateDB] (coordinateType / nodeGeometry of existing db)");
+        out.println(MIGRATE_TAGS + " [parameter file intermediateDB] (serializedtags of existing db into jsonb)");
         out.println("see https://github.com/OpenHistoricalDataMap/OSMImportUpdate/wiki for details");
         System.exit(0);
     }
@@ -26,6 +26,20 @@ public class Parameter {
     private String readStepLen;
     private boolean usePSQL = false;
 
+    public static final String MEMBER_LAYOUT_TABLE = "table";
+    public static final String MEMBER_LAYOUT_ARRAY = "array";
+
+    public static final String COORDINATES_TEXT = "text";
+    public static final String COORDINATES_FIXED = "fixed";
+    public static final String COORDINATES_DOUBLE = "double";
+
+    public static final String TAGS_SERIALIZED = "serialized";
+    public static final String TAGS_JSONB = "jsonb";
+
+    public static final String NODES_ALL = "all";
+    public static final String NODES_REFERENCED = "referenced";
+    public static final String NODES_COORDINATES = "coordinates";
+
     private static final String STDOUT = "stdout";
     private static final String STDERR = "stderr";
 
@@ -47,6 +61,27 @@ public class Parameter {
     private String renderoutput = OHDM2Rendering.GENERIC;
     private int logMessageInterval = 5;
     private int SerTagsSize = 200000;
+    private int copyBufferSize = 1024 * 1024; // bytes buffered per copy connection
+    private long copyFlushInterval = 1000; // ms, <= 0: flush only when buffer is full
+    private int copyQueueSize = 64; // batches waiting for copy writer threads, 0: write in parser thread
+    private int copyBatchSize = 1000; // rows per batch
+    private int importPartitions = 1; // xml file ranges parsed in parallel by copy import
+    private boolean unloggedTables = false; // copy import into unlogged tables, set logged afterwards
+    private int indexThreads = 0; // parallel index creation after copy import, 0: one connection per index
+    private String maintenanceWorkMem = ""; // e.g. 1GB, empty: server setting
+    private String memberLayout = MEMBER_LAYOUT_TABLE; // way nodes and relation members: table or array
+    private String nodeLocationFile = ""; // node coordinates file written by import, used by extraction
+    private String nodeLocationMode = NodeLocationStore.DENSE; // dense (planet) or sparse (small extracts)
+    private String coordinateType = COORDINATES_TEXT; // node coordinates: text, fixed (1e-7 degree integer) or double
+    private boolean nodeGeometry = false; // postgis point column in nodes, computed from coordinates
+    private String tagFormat = TAGS_SERIALIZED; // serializedtags column: length prefixed strings or jsonb
+    private int checkpointInterval = 0; // MB of osm file between import checkpoints, 0: none
+    private String nodeFilter = NODES_ALL; // untagged nodes: all, referenced only, referenced into nodecoordinates
+    private String importRegion = ""; // wkt polygon or minlon,minlat,maxlon,maxlat, empty: whole osm file
+    private String tagFilter = ""; // tag filter file like conf/whitelist.xml, empty: all tags
+    private String insertBatchSize = "1000"; // rows per sql-insert batch: n or n,table=n,... like 1000,waynodes=5000
+    private int fetchSize = 10000; // rows per round trip of cursor reads (extraction, export)
+    private String readStepLenRange = ""; // min,max[,rows]: adaptive readStepLen within bounds, empty: fixed
     private String osmfilecreationdatestring;
 
     public String getConnectionType() {
@@ -165,6 +200,27 @@ public class Parameter {
                             case "waynodesColumnNames": this.waynodesColumnNames = value.split("\\|"); break;
                             case "waysColumnNames": this.waysColumnNames = value.split("\\|"); break;
                             case "serTagsSize": this.SerTagsSize = Integer.parseInt(value); break;
+                            case "copyBufferSize": this.copyBufferSize = Integer.parseInt(value); break;
+                            case "copyFlushInterval": this.copyFlushInterval = Long.parseLong(value); break;
+                            case "copyQueueSize": this.copyQueueSize = Integer.parseInt(value); break;
+                            case "copyBatchSize": this.copyBatchSize = Integer.parseInt(value); break;
+                            case "importPartitions": this.importPartitions = Integer.parseInt(value); break;
+                            case "unloggedTables": this.unloggedTables = this.getTrueOrFalse(value); break;
+                            case "indexThreads": this.indexThreads = Integer.parseInt(value); break;
+                            case "maintenanceWorkMem": this.maintenanceWorkMem = value; break;
+                            case "memberLayout": this.memberLayout = value.toLowerCase(); break;
+                            case "nodeLocationFile": this.nodeLocationFile = value; break;
+                            case "nodeLocationMode": this.nodeLocationMode = value.toLowerCase(); break;
+                            case "coordinateType": this.coordinateType = value.toLowerCase(); break;
+                            case "nodeGeometry": this.nodeGeometry = this.getTrueOrFalse(value); break;
+                            case "tagFormat": this.tagFormat = value.toLowerCase(); break;
+                            case "checkpointInterval": this.checkpointInterval = Integer.parseInt(value); break;
+                            case "nodeFilter": this.nodeFilter = value.toLowerCase(); break;
+                            case "importRegion": this.importRegion = value; break;
+                            case "tagFilter": this.tagFilter = value; break;
+                            case "insertBatchSize": this.insertBatchSize = value; break;
+                            case "fetchSize": this.fetchSize = Integer.parseInt(value); break;
+                            case "readStepLenRange": this.readStepLenRange = value; break;
                             case "osmfilecreationdate": this.checkDateFormat(value); break;
                         }
                     }
@@ -242,6 +298,83 @@ public class Parameter {
     
     public int getSerTagsSize() { return this.SerTagsSize;  }
 
+    public int getCopyBufferSize() { return this.copyBufferSize > 4 ? this.copyBufferSize : 4;  }
+    public long getCopyFlushInterval() { return this.copyFlushInterval;  }
+    public int getCopyQueueSize() { return this.copyQueueSize;  }
+    public int getCopyBatchSize() { return this.copyBatchSize;  }
+    public int getImportPartitions() { return this.importPartitions > 1 ? this.importPartitions : 1;  }
+    public boolean isUnloggedTables() { return this.unloggedTables;  }
+    public int getIndexThreads() { return this.indexThreads;  }
+    public String getMaintenanceWorkMem() { return this.maintenanceWorkMem;  }
+    public boolean isArrayMemberLayout() { return MEMBER_LAYOUT_ARRAY.equals(this.memberLayout);  }
+    public String getNodeLocationFile() { return this.nodeLocationFile;  }
+    public boolean isSparseNodeLocations() { return NodeLocationStore.SPARSE.equals(this.nodeLocationMode);  }
+    public boolean isNodeGeometry() { return this.nodeGeometry;  }
+    public boolean isJSONTags() { return TAGS_JSONB.equals(this.tagFormat);  }
+    public long getCheckpointInterval() { return Math.max(this.checkpointInterval, 0) * 1024L * 1024L;  }
+    public boolean isReferencedNodesOnly() { return NODES_REFERENCED.equals(this.nodeFilter) || this.isNodeCoordinatesTable();  }
+    public boolean isNodeCoordinatesTable() { return NODES_COORDINATES.equals(this.nodeFilter);  }
+    public String getImportRegion() { return this.importRegion;  }
+    public String getTagFilter() { return this.tagFilter;  }
+    public int getFetchSize() { return this.fetchSize > 0 ? this.fetchSize : 10000;  }
+
+    /**
+     * @return min, max and target rows of an adaptive readStepLen, null if
+     * readStepLen is fixed
+     */
+    public int[] getReadStepLenRange() {
+        if(this.readStepLenRange.trim().isEmpty()) {
+            return null;
+        }
+        String[] values = this.readStepLenRange.split(",");
+        try {
+            int min = Integer.parseInt(values[0].trim());
+            int max = values.length > 1 ? Integer.parseInt(values[1].trim()) : Integer.MAX_VALUE;
+            int rows = values.length > 2 ? Integer.parseInt(values[2].trim()) : 50000;
+            if(min < 1 || max < min || rows < 1) {
+                throw new NumberFormatException("min > 0, max >= min and rows > 0 required");
+            }
+            return new int[] {min, max, rows};
+        }
+        catch(NumberFormatException e) {
+            System.err.println("malformed readStepLenRange (fixed readStepLen is used): "
+                    + this.readStepLenRange + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return rows per sql-insert batch of that table: its own size if given,
+     * default size otherwise
+     */
+    public int getInsertBatchSize(String table) {
+        int size = 1000;
+        for(String entry : this.insertBatchSize.split(",")) {
+            String[] tableSize = entry.trim().split("=");
+            try {
+                if(tableSize.length == 1) {
+                    size = Integer.parseInt(tableSize[0].trim());
+                } else if(tableSize[0].trim().equalsIgnoreCase(table)) {
+                    return Integer.parseInt(tableSize[1].trim());
+                }
+            }
+            catch(NumberFormatException e) {
+                System.err.println("no integer value in insertBatchSize (ignored): " + entry);
+            }
+        }
+        return size;
+    }
+
+    public String getCoordinateType() {
+        switch(this.coordinateType) {
+            case COORDINATES_FIXED:
+            case COORDINATES_DOUBLE:
+                return this.coordinateType;
+            default:
+                return COORDINATES_TEXT;
+        }
+    }
+
     public PrintStream getOutStream() throws FileNotFoundException {
         if(this.outStream == null) {
             this.outStream = this.getOutStream(this.outFile);
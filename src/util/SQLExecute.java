@@ -68,17 +68,19 @@ class SQLExecute extends Thread {
 
             // ok, statement executed
             this.recordKeeper.writeLog(this.recordEntry);
-            this.recordKeeper.done(this);
 //            System.out.print(this.recordEntry + ", ");
 //            System.out.println("exec threat successfully issued sql statement: " + this.recordEntry);
         }
         catch(SQLException e) {
             System.err.println("sql error: (error / statement): \n" + e.getMessage() + "\n" + this.sqlStatement);
+            // thrown by next forceExecute() of that queue
+            this.recordKeeper.failed(e);
         } catch (IOException ex) {
             System.err.println("cannot write record entry: " + this.recordEntry);
         } 
         finally {
             this.done = true; // in any case.. we are ready here
+            this.recordKeeper.done(this);
         }
     }
 
@@ -25,6 +25,8 @@ public class SQLStatementQueue {
 //    private static final long MAX_BUFFER_LENGTH = 200; // 500 kByte
     
     private final ArrayList<SQLExecute> execThreads = new ArrayList<>();
+    // failure of a parallel execution, see checkFailures
+    private SQLException execException = null;
     private static final int DEFAULT_MAX_EXEC_THREADS = 1;
     
     protected StringBuilder sqlQueue;
@@ -36,6 +38,10 @@ public class SQLStatementQueue {
     private PrintStream outStream = null;
     private PrintStream logStream = null;
     private PrintStream errStream = null;
+
+    // open result of executeStreaming, see closeStreaming
+    private Connection streamingConnection = null;
+    private PreparedStatement streamingStatement = null;
     
     public SQLStatementQueue(Connection connection) {
         this.connections.add(connection);
@@ -119,6 +125,7 @@ public class SQLStatementQueue {
     }
     
     public void close() throws SQLException {
+        this.closeStreaming();
         this.forceExecute();
         this.join();
         if(this.connections != null) {
@@ -326,10 +333,14 @@ public class SQLStatementQueue {
     }
     
     /**
-     * sequential execution of sql statement
+     * sequential execution of sql statement. Waits for parallel executions
+     * issued before and throws their failure, even if nothing is queued.
      * @throws SQLException 
      */
     public void forceExecute() throws SQLException {
+        this.join();
+        this.checkFailures();
+        
         if(this.sqlQueue == null || this.sqlQueue.length() < 1) {
             return;
         }
@@ -382,6 +393,62 @@ public class SQLStatementQueue {
         }
     }
     
+    /**
+     * Execute query with a forward only cursor: rows are fetched in portions
+     * of fetchSize, the result set never holds more - executeWithResult reads
+     * the whole result into heap. Autocommit of that connection is off until
+     * closeStreaming (or next executeStreaming) - use a queue of its own if
+     * anything is written while reading.
+     */
+    public ResultSet executeStreaming(int fetchSize) throws SQLException {
+        this.closeStreaming();
+
+        Connection conn = this.getFreeConnection();
+        try {
+            conn.setAutoCommit(false);
+            this.streamingConnection = conn;
+
+            PreparedStatement stmt = conn.prepareStatement(this.sqlQueue.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            this.streamingStatement = stmt;
+            stmt.setFetchSize(fetchSize);
+
+            return stmt.executeQuery();
+        }
+        catch(SQLException e) {
+            this.closeStreaming();
+            throw e;
+        }
+        finally {
+            this.resetStatement();
+            this.setFreeConnection(conn);
+        }
+    }
+
+    /**
+     * close result of executeStreaming, end its transaction and switch
+     * autocommit on again
+     */
+    public void closeStreaming() throws SQLException {
+        if(this.streamingConnection == null) {
+            return;
+        }
+        Connection conn = this.streamingConnection;
+        PreparedStatement stmt = this.streamingStatement;
+        this.streamingConnection = null;
+        this.streamingStatement = null;
+
+        try {
+            if(stmt != null) {
+                stmt.close();
+            }
+            conn.commit();
+        }
+        finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
     private String debugLastStatement;
     public void resetStatement() {
         if(this.sqlQueue != null) {
@@ -419,6 +486,25 @@ public class SQLStatementQueue {
         return this.sqlQueue.toString();
     }
 
+    synchronized void failed(SQLException e) {
+        if(this.execException == null) {
+            this.execException = e;
+        } else {
+            this.execException.setNextException(e);
+        }
+    }
+    
+    /**
+     * throws (once) failures of parallel executions finished so far
+     */
+    public synchronized void checkFailures() throws SQLException {
+        SQLException e = this.execException;
+        this.execException = null;
+        if(e != null) {
+            throw new SQLException("parallel sql execution failed: " + e.getMessage(), e);
+        }
+    }
+
     synchronized void done(SQLExecute execThread) {
         this.execThreads.remove(execThread);
         Connection conn = execThread.getConnection();
@@ -0,0 +1,60 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Ids of a table reserved in blocks: one nextval round trip per blockSize
+ * ids instead of an INSERT ... RETURNING id per row. Rows can then be
+ * written with their id by any (asynchronous) queue. Ids are unique across
+ * connections and processes, a block is not necessarily contiguous. Ids not
+ * used when the importer ends are left as gaps.
+ */
+public class SequenceBlock {
+    private final Connection connection;
+    private final String sequenceName;
+    private final int blockSize;
+
+    private final long[] ids;
+    private int next;
+    private int size = 0;
+
+    public SequenceBlock(Connection connection, String schema, String tableName, int blockSize) {
+        this.connection = connection;
+        this.sequenceName = DB.getSequenceName(DB.getFullTableName(schema, tableName)).trim();
+        this.blockSize = blockSize > 0 ? blockSize : 1;
+        this.ids = new long[this.blockSize];
+        this.next = 0;
+    }
+
+    /**
+     * @return next reserved id, reserves a new block if required
+     */
+    public synchronized long next() throws SQLException {
+        if(this.next >= this.size) {
+            this.reserve();
+        }
+        return this.ids[this.next++];
+    }
+
+    public synchronized String nextString() throws SQLException {
+        return Long.toString(this.next());
+    }
+
+    private void reserve() throws SQLException {
+        try (Statement statement = this.connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT nextval('" + this.sequenceName
+                     + "') FROM generate_series(1, " + this.blockSize + ");")) {
+            this.size = 0;
+            while(result.next()) {
+                this.ids[this.size++] = result.getLong(1);
+            }
+        }
+        this.next = 0;
+        if(this.size == 0) {
+            throw new SQLException("no id reserved from sequence " + this.sequenceName);
+        }
+    }
+}
@@ -71,6 +71,66 @@ public class UtilCopyImport {
         }
 	}
 
+	/**
+	 * Methode serializeTagsJSON()<br>
+	 * fügt key und value als Eintrag eines JSON-Objekts (jsonb) in target hinzu<br>
+	 * target muss mit '{' beginnen, das abschließende '}' hängt der Aufrufer an.
+	 * Wie beim serialisierten Format werden '-Zeichen entfernt, leere und zu lange
+	 * Werte werden null, Einträge mit leeren oder zu langen keys entfallen.
+	 * @param target Zielort der Serialiserung
+	 * @param key Wert1 von tag-Elementen
+	 * @param value Wert2 von tag-Elementen
+	 */
+	public static void serializeTagsJSON(ManagedStringBuilder target, String key, String value) {
+		if (target == null || key == null) {
+			return;
+		}
+		int keyLength = key.length() - countStrips(key);
+		if (keyLength < 1 || keyLength >= 1000) {
+			return;
+		}
+
+		if (target.length() > 1) {
+			target.append(',');
+		}
+		appendJSON(target, key);
+		target.append(':');
+
+		int valueLength = value == null ? 0 : value.length() - countStrips(value);
+		if (valueLength < 1 || valueLength >= 1000) {
+			target.append("null");
+		} else {
+			appendJSON(target, value);
+		}
+	}
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Methode appendJSON()<br>
+	 * fügt s als JSON-String ohne '-Zeichen in target hinzu<br>
+	 */
+	private static void appendJSON(ManagedStringBuilder target, String s) {
+		target.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\'') {
+				continue;
+			}
+			if (c == '"' || c == '\\') {
+				target.append('\\');
+				target.append(c);
+			} else if (c < 0x20) {
+				target.append("\\u00");
+				target.append(HEX_DIGITS[c >> 4]);
+				target.append(HEX_DIGITS[c & 0xF]);
+			} else {
+				target.append(c);
+			}
+		}
+		target.append('"');
+	}
+
 	/**
 	 * Methode append()<br>
 	 * fügt serialisierten String s dem target hinzu<br>
@@ -78,56 +138,64 @@ public class UtilCopyImport {
 	 * @param s soll serialisiert / hinzugefügt werden
 	 */
 	private static void append(StringBuilder target, String s) {
-		s = removeStrips(s);
+		int strips = countStrips(s);
+		int length = s.length() - strips;
 		// if we see it realistic the length of key and value cannot be over 999
 		// so we take size of 3
-		if (s.length() < 1000) {
-			for (int i = 100; i >= 1; i = i / 10) {
-				if (s.length() < i) {
-					target.append("0");
+		if (length < 1000) {
+			// zero padding - an empty string becomes 0000
+			if (length < 100) target.append('0');
+			if (length < 10) target.append('0');
+			if (length < 1) target.append('0');
+			target.append(length);
+			if (strips == 0) {
+				target.append(s);
+			} else {
+				for (int i = 0; i < s.length(); i++) {
+					char c = s.charAt(i);
+					if (c != '\'') target.append(c);
 				}
 			}
-			target.append(s.length());
-			target.append(s);
 		} else {
 			target.append("0000");
 		}
 	}
 	private static void append(ManagedStringBuilder target, String s) {
-		s = removeStrips(s);
+		int strips = countStrips(s);
+		int length = s.length() - strips;
 		// if we see it realistic the length of key and value cannot be over 999
 		// so we take size of 3
-		if (s.length() < 1000) {
-			for (int i = 100; i >= 1; i = i / 10) {
-				if (s.length() < i) {
-					target.append("0");
+		if (length < 1000) {
+			// zero padding - an empty string becomes 0000
+			if (length < 100) target.append('0');
+			if (length < 10) target.append('0');
+			if (length < 1) target.append('0');
+			target.append(length);
+			if (strips == 0) {
+				target.append(s);
+			} else {
+				for (int i = 0; i < s.length(); i++) {
+					char c = s.charAt(i);
+					if (c != '\'') target.append(c);
 				}
 			}
-			target.append(s.length());
-			target.append(s);
 		} else {
 			target.append("0000");
 		}
 	}
 
 	/**
-	 * Methode removeStrips()<br>
-	 * entfernt '-Zeichen von String str<br>
+	 * Methode countStrips()<br>
+	 * zählt '-Zeichen in String str, diese werden beim Serialisieren entfernt<br>
 	 * @param str Inhalt welcher überprüft wird
-	 * @return String str welcher überprüft wurde
+	 * @return Anzahl der '-Zeichen
 	 */
-	private static String removeStrips(String str) {
-		String tmp = "";
-		for (int i = str.indexOf("'"); i != -1; i = str.indexOf("'")) {
-			tmp = tmp + str.substring(0, i);
-			if (i < str.length() - 1) {
-				tmp = tmp + str.substring(i + 1);
-			}
-			str = tmp;
-			tmp = "";
+	private static int countStrips(String str) {
+		int strips = 0;
+		for (int i = str.indexOf('\''); i != -1; i = str.indexOf('\'', i + 1)) {
+			strips++;
 		}
-		tmp = null;
-		return str;
+		return strips;
 	}
 
 	/**
@@ -158,15 +226,16 @@ public class UtilCopyImport {
 	 * @return String mit Elementen der Integerliste
 	 */
 	public static String getString(List<Integer> elems) {
-		String sReturn = "";
-		if (elems != null) {
-			if (elems.size() > 0) {
-				for (int i = 0; i < elems.size() - 1; i++) {
-					sReturn = sReturn + elems.get(i) + ",";
-				}
-				sReturn = sReturn + elems.get(elems.size() - 1);
+		if (elems == null || elems.isEmpty()) {
+			return "";
+		}
+		StringBuilder sReturn = new StringBuilder(elems.size() * 8);
+		for (int i = 0; i < elems.size(); i++) {
+			if (i > 0) {
+				sReturn.append(',');
 			}
+			sReturn.append(elems.get(i).intValue());
 		}
-		return sReturn;
+		return sReturn.toString();
 	}
 }
@@ -0,0 +1,154 @@
+package osm2inter;
+
+import org.junit.jupiter.api.Test;
+import osm.OSMClassification;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Class id lookups of the compiled classification index must return the
+ * same ids as the former lookup by concatenated full class names - and must
+ * not allocate (37 bytes and 159 ns per lookup before, 0 bytes and 44 ns
+ * after when the index was introduced).
+ */
+class ClassificationLookupTest {
+    @Test
+    void sameIDsAsFormerLookup() {
+        OSMClassification c = OSMClassification.getOSMClassification();
+        HashMap<String, Integer> fullNameIDs = getFullNameIDs(c);
+        assertFalse(fullNameIDs.isEmpty(), "no classification loaded");
+
+        for (String[] tag : getTags(c)) {
+            // keys and values are new strings (without cached hash) in a real import
+            String key = new String(tag[0]);
+            String value = new String(tag[1]);
+            int after = c.classExists(key) ? c.getOHDMClassID(key, value) : -1;
+            assertEquals(lookupBefore(c, fullNameIDs, tag[0], tag[1]), after,
+                    "lookup of " + tag[0] + "/" + tag[1]);
+        }
+    }
+
+    @Test
+    void allocatesLessThanFormerLookup() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) mx;
+
+        OSMClassification c = OSMClassification.getOSMClassification();
+        HashMap<String, Integer> fullNameIDs = getFullNameIDs(c);
+        List<String[]> tags = getTags(c);
+        int rounds = 200;
+
+        // warm up
+        measure(allocations, c, fullNameIDs, tags, rounds / 10, true);
+        measure(allocations, c, fullNameIDs, tags, rounds / 10, false);
+
+        long lookups = (long) rounds * tags.size();
+        long[] before = measure(allocations, c, fullNameIDs, tags, rounds, true);
+        long[] after = measure(allocations, c, fullNameIDs, tags, rounds, false);
+        System.out.println("classification lookup: before " + (before[0] / lookups) + " bytes/lookup, "
+                + (before[1] / lookups) + " ns/lookup, after " + (after[0] / lookups) + " bytes/lookup, "
+                + (after[1] / lookups) + " ns/lookup");
+
+        // times are printed only, they depend on the machine
+        assertTrue(after[0] * 2 < before[0], before[0] + " bytes before, " + after[0] + " after");
+    }
+
+    /**
+     * @return allocated bytes and nanoseconds of rounds lookups of all tags
+     */
+    private static long[] measure(com.sun.management.ThreadMXBean mx, OSMClassification c,
+                                  HashMap<String, Integer> fullNameIDs, List<String[]> tags,
+                                  int rounds, boolean before) {
+        long thread = Thread.currentThread().getId();
+        long sink = 0;
+        long bytes = 0;
+        long time = 0;
+
+        String[] keys = new String[tags.size()];
+        String[] values = new String[tags.size()];
+        for (int r = 0; r < rounds; r++) {
+            // keys and values are new strings (without cached hash) for each element in a real import
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new String(tags.get(i)[0]);
+                values[i] = new String(tags.get(i)[1]);
+            }
+
+            long startBytes = mx.getThreadAllocatedBytes(thread);
+            long startTime = System.nanoTime();
+            for (int i = 0; i < keys.length; i++) {
+                if (before) {
+                    sink += lookupBefore(c, fullNameIDs, keys[i], values[i]);
+                } else if (c.classExists(keys[i])) {
+                    sink += c.getOHDMClassID(keys[i], values[i]);
+                }
+            }
+            time += System.nanoTime() - startTime;
+            bytes += mx.getThreadAllocatedBytes(thread) - startBytes;
+        }
+
+        // keep results alive
+        assertNotEquals(Long.MIN_VALUE, sink);
+        return new long[]{bytes, time};
+    }
+
+    /**
+     * former lookup table: full class name -> id
+     */
+    private static HashMap<String, Integer> getFullNameIDs(OSMClassification c) {
+        HashMap<String, Integer> fullNameIDs = new HashMap<>();
+        for (int id = 1; c.getClassNameById(id) != null; id++) {
+            fullNameIDs.put(OSMClassification.createFullClassName(
+                    c.getClassNameById(id), c.getSubClassNameById(id)), id);
+        }
+        return fullNameIDs;
+    }
+
+    /**
+     * tags like they come from an osm file: known, unknown and non class keys
+     */
+    private static List<String[]> getTags(OSMClassification c) {
+        List<String[]> tags = new ArrayList<>();
+        for (String className : c.osmFeatureClasses.keySet()) {
+            for (String subClassName : c.osmFeatureClasses.get(className)) {
+                tags.add(new String[]{className, subClassName});
+            }
+            tags.add(new String[]{className, "no_such_subclass"});
+        }
+        tags.add(new String[]{"name", "Unter den Linden"});
+        tags.add(new String[]{"maxspeed", "50"});
+        tags.add(new String[]{"source", "survey"});
+        return tags;
+    }
+
+    /**
+     * former implementation: classExists on key set, lookup by concatenated
+     * name and again with undefined as sub class
+     */
+    private static int lookupBefore(OSMClassification c, HashMap<String, Integer> fullNameIDs,
+                                    String className, String subClassName) {
+        if (!c.osmFeatureClasses.keySet().contains(className)) {
+            return -1;
+        }
+
+        Integer id = fullNameIDs.get(OSMClassification.createFullClassName(className, subClassName));
+        if (id != null) {
+            return id;
+        }
+
+        id = fullNameIDs.get(OSMClassification.createFullClassName(className, OSMClassification.UNDEFINED));
+        if (id != null) {
+            return id;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,175 @@
+package osm2inter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Decoding of varints, zigzag and delta coded values and dense nodes. Blocks
+ * are built with a minimal protocol buffer writer, malformed blocks must be
+ * reported with an IOException.
+ */
+class PBFBlockDecoderTest {
+    private static final String[] STRINGS = {"", "highway", "bus_stop", "name", "Mitte"};
+
+    @Test
+    void readsVarints() throws IOException {
+        assertEquals(0, new PBFInput(new byte[]{0}).readRawVarint());
+        assertEquals(300, new PBFInput(new byte[]{(byte) 0xAC, 0x02}).readRawVarint());
+        assertEquals(Long.MAX_VALUE, new PBFInput(new Message().varint(Long.MAX_VALUE).bytes()).readRawVarint());
+        assertEquals(-1, new PBFInput(new Message().varint(-1).bytes()).readRawVarint());
+
+        // last byte missing
+        assertThrows(IOException.class, () -> new PBFInput(new byte[]{(byte) 0xAC}).readRawVarint());
+    }
+
+    @Test
+    void readsZigzagValues() throws IOException {
+        long[] values = {0, -1, 1, -2, 2, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            assertEquals(value, new PBFInput(new Message().varint(zigzag(value)).bytes()).readSInt64());
+        }
+    }
+
+    @Test
+    void readsPackedDeltas() throws IOException {
+        PBFInput in = new PBFInput(new Message().packed(1, zigzag(10), zigzag(1), zigzag(-3)).bytes());
+        assertEquals(1, in.readTag());
+        assertArrayEquals(new long[]{10, 11, 8}, in.readPackedLongs(true, true));
+    }
+
+    @Test
+    void decodesDenseNodes() throws Exception {
+        List<PBFElement> nodes = new PBFBlockDecoder(blob(denseNodes(
+                new long[]{10, 11, 15},
+                new long[]{525200000, 525200100, 525199900},
+                new long[]{134050000, 134050000, 134049000},
+                new long[]{1, 2, 3, 4, 0, 0, 0}))).call();
+
+        assertEquals(3, nodes.size());
+        assertEquals(10, nodes.get(0).id);
+        assertEquals(11, nodes.get(1).id);
+        assertEquals(15, nodes.get(2).id);
+        assertEquals("52.5200000", nodes.get(0).lat);
+        assertEquals("52.5200100", nodes.get(1).lat);
+        assertEquals("52.5199900", nodes.get(2).lat);
+        assertEquals("13.4050000", nodes.get(0).lon);
+        assertEquals("13.4049000", nodes.get(2).lon);
+        assertArrayEquals(new String[]{"highway", "bus_stop", "name", "Mitte"}, nodes.get(0).tags);
+        assertNull(nodes.get(1).tags);
+        assertNull(nodes.get(0).timestamp);
+    }
+
+    @Test
+    void rejectsMalformedDenseNodes() {
+        // coordinates missing
+        assertThrows(IOException.class, () -> new PBFBlockDecoder(blob(denseNodes(
+                new long[]{10, 11}, new long[]{525200000}, new long[]{134050000, 134050000}, null))).call());
+        assertThrows(IOException.class, () -> new PBFBlockDecoder(blob(denseNodes(
+                new long[]{10}, null, null, null))).call());
+
+        // keys_vals without terminating 0 and key without value
+        assertThrows(IOException.class, () -> new PBFBlockDecoder(blob(denseNodes(
+                new long[]{10}, new long[]{525200000}, new long[]{134050000}, new long[]{1, 2}))).call());
+        assertThrows(IOException.class, () -> new PBFBlockDecoder(blob(denseNodes(
+                new long[]{10}, new long[]{525200000}, new long[]{134050000}, new long[]{1}))).call());
+
+        // string index outside of string table
+        assertThrows(IOException.class, () -> new PBFBlockDecoder(blob(denseNodes(
+                new long[]{10}, new long[]{525200000}, new long[]{134050000}, new long[]{1, 9, 0}))).call());
+    }
+
+    @Test
+    void rejectsRelationWithoutMemberTypes() {
+        // id 1, member refs 10 and 11 (delta coded), no types
+        byte[] relation = new Message().field(1, 1).packed(9, zigzag(10), zigzag(1)).bytes();
+        byte[] group = new Message().field(4, relation).bytes();
+
+        assertThrows(IOException.class, () -> new PBFBlockDecoder(blob(group)).call());
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                             encoding                            //
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return primitive group with dense nodes - arrays are absolute
+     * values, they are delta coded here
+     */
+    private static byte[] denseNodes(long[] ids, long[] lats, long[] lons, long[] keysVals) {
+        Message dense = new Message();
+        dense.packed(1, deltas(ids));
+        if (lats != null) dense.packed(8, deltas(lats));
+        if (lons != null) dense.packed(9, deltas(lons));
+        if (keysVals != null) dense.packed(10, keysVals);
+
+        return new Message().field(2, dense.bytes()).bytes();
+    }
+
+    /**
+     * @return raw blob of a primitive block with the strings and that group
+     */
+    private static byte[] blob(byte[] group) {
+        Message stringTable = new Message();
+        for (String s : STRINGS) {
+            stringTable.field(1, s.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] block = new Message().field(1, stringTable.bytes()).field(2, group).bytes();
+
+        return new Message().field(1, block).bytes();
+    }
+
+    private static long[] deltas(long[] values) {
+        long[] deltas = new long[values.length];
+        long last = 0;
+        for (int i = 0; i < values.length; i++) {
+            deltas[i] = zigzag(values[i] - last);
+            last = values[i];
+        }
+        return deltas;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static class Message {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Message varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                this.out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            this.out.write((int) value);
+            return this;
+        }
+
+        Message field(int number, long value) {
+            return this.varint(number << 3 | PBFInput.WIRETYPE_VARINT).varint(value);
+        }
+
+        Message field(int number, byte[] value) {
+            this.varint(number << 3 | PBFInput.WIRETYPE_LENGTH_DELIMITED).varint(value.length);
+            this.out.write(value, 0, value.length);
+            return this;
+        }
+
+        Message packed(int number, long... values) {
+            Message packed = new Message();
+            for (long value : values) {
+                packed.varint(value);
+            }
+            return this.field(number, packed.bytes());
+        }
+
+        byte[] bytes() {
+            return this.out.toByteArray();
+        }
+    }
+}
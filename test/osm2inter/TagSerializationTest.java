@@ -0,0 +1,166 @@
+package osm2inter;
+
+import org.junit.jupiter.api.Test;
+import util.ManagedStringBuilder.ManagedStringBuilder;
+import util.UtilCopyImport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tags, other class codes and way node ids are serialized like
+ * COPY_OSMImporter does. The former implementation is kept here as
+ * reference: output of both must be identical, allocated bytes per element
+ * less than half (3824 before, 848 after when the serializer was changed).
+ */
+class TagSerializationTest {
+    private static final String[][] TAGS = {
+            {"uid", "4711"},
+            {"user", "O'Mapper"},
+            {"name", "Unter den Linden"},
+            {"name:ru", "Унтер-ден-Линден"},
+            {"maxspeed", "50"},
+            {"note", "it's a 'quoted' value"},
+            {"fixme", ""},
+            {"'", "x"},
+            {"description", new String(new char[1200]).replace('\0', 'a')}
+    };
+
+    private static final List<Integer> CLASS_CODES = Arrays.asList(112, 4711, 90001);
+
+    private static final String[] NODE_IDS = {
+            "26735763", "26735764", "1835092467", "26735765", "2934859023",
+            "26735766", "26735767", "4001232312", "26735768", "26735763"};
+
+    @Test
+    void sameOutputAsFormerImplementation() {
+        String[] after = serializeAfter(new ManagedStringBuilder(new char[200000]), new StringBuilder());
+        assertArrayEquals(serializeBefore(), after);
+    }
+
+    @Test
+    void reusedBuildersGiveSameOutput() {
+        ManagedStringBuilder serTags = new ManagedStringBuilder(new char[200000]);
+        StringBuilder memberIDs = new StringBuilder();
+        String[] first = serializeAfter(serTags, memberIDs);
+        assertArrayEquals(first, serializeAfter(serTags, memberIDs));
+    }
+
+    @Test
+    void allocatesLessThanFormerImplementation() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        assumeTrue(mx instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) mx;
+        int elements = 20000;
+
+        // warm up
+        allocatedBytes(allocations, elements, true);
+        allocatedBytes(allocations, elements, false);
+
+        long before = allocatedBytes(allocations, elements, true) / elements;
+        long after = allocatedBytes(allocations, elements, false) / elements;
+        System.out.println("tag serialization: " + before + " bytes/element before, " + after + " after");
+
+        assertTrue(after * 2 < before, before + " bytes/element before, " + after + " after");
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean mx, int elements, boolean before) {
+        ManagedStringBuilder serTags = new ManagedStringBuilder(new char[200000]);
+        StringBuilder memberIDs = new StringBuilder();
+        long sink = 0;
+
+        long thread = Thread.currentThread().getId();
+        long bytes = mx.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < elements; i++) {
+            String[] fields = before ? serializeBefore() : serializeAfter(serTags, memberIDs);
+            sink += fields[0].length();
+        }
+        bytes = mx.getThreadAllocatedBytes(thread) - bytes;
+
+        // keep results alive
+        assertTrue(sink > 0);
+        return bytes;
+    }
+
+    private static String[] serializeAfter(ManagedStringBuilder serTags, StringBuilder memberIDs) {
+        serTags.empty();
+        memberIDs.setLength(0);
+        for (String[] tag : TAGS) {
+            UtilCopyImport.serializeTags(serTags, tag[0], tag[1]);
+        }
+        for (String id : NODE_IDS) {
+            COPY_OSMImporter.appendListEntry(memberIDs, id, false);
+        }
+        return new String[]{serTags.toString(), UtilCopyImport.getString(CLASS_CODES), memberIDs.toString()};
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    //                  former implementation (reference)              //
+    /////////////////////////////////////////////////////////////////////
+
+    private static String[] serializeBefore() {
+        StringBuilder serTags = new StringBuilder();
+        for (String[] tag : TAGS) {
+            String key = tag[0], value = tag[1];
+            if (key != null && key.length() != 0) {
+                if (value != null && value.length() != 0) {
+                    appendBefore(serTags, key);
+                    appendBefore(serTags, value);
+                } else {
+                    appendBefore(serTags, key);
+                    serTags.append("0000");
+                }
+            } else {
+                serTags.append("00000000");
+            }
+        }
+
+        String memberIDs = "";
+        for (String id : NODE_IDS) {
+            if (memberIDs.isEmpty()) {
+                memberIDs = id;
+            } else {
+                memberIDs = memberIDs + "," + id;
+            }
+        }
+
+        String codes = "";
+        List<Integer> elems = new ArrayList<>(CLASS_CODES);
+        for (int i = 0; i < elems.size() - 1; i++) {
+            codes = codes + elems.get(i) + ",";
+        }
+        codes = codes + elems.get(elems.size() - 1);
+
+        return new String[]{serTags.toString(), codes, memberIDs};
+    }
+
+    private static void appendBefore(StringBuilder target, String s) {
+        String tmp = "";
+        for (int i = s.indexOf("'"); i != -1; i = s.indexOf("'")) {
+            tmp = tmp + s.substring(0, i);
+            if (i < s.length() - 1) {
+                tmp = tmp + s.substring(i + 1);
+            }
+            s = tmp;
+            tmp = "";
+        }
+        if (s.length() < 1000) {
+            for (int i = 100; i >= 1; i = i / 10) {
+                if (s.length() < i) {
+                    target.append("0");
+                }
+            }
+            target.append(s.length());
+            target.append(s);
+        } else {
+            target.append("0000");
+        }
+    }
+}